@@ -0,0 +1,168 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/guide/components/loaders.html
+//https://developers.google.com/books/docs/v1/using#RetrievingVolume
+
+import android.app.LoaderManager.LoaderCallbacks;
+import android.content.Context;
+import android.content.Intent;
+import android.content.Loader;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Shows the full information about one book, opened from a row of the list.
+ *
+ * The text of the row is shown at once; the rest of the volume is only fetched now, with a
+ * {@link BookDetailLoader}, so search results never pay for it.
+ */
+public class BookDetailActivity extends AppCompatActivity implements LoaderCallbacks<BookDetail> {
+
+    /** Intent extras: the volume id, and the formatted text of the row that was opened */
+    static final String EXTRA_VOLUME_ID = "volume_id";
+    static final String EXTRA_TITLE = "title";
+    static final String EXTRA_AUTHORS = "authors";
+    static final String EXTRA_PUBLISHED_DATE = "published_date";
+    static final String EXTRA_THUMBNAIL = "thumbnail";
+
+    /**
+     * Constant value for the detail loader ID.
+     */
+    private static final int DETAIL_LOADER_ID = 1;
+
+    private String Thumbnail;
+    private ThumbnailLoader Thumbnails;
+
+    private ImageView CoverView;
+    private TextView TitleView;
+    private TextView SubtitleView;
+    private TextView AuthorsView;
+    private TextView PublishedView;
+    private TextView FactsView;
+    private TextView DescriptionView;
+    private TextView EmptyStateTextView;
+    private View LoadingIndicator;
+
+    /**
+     * Returns the intent that opens the detail screen of a book.
+     *
+     * @param row is the formatted text of the book, shown until the detail has loaded
+     */
+    static Intent newIntent(Context context, BookListing booklisting, BookListingRow row) {
+        return new Intent(context, BookDetailActivity.class)
+                .putExtra(EXTRA_VOLUME_ID, booklisting.getId())
+                .putExtra(EXTRA_TITLE, row.getTitle())
+                .putExtra(EXTRA_AUTHORS, row.getAuthors())
+                .putExtra(EXTRA_PUBLISHED_DATE, row.getPublishedDate())
+                .putExtra(EXTRA_THUMBNAIL, row.getThumbnail());
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.booklisting_detail_activity);
+
+        CoverView = (ImageView) findViewById(R.id.cover);
+        TitleView = (TextView) findViewById(R.id.title);
+        SubtitleView = (TextView) findViewById(R.id.subtitle);
+        AuthorsView = (TextView) findViewById(R.id.authors);
+        PublishedView = (TextView) findViewById(R.id.published);
+        FactsView = (TextView) findViewById(R.id.facts);
+        DescriptionView = (TextView) findViewById(R.id.description);
+        EmptyStateTextView = (TextView) findViewById(R.id.empty_view);
+        LoadingIndicator = findViewById(R.id.loading_indicator);
+
+        // Show what the list already knows while the rest loads
+        Intent intent = getIntent();
+        Thumbnail = intent.getStringExtra(EXTRA_THUMBNAIL);
+        Thumbnails = new ThumbnailLoader(this);
+        Thumbnails.load(Thumbnail, CoverView);
+        TitleView.setText(intent.getCharSequenceExtra(EXTRA_TITLE));
+        AuthorsView.setText(intent.getCharSequenceExtra(EXTRA_AUTHORS));
+        PublishedView.setText(intent.getCharSequenceExtra(EXTRA_PUBLISHED_DATE));
+
+        String volumeId = intent.getStringExtra(EXTRA_VOLUME_ID);
+        if (volumeId == null) {
+            LoadingIndicator.setVisibility(View.GONE);
+            EmptyStateTextView.setText(R.string.no_details);
+            return;
+        }
+
+        Bundle args = new Bundle();
+        args.putString(EXTRA_VOLUME_ID, volumeId);
+        getLoaderManager().initLoader(DETAIL_LOADER_ID, args, this);
+    }
+
+    @Override
+    public Loader<BookDetail> onCreateLoader(int id, Bundle args) {
+        return new BookDetailLoader(this, args.getString(EXTRA_VOLUME_ID));
+    }
+
+    @Override
+    public void onLoadFinished(Loader<BookDetail> loader, BookDetail detail) {
+        LoadingIndicator.setVisibility(View.GONE);
+
+        if (detail == null) {
+            EmptyStateTextView.setText(R.string.no_details);
+            return;
+        }
+        EmptyStateTextView.setText(null);
+
+        BookListingFormatter formatter = new BookListingFormatter(Locale.getDefault());
+        if (detail.getTitle() != null) {
+            TitleView.setText(detail.getTitle());
+        }
+        setTextOrHide(SubtitleView, detail.getSubtitle());
+        if (detail.getAuthors() != null) {
+            AuthorsView.setText(detail.getAuthors());
+        }
+
+        List<String> published = new ArrayList<>();
+        if (detail.getPublisher() != null) {
+            published.add(detail.getPublisher());
+        }
+        if (detail.getPublishedDate() != null) {
+            published.add(formatter.formatPublishedDate(detail.getPublishedDate()));
+        }
+        if (!published.isEmpty()) {
+            PublishedView.setText(TextUtils.join(", ", published));
+        }
+
+        List<String> facts = new ArrayList<>();
+        if (detail.getPageCount() > 0) {
+            facts.add(getResources().getQuantityString(R.plurals.page_count, detail.getPageCount(),
+                    detail.getPageCount()));
+        }
+        if (detail.getRatingsCount() > 0) {
+            facts.add(getResources().getQuantityString(R.plurals.rating, detail.getRatingsCount(),
+                    detail.getAverageRating(), detail.getRatingsCount()));
+        }
+        if (detail.getCategories() != null) {
+            facts.add(detail.getCategories());
+        }
+        setTextOrHide(FactsView, facts.isEmpty() ? null : TextUtils.join("\n", facts));
+
+        setTextOrHide(DescriptionView, detail.getDescription() != null
+                ? BookListingFormatter.formatTextSnippet(detail.getDescription()) : null);
+
+        Thumbnails.loadCover(detail.getImageUrl(), Thumbnail, CoverView);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<BookDetail> loader) {
+        // The views are set again by the next load
+    }
+
+    private static void setTextOrHide(TextView view, CharSequence text) {
+        view.setText(text);
+        view.setVisibility(TextUtils.isEmpty(text) ? View.GONE : View.VISIBLE);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.android.booklistingapp;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.os.OperationCanceledException;
+
+/**
+ * Loads the {@link BookDetail} of one volume when the detail screen is opened, from the
+ * {@link BookDetailCache}, a prefetch in flight, or the network.
+ *
+ * The loader keeps the detail it loaded, so it is delivered again at once after a configuration
+ * change.
+ */
+public class BookDetailLoader extends AsyncTaskLoader<BookDetail> {
+
+    /** Volume id of the book */
+    private final String VolumeId;
+
+    /** Cancels the request of the load in progress, or null when nothing is loading */
+    private CancellationToken Cancellation;
+
+    /** Detail delivered last, or null */
+    private BookDetail Result;
+
+    /**
+     * Constructs a new {@link BookDetailLoader}.
+     *
+     * @param context of the activity
+     * @param volumeId is the volume id of the book to load
+     */
+    public BookDetailLoader(Context context, String volumeId) {
+        super(context);
+        VolumeId = volumeId;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (Result != null) {
+            deliverResult(Result);
+        }
+        if (takeContentChanged() || Result == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public void deliverResult(BookDetail detail) {
+        if (isReset()) {
+            return;
+        }
+        Result = detail;
+        super.deliverResult(detail);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        cancelLoad();
+        Result = null;
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public BookDetail loadInBackground() {
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            Cancellation = new CancellationToken();
+        }
+
+        try {
+            return BookDetailRequests.fetch(VolumeId, BookDetailCache.getInstance(getContext().getCacheDir()), Cancellation);
+        } catch (FetchCanceledException e) {
+            // The framework only expects its own exception from a cancelled load
+            throw new OperationCanceledException();
+        } finally {
+            synchronized (this) {
+                Cancellation = null;
+            }
+        }
+    }
+
+    /**
+     * Called on the main thread when the load is no longer needed, for example when the screen
+     * is closed. Disconnects the HTTP connection.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+
+        synchronized (this) {
+            if (Cancellation != null) {
+                Cancellation.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.android.booklistingapp;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fetches {@link BookDetail}s ahead of time and shares them with the detail screen.
+ *
+ * A prefetch is started for the row the user is most likely to open, such as the row under a
+ * long press, and fills the {@link BookDetailCache}. When the detail screen opens while that
+ * prefetch is still in flight, it waits for its result instead of sending the same request.
+ */
+final class BookDetailRequests {
+
+    /** How often a caller waiting on a prefetch checks its own cancellation token */
+    private static final long POLL_MILLIS = 50;
+
+    /** Runs the prefetches one at a time, so they never crowd out the list */
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /** Prefetches queued or in flight, keyed by volume id */
+    private static final Map<String, FutureTask<BookDetail>> sPrefetches = new HashMap<>();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookDetailRequests} object.
+     */
+    private BookDetailRequests() {
+    }
+
+    /**
+     * Start fetching the detail of a volume in the background, unless it is cached or already
+     * being fetched. Can be called on the main thread.
+     */
+    static void prefetch(final String volumeId, final BookDetailCache cache) {
+        synchronized (sPrefetches) {
+            if (sPrefetches.containsKey(volumeId)) {
+                return;
+            }
+            FutureTask<BookDetail> task = new FutureTask<>(new Callable<BookDetail>() {
+                @Override
+                public BookDetail call() {
+                    try {
+                        return QueryUtils.fetchBookDetail(volumeId, cache, null);
+                    } finally {
+                        synchronized (sPrefetches) {
+                            sPrefetches.remove(volumeId);
+                        }
+                    }
+                }
+            });
+            sPrefetches.put(volumeId, task);
+            PREFETCH_EXECUTOR.execute(task);
+        }
+    }
+
+    /**
+     * Fetch the detail of a volume, joining its prefetch if one is in flight.
+     *
+     * @throws FetchCanceledException if the token is cancelled before the result arrives
+     */
+    static BookDetail fetch(String volumeId, BookDetailCache cache, CancellationToken cancellationToken) {
+        FutureTask<BookDetail> prefetch;
+        synchronized (sPrefetches) {
+            prefetch = sPrefetches.get(volumeId);
+        }
+
+        if (prefetch != null) {
+            while (true) {
+                cancellationToken.throwIfCanceled();
+                try {
+                    BookDetail detail = prefetch.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (detail != null) {
+                        return detail;
+                    }
+                    break;
+                } catch (TimeoutException e) {
+                    // Still in flight
+                } catch (ExecutionException e) {
+                    // The prefetch failed; try again below
+                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new FetchCanceledException();
+                }
+            }
+        }
+
+        return QueryUtils.fetchBookDetail(volumeId, cache, cancellationToken);
+    }
+}
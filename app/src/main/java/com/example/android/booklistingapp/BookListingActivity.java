@@ -7,26 +7,43 @@ package com.example.android.booklistingapp;
 //https://developer.android.com/reference/android/app/LoaderManager.html
 //https://developer.android.com/guide/components/loaders.html
 //https://developer.android.com/reference/java/net/HttpURLConnection.html
+//https://developer.android.com/reference/android/app/Activity.html#dump(java.lang.String,%20java.io.FileDescriptor,%20java.io.PrintWriter,%20java.lang.String[])
+//https://developer.android.com/reference/android/support/v4/app/FragmentActivity.html#onRetainCustomNonConfigurationInstance()
 
-import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
 import android.app.SearchManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.Loader;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Parcelable;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.SearchView;
 import android.view.Menu;
 import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.ListView;
+import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
+import com.bumptech.glide.Glide;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.List;
 
 
@@ -48,125 +65,529 @@ import java.util.List;
 
 
 public class BookListingActivity extends AppCompatActivity
-        implements LoaderCallbacks<List<BookListing>> {
+        implements BookListingPager.Listener, LoaderCallbacks<List<BookListing>> {
 
     private static final String LOG_TAG = BookListingActivity.class.getName();
 
     /**
-     * Constant value for the book listing loader ID. We can choose any integer.
+     * Query shown when the app starts
+     */
+    static final String DEFAULT_QUERY = "android";
+
+    /**
+     * Time after the last keystroke before a live search starts
      */
-    private static final int BOOKLISTING_LOADER_ID = 1;
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
+    /**
+     * Shortest query that is searched while the user is still typing
+     */
+    private static final int MIN_LIVE_QUERY_LENGTH = 2;
+
+    /**
+     * Bundle key for the current query
+     */
+    private static final String STATE_QUERY = "query";
+
+    /**
+     * Bundle keys for the refinement of the results and their order
+     */
+    private static final String STATE_REFINE = "refine";
+    private static final String STATE_SORT = "sort";
+
+    /**
+     * Bundle key for the scroll position of the list
+     */
+    private static final String STATE_LIST = "list";
+
+    /**
+     * Name of the file in the cache directory that keeps the results across the death of the process
+     */
+    private static final String SNAPSHOT_FILE_NAME = "booklisting_snapshot";
+
+    /**
+     * Loader ID of the local search; the pages use the IDs from 100 on
+     */
+    private static final int LOCAL_LOADER_ID = 1;
+
+    /**
+     * Bundle key for the query of the local search
+     */
+    private static final String ARG_QUERY = "query";
 
     /**
      * Adapter for the list of books
      */
     private BookListingAdapter Adapter;
 
+    /**
+     * Loads the results page by page as the list is scrolled
+     */
+    private BookListingPager Pager;
+
+    /**
+     * Lays out the list of books
+     */
+    private LinearLayoutManager ListLayoutManager;
+
+    /**
+     * Scroll position to restore once the restored results are shown, or null
+     */
+    private Parcelable PendingListState;
+
     /**
      * TextView that is displayed when the list is empty
      */
     private TextView EmptyStateTextView;
 
+    /**
+     * Query whose results are shown (or loading)
+     */
+    private String CurrentQuery = DEFAULT_QUERY;
+
+    /**
+     * Words, inauthor:, intitle: and year: the loaded results are narrowed to, or ""
+     */
+    private String RefineText = "";
+
+    /**
+     * Order of the results shown
+     */
+    private BookListingIndex.Sort SortOrder = BookListingIndex.Sort.RELEVANCE;
+
+    /**
+     * Query typed by the user that is waiting for the debounce delay to pass
+     */
+    private String PendingQuery;
+
+    /**
+     * Runs the debounced live search on the main thread
+     */
+    private final Handler SearchHandler = new Handler();
+
+    private final Runnable PendingSearch = new Runnable() {
+        @Override
+        public void run() {
+            search(PendingQuery);
+        }
+    };
+
+    /**
+     * True while the current query is waiting for a network connection
+     */
+    private boolean WaitingForNetwork;
+
+    /**
+     * True while the snapshot file is read on a background thread after the process died
+     */
+    private boolean RestoringSnapshot;
+
+    /**
+     * Loads the current query from the network once the connection comes back
+     */
+    private final BroadcastReceiver ConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (WaitingForNetwork && isConnected()) {
+                WaitingForNetwork = false;
+                if (!Pager.hasFirstPage()) {
+                    View loadingIndicator = findViewById(R.id.loading_indicator);
+                    loadingIndicator.setVisibility(View.VISIBLE);
+                }
+                Pager.setWaitingForNetwork(false);
+                Pager.requestNextPage();
+            }
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // Time the stages of every search in debug builds; see dump()
+        FetchMetrics.setEnabled(BuildConfig.DEBUG);
+
         setContentView(R.layout.booklisting_activity);
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView booklistingListView = (ListView) findViewById(R.id.list);
+        if (savedInstanceState != null) {
+            CurrentQuery = savedInstanceState.getString(STATE_QUERY, DEFAULT_QUERY);
+            RefineText = savedInstanceState.getString(STATE_REFINE, "");
+            SortOrder = BookListingIndex.Sort.valueOf(
+                    savedInstanceState.getString(STATE_SORT, BookListingIndex.Sort.RELEVANCE.name()));
+        }
+
+        // Find a reference to the {@link RecyclerView} in the layout
+        final RecyclerView booklistingRecyclerView = (RecyclerView) findViewById(R.id.list);
+        ListLayoutManager = new LinearLayoutManager(this);
+        booklistingRecyclerView.setLayoutManager(ListLayoutManager);
+
+        // The size of the list does not depend on its items, so updates don't relayout the screen
+        booklistingRecyclerView.setHasFixedSize(true);
 
         EmptyStateTextView = (TextView) findViewById(R.id.empty_view);
-        booklistingListView.setEmptyView(EmptyStateTextView);
 
-        // Create a new adapter that takes an empty list of google books as input
-        Adapter = new BookListingAdapter(this, new ArrayList<BookListing>());
+        // Create a new adapter that starts with an empty list of google books
+        Adapter = new BookListingAdapter(this);
 
-        // Set the adapter on the {@link ListView}
+        // Set the adapter on the {@link RecyclerView}
         // so the list can be populated in the user interface
-        booklistingListView.setAdapter(Adapter);
+        booklistingRecyclerView.setAdapter(Adapter);
 
-        // Get a reference to the ConnectivityManager to check state of network connectivity
-        ConnectivityManager connMgr = (ConnectivityManager)
-                getSystemService(Context.CONNECTIVITY_SERVICE);
+        // The empty view is only visible when the list has no items
+        Adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView(booklistingRecyclerView);
+            }
 
-        // Get details on the currently active default data network
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView(booklistingRecyclerView);
+            }
+
+            @Override
+            public void onChanged() {
+                updateEmptyView(booklistingRecyclerView);
+            }
+        });
+        updateEmptyView(booklistingRecyclerView);
+
+        // Load further pages in the background as the user scrolls towards the end of the list
+        Pager = new BookListingPager(this, getLoaderManager(), Adapter, this);
+        booklistingRecyclerView.addOnScrollListener(Pager);
+        applyRefinement();
 
-        // If there is a network connection, fetch data
-        if (networkInfo != null && networkInfo.isConnected()) {
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getLoaderManager();
+        // Show the results of the previous instance again, without loading them. They are in
+        // memory after a configuration change, and in the snapshot file after the process died.
+        if (restoreResults(savedInstanceState)) {
+            return;
+        }
+        loadCurrentQuery();
+    }
+
+    /**
+     * Start loading the current query, or wait for a network connection to load it.
+     */
+    private void loadCurrentQuery() {
+        // Keep the cache warm for the next cold start. JobScheduler needs API 21.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PrefetchJobService.schedule(this);
+        }
 
-            // Initialize the loader. Pass in the int ID constant defined above and pass in null for
-            // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-            // because this activity implements the LoaderCallbacks interface).
-            loaderManager.initLoader(BOOKLISTING_LOADER_ID, null, this);
+        // If there is a network connection, fetch data. Loaders that survived a configuration
+        // change deliver their pages again without a new request.
+        if (isConnected()) {
+            Pager.start(buildUrl(CurrentQuery));
         } else {
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.GONE);
+            // Otherwise wait for the connection to come back
+            Pager.reset(buildUrl(CurrentQuery));
+            Pager.setWaitingForNetwork(true);
+            WaitingForNetwork = true;
+        }
 
-            // Update empty state with no connection error message
-            EmptyStateTextView.setText(R.string.no_internet_connection);
+        // Show the first page the prefetch job or an earlier session cached, while the loader
+        // revalidates it in the background; see onCachedFirstPageChecked()
+        Pager.showCachedFirstPage(BookListingCache.getInstance(getCacheDir()));
+    }
+
+    /**
+     * Show the results the previous instance of the activity had for the current query.
+     *
+     * After a configuration change they are shown at once. After the death of the process the
+     * snapshot file is read on a background thread, and the query is loaded if it has nothing to
+     * show; the read may take a while, because the file holds every page the user scrolled
+     * through.
+     *
+     * @return false if there is nothing to restore, or the results in memory are stale, and
+     * the query has to be loaded
+     */
+    private boolean restoreResults(Bundle savedInstanceState) {
+        if (savedInstanceState == null) {
+            return false;
+        }
+
+        // The rows of a snapshot from the file are formatted before it is shown, after the
+        // RecyclerView has laid out the empty list; see onFirstPageLoaded()
+        PendingListState = savedInstanceState.getParcelable(STATE_LIST);
+
+        BookListingSnapshot snapshot = (BookListingSnapshot) getLastCustomNonConfigurationInstance();
+        if (snapshot != null) {
+            if (showSnapshot(snapshot)) {
+                return true;
+            }
+            PendingListState = null;
+            return false;
         }
 
+        // After any write of the file that is still queued
+        final File file = getSnapshotFile();
+        RestoringSnapshot = true;
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final BookListingSnapshot read = BookListingSnapshot.readFrom(file);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A search was started in the meantime, or the activity is gone
+                        if (!RestoringSnapshot) {
+                            return;
+                        }
+                        RestoringSnapshot = false;
+                        if (read == null || !showSnapshot(read)) {
+                            PendingListState = null;
+                            loadCurrentQuery();
+                        }
+                    }
+                });
+            }
+        });
+        return true;
     }
 
+    /**
+     * Show a snapshot, if it holds the results of the current query and is not stale.
+     */
+    private boolean showSnapshot(BookListingSnapshot snapshot) {
+        return snapshot.getBaseUrl().equals(buildUrl(CurrentQuery)) && Pager.restoreState(snapshot);
+    }
 
-    //TODO Add a searchview
-    //TODO Take the search query from search view and update the URL
-    //
-    // private String googleBooksUrl = "https://www.googleapis.com/books/v1/volumes?maxResults=20&q=";
-    // private String searchQuery = getString(R.string.searchQuery);
-    // private String url = googleBooksUrl + searchQuery
-    //
-    //TODO Start the loader on click of search icon
+    private File getSnapshotFile() {
+        return new File(getCacheDir(), SNAPSHOT_FILE_NAME);
+    }
 
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return Pager.saveState();
+    }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        registerReceiver(ConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
 
-    private String url = "https://www.googleapis.com/books/v1/volumes?maxResults=20&q=android";
+    @Override
+    protected void onStop() {
+        super.onStop();
+        unregisterReceiver(ConnectivityReceiver);
 
+        // Keep the suggestions learned in this session
+        final SearchSuggestions suggestions = SearchSuggestions.getInstance(getFilesDir());
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                suggestions.saveIfChanged();
+            }
+        });
+    }
 
     @Override
-    public boolean onCreateOptionsMenu(Menu menu) {
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Let Glide shrink its bitmap pool and memory cache with the rest of the app
+        Glide.get(this).trimMemory(level);
+    }
+
+    /**
+     * Adds the search timings to adb shell dumpsys activity com.example.android.booklistingapp
+     *
+     * The arguments "export-books [jsonl]" write the offline store to the app's external files
+     * directory instead, and "import-books <path>" reads such a file back into the store.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length > 0 && args[0].endsWith("-books")) {
+            dumpExportImport(writer, args);
+            return;
+        }
+        super.dump(prefix, fd, writer, args);
+        FetchMetrics.dump(writer);
+    }
+
+    private void dumpExportImport(PrintWriter writer, String[] args) {
+        OfflineBookStore store = OfflineBookStore.getInstance(this);
+        try {
+            if ("export-books".equals(args[0])) {
+                BookListingExport.Format format = args.length > 1 && "jsonl".equals(args[1])
+                        ? BookListingExport.Format.JSON_LINES : BookListingExport.Format.BINARY;
+                File file = new File(getExternalFilesDir(null), "booklistings" + format.getExtension());
+                writer.println("Exported " + store.exportTo(file, format) + " books to " + file);
+            } else if ("import-books".equals(args[0]) && args.length > 1) {
+                writer.println("Imported " + store.importFrom(new File(args[1])) + " books from " + args[1]);
+            } else {
+                writer.println("Usage: export-books [jsonl] | import-books <path>");
+            }
+        } catch (IOException e) {
+            writer.println("Failed: " + e);
+        }
+        writer.flush();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_QUERY, CurrentQuery);
+        outState.putString(STATE_REFINE, RefineText);
+        outState.putString(STATE_SORT, SortOrder.name());
+        outState.putParcelable(STATE_LIST, ListLayoutManager.onSaveInstanceState());
+
+        // The process may be killed while the activity is in the background
+        final BookListingSnapshot snapshot = Pager.saveState();
+        if (snapshot != null) {
+            final File file = getSnapshotFile();
+            AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    snapshot.writeTo(file);
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        SearchHandler.removeCallbacks(PendingSearch);
+        RestoringSnapshot = false;
+    }
 
-        //TODO Associate searchable configuration with the SearchView
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
 
         MenuInflater inflater = getMenuInflater();
         inflater.inflate(R.menu.menu_search, menu);
-        SearchView searchView = (SearchView) findViewById(R.id.searchQuery);
+        SearchView searchView = (SearchView) menu.findItem(R.id.searchQuery).getActionView();
         SearchManager searchManager = (SearchManager) getSystemService(SEARCH_SERVICE);
+        // The searchable info also gives the SearchView its suggestions, from the
+        // SearchSuggestionProvider; picking one comes back through onNewIntent()
         searchView.setSearchableInfo(searchManager.getSearchableInfo(getComponentName()));
         searchView.setQueryHint("SearchView");
 
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
 
             @Override
-            public boolean onQueryTextSubmit(String url) {
+            public boolean onQueryTextSubmit(String query) {
+
+                Toast.makeText(getBaseContext(), "Searching for " + query, Toast.LENGTH_SHORT).show();
 
-                Toast.makeText(getBaseContext(), "Searching for " + url, Toast.LENGTH_SHORT).show();
+                // Search now instead of waiting for the debounce delay
+                SearchHandler.removeCallbacks(PendingSearch);
+                search(query);
+                recordQuery(query);
 
                 // clear the focus of the SearchView
                 View current = getCurrentFocus();
                 if (current != null)
                     current.clearFocus();
 
-                return false;
+                return true;
             }
 
             @Override
             public boolean onQueryTextChange(String newText) {
-                return false;
+
+                // Restart the delay on every keystroke, so only the query the user pauses on
+                // is searched
+                SearchHandler.removeCallbacks(PendingSearch);
+                if (newText.trim().length() >= MIN_LIVE_QUERY_LENGTH) {
+                    PendingQuery = newText;
+                    SearchHandler.postDelayed(PendingSearch, SEARCH_DEBOUNCE_MILLIS);
+                }
+                return true;
             }
 
         });
 
+        menu.findItem(getSortItemId(SortOrder)).setChecked(true);
+
         return true;
 
     }
 
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.refine:
+                showRefineDialog();
+                return true;
+            case R.id.sort_relevance:
+            case R.id.sort_newest:
+            case R.id.sort_oldest:
+            case R.id.sort_title:
+                item.setChecked(true);
+                SortOrder = getSortOrder(item.getItemId());
+                applyRefinement();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    /**
+     * Ask for the words, author, title or years to narrow the loaded results to.
+     */
+    private void showRefineDialog() {
+        final EditText input = new EditText(this);
+        input.setSingleLine(true);
+        input.setHint(R.string.refine_hint);
+        input.setText(RefineText);
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.menu_refine)
+                .setView(input)
+                .setPositiveButton(R.string.refine, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        RefineText = input.getText().toString().trim();
+                        applyRefinement();
+                    }
+                })
+                .setNeutralButton(R.string.refine_clear, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        RefineText = "";
+                        applyRefinement();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * Show the loaded results that match RefineText in SortOrder. They are matched in memory,
+     * without a request.
+     */
+    private void applyRefinement() {
+        Pager.refine(BookListingIndex.Refinement.parse(RefineText, SortOrder));
+    }
+
+    private static int getSortItemId(BookListingIndex.Sort order) {
+        switch (order) {
+            case NEWEST:
+                return R.id.sort_newest;
+            case OLDEST:
+                return R.id.sort_oldest;
+            case TITLE:
+                return R.id.sort_title;
+            default:
+                return R.id.sort_relevance;
+        }
+    }
+
+    private static BookListingIndex.Sort getSortOrder(int itemId) {
+        switch (itemId) {
+            case R.id.sort_newest:
+                return BookListingIndex.Sort.NEWEST;
+            case R.id.sort_oldest:
+                return BookListingIndex.Sort.OLDEST;
+            case R.id.sort_title:
+                return BookListingIndex.Sort.TITLE;
+            default:
+                return BookListingIndex.Sort.RELEVANCE;
+        }
+    }
+
     @Override
     protected void onNewIntent(Intent intent) {
 
@@ -177,22 +598,104 @@ public class BookListingActivity extends AppCompatActivity
 
         if (Intent.ACTION_SEARCH.equals(intent.getAction())) {
             String searchQuery = intent.getStringExtra(SearchManager.QUERY);
-            //TODO input code here for doMySearch(query);
-            //doMySearch(searchQuery);
+            SearchHandler.removeCallbacks(PendingSearch);
+            search(searchQuery);
+            recordQuery(searchQuery);
+        }
+    }
+
+    /**
+     * Add a query the user submitted to the history, so the prefetch job keeps its results warm,
+     * and to the search suggestions. Live searches while typing are not recorded.
+     */
+    private void recordQuery(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return;
+        }
+        final String trimmed = query.trim();
+        final OfflineBookStore store = OfflineBookStore.getInstance(this);
+        final SearchSuggestions suggestions = SearchSuggestions.getInstance(getFilesDir());
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                store.recordQuery(trimmed);
+                suggestions.recordQuery(trimmed);
+            }
+        });
+    }
+
+    /**
+     * Show the results of a new query. Starting the first page restarts its loader, which
+     * cancels the request of the query it replaces. Searching again for the current query only
+     * loads it again if its first page failed.
+     */
+    private void search(String query) {
+        if (query == null) {
+            return;
+        }
+        query = query.trim();
+        if (query.isEmpty() || (query.equals(CurrentQuery) && !Pager.hasFailedFirstPage())) {
+            return;
+        }
+        CurrentQuery = query;
+        RestoringSnapshot = false;
+
+        // A refinement narrows the results of one query; the order applies to the next one too
+        if (!RefineText.isEmpty()) {
+            RefineText = "";
+            applyRefinement();
+        }
+
+        View loadingIndicator = findViewById(R.id.loading_indicator);
+        loadingIndicator.setVisibility(View.VISIBLE);
+        EmptyStateTextView.setText("");
+
+        if (isConnected()) {
+            WaitingForNetwork = false;
+            Pager.start(buildUrl(query));
+        } else {
+            Pager.reset(buildUrl(query));
+            Pager.setWaitingForNetwork(true);
+            WaitingForNetwork = true;
         }
+
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, query);
+        getLoaderManager().restartLoader(LOCAL_LOADER_ID, args, this);
+    }
+
+    /**
+     * Show the list, or the empty view if the list has no items.
+     */
+    private void updateEmptyView(RecyclerView recyclerView) {
+        boolean empty = Adapter.getItemCount() == 0;
+        recyclerView.setVisibility(empty ? View.GONE : View.VISIBLE);
+        EmptyStateTextView.setVisibility(empty ? View.VISIBLE : View.GONE);
     }
 
-    //TODO Correct onCreateLoader for after SearchView based on URL string search
+    /**
+     * Returns true if there is a network connection.
+     */
+    private boolean isConnected() {
+        // Get a reference to the ConnectivityManager to check state of network connectivity
+        ConnectivityManager connMgr = (ConnectivityManager)
+                getSystemService(Context.CONNECTIVITY_SERVICE);
 
+        // Get details on the currently active default data network
+        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
 
-    @Override
-    public Loader<List<BookListing>> onCreateLoader(int i, Bundle bundle) {
-        // Create a new loader for the given URL
-        return new BookListingLoader(this, url);
+    /**
+     * Returns the canonical search URL for the query, without pagination. maxResults and
+     * startIndex are added per page by the {@link BookListingPager}.
+     */
+    static String buildUrl(String query) {
+        return new BookQuery.Builder().setTerms(query).build().getUrl();
     }
 
     @Override
-    public void onLoadFinished(Loader<List<BookListing>> loader, List<BookListing> booklistings) {
+    public void onFirstPageLoaded(BookListingPage page) {
         // Hide loading indicator because the data has been loaded
         View loadingIndicator = findViewById(R.id.loading_indicator);
         loadingIndicator.setVisibility(View.GONE);
@@ -200,19 +703,68 @@ public class BookListingActivity extends AppCompatActivity
         // Set empty state text to display "No books found."
         EmptyStateTextView.setText(R.string.no_books);
 
-        // Clear the adapter of previous book data
-        Adapter.clear();
+        // Scroll the restored results back to where they were
+        if (PendingListState != null) {
+            ListLayoutManager.onRestoreInstanceState(PendingListState);
+            PendingListState = null;
+        }
+    }
+
+    @Override
+    public void onPageFailed(int pageIndex) {
+        // The pager requests the page again once the connection is back
+        if (!isConnected()) {
+            WaitingForNetwork = true;
+            Pager.setWaitingForNetwork(true);
+        }
+        if (pageIndex > 0) {
+            return;
+        }
+
+        // Hide loading indicator so the local results or the error message are visible
+        View loadingIndicator = findViewById(R.id.loading_indicator);
+        loadingIndicator.setVisibility(View.GONE);
+        EmptyStateTextView.setText(WaitingForNetwork ? R.string.no_internet_connection : R.string.problem_loading);
+    }
+
+    @Override
+    public void onCachedFirstPageChecked(boolean shown) {
+        // The activity is going away, and the next one checks the cache again
+        if (isFinishing() || isChangingConfigurations()) {
+            return;
+        }
+        if (shown) {
+            View loadingIndicator = findViewById(R.id.loading_indicator);
+            loadingIndicator.setVisibility(View.GONE);
+            return;
+        }
+
+        // Show the books we already know about while the network answers, or instead of it
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, CurrentQuery);
+        getLoaderManager().initLoader(LOCAL_LOADER_ID, args, this);
+    }
+
+    @Override
+    public Loader<List<BookListing>> onCreateLoader(int id, Bundle args) {
+        return new LocalBookListingLoader(this, args.getString(ARG_QUERY));
+    }
+
+    @Override
+    public void onLoadFinished(Loader<List<BookListing>> loader, List<BookListing> booklistings) {
+        Pager.showLocalResults(booklistings);
 
-        // If there is a valid list of {@link BookListing}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
-        if (booklistings != null && !booklistings.isEmpty()) {
-            Adapter.addAll(booklistings);
+        if (WaitingForNetwork) {
+            // Hide loading indicator so the local results or the error message are visible
+            View loadingIndicator = findViewById(R.id.loading_indicator);
+            loadingIndicator.setVisibility(View.GONE);
+
+            // Update empty state with no connection error message
+            EmptyStateTextView.setText(R.string.no_internet_connection);
         }
     }
 
     @Override
     public void onLoaderReset(Loader<List<BookListing>> loader) {
-        // Loader reset, so we can clear out our existing data.
-        Adapter.clear();
     }
 }
@@ -1,87 +1,290 @@
 package com.example.android.booklistingapp;
 
-//https://github.com/bumptech/glide
+//https://developer.android.com/reference/android/support/v7/widget/RecyclerView.Adapter.html
+//https://developer.android.com/reference/android/support/v7/util/DiffUtil.html
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * An {@link BookListingAdapter} knows how to create a list item layout for each book
  * in the data source (a list of {@link BookListing} objects).
  *
- * These list item layouts will be provided to an adapter view like ListView
- * to be displayed to the user.
+ * These list item layouts will be provided to a RecyclerView to be displayed to the user.
+ *
+ * A new list is compared with the one on screen by {@link DiffUtil} on a background thread, and
+ * only the rows that were added, removed or changed are updated. Item ids are taken from the
+ * volume id, so rows keep their views across updates. A list that only adds books at the end,
+ * such as the next batch of a page that is still loading, is appended without a diff.
+ *
+ * The text of a row comes preformatted as a {@link BookListingRow}, formatted off the main
+ * thread by the loader or the {@link BookListingPager}, so binding it only sets fields.
+ *
+ * A tap on a row opens its {@link BookDetailActivity}. A long press is a strong hint that the
+ * row is about to be opened, so it starts fetching the detail; the tap that follows a long press
+ * still opens the screen, usually with the detail already in the cache.
  */
+public class BookListingAdapter extends RecyclerView.Adapter<BookListingAdapter.ViewHolder> {
+
+    /** Computes the differences between lists, one at a time, in the order they were submitted */
+    private static final ExecutorService DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final ThumbnailLoader Thumbnails;
+    private final BookDetailCache DetailCache;
+    private final Handler MainHandler = new Handler(Looper.getMainLooper());
+    private final FrameBindMonitor BindMonitor = new FrameBindMonitor();
+
+    /** Books on screen */
+    private CompactBookListingList BookListings = new CompactBookListingList(1).snapshot();
+
+    /** Formatted rows of the books on screen */
+    private List<BookListingRow> Rows = new ArrayList<>();
 
+    /** Incremented on every submitted list, so the results of older diffs can be dropped */
+    private int Generation;
 
-public class BookListingAdapter extends ArrayAdapter<BookListing> {
+    /** Generation of the list on screen; lower than Generation while a diff is pending */
+    private int ShownGeneration;
 
-    //Context context;
+    /** Start of the query whose first row has not been bound yet, or 0 */
+    private long QueryStartNanos;
 
-    private static class ViewHolder {
+    static class ViewHolder extends RecyclerView.ViewHolder {
 
         TextView title;
         TextView authors;
         TextView publishedDate;
         ImageView thumbnail;
         TextView textSnippet;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            title = (TextView) itemView.findViewById(R.id.title);
+            authors = (TextView) itemView.findViewById(R.id.authors);
+            publishedDate = (TextView) itemView.findViewById(R.id.publishedDate);
+            thumbnail = (ImageView) itemView.findViewById(R.id.thumbnail);
+            textSnippet = (TextView) itemView.findViewById(R.id.textSnippet);
+        }
     }
 
     /**
      * Constructs a new {@link BookListingAdapter}.
      *
-     * @param context of the app
-     * @param booklistings is the list of books, which is the data source of the adapter
+     * @param context of the activity
+     */
+    public BookListingAdapter(Context context) {
+        Thumbnails = new ThumbnailLoader(context);
+        DetailCache = BookDetailCache.getInstance(context.getCacheDir());
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show a new list of books. Call on the main thread with a list that will not change, such
+     * as a {@link CompactBookListingList#snapshot()}.
+     *
+     * @param rows are the formatted rows of the books, in the same order; the adapter takes the
+     * list over
+     */
+    void submitList(final CompactBookListingList booklistings, final List<BookListingRow> rows) {
+        final int generation = ++Generation;
+        final CompactBookListingList oldBookListings = BookListings;
+
+        // Nothing to compare: update at once
+        if (oldBookListings.isEmpty() || booklistings.isEmpty()) {
+            BookListings = booklistings;
+            Rows = rows;
+            ShownGeneration = generation;
+            if (!oldBookListings.isEmpty()) {
+                notifyItemRangeRemoved(0, oldBookListings.size());
+            }
+            if (!booklistings.isEmpty()) {
+                notifyItemRangeInserted(0, booklistings.size());
+            }
+            return;
+        }
+
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(
+                        new BookListingDiffCallback(oldBookListings, booklistings), false);
+                MainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer list was submitted in the meantime and will replace this one
+                        if (generation != Generation) {
+                            return;
+                        }
+                        BookListings = booklistings;
+                        Rows = rows;
+                        ShownGeneration = generation;
+                        result.dispatchUpdatesTo(BookListingAdapter.this);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show a list that starts with the books on screen and adds more at the end, without
+     * comparing the two lists. Call on the main thread with a list that will not change. While
+     * a diff is pending the list on screen is about to change, so the list is submitted with
+     * {@link #submitList} instead.
+     *
+     * @param rows are the formatted rows of the books, in the same order; the adapter takes the
+     * list over
+     */
+    void appendList(CompactBookListingList booklistings, List<BookListingRow> rows) {
+        int oldSize = BookListings.size();
+        if (ShownGeneration != Generation || booklistings.size() < oldSize) {
+            submitList(booklistings, rows);
+            return;
+        }
+        ShownGeneration = ++Generation;
+        BookListings = booklistings;
+        Rows = rows;
+        if (booklistings.size() > oldSize) {
+            notifyItemRangeInserted(oldSize, booklistings.size() - oldSize);
+        }
+    }
+
+    /**
+     * Call when a new query starts, so the time until its first row is bound is recorded in
+     * {@link FetchMetrics}.
+     */
+    void markQueryStart() {
+        QueryStartNanos = FetchMetrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Start loading the covers of books that are about to be shown.
+     */
+    void prefetchThumbnails(List<BookListing> booklistings) {
+        Thumbnails.prefetch(booklistings);
+    }
+
+    /**
+     * Returns the book at the given position.
      */
-    public BookListingAdapter(Context context, List<BookListing> booklistings) {
-        super(context, 0, booklistings);
+    public BookListing getItem(int position) {
+        return BookListings.get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return BookListings.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return BookListings.getStableId(position);
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        BindMonitor.beginCreate();
+        View itemView = LayoutInflater.from(parent.getContext()).inflate(R.layout.booklisting_list_item, parent, false);
+        final ViewHolder viewHolder = new ViewHolder(itemView);
+        itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                int position = viewHolder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION && BookListings.get(position).getId() != null) {
+                    view.getContext().startActivity(
+                            BookDetailActivity.newIntent(view.getContext(), BookListings.get(position), getRow(position)));
+                }
+            }
+        });
+        itemView.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View view) {
+                int position = viewHolder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION && BookListings.get(position).getId() != null) {
+                    BookDetailRequests.prefetch(BookListings.get(position).getId(), DetailCache);
+                }
+                // Not consumed, so lifting the finger still opens the book
+                return false;
+            }
+        });
+        BindMonitor.endCreate();
+        return viewHolder;
     }
 
     /**
-     * Returns a list item view that displays information about the book
-     * in the list of books.
+     * Displays information about the book at the given position in a list item.
      */
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        // Check if there is an existing list item view (called convertView) that we can reuse,
-        // otherwise, if convertView is null, then inflate a new list item layout.
-
-        ViewHolder viewHolder;
-        BookListing BookListing = getItem(position);
-        if (convertView == null) {
-            convertView = LayoutInflater.from(getContext()).inflate(R.layout.booklisting_list_item, parent, false);
-            viewHolder = new ViewHolder();
-            viewHolder.title = (TextView) convertView.findViewById(R.id.title);
-            viewHolder.authors = (TextView) convertView.findViewById(R.id.authors);
-            viewHolder.publishedDate = (TextView) convertView.findViewById(R.id.publishedDate);
-            viewHolder.thumbnail = (ImageView) convertView.findViewById(R.id.thumbnail);
-            viewHolder.textSnippet = (TextView) convertView.findViewById(R.id.textSnippet);
-            // Cache the viewHolder object inside the fresh view
-            convertView.setTag(viewHolder);
-        } else {
-            // View is being recycled, retrieve the viewHolder object from tag
-            viewHolder = (ViewHolder) convertView.getTag();
+    public void onBindViewHolder(ViewHolder viewHolder, int position) {
+        BindMonitor.beginBind();
+        BookListingRow row = getRow(position);
+
+        viewHolder.title.setText(row.getTitle());
+        viewHolder.authors.setText(row.getAuthors());
+        viewHolder.publishedDate.setText(row.getPublishedDate());
+
+        // Decoded at the size of the view; books without a thumbnail never reach the network
+        Thumbnails.load(row.getThumbnail(), viewHolder.thumbnail);
+
+        viewHolder.textSnippet.setText(row.getTextSnippet());
+        BindMonitor.endBind();
+
+        if (QueryStartNanos != 0) {
+            FetchMetrics.recordFirstRowBound(System.nanoTime() - QueryStartNanos);
+            QueryStartNanos = 0;
         }
+    }
+
+    /**
+     * Returns the formatted row of the book at the given position.
+     */
+    private BookListingRow getRow(int position) {
+        return Rows.get(position);
+    }
+
+    /**
+     * Compares two lists of books by volume id and by their values.
+     */
+    private static final class BookListingDiffCallback extends DiffUtil.Callback {
 
-        viewHolder.title.setText(BookListing.getTitle());
-        viewHolder.authors.setText(BookListing.getAuthors());
-        viewHolder.publishedDate.setText(BookListing.getPublishedDate());
+        private final CompactBookListingList OldBookListings;
+        private final CompactBookListingList NewBookListings;
+
+        BookListingDiffCallback(CompactBookListingList oldBookListings, CompactBookListingList newBookListings) {
+            OldBookListings = oldBookListings;
+            NewBookListings = newBookListings;
+        }
 
-        final String thumbnail = BookListing.getThumbnail();
-        Glide.with(getContext()).load(thumbnail).placeholder(R.drawable.ic_gb).into(viewHolder.thumbnail);
+        @Override
+        public int getOldListSize() {
+            return OldBookListings.size();
+        }
 
-        viewHolder.textSnippet.setText(BookListing.getTextSnippet());
+        @Override
+        public int getNewListSize() {
+            return NewBookListings.size();
+        }
 
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return OldBookListings.getStableId(oldItemPosition) == NewBookListings.getStableId(newItemPosition);
+        }
 
-        return convertView;
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return OldBookListings.sameContents(oldItemPosition, NewBookListings, newItemPosition);
+        }
     }
 }
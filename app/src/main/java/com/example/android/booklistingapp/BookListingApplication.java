@@ -0,0 +1,27 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/reference/android/app/Application.html
+
+import android.app.Application;
+import android.util.Log;
+
+/**
+ * Sets up what the whole process shares before any activity or service starts: the log messages
+ * of the core classes go to logcat.
+ */
+public class BookListingApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        CoreLog.setSink(new CoreLog.Sink() {
+            @Override
+            public void log(int priority, String tag, String message, Throwable throwable) {
+                if (throwable != null) {
+                    message = message + '\n' + Log.getStackTraceString(throwable);
+                }
+                Log.println(priority, tag, message);
+            }
+        });
+    }
+}
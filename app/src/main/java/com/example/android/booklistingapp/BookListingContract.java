@@ -0,0 +1,120 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/training/data-storage/sqlite.html#DefineContract
+//https://www.sqlite.org/fts3.html#_external_content_fts4_tables_
+
+import android.provider.BaseColumns;
+
+/**
+ * API Contract for the local store of book listings.
+ */
+public final class BookListingContract {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookListingContract} object.
+     */
+    private BookListingContract() {
+    }
+
+    /**
+     * Inner class that defines constant values for the book listings database table.
+     * Each entry in the table represents a single book that was returned by a search.
+     */
+    public static final class BookListingEntry implements BaseColumns {
+
+        /** Name of database table for book listings */
+        public static final String TABLE_NAME = "booklistings";
+
+        /**
+         * Google Books volume id of the book. Unique.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_VOLUME_ID = "volume_id";
+
+        /**
+         * Title of the book.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_TITLE = "title";
+
+        /**
+         * Authors of the book.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_AUTHORS = "authors";
+
+        /**
+         * PublishedDate of the book.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_PUBLISHED_DATE = "published_date";
+
+        /**
+         * Thumbnail URL of the book.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_THUMBNAIL = "thumbnail";
+
+        /**
+         * TextSnippet of the book.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_TEXT_SNIPPET = "text_snippet";
+
+        /**
+         * Time the book was last returned by a search, in milliseconds since the epoch.
+         * The least recently seen books are evicted first.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_LAST_SEEN = "last_seen";
+    }
+
+    /**
+     * Inner class that defines the full-text index over the book listings table. It is an
+     * external content FTS4 table: it only stores the index, and its rowid is the _ID of the
+     * book in {@link BookListingEntry#TABLE_NAME}.
+     */
+    public static final class BookListingSearchEntry {
+
+        /** Name of the full-text index table */
+        public static final String TABLE_NAME = "booklistings_fts";
+    }
+
+    /**
+     * Inner class that defines constant values for the query history table.
+     * Each entry in the table represents a query the user searched for.
+     */
+    public static final class QueryEntry implements BaseColumns {
+
+        /** Name of database table for queries */
+        public static final String TABLE_NAME = "queries";
+
+        /**
+         * Query as the user typed it, trimmed. Unique.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_QUERY = "query";
+
+        /**
+         * Number of times the query was searched for.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_USE_COUNT = "use_count";
+
+        /**
+         * Time the query was last searched for, in milliseconds since the epoch.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_LAST_USED = "last_used";
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.android.booklistingapp;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.booklistingapp.BookListingContract.BookListingEntry;
+import com.example.android.booklistingapp.BookListingContract.BookListingSearchEntry;
+import com.example.android.booklistingapp.BookListingContract.QueryEntry;
+
+/**
+ * Database helper for the local book listing store. Manages database creation and version management.
+ */
+public class BookListingDbHelper extends SQLiteOpenHelper {
+
+    /** Name of the database file */
+    private static final String DATABASE_NAME = "booklistings.db";
+
+    /**
+     * Database version. If you change the database schema, you must increment the database version.
+     */
+    private static final int DATABASE_VERSION = 2;
+
+    /**
+     * Constructs a new instance of {@link BookListingDbHelper}.
+     *
+     * @param context of the app
+     */
+    public BookListingDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * This is called when the database is created for the first time.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // Create a String that contains the SQL statement to create the book listings table
+        String SQL_CREATE_BOOKLISTINGS_TABLE = "CREATE TABLE " + BookListingEntry.TABLE_NAME + " ("
+                + BookListingEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + BookListingEntry.COLUMN_VOLUME_ID + " TEXT NOT NULL UNIQUE, "
+                + BookListingEntry.COLUMN_TITLE + " TEXT NOT NULL, "
+                + BookListingEntry.COLUMN_AUTHORS + " TEXT NOT NULL, "
+                + BookListingEntry.COLUMN_PUBLISHED_DATE + " TEXT NOT NULL, "
+                + BookListingEntry.COLUMN_THUMBNAIL + " TEXT NOT NULL, "
+                + BookListingEntry.COLUMN_TEXT_SNIPPET + " TEXT NOT NULL, "
+                + BookListingEntry.COLUMN_LAST_SEEN + " INTEGER NOT NULL);";
+
+        // Eviction removes the least recently seen books first
+        String SQL_CREATE_LAST_SEEN_INDEX = "CREATE INDEX booklistings_last_seen ON "
+                + BookListingEntry.TABLE_NAME + " (" + BookListingEntry.COLUMN_LAST_SEEN + ");";
+
+        // Full-text index over title, authors and textSnippet that reads its content from the table above
+        String SQL_CREATE_SEARCH_TABLE = "CREATE VIRTUAL TABLE " + BookListingSearchEntry.TABLE_NAME
+                + " USING fts4(content=\"" + BookListingEntry.TABLE_NAME + "\", "
+                + BookListingEntry.COLUMN_TITLE + ", "
+                + BookListingEntry.COLUMN_AUTHORS + ", "
+                + BookListingEntry.COLUMN_TEXT_SNIPPET + ");";
+
+        // Triggers keep the index in step with the table
+        String SQL_CREATE_INSERT_TRIGGER = "CREATE TRIGGER booklistings_ai AFTER INSERT ON "
+                + BookListingEntry.TABLE_NAME + " BEGIN INSERT INTO " + BookListingSearchEntry.TABLE_NAME
+                + " (docid, " + BookListingEntry.COLUMN_TITLE + ", " + BookListingEntry.COLUMN_AUTHORS + ", "
+                + BookListingEntry.COLUMN_TEXT_SNIPPET + ") VALUES (new." + BookListingEntry._ID + ", new."
+                + BookListingEntry.COLUMN_TITLE + ", new." + BookListingEntry.COLUMN_AUTHORS + ", new."
+                + BookListingEntry.COLUMN_TEXT_SNIPPET + "); END;";
+
+        String SQL_CREATE_DELETE_TRIGGER = "CREATE TRIGGER booklistings_bd BEFORE DELETE ON "
+                + BookListingEntry.TABLE_NAME + " BEGIN DELETE FROM " + BookListingSearchEntry.TABLE_NAME
+                + " WHERE docid = old." + BookListingEntry._ID + "; END;";
+
+        String SQL_CREATE_UPDATE_BEFORE_TRIGGER = "CREATE TRIGGER booklistings_bu BEFORE UPDATE ON "
+                + BookListingEntry.TABLE_NAME + " BEGIN DELETE FROM " + BookListingSearchEntry.TABLE_NAME
+                + " WHERE docid = old." + BookListingEntry._ID + "; END;";
+
+        String SQL_CREATE_UPDATE_AFTER_TRIGGER = "CREATE TRIGGER booklistings_au AFTER UPDATE ON "
+                + BookListingEntry.TABLE_NAME + " BEGIN INSERT INTO " + BookListingSearchEntry.TABLE_NAME
+                + " (docid, " + BookListingEntry.COLUMN_TITLE + ", " + BookListingEntry.COLUMN_AUTHORS + ", "
+                + BookListingEntry.COLUMN_TEXT_SNIPPET + ") VALUES (new." + BookListingEntry._ID + ", new."
+                + BookListingEntry.COLUMN_TITLE + ", new." + BookListingEntry.COLUMN_AUTHORS + ", new."
+                + BookListingEntry.COLUMN_TEXT_SNIPPET + "); END;";
+
+        // Execute the SQL statements
+        db.execSQL(SQL_CREATE_BOOKLISTINGS_TABLE);
+        db.execSQL(SQL_CREATE_LAST_SEEN_INDEX);
+        db.execSQL(SQL_CREATE_SEARCH_TABLE);
+        db.execSQL(SQL_CREATE_INSERT_TRIGGER);
+        db.execSQL(SQL_CREATE_DELETE_TRIGGER);
+        db.execSQL(SQL_CREATE_UPDATE_BEFORE_TRIGGER);
+        db.execSQL(SQL_CREATE_UPDATE_AFTER_TRIGGER);
+
+        createQueriesTable(db);
+    }
+
+    /**
+     * Create the query history table, which was added in version 2.
+     */
+    private static void createQueriesTable(SQLiteDatabase db) {
+        String SQL_CREATE_QUERIES_TABLE = "CREATE TABLE " + QueryEntry.TABLE_NAME + " ("
+                + QueryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + QueryEntry.COLUMN_QUERY + " TEXT NOT NULL UNIQUE, "
+                + QueryEntry.COLUMN_USE_COUNT + " INTEGER NOT NULL, "
+                + QueryEntry.COLUMN_LAST_USED + " INTEGER NOT NULL);";
+
+        db.execSQL(SQL_CREATE_QUERIES_TABLE);
+    }
+
+    /**
+     * This is called when the database needs to be upgraded.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createQueriesTable(db);
+        }
+    }
+}
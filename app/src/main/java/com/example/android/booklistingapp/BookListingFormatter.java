@@ -0,0 +1,140 @@
+package com.example.android.booklistingapp;
+
+//https://developers.google.com/books/docs/v1/reference/volumes (publishedDate)
+//https://developer.android.com/reference/android/text/Html.html#fromHtml(java.lang.String,%20int)
+
+import android.os.Build;
+import android.text.Html;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+/**
+ * Turns {@link BookListing}s into {@link BookListingRow}s: the authors are joined, the
+ * publishedDate is formatted for the locale, and the HTML of the textSnippet is decoded into
+ * styled text once, instead of on every bind.
+ *
+ * Use one formatter per thread; the date formats it holds are not thread-safe.
+ */
+final class BookListingFormatter {
+
+    /** Forms of publishedDate the API uses: a day, a month or a year */
+    private static final Pattern DAY = Pattern.compile("\\d{4}-\\d{2}-\\d{2}.*");
+    private static final Pattern MONTH = Pattern.compile("\\d{4}-\\d{2}");
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final SimpleDateFormat DayParser = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+    private final SimpleDateFormat MonthParser = new SimpleDateFormat("yyyy-MM", Locale.US);
+    private final DateFormat DayFormat;
+    private final DateFormat MonthFormat;
+
+    /**
+     * Constructs a new {@link BookListingFormatter}.
+     *
+     * @param locale to format the dates for
+     */
+    BookListingFormatter(Locale locale) {
+        DayFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
+        MonthFormat = new SimpleDateFormat("MMM yyyy", locale);
+
+        // Dates without a time: parse and format them in the same zone, so the day doesn't shift
+        for (DateFormat format : new DateFormat[]{DayParser, MonthParser, DayFormat, MonthFormat}) {
+            format.setTimeZone(UTC);
+            format.setLenient(false);
+        }
+    }
+
+    /**
+     * Format every book of the list, in order.
+     */
+    List<BookListingRow> format(List<BookListing> booklistings) {
+        List<BookListingRow> rows = new ArrayList<>(booklistings.size());
+        for (BookListing booklisting : booklistings) {
+            rows.add(format(booklisting));
+        }
+        return rows;
+    }
+
+    /**
+     * Format the text of one book.
+     */
+    BookListingRow format(BookListing booklisting) {
+        return new BookListingRow(
+                booklisting.getTitle(),
+                formatAuthors(booklisting.getAuthors()),
+                formatPublishedDate(booklisting.getPublishedDate()),
+                booklisting.getThumbnail(),
+                formatTextSnippet(booklisting.getTextSnippet()));
+    }
+
+    /**
+     * Returns the names of the authors joined with ", ". Both parsers join them already, but
+     * books stored by older versions of the app may keep the "authors" array as its JSON text,
+     * such as ["A","B"].
+     */
+    static String formatAuthors(String authors) {
+        if (!authors.startsWith("[")) {
+            return authors;
+        }
+        try {
+            JSONArray names = new JSONArray(authors);
+            StringBuilder joined = new StringBuilder();
+            for (int i = 0; i < names.length(); i++) {
+                String name = names.optString(i).trim();
+                if (name.isEmpty()) {
+                    continue;
+                }
+                if (joined.length() > 0) {
+                    joined.append(", ");
+                }
+                joined.append(name);
+            }
+            return joined.length() > 0 ? joined.toString() : BookListing.NO_AUTHOR;
+        } catch (JSONException e) {
+            // A name that starts with a bracket
+            return authors;
+        }
+    }
+
+    /**
+     * Returns the publishedDate formatted for the locale: "2017-05-03" as a medium date, "2017-05"
+     * as a month and year, and anything else as it is.
+     */
+    String formatPublishedDate(String publishedDate) {
+        try {
+            if (DAY.matcher(publishedDate).matches()) {
+                return DayFormat.format(DayParser.parse(publishedDate.substring(0, 10)));
+            }
+            if (MONTH.matcher(publishedDate).matches()) {
+                return MonthFormat.format(MonthParser.parse(publishedDate));
+            }
+        } catch (ParseException e) {
+            // Such as a month 13; show it as the API sent it
+        }
+        return publishedDate;
+    }
+
+    /**
+     * Returns the textSnippet with its tags turned into styles and its entities decoded.
+     */
+    @SuppressWarnings("deprecation")
+    static CharSequence formatTextSnippet(String textSnippet) {
+        if (textSnippet.indexOf('<') < 0 && textSnippet.indexOf('&') < 0) {
+            return textSnippet;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Html.fromHtml(textSnippet, Html.FROM_HTML_MODE_LEGACY);
+        }
+        return Html.fromHtml(textSnippet);
+    }
+}
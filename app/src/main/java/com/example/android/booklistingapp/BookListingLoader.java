@@ -1,27 +1,80 @@
 package com.example.android.booklistingapp;
 
-import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.content.Loader;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 import java.util.List;
-
-import static com.example.android.booklistingapp.QueryUtils.fetchBookListingData;
+import java.util.Locale;
+import java.util.concurrent.Executor;
 
 /**
- * Loads a list by using an AsyncTask to perform the
- * network request to the given URL.
+ * Loads a page of books with {@link AsyncFetcher}. The loader does not hold a thread of its
+ * own while the request is in flight: the fetch runs on the pool shared by every request of
+ * the app, and its result is delivered on the main thread from a {@link FetchFuture}
+ * callback.
+ *
+ * While the response of a single page is parsed, its first books are passed to the
+ * {@link OnPartialPageListener} in batches, so they can be shown before the rest has arrived.
+ *
+ * The loader keeps the page it loaded. When it is started again, for example after a
+ * configuration change, it delivers that page at once and only loads again once the page is
+ * older than {@link BookListingSnapshot#MAX_AGE_MILLIS}.
  */
 
-public class BookListingLoader extends AsyncTaskLoader<List<BookListing>> {
+public class BookListingLoader extends Loader<BookListingPage> {
+
+    /**
+     * Receives the first books of a page before the loader delivers the whole page.
+     */
+    public interface OnPartialPageListener {
+
+        /**
+         * Called on the main thread with the books of the page parsed so far, from its first
+         * book, and their rows. It is not called once the load has finished or been cancelled.
+         */
+        void onPartialPage(BookListingLoader loader, BookListingPage page);
+    }
 
     /** Tag for log messages */
     private static final String LOG_TAG = BookListingLoader.class.getName();
 
-    //TODO Update the Query URL based on the SearchView Search String
+    /** Time a load may take in all, in milliseconds, before it is cancelled */
+    static final long LOAD_TIMEOUT_MILLIS = 30000;
+
+    /** Runs the callbacks of the loads on the main thread */
+    private static final Executor MAIN_THREAD = new Executor() {
+        private final Handler MainHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable runnable) {
+            MainHandler.post(runnable);
+        }
+    };
 
     /** Query URL */
     private String Url;
 
+    /** Load in progress, or null when nothing is loading */
+    private FetchFuture<BookListingPage> Pending;
+
+    /** Load that was cancelled and has not finished yet, or null */
+    private FetchFuture<BookListingPage> Canceling;
+
+    /** Incremented on every load, so batches of older loads can be dropped */
+    private int LoadGeneration;
+
+    /** Receives the batches of the load in progress, or null */
+    private OnPartialPageListener PartialPageListener;
+
+    /** Page delivered last, or null */
+    private BookListingPage Result;
+
+    /** Time the page was delivered */
+    private long ResultAtMillis;
+
     /**
      * Constructs a new {@link BookListingLoader}.
      *
@@ -33,21 +86,166 @@ public class BookListingLoader extends AsyncTaskLoader<List<BookListing>> {
         Url = url;
     }
 
+    /**
+     * Returns the URL this loader loads from.
+     */
+    public String getUrl() {
+        return Url;
+    }
+
+    /**
+     * Set the listener that receives the first books of a page while it is loading.
+     *
+     * @param listener is the listener, or null to remove it
+     */
+    public void setOnPartialPageListener(OnPartialPageListener listener) {
+        PartialPageListener = listener;
+    }
+
     @Override
     protected void onStartLoading() {
-        forceLoad();
+        if (Result != null) {
+            deliverResult(Result);
+        }
+        boolean stale = System.currentTimeMillis() - ResultAtMillis > BookListingSnapshot.MAX_AGE_MILLIS;
+        if (takeContentChanged() || Result == null || stale) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public void deliverResult(BookListingPage page) {
+        if (isReset()) {
+            return;
+        }
+        if (page != Result) {
+            Result = page;
+            ResultAtMillis = System.currentTimeMillis();
+        }
+        super.deliverResult(page);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        cancelLoad();
+        Result = null;
     }
 
     /**
-     * This is on a background thread.
+     * Start a load, cancelling the one in progress. This is on the main thread.
      */
     @Override
-    public List<BookListing> loadInBackground() {
+    protected void onForceLoad() {
+        super.onForceLoad();
+        cancelLoad();
+
+        final FetchFuture<BookListingPage> future = load(++LoadGeneration);
+        Pending = future;
+        future.addCallback(new FetchFuture.Callback<BookListingPage>() {
+            @Override
+            public void onSuccess(BookListingPage page) {
+                onLoadFinished(future, page);
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                if (!(error instanceof FetchCanceledException)) {
+                    Log.w(LOG_TAG, "Problem loading " + Url, error);
+                }
+                onLoadFinished(future, null);
+            }
+        }, MAIN_THREAD);
+    }
+
+    /**
+     * Called on the main thread when the load is superseded, for example by a newer query.
+     * Disconnects the HTTP connection so the old response is neither downloaded nor parsed.
+     *
+     * @return true if a load was cancelled, so {@link #deliverCancellation()} follows
+     */
+    @Override
+    protected boolean onCancelLoad() {
+        if (Pending == null) {
+            return false;
+        }
+        Canceling = Pending;
+        Pending = null;
+        Canceling.cancel(true);
+        return true;
+    }
+
+    private void onLoadFinished(FetchFuture<BookListingPage> future, BookListingPage page) {
+        if (future == Pending) {
+            Pending = null;
+            deliverResult(page);
+        } else if (future == Canceling) {
+            Canceling = null;
+            deliverCancellation();
+        }
+    }
+
+    /**
+     * Pass a batch of the given load to the listener, unless a newer load replaced it or it has
+     * finished. This is on the main thread.
+     */
+    private void onPartialPage(int generation, BookListingPage page) {
+        if (generation == LoadGeneration && Pending != null && PartialPageListener != null && !isReset()) {
+            PartialPageListener.onPartialPage(this, page);
+        }
+    }
+
+    /**
+     * Returns the future of a new load: the fetch, then storing and formatting its books on the
+     * pool, within {@link #LOAD_TIMEOUT_MILLIS}.
+     *
+     * @param generation identifies the load, to drop its batches once it has been replaced
+     */
+    private FetchFuture<BookListingPage> load(final int generation) {
         if (Url == null) {
-            return null;
+            return FetchFuture.completed(null);
         }
 
         //Perform the network request, parse the response, and extract a list of books.
-        return QueryUtils.fetchBookListingData(Url);
+        //Repeated queries are answered from the result cache while it is fresh, and a query
+        //that is already in flight is shared instead of being fetched twice.
+        final Context context = getContext();
+        final BookListingCache cache = BookListingCache.getInstance(context.getCacheDir());
+        AsyncFetcher fetcher = AsyncFetcher.getDefault();
+        FetchFuture<BookListingPage> fetch = fetcher.fetchPage(Url, cache, new QueryUtils.BatchListener() {
+            @Override
+            public void onBatch(List<BookListing> booklistings) {
+                // Batches are small, so their rows are formatted here on the fetching thread
+                BookListingFormatter formatter = new BookListingFormatter(Locale.getDefault());
+                final BookListingPage page = new BookListingPage(new BookListingPage(booklistings, 0),
+                        formatter.format(booklistings));
+                MAIN_THREAD.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPartialPage(generation, page);
+                    }
+                });
+            }
+        });
+
+        return fetch.then(new FetchFuture.Transform<BookListingPage, BookListingPage>() {
+            @Override
+            public BookListingPage apply(BookListingPage page) {
+                if (page == null) {
+                    return null;
+                }
+
+                //Keep every book we have seen, so it can be found later without the network.
+                //Offer their titles and authors as search suggestions too.
+                if (!page.getBookListings().isEmpty()) {
+                    OfflineBookStore.getInstance(context).insertAll(page.getBookListings());
+                    SearchSuggestions.getInstance(context.getFilesDir()).addBookListings(page.getBookListings());
+                }
+
+                //Format the text of the rows here, so binding them on the main thread costs nothing.
+                BookListingFormatter formatter = new BookListingFormatter(Locale.getDefault());
+                return new BookListingPage(page, formatter.format(page.getBookListings()));
+            }
+        }, fetcher.getExecutor()).withTimeout(LOAD_TIMEOUT_MILLIS);
     }
 }
@@ -0,0 +1,696 @@
+package com.example.android.booklistingapp;
+
+//https://developers.google.com/books/docs/v1/using#pagination
+//https://developer.android.com/reference/android/support/v7/widget/RecyclerView.OnScrollListener.html
+
+import android.app.LoaderManager;
+import android.app.LoaderManager.LoaderCallbacks;
+import android.content.Context;
+import android.content.Loader;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the results of a query one page at a time with {@link BookListingLoader}s.
+ *
+ * The first page is loaded when a query starts. Further pages are requested with the API's
+ * startIndex parameter when the list is scrolled near its end, and are appended in order to the
+ * list of books shown by the {@link BookListingAdapter}. Books that appear on more than one page are only shown
+ * once, and only a few page requests are in flight at the same time.
+ *
+ * The next page in order is shown while it is still loading: the first books of its response
+ * are appended as soon as they have been parsed, and the rest when the page arrives.
+ *
+ * A page whose request failed is requested again, before any page after it, when the list asks
+ * for more after a wait that grows with every failure, so a failed page never ends the list the
+ * way an empty one does. Nothing is requested while the activity waits for a network connection.
+ *
+ * Results from the {@link OfflineBookStore} can be shown while the first page is loading. When
+ * the first page arrives they are merged with it: the network results come first, followed by
+ * the local results the network did not return.
+ *
+ * The adapter is only handed books whose rows are formatted. Pages come with rows from their
+ * loader; local, cached and restored books are formatted on a background thread first.
+ *
+ * Every book added is also added to a {@link BookListingIndex} on a background thread, so a
+ * {@link #refine refinement} by words, author, title or year, and a different sort order, are
+ * applied to the loaded books without a network request. While a refinement is set the adapter
+ * shows the refined list, and it is refined again as further pages arrive.
+ */
+public class BookListingPager extends RecyclerView.OnScrollListener
+        implements LoaderCallbacks<BookListingPage>, BookListingLoader.OnPartialPageListener {
+
+    /**
+     * Receives page events, so the activity can update the rest of its user interface.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the main thread when the first page of a query has been loaded.
+         */
+        void onFirstPageLoaded(BookListingPage page);
+
+        /**
+         * Called on the main thread when a page could not be loaded. The books shown stay, and
+         * the page is requested again later; see {@link #requestNextPage()}.
+         */
+        void onPageFailed(int pageIndex);
+
+        /**
+         * Called on the main thread once {@link #showCachedFirstPage} has looked in the cache,
+         * unless another query was started in the meantime.
+         *
+         * @param shown is true if the cache had books for the first page, which are now shown
+         */
+        void onCachedFirstPageChecked(boolean shown);
+    }
+
+    /** Number of results requested per page (maxResults, at most 40) */
+    static final int PAGE_SIZE = 20;
+
+    /** How many rows before the end of the list the next page is requested */
+    private static final int PREFETCH_DISTANCE = 10;
+
+    /** Largest number of page requests in flight at once */
+    private static final int MAX_IN_FLIGHT = 2;
+
+    /** Loader ID of the first page; page n uses FIRST_PAGE_LOADER_ID + n */
+    private static final int FIRST_PAGE_LOADER_ID = 100;
+
+    /** Bundle key for the page index */
+    private static final String ARG_PAGE_INDEX = "pageIndex";
+
+    /** Builds and queries the indexes of the books shown, one task at a time, in order */
+    private static final ExecutorService INDEX_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /** Formats the rows of books that arrive without them, one list at a time, in order */
+    private static final ExecutorService FORMAT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Context AppContext;
+    private final LoaderManager Manager;
+    private final BookListingAdapter Adapter;
+    private final Listener PageListener;
+
+    /** Query URL without maxResults and startIndex */
+    private String BaseUrl;
+
+    /** Incremented on every reset, so background work for an earlier query is dropped */
+    private int QueryGeneration;
+
+    /** Index of the next page to request */
+    private int NextPageToRequest;
+
+    /** Index of the next page to add to the adapter */
+    private int NextPageToAppend;
+
+    /** Books of page NextPageToAppend that were already added from its batches */
+    private int PartialCount;
+
+    /** Pages whose request failed, to request again before NextPageToRequest */
+    private final PageRetries FailedPages = new PageRetries();
+
+    /** Set while there is no network connection, so no page is requested */
+    private boolean WaitingForNetwork;
+
+    /** Pages that arrived before an earlier page did */
+    private final SparseArray<BookListingPage> PendingPages = new SparseArray<>();
+
+    /** Number of page loaders that have not finished yet */
+    private int InFlightCount;
+
+    /** Total results reported by the API, or -1 before the first page arrives */
+    private int TotalItems = -1;
+
+    /** Set once a page comes back empty */
+    private boolean ReachedEnd;
+
+    /** Books shown, in order. The adapter gets a snapshot of it after every change. */
+    private final CompactBookListingList BookListings = new CompactBookListingList();
+
+    /** Formatted rows of the books shown, in the same order */
+    private final List<BookListingRow> Rows = new ArrayList<>();
+
+    /** Volume ids already in the adapter */
+    private final Set<String> SeenIds = new HashSet<>();
+
+    /** Local results shown until the first page arrives, and their rows, or null */
+    private List<BookListing> LocalBookListings;
+    private List<BookListingRow> LocalRows;
+
+    /** Index of BookListings. Only used on INDEX_EXECUTOR. */
+    private final BookListingIndex Index = new BookListingIndex();
+
+    /** Number of books of BookListings handed to the index */
+    private int IndexedCount;
+
+    /** Refinement of the list shown, or null to show every book in order */
+    private BookListingIndex.Refinement Refinement;
+
+    /** Incremented for every refinement started, so only the result of the latest is shown */
+    private int RefineGeneration;
+
+    private final Handler MainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Constructs a new {@link BookListingPager}.
+     *
+     * @param context of the activity
+     * @param loaderManager of the activity
+     * @param adapter that the pages are added to
+     * @param listener to tell about page events
+     */
+    public BookListingPager(Context context, LoaderManager loaderManager, BookListingAdapter adapter,
+                            Listener listener) {
+        AppContext = context;
+        Manager = loaderManager;
+        Adapter = adapter;
+        PageListener = listener;
+    }
+
+    /**
+     * Start loading the results of a query, replacing the results of any previous query.
+     *
+     * @param baseUrl is the query URL without the maxResults and startIndex parameters
+     */
+    public void start(String baseUrl) {
+        reset(baseUrl);
+        requestNextPage();
+    }
+
+    /**
+     * Forget the results of the previous query without requesting anything yet, for example
+     * because there is no network connection. Call {@link #requestNextPage()} to start loading.
+     *
+     * @param baseUrl is the query URL without the maxResults and startIndex parameters
+     */
+    public void reset(String baseUrl) {
+        // Stop the page requests of the previous query. The loader of a failed page would
+        // deliver its failure again.
+        if (!baseUrl.equals(BaseUrl) || !FailedPages.isEmpty()) {
+            for (int page = 0; page < NextPageToRequest; page++) {
+                Manager.destroyLoader(FIRST_PAGE_LOADER_ID + page);
+            }
+        }
+        BookListings.clear();
+        Rows.clear();
+        submitList();
+        Adapter.markQueryStart();
+
+        BaseUrl = baseUrl;
+        QueryGeneration++;
+        NextPageToRequest = 0;
+        NextPageToAppend = 0;
+        PartialCount = 0;
+        PendingPages.clear();
+        FailedPages.clear();
+        WaitingForNetwork = false;
+        InFlightCount = 0;
+        TotalItems = -1;
+        ReachedEnd = false;
+        SeenIds.clear();
+        LocalBookListings = null;
+        LocalRows = null;
+    }
+
+    /**
+     * Returns the results shown so far, or null before the first page has been added.
+     */
+    public BookListingSnapshot saveState() {
+        if (NextPageToAppend == 0) {
+            return null;
+        }
+        return new BookListingSnapshot(BaseUrl, BookListings.snapshot(), new ArrayList<>(Rows), TotalItems,
+                NextPageToAppend, ReachedEnd, System.currentTimeMillis());
+    }
+
+    /**
+     * Show the results of a snapshot without loading them again. Further pages are requested
+     * from where the snapshot ends; a loader that survived a configuration change delivers its
+     * page without a new request.
+     *
+     * A snapshot handed over across a configuration change has its rows, and is shown at once.
+     * The rows of one read from a file are formatted on a background thread first, and the
+     * {@link Listener} is told when it is shown.
+     *
+     * @return false if the snapshot is stale, and nothing was restored
+     */
+    public boolean restoreState(final BookListingSnapshot snapshot) {
+        if (snapshot.isStale(System.currentTimeMillis())) {
+            return false;
+        }
+        reset(snapshot.getBaseUrl());
+
+        if (snapshot.getRows() != null) {
+            showSnapshot(snapshot, snapshot.getRows());
+        } else {
+            formatRows(snapshot.getBookListings(), new RowsCallback() {
+                @Override
+                public void onRows(List<BookListingRow> rows) {
+                    showSnapshot(snapshot, rows);
+                }
+            });
+        }
+        return true;
+    }
+
+    private void showSnapshot(BookListingSnapshot snapshot, List<BookListingRow> rows) {
+        NextPageToRequest = snapshot.getPageCount();
+        NextPageToAppend = snapshot.getPageCount();
+        TotalItems = snapshot.getTotalItems();
+        ReachedEnd = snapshot.hasReachedEnd();
+        for (BookListing booklisting : snapshot.getBookListings()) {
+            if (booklisting.getId() != null) {
+                SeenIds.add(booklisting.getId());
+            }
+        }
+        BookListings.addAll(snapshot.getBookListings());
+        Rows.addAll(rows);
+
+        // The adapter is empty, so the list is shown at once
+        submitList();
+        PageListener.onFirstPageLoaded(new BookListingPage(snapshot.getBookListings(), TotalItems));
+    }
+
+    /**
+     * Show the first page of the query from the result cache, fresh or expired, until the first
+     * page arrives from the network. The cache file is read and the rows are formatted on a
+     * background thread, and the {@link Listener} is told on the main thread whether it had the
+     * page.
+     */
+    public void showCachedFirstPage(final BookListingCache cache) {
+        final String url = pageUrl(0);
+        final int generation = QueryGeneration;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                BookListingCache.Entry entry = cache.get(url);
+                final List<BookListing> booklistings = entry != null ? entry.getBookListings() : null;
+                final List<BookListingRow> rows = booklistings != null
+                        ? new BookListingFormatter(Locale.getDefault()).format(booklistings) : null;
+                MainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Another query was started in the meantime
+                        if (generation != QueryGeneration) {
+                            return;
+                        }
+                        boolean shown = booklistings != null && !booklistings.isEmpty();
+                        if (shown) {
+                            showLocalResults(booklistings, rows);
+                        }
+                        PageListener.onCachedFirstPageChecked(shown);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show results from the local store until the first page arrives. Their rows are formatted
+     * on a background thread first. They are ignored if the first page has been added by then.
+     */
+    public void showLocalResults(final List<BookListing> booklistings) {
+        formatRows(booklistings, new RowsCallback() {
+            @Override
+            public void onRows(List<BookListingRow> rows) {
+                showLocalResults(booklistings, rows);
+            }
+        });
+    }
+
+    private void showLocalResults(List<BookListing> booklistings, List<BookListingRow> rows) {
+        if (NextPageToAppend > 0) {
+            return;
+        }
+        LocalBookListings = booklistings;
+        LocalRows = rows;
+        BookListings.clear();
+        BookListings.addAll(booklistings);
+        Rows.clear();
+        Rows.addAll(rows);
+        submitList();
+    }
+
+    /**
+     * Returns true once the first page of the query has been added.
+     */
+    public boolean hasFirstPage() {
+        return NextPageToAppend > 0;
+    }
+
+    /**
+     * Returns true if the first page of the query failed and has not been loaded since.
+     */
+    public boolean hasFailedFirstPage() {
+        return NextPageToAppend == 0 && FailedPages.contains(0);
+    }
+
+    /**
+     * Stop requesting pages while there is no network connection. Once it is back, failed pages
+     * are requested again without waiting.
+     */
+    public void setWaitingForNetwork(boolean waiting) {
+        WaitingForNetwork = waiting;
+        if (!waiting) {
+            FailedPages.retryNow();
+        }
+    }
+
+    /**
+     * Returns true if the query has results that have not been requested yet.
+     */
+    public boolean hasMore() {
+        if (BaseUrl == null || ReachedEnd) {
+            return false;
+        }
+        return !FailedPages.isEmpty() || TotalItems < 0 || NextPageToRequest * PAGE_SIZE < TotalItems;
+    }
+
+    /**
+     * Request the next page, unless there is nothing left, too many requests are in flight, or
+     * a failed page has not waited long enough yet.
+     */
+    public void requestNextPage() {
+        if (!hasMore() || InFlightCount >= MAX_IN_FLIGHT || WaitingForNetwork) {
+            return;
+        }
+
+        // A failed page comes before the pages that were never requested
+        boolean retry = !FailedPages.isEmpty();
+        int pageIndex;
+        if (retry) {
+            pageIndex = FailedPages.poll(SystemClock.uptimeMillis());
+            if (pageIndex < 0) {
+                return;
+            }
+        } else if (NextPageToRequest > 0 && TotalItems < 0) {
+            // Before the first page arrives we don't know whether there is a second one
+            return;
+        } else {
+            pageIndex = NextPageToRequest;
+        }
+
+        int loaderId = FIRST_PAGE_LOADER_ID + pageIndex;
+        Bundle args = new Bundle();
+        args.putInt(ARG_PAGE_INDEX, pageIndex);
+        InFlightCount++;
+
+        // A loader that survived a configuration change delivers its page again without a new
+        // request, but only if it was loading the same page of the same query. The loader of a
+        // failed page would deliver its failure again.
+        Loader<BookListingPage> existing = Manager.getLoader(loaderId);
+        Loader<BookListingPage> loader;
+        if (!retry && existing instanceof BookListingLoader
+                && pageUrl(pageIndex).equals(((BookListingLoader) existing).getUrl())) {
+            loader = Manager.initLoader(loaderId, args, this);
+        } else {
+            loader = Manager.restartLoader(loaderId, args, this);
+        }
+        // A loader that survived a configuration change still points at the old pager
+        ((BookListingLoader) loader).setOnPartialPageListener(this);
+        if (!retry) {
+            NextPageToRequest++;
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int totalItemCount = Adapter.getItemCount();
+        if (totalItemCount > 0 && layoutManager.findLastVisibleItemPosition() >= totalItemCount - 1 - PREFETCH_DISTANCE) {
+            requestNextPage();
+        }
+    }
+
+    @Override
+    public Loader<BookListingPage> onCreateLoader(int id, Bundle args) {
+        int pageIndex = args.getInt(ARG_PAGE_INDEX);
+        return new BookListingLoader(AppContext, pageUrl(pageIndex));
+    }
+
+    @Override
+    public void onLoadFinished(Loader<BookListingPage> loader, BookListingPage page) {
+        int pageIndex = loader.getId() - FIRST_PAGE_LOADER_ID;
+
+        // A loader can deliver again, for example when it is restarted; only use the first result
+        if (pageIndex < NextPageToAppend || pageIndex >= NextPageToRequest
+                || PendingPages.get(pageIndex) != null || FailedPages.contains(pageIndex)) {
+            return;
+        }
+
+        InFlightCount = Math.max(InFlightCount - 1, 0);
+
+        if (page == null) {
+            // Keep the books shown, local results included, and request the page again later;
+            // the pages after it wait for it in PendingPages
+            FailedPages.fail(pageIndex, SystemClock.uptimeMillis());
+            PageListener.onPageFailed(pageIndex);
+            return;
+        }
+        FailedPages.succeed(pageIndex);
+        PendingPages.put(pageIndex, page);
+
+        // Add the pages that are now in order
+        BookListingPage next = PendingPages.get(NextPageToAppend);
+        while (next != null) {
+            PendingPages.remove(NextPageToAppend);
+            appendPage(NextPageToAppend, next);
+            NextPageToAppend++;
+            next = PendingPages.get(NextPageToAppend);
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<BookListingPage> loader) {
+    }
+
+    /**
+     * Add the books of a batch that are not on screen yet, if the batch belongs to the next page
+     * in order. While local results are shown they stay until the whole first page arrives.
+     */
+    @Override
+    public void onPartialPage(BookListingLoader loader, BookListingPage page) {
+        int pageIndex = loader.getId() - FIRST_PAGE_LOADER_ID;
+        if (pageIndex != NextPageToAppend || pageIndex >= NextPageToRequest || LocalBookListings != null) {
+            return;
+        }
+
+        // A retried request starts again from its first book, which is already on screen
+        List<BookListing> booklistings = page.getBookListings();
+        List<BookListing> newBookListings = new ArrayList<>();
+        for (int i = PartialCount; i < booklistings.size(); i++) {
+            BookListing booklisting = booklistings.get(i);
+            String id = booklisting.getId();
+            if (id == null || SeenIds.add(id)) {
+                newBookListings.add(booklisting);
+                BookListings.add(booklisting);
+                Rows.add(page.getRows().get(i));
+            }
+        }
+        PartialCount = Math.max(PartialCount, booklistings.size());
+        if (!newBookListings.isEmpty()) {
+            appendList();
+            Adapter.prefetchThumbnails(newBookListings);
+        }
+    }
+
+    private void appendPage(int pageIndex, BookListingPage page) {
+        if (pageIndex == 0 || page.getTotalItems() > 0) {
+            TotalItems = page.getTotalItems();
+        }
+        if (page.getBookListings().isEmpty()) {
+            ReachedEnd = true;
+        }
+
+        // The books that came in batches are already on screen
+        int shown = Math.min(PartialCount, page.getBookListings().size());
+        PartialCount = 0;
+
+        List<BookListing> newBookListings = new ArrayList<>(page.getBookListings().size());
+        List<BookListingRow> newRows = new ArrayList<>(page.getBookListings().size());
+        for (int i = shown; i < page.getBookListings().size(); i++) {
+            BookListing booklisting = page.getBookListings().get(i);
+            String id = booklisting.getId();
+            if (id == null || SeenIds.add(id)) {
+                newBookListings.add(booklisting);
+                newRows.add(page.getRows().get(i));
+            }
+        }
+
+        boolean merged = pageIndex == 0 && LocalBookListings != null;
+        if (merged) {
+            // Replace the local results with the network ones, then add back the local
+            // results the network did not return. The adapter only rebinds the rows that changed.
+            BookListings.clear();
+            Rows.clear();
+            for (int i = 0; i < LocalBookListings.size(); i++) {
+                BookListing booklisting = LocalBookListings.get(i);
+                String id = booklisting.getId();
+                if (id != null && SeenIds.add(id)) {
+                    newBookListings.add(booklisting);
+                    newRows.add(LocalRows.get(i));
+                }
+            }
+            LocalBookListings = null;
+            LocalRows = null;
+        }
+
+        // Appending leaves the rows already on screen alone
+        BookListings.addAll(newBookListings);
+        Rows.addAll(newRows);
+        if (merged) {
+            submitList();
+        } else {
+            appendList();
+        }
+        Adapter.prefetchThumbnails(newBookListings);
+
+        if (pageIndex == 0) {
+            PageListener.onFirstPageLoaded(page);
+        }
+    }
+
+    /**
+     * Show only the loaded books that match the refinement, in the order it asks for. The
+     * books are matched on a background thread, and further pages are refined as they arrive.
+     *
+     * @param refinement is the refinement to apply, or null to show every book again
+     */
+    void refine(BookListingIndex.Refinement refinement) {
+        Refinement = refinement != null && !refinement.isEmpty() ? refinement : null;
+        if (Refinement != null) {
+            showRefined();
+        } else {
+            RefineGeneration++;
+            Adapter.submitList(BookListings.snapshot(), new ArrayList<>(Rows));
+        }
+    }
+
+    /**
+     * Hand the adapter the books shown and their rows, after BookListings was rebuilt.
+     */
+    private void submitList() {
+        index(true);
+        if (Refinement != null) {
+            showRefined();
+        } else {
+            Adapter.submitList(BookListings.snapshot(), new ArrayList<>(Rows));
+        }
+    }
+
+    /**
+     * Hand the adapter the books shown and their rows, after books were added to the end of
+     * BookListings.
+     */
+    private void appendList() {
+        index(false);
+        if (Refinement != null) {
+            showRefined();
+        } else {
+            Adapter.appendList(BookListings.snapshot(), new ArrayList<>(Rows));
+        }
+    }
+
+    /**
+     * Add the books of BookListings the index does not have yet to it.
+     *
+     * @param rebuild is true if BookListings was rebuilt, and the index has to start over
+     */
+    private void index(final boolean rebuild) {
+        final CompactBookListingList booklistings = BookListings.snapshot();
+        final int from = rebuild ? 0 : IndexedCount;
+        IndexedCount = booklistings.size();
+        if (!rebuild && from == IndexedCount) {
+            return;
+        }
+        INDEX_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (rebuild) {
+                    Index.clear();
+                }
+                Index.addAll(new ArrayList<>(booklistings.subList(from, booklistings.size())));
+            }
+        });
+    }
+
+    /**
+     * Refine the index on its thread, then show the books it returned. The index tasks run in
+     * order, so it has every book of BookListings by the time the refinement runs.
+     */
+    private void showRefined() {
+        final BookListingIndex.Refinement refinement = Refinement;
+        final int generation = ++RefineGeneration;
+        INDEX_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int[] positions = Index.refine(refinement);
+                MainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // BookListings or the refinement changed in the meantime, and a newer
+                        // refinement is on its way
+                        if (generation != RefineGeneration) {
+                            return;
+                        }
+                        CompactBookListingList refined = new CompactBookListingList(positions.length);
+                        List<BookListingRow> rows = new ArrayList<>(positions.length);
+                        for (int position : positions) {
+                            refined.add(BookListings.get(position));
+                            rows.add(Rows.get(position));
+                        }
+                        Adapter.submitList(refined.snapshot(), rows);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Format the rows of books that arrived without them on FORMAT_EXECUTOR, then pass them to
+     * the callback on the main thread, unless another query was started in the meantime.
+     */
+    private void formatRows(final List<BookListing> booklistings, final RowsCallback callback) {
+        final int generation = QueryGeneration;
+        FORMAT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<BookListingRow> rows = new BookListingFormatter(Locale.getDefault()).format(booklistings);
+                MainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == QueryGeneration) {
+                            callback.onRows(rows);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private String pageUrl(int pageIndex) {
+        return QueryUtils.pageUrl(BaseUrl, pageIndex * PAGE_SIZE, PAGE_SIZE);
+    }
+
+    /**
+     * Receives the rows formatted by {@link #formatRows}.
+     */
+    private interface RowsCallback {
+
+        void onRows(List<BookListingRow> rows);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/topic/libraries/architecture/saving-states.html
+//https://developer.android.com/guide/components/activities/activity-lifecycle.html#saras
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The results of a query as a {@link BookListingPager} shows them: the books in order, how many
+ * pages they came from, and what the API said about the rest of the query.
+ *
+ * A snapshot is handed to the next activity instance across a configuration change, and is
+ * written to a binary file so it also survives the death of the process. A saved instance
+ * state Bundle is too small for a few hundred books, so only the query goes there. The books are
+ * stored with {@link BookListingCodec}. Their formatted rows are only kept across a
+ * configuration change; a snapshot read from the file has none.
+ */
+final class BookListingSnapshot {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = BookListingSnapshot.class.getSimpleName();
+
+    /** Format version of the snapshot file */
+    private static final int FILE_VERSION = 1;
+
+    /** Age after which a snapshot is not shown any more and the query is loaded again */
+    static final long MAX_AGE_MILLIS = BookListingCache.DEFAULT_TTL_MILLIS;
+
+    private final String BaseUrl;
+    private final List<BookListing> BookListings;
+    private final List<BookListingRow> Rows;
+    private final int TotalItems;
+    private final int PageCount;
+    private final boolean ReachedEnd;
+    private final long SavedAtMillis;
+
+    /**
+     * Constructs a new {@link BookListingSnapshot}.
+     *
+     * @param baseUrl is the query URL without the maxResults and startIndex parameters
+     * @param booklistings is the list of books shown, which must not change any more
+     * @param totalItems is the total number of results reported by the API
+     * @param pageCount is the number of pages the books came from
+     * @param reachedEnd is true if a page came back empty
+     * @param savedAtMillis is the time the snapshot was taken
+     */
+    BookListingSnapshot(String baseUrl, List<BookListing> booklistings, int totalItems, int pageCount,
+                        boolean reachedEnd, long savedAtMillis) {
+        this(baseUrl, booklistings, null, totalItems, pageCount, reachedEnd, savedAtMillis);
+    }
+
+    /**
+     * Constructs a new {@link BookListingSnapshot} that keeps the formatted rows of its books.
+     *
+     * @param rows are the rows of the books, in the same order, or null
+     */
+    BookListingSnapshot(String baseUrl, List<BookListing> booklistings, List<BookListingRow> rows, int totalItems,
+                        int pageCount, boolean reachedEnd, long savedAtMillis) {
+        BaseUrl = baseUrl;
+        BookListings = booklistings;
+        Rows = rows;
+        TotalItems = totalItems;
+        PageCount = pageCount;
+        ReachedEnd = reachedEnd;
+        SavedAtMillis = savedAtMillis;
+    }
+
+    String getBaseUrl() {
+        return BaseUrl;
+    }
+
+    List<BookListing> getBookListings() {
+        return BookListings;
+    }
+
+    /**
+     * Returns the rows of the books, or null if they were not kept.
+     */
+    List<BookListingRow> getRows() {
+        return Rows;
+    }
+
+    int getTotalItems() {
+        return TotalItems;
+    }
+
+    int getPageCount() {
+        return PageCount;
+    }
+
+    boolean hasReachedEnd() {
+        return ReachedEnd;
+    }
+
+    /**
+     * Returns true if the snapshot is older than {@link #MAX_AGE_MILLIS} at the given time.
+     */
+    boolean isStale(long nowMillis) {
+        return nowMillis - SavedAtMillis > MAX_AGE_MILLIS || nowMillis < SavedAtMillis;
+    }
+
+    /**
+     * Write the snapshot to a file. A new file is written next to it and renamed over it, so a
+     * reader never sees half a snapshot.
+     */
+    void writeTo(File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        boolean written = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(BaseUrl);
+            out.writeLong(SavedAtMillis);
+            out.writeInt(TotalItems);
+            out.writeInt(PageCount);
+            out.writeBoolean(ReachedEnd);
+            BookListingCodec.write(out, BookListings);
+            out.close();
+            out = null;
+            written = tmp.renameTo(file);
+            if (!written) {
+                Log.w(LOG_TAG, "Problem renaming the snapshot file " + tmp);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Problem writing the snapshot file " + file, e);
+        } finally {
+            closeQuietly(out);
+            if (!written) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Read a snapshot written by {@link #writeTo(File)}.
+     *
+     * @return the snapshot, or null if there is none or the file can't be read
+     */
+    static BookListingSnapshot readFrom(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            String baseUrl = in.readUTF();
+            long savedAtMillis = in.readLong();
+            int totalItems = in.readInt();
+            int pageCount = in.readInt();
+            boolean reachedEnd = in.readBoolean();
+            List<BookListing> booklistings = BookListingCodec.read(in);
+            return new BookListingSnapshot(baseUrl, booklistings, totalItems, pageCount, reachedEnd, savedAtMillis);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Problem reading the snapshot file " + file, e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing useful to do here
+            }
+        }
+    }
+}
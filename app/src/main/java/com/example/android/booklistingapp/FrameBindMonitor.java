@@ -0,0 +1,127 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/reference/android/view/Choreographer.html
+//https://developer.android.com/topic/performance/rendering/profile-gpu.html
+
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Measures the time the adapter spends inflating and binding list items, per frame.
+ *
+ * Every create and bind is timed and added to the frame it happens in. When the frame is done,
+ * the totals are checked against the frame budget, so a page of results that lands all at once
+ * and makes a frame miss its deadline shows up in the log. Each create and bind is also a trace
+ * section on API 18 and newer, so it appears in systrace next to the frame.
+ *
+ * Use on the main thread only.
+ */
+final class FrameBindMonitor implements Choreographer.FrameCallback {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = FrameBindMonitor.class.getSimpleName();
+
+    /** Time a 60 fps frame has for everything, in nanoseconds */
+    private static final long FRAME_BUDGET_NANOS = 16666667L;
+
+    /** Share of the frame budget adapter work may use before the frame is logged */
+    private static final long WARNING_NANOS = FRAME_BUDGET_NANOS / 2;
+
+    /** Number of frames between summaries in the log */
+    private static final int SUMMARY_INTERVAL_FRAMES = 120;
+
+    /** Work in the current frame */
+    private long FrameNanos;
+    private int FrameCreates;
+    private int FrameBinds;
+    private boolean FrameCallbackPosted;
+
+    /** Totals over all frames with adapter work */
+    private long Frames;
+    private long SlowFrames;
+    private long TotalNanos;
+    private long MaxFrameNanos;
+
+    /** Start of the create or bind being timed */
+    private long StartNanos;
+
+    /**
+     * Call before inflating a list item.
+     */
+    void beginCreate() {
+        begin("BookListingAdapter.create");
+    }
+
+    /**
+     * Call after inflating a list item.
+     */
+    void endCreate() {
+        FrameCreates++;
+        end();
+    }
+
+    /**
+     * Call before binding a book to a list item.
+     */
+    void beginBind() {
+        begin("BookListingAdapter.bind");
+    }
+
+    /**
+     * Call after binding a book to a list item.
+     */
+    void endBind() {
+        FrameBinds++;
+        end();
+    }
+
+    private void begin(String section) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(section);
+        }
+        StartNanos = System.nanoTime();
+    }
+
+    private void end() {
+        FrameNanos += System.nanoTime() - StartNanos;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+
+        // Only listen for frames while there is adapter work to report
+        if (!FrameCallbackPosted) {
+            FrameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        FrameCallbackPosted = false;
+
+        Frames++;
+        TotalNanos += FrameNanos;
+        MaxFrameNanos = Math.max(MaxFrameNanos, FrameNanos);
+        if (FrameNanos > WARNING_NANOS) {
+            SlowFrames++;
+            Log.w(LOG_TAG, "Adapter work took " + FrameNanos / 1000 + " us in one frame: "
+                    + FrameCreates + " creates, " + FrameBinds + " binds");
+        }
+        if (Frames % SUMMARY_INTERVAL_FRAMES == 0) {
+            Log.d(LOG_TAG, toString());
+        }
+
+        FrameNanos = 0;
+        FrameCreates = 0;
+        FrameBinds = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameBindMonitor{frames=" + Frames + ", slow=" + SlowFrames
+                + ", averageUs=" + (Frames == 0 ? 0 : TotalNanos / Frames / 1000)
+                + ", maxUs=" + MaxFrameNanos / 1000 + "}";
+    }
+}
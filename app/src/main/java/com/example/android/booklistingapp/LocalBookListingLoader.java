@@ -0,0 +1,40 @@
+package com.example.android.booklistingapp;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+
+import java.util.List;
+
+/**
+ * Loads the books in the {@link OfflineBookStore} that match a query, so results can be shown
+ * before the network answers, or without a network at all.
+ */
+public class LocalBookListingLoader extends AsyncTaskLoader<List<BookListing>> {
+
+    /** Query to search for */
+    private String Query;
+
+    /**
+     * Constructs a new {@link LocalBookListingLoader}.
+     *
+     * @param context of the activity
+     * @param query to search for
+     */
+    public LocalBookListingLoader(Context context, String query) {
+        super(context);
+        Query = query;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        forceLoad();
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public List<BookListing> loadInBackground() {
+        return OfflineBookStore.getInstance(getContext()).search(Query);
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.android.booklistingapp;
+
+//https://www.sqlite.org/fts3.html#full_text_index_queries
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.booklistingapp.BookListingContract.BookListingEntry;
+import com.example.android.booklistingapp.BookListingContract.BookListingSearchEntry;
+import com.example.android.booklistingapp.BookListingContract.QueryEntry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Local store of every {@link BookListing} the app has fetched, with a full-text index over
+ * title, authors and textSnippet, so searches can be answered without the network.
+ *
+ * Each page of results is written in one transaction, and the least recently seen books are
+ * evicted once the store holds more than {@link #MAX_BOOKS} books.
+ *
+ * The store also keeps the history of the queries the user searched for, so their results can
+ * be prefetched by {@link PrefetchJobService}.
+ */
+public final class OfflineBookStore {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = OfflineBookStore.class.getSimpleName();
+
+    /** Largest number of books kept */
+    static final int MAX_BOOKS = 5000;
+
+    /** Largest number of results returned by a local search */
+    static final int MAX_RESULTS = 40;
+
+    /** Largest number of queries kept in the history */
+    static final int MAX_QUERIES = 100;
+
+    /** Number of books imported per transaction */
+    private static final int IMPORT_BATCH_SIZE = 500;
+
+    private static OfflineBookStore sInstance;
+
+    private final BookListingDbHelper DbHelper;
+
+    /**
+     * Returns the store shared by the whole app.
+     */
+    public static synchronized OfflineBookStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new OfflineBookStore(new BookListingDbHelper(context.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    private OfflineBookStore(BookListingDbHelper dbHelper) {
+        DbHelper = dbHelper;
+    }
+
+    /**
+     * Add or update the books in one transaction, then evict the oldest books if the store is
+     * over its limit. Books without a volume id are skipped. Call from a background thread.
+     */
+    public void insertAll(List<BookListing> booklistings) {
+        SQLiteDatabase db = DbHelper.getWritableDatabase();
+        long now = System.currentTimeMillis();
+
+        SQLiteStatement update = db.compileStatement("UPDATE " + BookListingEntry.TABLE_NAME + " SET "
+                + BookListingEntry.COLUMN_TITLE + " = ?, "
+                + BookListingEntry.COLUMN_AUTHORS + " = ?, "
+                + BookListingEntry.COLUMN_PUBLISHED_DATE + " = ?, "
+                + BookListingEntry.COLUMN_THUMBNAIL + " = ?, "
+                + BookListingEntry.COLUMN_TEXT_SNIPPET + " = ?, "
+                + BookListingEntry.COLUMN_LAST_SEEN + " = ? WHERE "
+                + BookListingEntry.COLUMN_VOLUME_ID + " = ?");
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + BookListingEntry.TABLE_NAME + " ("
+                + BookListingEntry.COLUMN_TITLE + ", "
+                + BookListingEntry.COLUMN_AUTHORS + ", "
+                + BookListingEntry.COLUMN_PUBLISHED_DATE + ", "
+                + BookListingEntry.COLUMN_THUMBNAIL + ", "
+                + BookListingEntry.COLUMN_TEXT_SNIPPET + ", "
+                + BookListingEntry.COLUMN_LAST_SEEN + ", "
+                + BookListingEntry.COLUMN_VOLUME_ID + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+
+        // One transaction per page, so the whole page costs a single sync to disk
+        db.beginTransaction();
+        try {
+            for (BookListing booklisting : booklistings) {
+                if (booklisting.getId() == null) {
+                    continue;
+                }
+
+                // UPDATE first: INSERT OR REPLACE would delete the row without its delete
+                // trigger firing, which would leave the old text in the full-text index
+                bind(update, booklisting, now);
+                if (update.executeUpdateDelete() == 0) {
+                    bind(insert, booklisting, now);
+                    insert.executeInsert();
+                }
+            }
+            evict(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            update.close();
+            insert.close();
+        }
+    }
+
+    /**
+     * Return the books whose title, authors or textSnippet contain words starting with each word
+     * of the query, most recently seen first. Call from a background thread.
+     */
+    public List<BookListing> search(String query) {
+        List<BookListing> booklistings = new ArrayList<>();
+
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) {
+            return booklistings;
+        }
+
+        SQLiteDatabase db = DbHelper.getReadableDatabase();
+        String sql = "SELECT "
+                + BookListingEntry.COLUMN_VOLUME_ID + ", "
+                + BookListingEntry.COLUMN_TITLE + ", "
+                + BookListingEntry.COLUMN_AUTHORS + ", "
+                + BookListingEntry.COLUMN_PUBLISHED_DATE + ", "
+                + BookListingEntry.COLUMN_THUMBNAIL + ", "
+                + BookListingEntry.COLUMN_TEXT_SNIPPET
+                + " FROM " + BookListingEntry.TABLE_NAME
+                + " WHERE " + BookListingEntry._ID + " IN (SELECT docid FROM " + BookListingSearchEntry.TABLE_NAME
+                + " WHERE " + BookListingSearchEntry.TABLE_NAME + " MATCH ?)"
+                + " ORDER BY " + BookListingEntry.COLUMN_LAST_SEEN + " DESC"
+                + " LIMIT " + MAX_RESULTS;
+
+        long start = System.nanoTime();
+        Cursor cursor = db.rawQuery(sql, new String[]{match});
+        try {
+            while (cursor.moveToNext()) {
+                booklistings.add(new BookListing(
+                        cursor.getString(0),
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        cursor.getString(4),
+                        cursor.getString(5)));
+            }
+        } finally {
+            cursor.close();
+        }
+        Log.d(LOG_TAG, "Local search for \"" + query + "\": " + booklistings.size() + " books in "
+                + (System.nanoTime() - start) / 1000 + " us");
+        return booklistings;
+    }
+
+    /**
+     * Write every book of the store to the file, most recently seen first, one book at a time.
+     * The file is only replaced once the export is complete. Call from a background thread.
+     *
+     * @return the number of books written
+     */
+    public int exportTo(File file, BookListingExport.Format format) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        SQLiteDatabase db = DbHelper.getReadableDatabase();
+        Cursor cursor = db.query(BookListingEntry.TABLE_NAME, new String[]{
+                        BookListingEntry.COLUMN_VOLUME_ID,
+                        BookListingEntry.COLUMN_TITLE,
+                        BookListingEntry.COLUMN_AUTHORS,
+                        BookListingEntry.COLUMN_PUBLISHED_DATE,
+                        BookListingEntry.COLUMN_THUMBNAIL,
+                        BookListingEntry.COLUMN_TEXT_SNIPPET},
+                null, null, null, null, BookListingEntry.COLUMN_LAST_SEEN + " DESC");
+        BookListingExport.Exporter exporter = null;
+        int count;
+        try {
+            exporter = BookListingExport.newExporter(new FileOutputStream(tmp), format);
+            while (cursor.moveToNext()) {
+                exporter.write(new BookListing(
+                        cursor.getString(0),
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        cursor.getString(4),
+                        cursor.getString(5)));
+            }
+            count = exporter.getCount();
+            exporter.close();
+            exporter = null;
+        } finally {
+            cursor.close();
+            if (exporter != null) {
+                closeQuietly(exporter);
+                tmp.delete();
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        return count;
+    }
+
+    /**
+     * Add or update the books of an export file, in transactions of {@link #IMPORT_BATCH_SIZE}
+     * books, and evict the oldest books as {@link #insertAll(List)} does. Malformed books of the
+     * file are skipped. Call from a background thread.
+     *
+     * @return the number of books read from the file
+     */
+    public int importFrom(File file) throws IOException {
+        BookListingExport.Importer importer = BookListingExport.openImporter(file);
+        List<BookListing> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        int count = 0;
+        long start = System.nanoTime();
+        try {
+            BookListing booklisting;
+            while ((booklisting = importer.next()) != null) {
+                batch.add(booklisting);
+                count++;
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    insertAll(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                insertAll(batch);
+            }
+        } finally {
+            importer.close();
+        }
+        Log.d(LOG_TAG, "Imported " + count + " books from " + file + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms, skipped " + importer.getSkippedCount());
+        return count;
+    }
+
+    /**
+     * Remember that the user searched for the query. Call from a background thread.
+     */
+    public void recordQuery(String query) {
+        SQLiteDatabase db = DbHelper.getWritableDatabase();
+        long now = System.currentTimeMillis();
+
+        db.beginTransaction();
+        try {
+            db.execSQL("UPDATE " + QueryEntry.TABLE_NAME + " SET "
+                    + QueryEntry.COLUMN_USE_COUNT + " = " + QueryEntry.COLUMN_USE_COUNT + " + 1, "
+                    + QueryEntry.COLUMN_LAST_USED + " = ? WHERE "
+                    + QueryEntry.COLUMN_QUERY + " = ?", new Object[]{now, query});
+            db.execSQL("INSERT OR IGNORE INTO " + QueryEntry.TABLE_NAME + " ("
+                    + QueryEntry.COLUMN_QUERY + ", "
+                    + QueryEntry.COLUMN_USE_COUNT + ", "
+                    + QueryEntry.COLUMN_LAST_USED + ") VALUES (?, 1, ?)", new Object[]{query, now});
+
+            // Forget the least recently used queries
+            db.execSQL("DELETE FROM " + QueryEntry.TABLE_NAME + " WHERE " + QueryEntry._ID
+                    + " IN (SELECT " + QueryEntry._ID + " FROM " + QueryEntry.TABLE_NAME
+                    + " ORDER BY " + QueryEntry.COLUMN_LAST_USED + " DESC LIMIT -1 OFFSET " + MAX_QUERIES + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Return the most recently used queries followed by the most frequently used ones, without
+     * duplicates. Call from a background thread.
+     *
+     * @param recent is the number of most recently used queries
+     * @param frequent is the number of most frequently used queries
+     */
+    public List<String> getPopularQueries(int recent, int frequent) {
+        Set<String> queries = new LinkedHashSet<>();
+        SQLiteDatabase db = DbHelper.getReadableDatabase();
+        addQueries(db, QueryEntry.COLUMN_LAST_USED + " DESC", recent, queries);
+        addQueries(db, QueryEntry.COLUMN_USE_COUNT + " DESC, " + QueryEntry.COLUMN_LAST_USED + " DESC",
+                frequent, queries);
+        return new ArrayList<>(queries);
+    }
+
+    private static void addQueries(SQLiteDatabase db, String orderBy, int limit, Set<String> queries) {
+        Cursor cursor = db.query(QueryEntry.TABLE_NAME, new String[]{QueryEntry.COLUMN_QUERY},
+                null, null, null, null, orderBy, String.valueOf(limit));
+        try {
+            while (cursor.moveToNext()) {
+                queries.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Turn a user query into an FTS MATCH expression: every word becomes a prefix term, and all
+     * terms must match. Characters that mean something to FTS are dropped.
+     */
+    static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String word : query.toLowerCase(Locale.US).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+        return match.toString();
+    }
+
+    private static void bind(SQLiteStatement statement, BookListing booklisting, long now) {
+        statement.clearBindings();
+        statement.bindString(1, booklisting.getTitle());
+        statement.bindString(2, booklisting.getAuthors());
+        statement.bindString(3, booklisting.getPublishedDate());
+        statement.bindString(4, booklisting.getThumbnail());
+        statement.bindString(5, booklisting.getTextSnippet());
+        statement.bindLong(6, now);
+        statement.bindString(7, booklisting.getId());
+    }
+
+    /**
+     * Delete the least recently seen books beyond {@link #MAX_BOOKS}.
+     */
+    private static void evict(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + BookListingEntry.TABLE_NAME + " WHERE " + BookListingEntry._ID
+                + " IN (SELECT " + BookListingEntry._ID + " FROM " + BookListingEntry.TABLE_NAME
+                + " ORDER BY " + BookListingEntry.COLUMN_LAST_SEEN + " DESC LIMIT -1 OFFSET " + MAX_BOOKS + ")");
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem closing the export file", e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.android.booklistingapp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The pages of a query whose request failed, and when each may be requested again.
+ *
+ * A page waits {@link #BASE_DELAY_MILLIS} after its first failure, and twice as long after every
+ * failure after that, up to {@link #MAX_DELAY_MILLIS}. So a page that fails at once, offline or
+ * on a client error, is not requested again on every scroll event.
+ */
+final class PageRetries {
+
+    /** Wait after the first failure of a page; it doubles for every failure after that */
+    static final long BASE_DELAY_MILLIS = 2000;
+
+    /** Longest wait before a page is requested again */
+    static final long MAX_DELAY_MILLIS = 60000;
+
+    /** Failed pages, in order, and the time each may be requested again */
+    private final TreeMap<Integer, Long> RetryAtMillis = new TreeMap<>();
+
+    /** Number of failures in a row of each page that has not arrived yet */
+    private final Map<Integer, Integer> Failures = new HashMap<>();
+
+    /**
+     * Record a failed request of a page.
+     *
+     * @param nowMillis is the time of the failure
+     */
+    void fail(int pageIndex, long nowMillis) {
+        Integer failures = Failures.get(pageIndex);
+        failures = failures == null ? 1 : failures + 1;
+        Failures.put(pageIndex, failures);
+        RetryAtMillis.put(pageIndex, nowMillis + delayMillis(failures));
+    }
+
+    /**
+     * Forget the failures of a page that arrived.
+     */
+    void succeed(int pageIndex) {
+        Failures.remove(pageIndex);
+        RetryAtMillis.remove(pageIndex);
+    }
+
+    /**
+     * Returns true if the page failed and has not been requested again yet.
+     */
+    boolean contains(int pageIndex) {
+        return RetryAtMillis.containsKey(pageIndex);
+    }
+
+    /**
+     * Returns true if no failed page is waiting to be requested again.
+     */
+    boolean isEmpty() {
+        return RetryAtMillis.isEmpty();
+    }
+
+    /**
+     * Returns the first failed page, if its wait is over at the given time, and takes it out of
+     * the waiting pages; returns -1 if there is none or it has to wait longer.
+     */
+    int poll(long nowMillis) {
+        Map.Entry<Integer, Long> first = RetryAtMillis.firstEntry();
+        if (first == null || first.getValue() > nowMillis) {
+            return -1;
+        }
+        RetryAtMillis.remove(first.getKey());
+        return first.getKey();
+    }
+
+    /**
+     * End the wait of every failed page, for example because the network came back.
+     */
+    void retryNow() {
+        for (Map.Entry<Integer, Long> entry : RetryAtMillis.entrySet()) {
+            entry.setValue(Long.MIN_VALUE);
+        }
+    }
+
+    void clear() {
+        RetryAtMillis.clear();
+        Failures.clear();
+    }
+
+    /**
+     * Returns how long a page waits after the given number of failures in a row.
+     */
+    static long delayMillis(int failures) {
+        if (failures - 1 >= 31) {
+            return MAX_DELAY_MILLIS;
+        }
+        return Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << (failures - 1));
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/reference/android/app/job/JobScheduler.html
+//https://developer.android.com/topic/performance/scheduling.html
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Periodic background job that warms the caches for the queries the user is likely to search
+ * for next: the default query, and the most recent and most frequent queries from the history in
+ * the {@link OfflineBookStore}.
+ *
+ * For every query the first page is fetched into the {@link BookListingCache} (an expired entry
+ * is revalidated with its ETag) and the covers of its first rows are decoded into Glide's disk
+ * cache. Its first {@link #INDEXED_RESULTS} results are then fetched as parallel pages with
+ * {@link PageFanOut} and added to the offline store, so an offline search finds more of them
+ * than the first page holds. The job only runs on an unmetered network
+ * while the device is charging, so it costs the user neither data nor battery.
+ *
+ * JobScheduler needs API 21, so this class must not be loaded on older devices.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class PrefetchJobService extends JobService {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = PrefetchJobService.class.getSimpleName();
+
+    /** ID of the job */
+    static final int JOB_ID = 1;
+
+    /** Time between two runs of the job */
+    static final long INTERVAL_MILLIS = 6 * 60 * 60 * 1000;
+
+    /** Number of most recently and most frequently used queries that are prefetched */
+    static final int RECENT_QUERIES = 5;
+    static final int FREQUENT_QUERIES = 5;
+
+    /** Number of results of every query that are added to the offline store */
+    static final int INDEXED_RESULTS = 200;
+
+    /** Cancels the run in progress, or null when the job is not running */
+    private CancellationToken Cancellation;
+
+    /**
+     * Schedule the job, unless it is scheduled already. Call only on API 21 and later.
+     */
+    static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        // Scheduling it again would restart its period
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, PrefetchJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(INTERVAL_MILLIS)
+                .setPersisted(true)
+                .build();
+        if (scheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.w(LOG_TAG, "Problem scheduling the prefetch job");
+        }
+    }
+
+    /**
+     * This is on the main thread; the queries are fetched on a thread of their own.
+     */
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final CancellationToken cancellation = new CancellationToken();
+        synchronized (this) {
+            Cancellation = cancellation;
+        }
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean reschedule = false;
+                try {
+                    prefetch(cancellation);
+                } catch (FetchCanceledException e) {
+                    Log.i(LOG_TAG, "Prefetch stopped");
+                    return;
+                } catch (RuntimeException e) {
+                    // For example a full disk; don't take the app down, try again later
+                    Log.e(LOG_TAG, "Problem prefetching the popular queries", e);
+                    reschedule = true;
+                }
+                synchronized (PrefetchJobService.this) {
+                    if (Cancellation == cancellation) {
+                        Cancellation = null;
+                    }
+                }
+                jobFinished(params, reschedule);
+            }
+        }, LOG_TAG).start();
+
+        // The job is still running
+        return true;
+    }
+
+    /**
+     * Called when the device leaves the unmetered network or stops charging.
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        synchronized (this) {
+            if (Cancellation != null) {
+                Cancellation.cancel();
+                Cancellation = null;
+            }
+        }
+
+        // Try again the next time the constraints are met
+        return true;
+    }
+
+    /**
+     * Fetch the first page of every query that is likely to be searched for next.
+     */
+    private void prefetch(CancellationToken cancellationToken) {
+        Context context = getApplicationContext();
+        BookListingCache cache = BookListingCache.getInstance(context.getCacheDir());
+        OfflineBookStore store = OfflineBookStore.getInstance(context);
+        ThumbnailLoader thumbnails = new ThumbnailLoader(context);
+
+        Set<String> queries = new LinkedHashSet<>();
+        queries.add(BookListingActivity.DEFAULT_QUERY);
+        queries.addAll(store.getPopularQueries(RECENT_QUERIES, FREQUENT_QUERIES));
+
+        long start = System.nanoTime();
+        int pages = 0;
+        int indexed = 0;
+        for (String query : queries) {
+            cancellationToken.throwIfCanceled();
+
+            // The same URL as the first page of the pager, so its loader finds the entry
+            String baseUrl = BookListingActivity.buildUrl(query);
+            String url = QueryUtils.pageUrl(baseUrl, 0, BookListingPager.PAGE_SIZE);
+            BookListingPage page = InFlightRequests.fetch(url, cache, cancellationToken);
+            if (page == null || page.getBookListings().isEmpty()) {
+                continue;
+            }
+            thumbnails.warmDiskCache(page.getBookListings(), cancellationToken);
+            pages++;
+
+            // No loader asks for pages of the fan-out's size, so they are not cached
+            BookListingPage results = PageFanOut.getDefault().fetch(baseUrl, INDEXED_RESULTS, null,
+                    cancellationToken, null);
+            store.insertAll(results != null ? results.getBookListings() : page.getBookListings());
+            indexed += results != null ? results.getBookListings().size() : page.getBookListings().size();
+        }
+        Log.i(LOG_TAG, "Prefetched " + pages + " of " + queries.size() + " queries and indexed " + indexed
+                + " books in " + (System.nanoTime() - start) / 1000000 + " ms, " + cache);
+    }
+}
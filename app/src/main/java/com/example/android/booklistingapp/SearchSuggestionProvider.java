@@ -0,0 +1,109 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/guide/topics/search/adding-custom-suggestions.html
+//https://developer.android.com/reference/android/content/ContentProvider.html
+
+import android.app.SearchManager;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import java.util.List;
+
+/**
+ * Offers the {@link SearchSuggestions} of the app to the SearchView, under the authority
+ * com.example.android.booklistingapp.suggestions given in the manifest and in
+ * res/xml/searchable.xml. The SearchView asks for the text typed so far as the last segment of
+ * the URI and shows the rows of the cursor below it; picking one searches for it.
+ *
+ * Suggestions come from memory, without a request. The suggestions file is read on the first
+ * query, on the thread of the SearchView's filter, rather than when the app starts.
+ */
+public class SearchSuggestionProvider extends ContentProvider {
+
+    /** Number of suggestions when the URI does not ask for a limit */
+    private static final int DEFAULT_LIMIT = 10;
+
+    private static final String[] COLUMNS = {
+            BaseColumns._ID,
+            SearchManager.SUGGEST_COLUMN_TEXT_1,
+            SearchManager.SUGGEST_COLUMN_TEXT_2,
+            SearchManager.SUGGEST_COLUMN_QUERY
+    };
+
+    @Override
+    public boolean onCreate() {
+        // The suggestions file is read when the first suggestions are asked for
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        String prefix = uri.getLastPathSegment();
+        if (prefix == null || SearchManager.SUGGEST_URI_PATH_QUERY.equals(prefix)) {
+            prefix = "";
+        }
+
+        List<SuggestionTrie.Suggestion> suggestions = SearchSuggestions.getInstance(getContext().getFilesDir())
+                .suggest(prefix, getLimit(uri));
+
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, suggestions.size());
+        for (int i = 0; i < suggestions.size(); i++) {
+            SuggestionTrie.Suggestion suggestion = suggestions.get(i);
+            cursor.addRow(new Object[]{
+                    i,
+                    suggestion.getText(),
+                    getContext().getString(getSourceLabel(suggestion.getSource())),
+                    suggestion.getText()
+            });
+        }
+        return cursor;
+    }
+
+    private static int getLimit(Uri uri) {
+        String limit = uri.getQueryParameter(SearchManager.SUGGEST_PARAMETER_LIMIT);
+        if (limit != null) {
+            try {
+                return Integer.parseInt(limit);
+            } catch (NumberFormatException e) {
+                // Use the default
+            }
+        }
+        return DEFAULT_LIMIT;
+    }
+
+    private static int getSourceLabel(SuggestionTrie.Source source) {
+        switch (source) {
+            case QUERY:
+                return R.string.suggestion_query;
+            case TITLE:
+                return R.string.suggestion_title;
+            default:
+                return R.string.suggestion_author;
+        }
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return SearchManager.SUGGEST_MIME_TYPE;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Search suggestions are read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Search suggestions are read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Search suggestions are read-only");
+    }
+}
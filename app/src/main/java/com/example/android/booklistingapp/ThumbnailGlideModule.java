@@ -0,0 +1,66 @@
+package com.example.android.booklistingapp;
+
+//https://github.com/bumptech/glide/wiki/Configuration
+//https://github.com/bumptech/glide/wiki/Caching-and-Cache-Invalidation
+
+import android.content.Context;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.GlideModule;
+
+/**
+ * Configures Glide for book covers: covers are decoded as RGB_565, and the bitmap pool that
+ * recycles them and the memory cache of decoded covers have fixed upper bounds. Registered in
+ * AndroidManifest.xml.
+ */
+public class ThumbnailGlideModule implements GlideModule {
+
+    /** Largest number of bytes of bitmaps kept for reuse */
+    private static final int MAX_BITMAP_POOL_BYTES = 4 * 1024 * 1024;
+
+    /** Largest number of bytes of decoded covers kept in memory */
+    private static final int MAX_MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private static LruBitmapPool sBitmapPool;
+    private static LruResourceCache sMemoryCache;
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        // Glide sizes its caches to the screen; covers are small, so cap them below that
+        MemorySizeCalculator calculator = new MemorySizeCalculator(context);
+        LruBitmapPool bitmapPool = new LruBitmapPool(Math.min(calculator.getBitmapPoolSize(), MAX_BITMAP_POOL_BYTES));
+        LruResourceCache memoryCache = new LruResourceCache(Math.min(calculator.getMemoryCacheSize(), MAX_MEMORY_CACHE_BYTES));
+
+        builder.setBitmapPool(bitmapPool);
+        builder.setMemoryCache(memoryCache);
+
+        // Covers have no transparency, and RGB_565 needs half the memory of ARGB_8888
+        builder.setDecodeFormat(DecodeFormat.PREFER_RGB_565);
+
+        synchronized (ThumbnailGlideModule.class) {
+            sBitmapPool = bitmapPool;
+            sMemoryCache = memoryCache;
+        }
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+    }
+
+    /**
+     * Returns the memory used by pooled bitmaps and cached covers, for logging.
+     */
+    static synchronized String describeMemory() {
+        if (sBitmapPool == null || sMemoryCache == null) {
+            return "bitmap pool and memory cache not created yet";
+        }
+        return "bitmap pool " + sBitmapPool.getCurrentSize() / 1024 + "/" + sBitmapPool.getMaxSize() / 1024
+                + " KB, memory cache " + sMemoryCache.getCurrentSize() / 1024 + "/" + sMemoryCache.getMaxSize() / 1024
+                + " KB";
+    }
+}
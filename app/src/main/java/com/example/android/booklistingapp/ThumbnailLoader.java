@@ -0,0 +1,208 @@
+package com.example.android.booklistingapp;
+
+//https://github.com/bumptech/glide/wiki/Loading-and-Caching-on-Background-Threads
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Loads book covers into list items, and prefetches the covers of rows that are about to be shown.
+ *
+ * Covers are decoded downsampled to the size of the thumbnail ImageView, and a prefetch uses the
+ * same size and transformation as the bind, so a prefetched cover is found in Glide's memory
+ * cache when its row is bound. Books without a thumbnail get the placeholder at once, without a
+ * request.
+ *
+ * Use on the main thread only, except for {@link #warmDiskCache(List, CancellationToken)}.
+ */
+final class ThumbnailLoader {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ThumbnailLoader.class.getSimpleName();
+
+    /** Number of covers prefetched from every page that arrives */
+    static final int PREFETCH_ROWS = 10;
+
+    /** Largest number of prefetched URLs remembered until their row is bound */
+    private static final int MAX_PREFETCHED_URLS = 200;
+
+    /** Binds follow the lifecycle of the activity; prefetches use the application */
+    private final Context ActivityContext;
+    private final Context AppContext;
+
+    /** Size covers are decoded to, in pixels */
+    private final int Width;
+    private final int Height;
+
+    /** Prefetched URLs whose row has not been bound yet, oldest first */
+    private final Set<String> PrefetchedUrls = new LinkedHashSet<>();
+
+    /** Counters for the prefetch hit rate */
+    private int Prefetches;
+    private int PrefetchedBinds;
+    private int PrefetchHits;
+    private int MissingThumbnails;
+
+    /** Counts binds of prefetched covers, and whether they came from memory */
+    private final RequestListener<String, GlideDrawable> BindListener = new RequestListener<String, GlideDrawable>() {
+        @Override
+        public boolean onException(Exception e, String model, Target<GlideDrawable> target, boolean isFirstResource) {
+            PrefetchedUrls.remove(model);
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(GlideDrawable resource, String model, Target<GlideDrawable> target,
+                                       boolean isFromMemoryCache, boolean isFirstResource) {
+            if (PrefetchedUrls.remove(model)) {
+                PrefetchedBinds++;
+                if (isFromMemoryCache) {
+                    PrefetchHits++;
+                }
+            }
+            // Let Glide set the cover on the view
+            return false;
+        }
+    };
+
+    /**
+     * Constructs a new {@link ThumbnailLoader}.
+     *
+     * @param context of the activity
+     */
+    ThumbnailLoader(Context context) {
+        ActivityContext = context;
+        AppContext = context.getApplicationContext();
+        Width = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_width);
+        Height = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_height);
+    }
+
+    /**
+     * Show the cover of a book in the view, or the placeholder if the book has none.
+     */
+    void load(String thumbnail, ImageView imageView) {
+        if (isMissing(thumbnail)) {
+            // Cancel the request of the book the view showed before, and don't start one
+            Glide.clear(imageView);
+            imageView.setImageResource(R.drawable.ic_gb);
+            MissingThumbnails++;
+            return;
+        }
+        request(ActivityContext, thumbnail)
+                .placeholder(R.drawable.ic_gb)
+                .listener(BindListener)
+                .into(imageView);
+    }
+
+    /**
+     * Show a large cover of a book in the view. The cover of the list is shown while it loads,
+     * and is usually still in memory; without a large cover, the cover of the list is kept.
+     */
+    void loadCover(String imageUrl, String thumbnail, ImageView imageView) {
+        if (isMissing(imageUrl)) {
+            load(thumbnail, imageView);
+            return;
+        }
+        DrawableRequestBuilder<String> cover = Glide.with(ActivityContext)
+                .load(imageUrl)
+                .placeholder(R.drawable.ic_gb)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT);
+        if (!isMissing(thumbnail)) {
+            cover = cover.thumbnail(request(ActivityContext, thumbnail));
+        }
+        cover.into(imageView);
+    }
+
+    /**
+     * Start loading the covers of the first rows of a new page, so they are in memory by the
+     * time their rows are bound.
+     */
+    void prefetch(List<BookListing> booklistings) {
+        int count = Math.min(booklistings.size(), PREFETCH_ROWS);
+        for (int i = 0; i < count; i++) {
+            String thumbnail = booklistings.get(i).getThumbnail();
+            if (isMissing(thumbnail) || !PrefetchedUrls.add(thumbnail)) {
+                continue;
+            }
+            request(AppContext, thumbnail).priority(Priority.LOW).preload(Width, Height);
+            Prefetches++;
+        }
+
+        // Forget the oldest prefetches whose rows were never bound
+        Iterator<String> oldest = PrefetchedUrls.iterator();
+        while (PrefetchedUrls.size() > MAX_PREFETCHED_URLS) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Decode the covers of the first rows into Glide's disk cache, at the same size as a bind,
+     * so the first bind after a cold start doesn't wait for the network. Blocks until every
+     * cover is done; call from a background thread.
+     *
+     * @param cancellationToken stops the covers that have not started yet
+     */
+    void warmDiskCache(List<BookListing> booklistings, CancellationToken cancellationToken) {
+        int count = Math.min(booklistings.size(), PREFETCH_ROWS);
+        for (int i = 0; i < count && !cancellationToken.isCanceled(); i++) {
+            String thumbnail = booklistings.get(i).getThumbnail();
+            if (isMissing(thumbnail)) {
+                continue;
+            }
+            FutureTarget<GlideDrawable> cover = request(AppContext, thumbnail).priority(Priority.LOW).into(Width, Height);
+            try {
+                cover.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                Log.w(LOG_TAG, "Problem loading the cover " + thumbnail, e);
+            } finally {
+                Glide.clear(cover);
+            }
+        }
+    }
+
+    /**
+     * The request shared by binds and prefetches. Both must use the same size and transformation
+     * to share the memory cache entry.
+     */
+    private DrawableRequestBuilder<String> request(Context context, String thumbnail) {
+        return Glide.with(context)
+                .load(thumbnail)
+                .override(Width, Height)
+                .fitCenter()
+                .diskCacheStrategy(DiskCacheStrategy.RESULT);
+    }
+
+    private static boolean isMissing(String thumbnail) {
+        return TextUtils.isEmpty(thumbnail) || BookListing.NO_THUMBNAIL.equals(thumbnail);
+    }
+
+    @Override
+    public String toString() {
+        return "ThumbnailLoader{prefetches=" + Prefetches + ", prefetchedBinds=" + PrefetchedBinds
+                + ", prefetchHits=" + PrefetchHits
+                + ", hitRate=" + (PrefetchedBinds == 0 ? 0 : 100 * PrefetchHits / PrefetchedBinds) + "%"
+                + ", missingThumbnails=" + MissingThumbnails
+                + ", " + ThumbnailGlideModule.describeMemory() + "}";
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BookListingFormatter}, which will execute on the development machine (host).
+ */
+public class BookListingFormatterTest {
+
+    private final BookListingFormatter formatter = new BookListingFormatter(Locale.US);
+
+    @Test
+    public void formatAuthors_joinsJsonArray() {
+        assertEquals("Jane Doe, John Doe", BookListingFormatter.formatAuthors("[\"Jane Doe\",\"John Doe\"]"));
+        assertEquals("Jane Doe", BookListingFormatter.formatAuthors("[\"Jane Doe\", \"\"]"));
+        assertEquals(BookListing.NO_AUTHOR, BookListingFormatter.formatAuthors("[]"));
+    }
+
+    @Test
+    public void formatAuthors_keepsJoinedNames() {
+        assertEquals("Jane Doe, John Doe", BookListingFormatter.formatAuthors("Jane Doe, John Doe"));
+        assertEquals("[Anonymous", BookListingFormatter.formatAuthors("[Anonymous"));
+        assertSame(BookListing.NO_AUTHOR, BookListingFormatter.formatAuthors(BookListing.NO_AUTHOR));
+    }
+
+    @Test
+    public void formatPublishedDate_formatsDaysAndMonths() {
+        assertEquals("May 3, 2017", formatter.formatPublishedDate("2017-05-03"));
+        assertEquals("Jan 1, 2009", formatter.formatPublishedDate("2009-01-01T00:00:00"));
+        assertEquals("May 2017", formatter.formatPublishedDate("2017-05"));
+        assertEquals("2017", formatter.formatPublishedDate("2017"));
+    }
+
+    @Test
+    public void formatPublishedDate_keepsWhatItCannotRead() {
+        assertEquals("2017-13", formatter.formatPublishedDate("2017-13"));
+        assertEquals("2017-02-30", formatter.formatPublishedDate("2017-02-30"));
+        assertEquals("circa 1850", formatter.formatPublishedDate("circa 1850"));
+        assertEquals(BookListing.NO_PUBLISHED_DATE, formatter.formatPublishedDate(BookListing.NO_PUBLISHED_DATE));
+    }
+
+    @Test
+    public void formatTextSnippet_keepsPlainText() {
+        String snippet = "A book about Android";
+
+        assertSame(snippet, BookListingFormatter.formatTextSnippet(snippet));
+    }
+}
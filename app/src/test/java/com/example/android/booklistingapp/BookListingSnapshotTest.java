@@ -0,0 +1,66 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BookListingSnapshot}, which will execute on the development machine (host).
+ */
+public class BookListingSnapshotTest {
+
+    private static final String BASE_URL = "https://www.googleapis.com/books/v1/volumes?q=android";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeTo_readFrom_keepsResultsAndPagerState() throws Exception {
+        File file = new File(folder.getRoot(), "snapshot");
+        BookListingSnapshot snapshot = new BookListingSnapshot(BASE_URL, Arrays.asList(
+                new BookListing("zXyw", "Android", "Jane Doe", "2017", "http://example.com/a.jpg", "A book"),
+                new BookListing(null, "Java", "John Doe", "2016", "", "")), 512, 3, false, 1000);
+
+        snapshot.writeTo(file);
+        BookListingSnapshot read = BookListingSnapshot.readFrom(file);
+
+        assertEquals(BASE_URL, read.getBaseUrl());
+        assertEquals(2, read.getBookListings().size());
+        assertEquals("zXyw", read.getBookListings().get(0).getId());
+        assertNull(read.getBookListings().get(1).getId());
+        assertEquals("Java", read.getBookListings().get(1).getTitle());
+        assertEquals(512, read.getTotalItems());
+        assertEquals(3, read.getPageCount());
+        assertFalse(read.hasReachedEnd());
+        assertFalse(new File(folder.getRoot(), "snapshot.tmp").exists());
+    }
+
+    @Test
+    public void isStale_afterMaxAge() {
+        BookListingSnapshot snapshot = new BookListingSnapshot(BASE_URL,
+                Arrays.<BookListing>asList(), 0, 1, true, 1000);
+
+        assertFalse(snapshot.isStale(1000 + BookListingSnapshot.MAX_AGE_MILLIS));
+        assertTrue(snapshot.isStale(1001 + BookListingSnapshot.MAX_AGE_MILLIS));
+        assertTrue(snapshot.isStale(999));
+    }
+
+    @Test
+    public void readFrom_returnsNullForMissingOrDamagedFile() throws Exception {
+        File file = new File(folder.getRoot(), "snapshot");
+        assertNull(BookListingSnapshot.readFrom(file));
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{0, 0, 0, 1, 0, 42});
+        out.close();
+
+        assertNull(BookListingSnapshot.readFrom(file));
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PageRetries}, which will execute on the development machine (host).
+ */
+public class PageRetriesTest {
+
+    @Test
+    public void failedFirstPage_isRequestedAgainAfterItsWait() {
+        PageRetries retries = new PageRetries();
+
+        retries.fail(0, 1000);
+
+        assertTrue(retries.contains(0));
+        assertEquals(-1, retries.poll(1000 + PageRetries.BASE_DELAY_MILLIS - 1));
+        assertEquals(0, retries.poll(1000 + PageRetries.BASE_DELAY_MILLIS));
+        assertFalse(retries.contains(0));
+        assertTrue(retries.isEmpty());
+    }
+
+    @Test
+    public void failedPages_areRequestedInOrder() {
+        PageRetries retries = new PageRetries();
+
+        retries.fail(3, 0);
+        retries.fail(2, 0);
+
+        assertEquals(2, retries.poll(60000));
+        assertEquals(3, retries.poll(60000));
+        assertEquals(-1, retries.poll(60000));
+    }
+
+    @Test
+    public void repeatedFailures_waitLongerUpToTheCap() {
+        PageRetries retries = new PageRetries();
+
+        retries.fail(1, 0);
+        assertEquals(1, retries.poll(PageRetries.BASE_DELAY_MILLIS));
+        retries.fail(1, 0);
+        assertEquals(-1, retries.poll(2 * PageRetries.BASE_DELAY_MILLIS - 1));
+        assertEquals(1, retries.poll(2 * PageRetries.BASE_DELAY_MILLIS));
+
+        assertEquals(PageRetries.MAX_DELAY_MILLIS, PageRetries.delayMillis(10));
+        assertEquals(PageRetries.MAX_DELAY_MILLIS, PageRetries.delayMillis(100));
+    }
+
+    @Test
+    public void succeededPage_startsOverAtTheFirstWait() {
+        PageRetries retries = new PageRetries();
+
+        retries.fail(1, 0);
+        retries.poll(PageRetries.BASE_DELAY_MILLIS);
+        retries.succeed(1);
+        retries.fail(1, 0);
+
+        assertEquals(1, retries.poll(PageRetries.BASE_DELAY_MILLIS));
+    }
+
+    @Test
+    public void retryNow_endsEveryWait() {
+        PageRetries retries = new PageRetries();
+
+        retries.fail(0, 5000);
+        retries.fail(4, 5000);
+        retries.retryNow();
+
+        assertEquals(0, retries.poll(0));
+        assertEquals(4, retries.poll(0));
+    }
+}
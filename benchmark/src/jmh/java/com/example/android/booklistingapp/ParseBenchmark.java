@@ -0,0 +1,108 @@
+package com.example.android.booklistingapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput and the allocation per operation of the {@link QueryUtils} parse path
+ * on recorded Google Books responses of 20, 40 and 200 items, with fully populated and with
+ * sparse volumeInfo objects.
+ *
+ * The buffered path reads the whole response into a String and parses it with org.json; the
+ * streaming path the app uses is measured next to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({
+            "volumes_20.json",
+            "volumes_20_sparse.json",
+            "volumes_40.json",
+            "volumes_40_sparse.json",
+            "volumes_200.json",
+            "volumes_200_sparse.json"
+    })
+    public String fixture;
+
+    /** The response as it comes off the network */
+    private byte[] response;
+
+    /** The response as read by {@link QueryUtils#readFromStream(InputStream)} */
+    private String json;
+
+    @Setup
+    public void setUp() throws IOException {
+        response = readFixture("fixtures/" + fixture);
+        json = QueryUtils.readFromStream(new ByteArrayInputStream(response));
+
+        // Don't measure a parse that gives up early
+        int expected = Integer.parseInt(fixture.replaceAll("\\D", ""));
+        List<BookListing> booklistings = QueryUtils.extractFeatureFromJson(json);
+        if (booklistings == null || booklistings.size() != expected) {
+            throw new IllegalStateException(fixture + ": extractFeatureFromJson returned "
+                    + (booklistings == null ? null : booklistings.size()) + " books");
+        }
+        if (QueryUtils.extractPageFromStream(new ByteArrayInputStream(response)).getBookListings().size() != expected) {
+            throw new IllegalStateException(fixture + ": extractPageFromStream did not return " + expected + " books");
+        }
+    }
+
+    @Benchmark
+    public String readFromStream() throws IOException {
+        return QueryUtils.readFromStream(new ByteArrayInputStream(response));
+    }
+
+    @Benchmark
+    public List<BookListing> extractFeatureFromJson() {
+        return QueryUtils.extractFeatureFromJson(json);
+    }
+
+    /**
+     * The whole buffered path: {@link #readFromStream()} followed by {@link #extractFeatureFromJson()}.
+     */
+    @Benchmark
+    public List<BookListing> readAndExtractFeatureFromJson() throws IOException {
+        return QueryUtils.extractFeatureFromJson(QueryUtils.readFromStream(new ByteArrayInputStream(response)));
+    }
+
+    @Benchmark
+    public BookListingPage extractPageFromStream() {
+        return QueryUtils.extractPageFromStream(new ByteArrayInputStream(response));
+    }
+
+    private static byte[] readFixture(String name) throws IOException {
+        InputStream in = ParseBenchmark.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
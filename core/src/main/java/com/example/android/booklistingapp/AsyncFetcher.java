@@ -0,0 +1,152 @@
+package com.example.android.booklistingapp;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts fetches without blocking the caller, and returns a {@link FetchFuture} for each.
+ *
+ * Every fetch runs on one small pool with a fixed number of threads, shared by searches,
+ * details and anything else submitted to it, so the app does not start a thread for each
+ * request. Fetches beyond the pool size wait in its queue; a fetch cancelled while it waits
+ * never opens a connection. Identical searches in flight at the same time share one request
+ * through {@link InFlightRequests}.
+ */
+final class AsyncFetcher {
+
+    /**
+     * Work to run on the pool.
+     */
+    interface Task<V> {
+
+        /**
+         * @param cancellationToken is cancelled when the future of the task is cancelled
+         * @throws FetchCanceledException if the token is cancelled
+         */
+        V run(CancellationToken cancellationToken) throws Exception;
+    }
+
+    /** Default number of threads */
+    static final int DEFAULT_THREADS = 4;
+
+    private static AsyncFetcher sDefault;
+
+    private final ThreadPoolExecutor Pool;
+    private final FetchPolicy Policy;
+
+    /**
+     * Returns the fetcher shared by the app, with the default pool size and retry policy.
+     */
+    static synchronized AsyncFetcher getDefault() {
+        if (sDefault == null) {
+            sDefault = new AsyncFetcher(DEFAULT_THREADS, FetchPolicy.getDefault());
+        }
+        return sDefault;
+    }
+
+    /**
+     * Constructs a new {@link AsyncFetcher}.
+     *
+     * @param threads is the number of fetches that run at once
+     * @param policy retries and throttles the requests
+     */
+    AsyncFetcher(int threads, FetchPolicy policy) {
+        Policy = policy;
+
+        // The threads go away when there is nothing to fetch
+        Pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger Count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AsyncFetcher #" + Count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the executor of the pool, to run the steps chained to a fetch with
+     * {@link FetchFuture#then(FetchFuture.Transform, Executor)}.
+     */
+    Executor getExecutor() {
+        return Pool;
+    }
+
+    /**
+     * Run the task on the pool.
+     *
+     * @return a future that completes with the result of the task, or fails with what it threw
+     */
+    <V> FetchFuture<V> submit(final Task<V> task) {
+        final FetchFuture<V> future = new FetchFuture<>();
+        Pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Cancelled while waiting in the queue
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(task.run(future.getToken()));
+                } catch (FetchCanceledException e) {
+                    future.cancel(false);
+                } catch (Exception e) {
+                    future.fail(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Fetch a page of results, sharing the request with any identical one already in flight.
+     *
+     * @param cache is the result cache to read and fill, or null
+     * @return a future that completes with the page, or with null if it could not be fetched
+     */
+    FetchFuture<BookListingPage> fetchPage(String requestUrl, BookListingCache cache) {
+        return fetchPage(requestUrl, cache, null);
+    }
+
+    /**
+     * Fetch a page of results as {@link #fetchPage(String, BookListingCache)} does, handing the
+     * books of the response to the listener in batches, on the fetching thread, while it is
+     * parsed. The future still completes with the whole page.
+     *
+     * @param batchListener receives the books parsed so far, or null
+     */
+    FetchFuture<BookListingPage> fetchPage(final String requestUrl, final BookListingCache cache,
+                                           final QueryUtils.BatchListener batchListener) {
+        return submit(new Task<BookListingPage>() {
+            @Override
+            public BookListingPage run(CancellationToken cancellationToken) {
+                return InFlightRequests.fetch(requestUrl, cache, cancellationToken, Policy, batchListener);
+            }
+        });
+    }
+
+    /**
+     * Fetch the {@link BookDetail} of one volume.
+     *
+     * @param cache is the detail cache to read and fill, or null
+     * @return a future that completes with the detail, or with null if it could not be fetched
+     */
+    FetchFuture<BookDetail> fetchDetail(final String volumeId, final BookDetailCache cache) {
+        return submit(new Task<BookDetail>() {
+            @Override
+            public BookDetail run(CancellationToken cancellationToken) {
+                String requestUrl = BookQuery.volumeUrl(BookQuery.DEFAULT_ENDPOINT, volumeId,
+                        QueryUtils.BOOK_DETAIL_FIELDS);
+                return QueryUtils.fetchBookDetail(requestUrl, volumeId, cache, cancellationToken, Policy);
+            }
+        });
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.android.booklistingapp;
+
+//https://developers.google.com/books/docs/v1/reference/volumes#resource
+
+/**
+ * The full information about one Google Books volume, as shown on the detail screen. It is
+ * fetched from /volumes/{id} only when the screen is opened; a {@link BookListing} holds the
+ * few fields the list needs.
+ *
+ * Text values are null, and numbers 0, when the volume does not have them.
+ */
+final class BookDetail {
+
+    private final String Id;
+    private final String Title;
+    private final String Subtitle;
+    private final String Authors;
+    private final String Publisher;
+    private final String PublishedDate;
+    private final String Description;
+    private final int PageCount;
+    private final String Categories;
+    private final double AverageRating;
+    private final int RatingsCount;
+    private final String ImageUrl;
+    private final String InfoLink;
+
+    /**
+     * Constructs a new {@link BookDetail}.
+     *
+     * @param id is the volume id of the book
+     * @param title is the title of the book
+     * @param subtitle is the subtitle of the book
+     * @param authors is the names of the authors, joined
+     * @param publisher is the publisher of the book
+     * @param publishedDate is the publishedDate of the book
+     * @param description is the description of the book, in HTML
+     * @param pageCount is the number of pages
+     * @param categories is the categories of the book, joined
+     * @param averageRating is the average rating, from 1 to 5
+     * @param ratingsCount is the number of ratings
+     * @param imageUrl is the URL of the largest cover image
+     * @param infoLink is the URL of the book on Google Books
+     */
+    BookDetail(String id, String title, String subtitle, String authors, String publisher, String publishedDate,
+               String description, int pageCount, String categories, double averageRating, int ratingsCount,
+               String imageUrl, String infoLink) {
+        Id = id;
+        Title = title;
+        Subtitle = subtitle;
+        Authors = authors;
+        Publisher = publisher;
+        PublishedDate = publishedDate;
+        Description = description;
+        PageCount = pageCount;
+        Categories = categories;
+        AverageRating = averageRating;
+        RatingsCount = ratingsCount;
+        ImageUrl = imageUrl;
+        InfoLink = infoLink;
+    }
+
+    String getId() {
+        return Id;
+    }
+
+    String getTitle() {
+        return Title;
+    }
+
+    String getSubtitle() {
+        return Subtitle;
+    }
+
+    String getAuthors() {
+        return Authors;
+    }
+
+    String getPublisher() {
+        return Publisher;
+    }
+
+    String getPublishedDate() {
+        return PublishedDate;
+    }
+
+    String getDescription() {
+        return Description;
+    }
+
+    int getPageCount() {
+        return PageCount;
+    }
+
+    String getCategories() {
+        return Categories;
+    }
+
+    double getAverageRating() {
+        return AverageRating;
+    }
+
+    int getRatingsCount() {
+        return RatingsCount;
+    }
+
+    String getImageUrl() {
+        return ImageUrl;
+    }
+
+    String getInfoLink() {
+        return InfoLink;
+    }
+}
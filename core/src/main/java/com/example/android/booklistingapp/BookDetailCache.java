@@ -0,0 +1,265 @@
+package com.example.android.booklistingapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Two-tier cache of {@link BookDetail}s, keyed by volume id.
+ *
+ * It is kept apart from the {@link BookListingCache}: a detail payload is many times larger than
+ * a row of the list, and only a few of them are ever opened, so they get their own small memory
+ * tier and their own directory, and never push search results out.
+ *
+ * The details of a volume rarely change, so an entry lives for a day. An expired entry is still
+ * returned, to be shown when the network fails.
+ *
+ * As in the {@link BookListingCache}, the memory tier is guarded by the cache's monitor and the
+ * files by the monitor of its {@link CacheFiles}, so the detail screen reading from memory never
+ * waits for a prefetch writing a file.
+ */
+final class BookDetailCache {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = BookDetailCache.class.getSimpleName();
+
+    /** Number of details kept in memory */
+    private static final int MEMORY_CAPACITY = 8;
+
+    /** Total size of the cache files on disk */
+    private static final long MAX_DISK_BYTES = 1024 * 1024;
+
+    /** Time-to-live of an entry */
+    static final long TTL_MILLIS = 24 * 60 * 60 * 1000;
+
+    /** Name of the cache directory inside the app cache dir */
+    private static final String DIRECTORY_NAME = "bookdetails";
+
+    /** Format version of the cache files */
+    private static final int FILE_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static BookDetailCache sInstance;
+
+    /**
+     * A cached detail.
+     */
+    static final class Entry {
+
+        private final BookDetail Detail;
+        private final long ExpiresAt;
+
+        Entry(BookDetail detail, long expiresAt) {
+            Detail = detail;
+            ExpiresAt = expiresAt;
+        }
+
+        /**
+         * Returns the cached detail.
+         */
+        BookDetail getDetail() {
+            return Detail;
+        }
+
+        /**
+         * Returns true if the entry has not expired yet.
+         */
+        boolean isFresh() {
+            return System.currentTimeMillis() < ExpiresAt;
+        }
+    }
+
+    /** In-memory tier, in access order */
+    private final CacheFiles.LruMap<Entry> MemoryCache;
+
+    /** On-disk tier. Its monitor is taken before the cache's, never while holding it. */
+    private final CacheFiles Files;
+
+    /**
+     * Returns the cache shared by the whole app.
+     *
+     * @param cacheDir is the cache directory of the app; the cache keeps its files in a directory
+     *                 of its own inside it
+     */
+    static synchronized BookDetailCache getInstance(File cacheDir) {
+        if (sInstance == null) {
+            File directory = new File(cacheDir, DIRECTORY_NAME);
+            sInstance = new BookDetailCache(directory, MEMORY_CAPACITY, MAX_DISK_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link BookDetailCache}.
+     *
+     * @param directory is where the on-disk tier keeps its files
+     * @param memoryCapacity is the number of details kept in memory
+     * @param maxDiskBytes is the total size the on-disk tier may use
+     */
+    BookDetailCache(File directory, int memoryCapacity, long maxDiskBytes) {
+        MemoryCache = new CacheFiles.LruMap<>(memoryCapacity);
+        Files = new CacheFiles(directory, maxDiskBytes);
+    }
+
+    /**
+     * Returns the entry cached for the volume, fresh or expired, or null if there is none.
+     */
+    Entry get(String volumeId) {
+        synchronized (this) {
+            Entry entry = MemoryCache.get(volumeId);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        Entry entry;
+        synchronized (Files) {
+            entry = readFromDisk(volumeId);
+        }
+
+        synchronized (this) {
+            // A put while the file was read wins over the file
+            Entry current = MemoryCache.get(volumeId);
+            if (current != null) {
+                return current;
+            }
+            if (entry != null) {
+                MemoryCache.put(volumeId, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Store the detail of a volume.
+     */
+    void put(BookDetail detail) {
+        Entry entry = new Entry(detail, System.currentTimeMillis() + TTL_MILLIS);
+        synchronized (this) {
+            MemoryCache.put(detail.getId(), entry);
+        }
+        writeToDisk(detail.getId(), entry);
+    }
+
+    private Entry readFromDisk(String volumeId) {
+        File file = Files.fileFor(volumeId);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FILE_VERSION || !volumeId.equals(in.readUTF())) {
+                return null;
+            }
+            long expiresAt = in.readLong();
+
+            // No string is longer than the file, so a corrupt length fails instead of allocating
+            long maxLength = file.length();
+            BookDetail detail = new BookDetail(volumeId, readString(in, maxLength), readString(in, maxLength),
+                    readString(in, maxLength), readString(in, maxLength), readString(in, maxLength),
+                    readString(in, maxLength), in.readInt(), readString(in, maxLength), in.readDouble(),
+                    in.readInt(), readString(in, maxLength), readString(in, maxLength));
+            return new Entry(detail, expiresAt);
+        } catch (IOException e) {
+            CoreLog.w(LOG_TAG, "Problem reading the cache file " + file, e);
+            file.delete();
+            return null;
+        } finally {
+            CacheFiles.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Write the entry to its file and trim the directory. Takes the monitor of the files, and
+     * must be called without holding the cache's.
+     */
+    private void writeToDisk(String volumeId, Entry entry) {
+        synchronized (Files) {
+            // A later put of the same volume has been written already, or is about to be
+            synchronized (this) {
+                Entry current = MemoryCache.get(volumeId);
+                if (current != null && current != entry) {
+                    return;
+                }
+            }
+            writeFile(volumeId, entry);
+            Files.trim();
+        }
+    }
+
+    private void writeFile(String volumeId, Entry entry) {
+        if (!Files.makeDirectory()) {
+            return;
+        }
+
+        BookDetail detail = entry.getDetail();
+        File file = Files.fileFor(volumeId);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(volumeId);
+            out.writeLong(entry.ExpiresAt);
+            writeString(out, detail.getTitle());
+            writeString(out, detail.getSubtitle());
+            writeString(out, detail.getAuthors());
+            writeString(out, detail.getPublisher());
+            writeString(out, detail.getPublishedDate());
+            writeString(out, detail.getDescription());
+            out.writeInt(detail.getPageCount());
+            writeString(out, detail.getCategories());
+            out.writeDouble(detail.getAverageRating());
+            out.writeInt(detail.getRatingsCount());
+            writeString(out, detail.getImageUrl());
+            writeString(out, detail.getInfoLink());
+        } catch (IOException e) {
+            CoreLog.w(LOG_TAG, "Problem writing the cache file " + file, e);
+            CacheFiles.closeQuietly(out);
+            out = null;
+            file.delete();
+        } finally {
+            CacheFiles.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Write a string that may be null or longer than writeUTF allows, such as a description.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString}.
+     *
+     * @param maxLength is the largest length in bytes the string can have
+     * @throws IOException if the stream ends early, or the length is larger than maxLength
+     */
+    private static String readString(DataInputStream in, long maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > maxLength) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.android.booklistingapp;
+
+//https://developers.google.com/books/docs/v1/reference/volumes/get
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming parser for the Google Books response of a single volume, /volumes/{id}.
+ *
+ * Like {@link BookListingStreamParser} it reads the stream once with a {@link JsonPullReader}
+ * and skips everything the detail screen does not show.
+ */
+final class BookDetailParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Cover images from the smallest to the largest one the detail screen uses */
+    private static final String[] IMAGE_SIZES = {"smallThumbnail", "thumbnail", "small", "medium"};
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookDetailParser} object.
+     */
+    private BookDetailParser() {
+    }
+
+    /**
+     * Parse the response and return the {@link BookDetail} it contains.
+     *
+     * @throws IOException if the stream could not be read or is not a JSON object
+     */
+    static BookDetail parse(InputStream inputStream) throws IOException {
+        JsonPullReader reader = new JsonPullReader(new InputStreamReader(inputStream, UTF_8));
+        Fields fields = new Fields();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name)) {
+                fields.Id = BookListingStreamParser.nextStringOrNull(reader);
+            } else if ("volumeInfo".equals(name)) {
+                readVolumeInfo(reader, fields);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return fields.toBookDetail();
+    }
+
+    private static void readVolumeInfo(JsonPullReader reader, Fields fields) throws IOException {
+        if (!BookListingStreamParser.beginObjectOrSkip(reader)) {
+            return;
+        }
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("title".equals(name)) {
+                fields.Title = BookListingStreamParser.nextStringOrNull(reader);
+            } else if ("subtitle".equals(name)) {
+                fields.Subtitle = BookListingStreamParser.nextStringOrNull(reader);
+            } else if ("authors".equals(name)) {
+                fields.Authors = BookListingStreamParser.readJoined(reader);
+            } else if ("publisher".equals(name)) {
+                fields.Publisher = BookListingStreamParser.nextStringOrNull(reader);
+            } else if ("publishedDate".equals(name)) {
+                fields.PublishedDate = BookListingStreamParser.nextStringOrNull(reader);
+            } else if ("description".equals(name)) {
+                fields.Description = BookListingStreamParser.nextStringOrNull(reader);
+            } else if ("pageCount".equals(name)) {
+                fields.PageCount = parseInt(BookListingStreamParser.nextStringOrNull(reader));
+            } else if ("categories".equals(name)) {
+                fields.Categories = BookListingStreamParser.readJoined(reader);
+            } else if ("averageRating".equals(name)) {
+                fields.AverageRating = parseDouble(BookListingStreamParser.nextStringOrNull(reader));
+            } else if ("ratingsCount".equals(name)) {
+                fields.RatingsCount = parseInt(BookListingStreamParser.nextStringOrNull(reader));
+            } else if ("imageLinks".equals(name)) {
+                readImageLinks(reader, fields);
+            } else if ("infoLink".equals(name)) {
+                fields.InfoLink = BookListingStreamParser.nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Keep the largest of the cover images the response has.
+     */
+    private static void readImageLinks(JsonPullReader reader, Fields fields) throws IOException {
+        if (!BookListingStreamParser.beginObjectOrSkip(reader)) {
+            return;
+        }
+        int largest = -1;
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            int size = indexOf(IMAGE_SIZES, name);
+            String url = size > largest ? BookListingStreamParser.nextStringOrNull(reader) : null;
+            if (url != null) {
+                fields.ImageUrl = url;
+                largest = size;
+            } else if (size <= largest) {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value != null ? Math.max(0, (int) Double.parseDouble(value)) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return value != null ? Math.max(0, Double.parseDouble(value)) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The fields of the volume that is being read.
+     */
+    private static final class Fields {
+
+        String Id;
+        String Title;
+        String Subtitle;
+        String Authors;
+        String Publisher;
+        String PublishedDate;
+        String Description;
+        int PageCount;
+        String Categories;
+        double AverageRating;
+        int RatingsCount;
+        String ImageUrl;
+        String InfoLink;
+
+        BookDetail toBookDetail() {
+            return new BookDetail(Id, Title, Subtitle, Authors, Publisher, PublishedDate, Description, PageCount,
+                    Categories, AverageRating, RatingsCount, ImageUrl, InfoLink);
+        }
+    }
+}
@@ -9,6 +9,21 @@ package com.example.android.booklistingapp;
  */
 public class BookListing {
 
+    /**
+     * Placeholders for the values a Google Books volume does not have. Every book without a value
+     * shares the same String object.
+     */
+    public static final String NO_TITLE = "No Title!";
+    public static final String NO_AUTHOR = "No Author!";
+    public static final String NO_PUBLISHED_DATE = "No Published Date!";
+    public static final String NO_THUMBNAIL = "No Thumbnail!";
+    public static final String NO_TEXT_SNIPPET = "No TextSnippet!";
+
+    /**
+     * Google Books volume id of the book
+     */
+    private String Id;
+
     /**
      * Title of the book
      */
@@ -45,7 +60,22 @@ public class BookListing {
 
      */
     public BookListing(String title, String authors, String publishedDate, String thumbnail, String textSnippet) {
+        this(null, title, authors, publishedDate, thumbnail, textSnippet);
+    }
+
+    /**
+     * Constructs a new {@link BookListing} object for a Google Books volume.
+     *
+     * @param id is the volume id of the book, or null if it is not known
+     * @param title  is the title of the book
+     * @param authors is the author of the book
+     * @param publishedDate is the publishedDate of the book
+     * @param thumbnail is the thumbnail of the book
+     * @param textSnippet is the textSnippet of the book
+     */
+    public BookListing(String id, String title, String authors, String publishedDate, String thumbnail, String textSnippet) {
 
+        Id = id;
         Title = title;
         Authors = authors;
         PublishedDate = publishedDate;
@@ -54,6 +84,13 @@ public class BookListing {
     }
 
 
+    /**
+     * Returns the volume id of the book, or null if it is not known.
+     */
+    public String getId() {
+        return Id;
+    }
+
     /**
      * Returns the title of the book.
      */
@@ -0,0 +1,419 @@
+package com.example.android.booklistingapp;
+
+//https://tools.ietf.org/html/rfc7234#section-5.2
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Two-tier cache of search results, keyed by the normalized query URL.
+ *
+ * The first tier is a size-bounded, least-recently-used map of parsed {@link BookListingPage}s
+ * in memory. The second tier is one small binary file per query in the app cache directory.
+ * Every entry expires after its time-to-live; an expired entry that carries an ETag can still
+ * be revalidated with a conditional request.
+ *
+ * The memory tier and the counts are guarded by the cache's monitor, and the files by the
+ * monitor of its {@link CacheFiles}, which is never taken while holding the cache's, so a lookup
+ * answered from memory never waits for a file to be read, written or trimmed.
+ */
+public final class BookListingCache {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = BookListingCache.class.getSimpleName();
+
+    /** Number of queries kept in memory */
+    private static final int MEMORY_CAPACITY = 16;
+
+    /** Total size of the cache files on disk */
+    private static final long MAX_DISK_BYTES = 2 * 1024 * 1024;
+
+    /** Time-to-live used when the response has no Cache-Control max-age */
+    static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    /** Name of the cache directory inside the app cache dir */
+    private static final String DIRECTORY_NAME = "booklistings";
+
+    /** Format version of the cache files */
+    private static final int FILE_VERSION = 2;
+
+    private static BookListingCache sInstance;
+
+    /**
+     * A cached search result.
+     */
+    public static final class Entry {
+
+        private final BookListingPage Page;
+        private final String ETag;
+        private final long ExpiresAt;
+
+        Entry(BookListingPage page, String eTag, long expiresAt) {
+            Page = page;
+            ETag = eTag;
+            ExpiresAt = expiresAt;
+        }
+
+        /**
+         * Returns the cached page.
+         */
+        public BookListingPage getPage() {
+            return Page;
+        }
+
+        /**
+         * Returns the cached books.
+         */
+        public List<BookListing> getBookListings() {
+            return Page.getBookListings();
+        }
+
+        /**
+         * Returns the ETag sent with the response, or null.
+         */
+        public String getETag() {
+            return ETag;
+        }
+
+        /**
+         * Returns true if the entry has not expired yet.
+         */
+        public boolean isFresh() {
+            return System.currentTimeMillis() < ExpiresAt;
+        }
+    }
+
+    /** In-memory tier, in access order */
+    private final CacheFiles.LruMap<Entry> MemoryCache;
+
+    /** On-disk tier. Its monitor is taken before the cache's, never while holding it. */
+    private final CacheFiles Files;
+
+    private int MemoryHitCount;
+    private int DiskHitCount;
+    private int MissCount;
+    private int NotModifiedCount;
+
+    /** Number of files deleted to stay within the disk limit */
+    private int DiskEvictionCount;
+
+    /**
+     * Returns the cache shared by the whole app.
+     *
+     * @param cacheDir is the cache directory of the app; the cache keeps its files in a directory
+     *                 of its own inside it
+     */
+    public static synchronized BookListingCache getInstance(File cacheDir) {
+        if (sInstance == null) {
+            File directory = new File(cacheDir, DIRECTORY_NAME);
+            sInstance = new BookListingCache(directory, MEMORY_CAPACITY, MAX_DISK_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link BookListingCache}.
+     *
+     * @param directory is where the on-disk tier keeps its files
+     * @param memoryCapacity is the number of queries kept in memory
+     * @param maxDiskBytes is the total size the on-disk tier may use
+     */
+    BookListingCache(File directory, int memoryCapacity, long maxDiskBytes) {
+        MemoryCache = new CacheFiles.LruMap<>(memoryCapacity);
+        Files = new CacheFiles(directory, maxDiskBytes);
+    }
+
+    /**
+     * Returns the entry cached for the URL, fresh or expired, or null if there is none.
+     * Only a fresh entry counts as a hit.
+     */
+    public Entry get(String url) {
+        String key = normalizeUrl(url);
+
+        synchronized (this) {
+            Entry entry = MemoryCache.get(key);
+            if (entry != null) {
+                if (entry.isFresh()) {
+                    MemoryHitCount++;
+                } else {
+                    MissCount++;
+                }
+                return entry;
+            }
+        }
+
+        Entry entry;
+        synchronized (Files) {
+            entry = readFromDisk(key);
+        }
+
+        synchronized (this) {
+            // A put while the file was read wins over the file
+            Entry current = MemoryCache.get(key);
+            if (current != null) {
+                entry = current;
+            } else if (entry != null) {
+                MemoryCache.put(key, entry);
+            }
+            if (entry != null && entry.isFresh()) {
+                if (current != null) {
+                    MemoryHitCount++;
+                } else {
+                    DiskHitCount++;
+                }
+            } else {
+                MissCount++;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Store the books returned for the URL.
+     *
+     * @param eTag is the ETag header of the response, or null
+     * @param cacheControl is the Cache-Control header of the response, or null
+     */
+    public void put(String url, BookListingPage page, String eTag, String cacheControl) {
+        long maxAge = parseMaxAge(cacheControl);
+        if (maxAge < 0) {
+            // The server asked us not to store the response
+            return;
+        }
+
+        String key = normalizeUrl(url);
+        Entry entry = new Entry(page, eTag, System.currentTimeMillis() + maxAge);
+        synchronized (this) {
+            MemoryCache.put(key, entry);
+        }
+        writeToDisk(key, entry);
+    }
+
+    /**
+     * Extend the life of the entry for the URL after the server answered 304 Not Modified.
+     * Returns the refreshed entry, or null if there was nothing cached.
+     */
+    public Entry refresh(String url, String cacheControl) {
+        String key = normalizeUrl(url);
+        Entry entry;
+        synchronized (this) {
+            entry = MemoryCache.get(key);
+        }
+        if (entry == null) {
+            synchronized (Files) {
+                entry = readFromDisk(key);
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        long maxAge = Math.max(parseMaxAge(cacheControl), 0);
+        Entry refreshed = new Entry(entry.getPage(), entry.getETag(), System.currentTimeMillis() + maxAge);
+        synchronized (this) {
+            NotModifiedCount++;
+            MemoryCache.put(key, refreshed);
+        }
+        writeToDisk(key, refreshed);
+        return refreshed;
+    }
+
+    /**
+     * Returns the number of fresh entries served from memory.
+     */
+    public synchronized int getMemoryHitCount() {
+        return MemoryHitCount;
+    }
+
+    /**
+     * Returns the number of fresh entries served from disk.
+     */
+    public synchronized int getDiskHitCount() {
+        return DiskHitCount;
+    }
+
+    /**
+     * Returns the number of lookups that had to go to the network.
+     */
+    public synchronized int getMissCount() {
+        return MissCount;
+    }
+
+    /**
+     * Returns the number of expired entries that the server confirmed with 304 Not Modified.
+     */
+    public synchronized int getNotModifiedCount() {
+        return NotModifiedCount;
+    }
+
+    /**
+     * Returns the number of entries dropped from memory or disk to stay within the limits.
+     */
+    public synchronized int getEvictionCount() {
+        return MemoryCache.getEvictionCount() + DiskEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BookListingCache[memoryHits=" + MemoryHitCount + ", diskHits=" + DiskHitCount
+                + ", misses=" + MissCount + ", notModified=" + NotModifiedCount
+                + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    /**
+     * Returns the time-to-live in milliseconds allowed by a Cache-Control header, or -1 if the
+     * response must not be stored.
+     */
+    static long parseMaxAge(String cacheControl) {
+        if (cacheControl == null) {
+            return DEFAULT_TTL_MILLIS;
+        }
+        long maxAge = DEFAULT_TTL_MILLIS;
+        for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+            directive = directive.trim();
+            if (directive.equals("no-store")) {
+                return -1;
+            } else if (directive.equals("no-cache")) {
+                maxAge = 0;
+            } else if (directive.startsWith("max-age=")) {
+                try {
+                    maxAge = Long.parseLong(directive.substring("max-age=".length()).trim()) * 1000;
+                } catch (NumberFormatException e) {
+                    CoreLog.w(LOG_TAG, "Ignoring invalid Cache-Control: " + cacheControl);
+                }
+            }
+        }
+        return maxAge;
+    }
+
+    /**
+     * Returns the URL in a normal form, so that URLs that only differ in the case of the scheme
+     * and host, surrounding whitespace or the order of the query parameters share an entry. A
+     * volumes search URL gets the canonical form of its {@link BookQuery}, so searches that only
+     * differ in the case, whitespace or encoding of their terms share one too.
+     */
+    static String normalizeUrl(String url) {
+        BookQuery bookQuery = BookQuery.parse(url);
+        if (bookQuery != null) {
+            return bookQuery.getUrl();
+        }
+
+        String trimmed = url.trim();
+
+        int queryStart = trimmed.indexOf('?');
+        String base = queryStart == -1 ? trimmed : trimmed.substring(0, queryStart);
+        String query = queryStart == -1 ? "" : trimmed.substring(queryStart + 1);
+
+        int hostStart = base.indexOf("://");
+        int pathStart = hostStart == -1 ? -1 : base.indexOf('/', hostStart + 3);
+        if (pathStart == -1) {
+            base = base.toLowerCase(Locale.US);
+        } else {
+            base = base.substring(0, pathStart).toLowerCase(Locale.US) + base.substring(pathStart);
+        }
+
+        if (query.isEmpty()) {
+            return base;
+        }
+
+        String[] parameters = query.split("&");
+        Arrays.sort(parameters);
+        StringBuilder normalized = new StringBuilder(base).append('?');
+        boolean first = true;
+        for (String parameter : parameters) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            if (!first) {
+                normalized.append('&');
+            }
+            normalized.append(parameter);
+            first = false;
+        }
+        return normalized.toString();
+    }
+
+    private Entry readFromDisk(String key) {
+        File file = Files.fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FILE_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            String eTag = in.readUTF();
+            long expiresAt = in.readLong();
+            int totalItems = in.readInt();
+            List<BookListing> booklistings = BookListingCodec.read(in);
+            return new Entry(new BookListingPage(booklistings, totalItems), eTag.isEmpty() ? null : eTag, expiresAt);
+        } catch (IOException e) {
+            CoreLog.w(LOG_TAG, "Problem reading the cache file " + file, e);
+            file.delete();
+            return null;
+        } finally {
+            CacheFiles.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Write the entry to its file and trim the directory. Takes the monitor of the files, and
+     * must be called without holding the cache's.
+     */
+    private void writeToDisk(String key, Entry entry) {
+        int evicted;
+        synchronized (Files) {
+            // A later put of the same URL has been written already, or is about to be
+            synchronized (this) {
+                Entry current = MemoryCache.get(key);
+                if (current != null && current != entry) {
+                    return;
+                }
+            }
+            writeFile(key, entry);
+            evicted = Files.trim();
+        }
+        if (evicted > 0) {
+            synchronized (this) {
+                DiskEvictionCount += evicted;
+            }
+        }
+    }
+
+    private void writeFile(String key, Entry entry) {
+        if (!Files.makeDirectory()) {
+            return;
+        }
+
+        File file = Files.fileFor(key);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(key);
+            out.writeUTF(entry.getETag() != null ? entry.getETag() : "");
+            out.writeLong(entry.ExpiresAt);
+            out.writeInt(entry.getPage().getTotalItems());
+            BookListingCodec.write(out, entry.getBookListings());
+        } catch (IOException e) {
+            CoreLog.w(LOG_TAG, "Problem writing the cache file " + file, e);
+            CacheFiles.closeQuietly(out);
+            out = null;
+            file.delete();
+        } finally {
+            CacheFiles.closeQuietly(out);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.android.booklistingapp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads and writes a list of {@link BookListing}s in a compact binary form: a version byte,
+ * the number of books, and then the fields of each book as modified UTF-8 strings. The volume id
+ * is optional and is preceded by a flag.
+ */
+final class BookListingCodec {
+
+    /** Version of the binary form. Bump it whenever the layout changes. */
+    static final int VERSION = 2;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookListingCodec} object.
+     */
+    private BookListingCodec() {
+    }
+
+    /**
+     * Write the list of books to the output stream.
+     */
+    static void write(DataOutputStream out, List<BookListing> booklistings) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(booklistings.size());
+        for (BookListing booklisting : booklistings) {
+            out.writeBoolean(booklisting.getId() != null);
+            if (booklisting.getId() != null) {
+                out.writeUTF(booklisting.getId());
+            }
+            out.writeUTF(booklisting.getTitle());
+            out.writeUTF(booklisting.getAuthors());
+            out.writeUTF(booklisting.getPublishedDate());
+            out.writeUTF(booklisting.getThumbnail());
+            out.writeUTF(booklisting.getTextSnippet());
+        }
+    }
+
+    /**
+     * Read a list of books written by {@link #write(DataOutputStream, List)}.
+     */
+    static List<BookListing> read(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported book listing version " + version);
+        }
+
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid book listing count " + count);
+        }
+
+        CompactBookListingList booklistings = new CompactBookListingList(count);
+        for (int i = 0; i < count; i++) {
+            String id = in.readBoolean() ? in.readUTF() : null;
+            String title = in.readUTF();
+            String authors = in.readUTF();
+            String publishedDate = in.readUTF();
+            String thumbnail = in.readUTF();
+            String textSnippet = in.readUTF();
+            booklistings.add(new BookListing(id, title, authors, publishedDate, thumbnail, textSnippet));
+        }
+        booklistings.trimToSize();
+        return booklistings;
+    }
+}
@@ -0,0 +1,536 @@
+package com.example.android.booklistingapp;
+
+//https://developers.google.com/protocol-buffers/docs/encoding#varints
+//http://jsonlines.org/
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Exports {@link BookListing}s to a file and imports them back, one book at a time, so tens of
+ * thousands of books never have to be in memory together.
+ *
+ * There are two formats:
+ *
+ * - {@link Format#BINARY}: the magic "BKLX" and a version byte, then one record per book. A
+ *   record is its length as a varint, a byte of flags, and the fields that are present as
+ *   varint-length-prefixed UTF-8. A field holding its placeholder, such as
+ *   {@link BookListing#NO_THUMBNAIL}, is only a cleared flag. Readers skip what is left of a
+ *   record after the fields they know, so fields can be added without a new version. It is read
+ *   through a memory-mapped buffer.
+ * - {@link Format#JSON_LINES}: one JSON object per line, for tools that would rather not decode
+ *   the binary format. Fields holding their placeholder are left out.
+ *
+ * An import never fails on a bad book: a malformed record or line is skipped and counted, and a
+ * binary file that was cut off keeps the records before the cut.
+ */
+final class BookListingExport {
+
+    /**
+     * The formats of an export file.
+     */
+    enum Format {
+        BINARY(".bklx"),
+        JSON_LINES(".jsonl");
+
+        private final String Extension;
+
+        Format(String extension) {
+            Extension = extension;
+        }
+
+        /**
+         * Returns the usual file name extension of the format, with its dot.
+         */
+        String getExtension() {
+            return Extension;
+        }
+    }
+
+    /** Version of the binary format. Bump it whenever existing fields change meaning. */
+    static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'B', 'K', 'L', 'X'};
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Flags of a binary record: which fields are present */
+    private static final int HAS_ID = 1;
+    private static final int HAS_TITLE = 1 << 1;
+    private static final int HAS_AUTHORS = 1 << 2;
+    private static final int HAS_PUBLISHED_DATE = 1 << 3;
+    private static final int HAS_THUMBNAIL = 1 << 4;
+    private static final int HAS_TEXT_SNIPPET = 1 << 5;
+
+    /** Names of the fields of a JSON line */
+    private static final String ID = "id";
+    private static final String TITLE = "title";
+    private static final String AUTHORS = "authors";
+    private static final String PUBLISHED_DATE = "publishedDate";
+    private static final String THUMBNAIL = "thumbnail";
+    private static final String TEXT_SNIPPET = "textSnippet";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookListingExport} object.
+     */
+    private BookListingExport() {
+    }
+
+    /**
+     * Writes books to an export file, one at a time.
+     */
+    abstract static class Exporter implements Closeable {
+
+        private int Count;
+
+        /**
+         * Write one book.
+         */
+        final void write(BookListing booklisting) throws IOException {
+            writeBookListing(booklisting);
+            Count++;
+        }
+
+        /**
+         * Returns the number of books written so far.
+         */
+        final int getCount() {
+            return Count;
+        }
+
+        abstract void writeBookListing(BookListing booklisting) throws IOException;
+    }
+
+    /**
+     * Reads the books of an export file, one at a time.
+     */
+    abstract static class Importer implements Closeable {
+
+        private int SkippedCount;
+
+        /**
+         * Returns the next book, or null at the end of the file.
+         */
+        abstract BookListing next() throws IOException;
+
+        /**
+         * Returns the number of malformed books that were skipped so far.
+         */
+        final int getSkippedCount() {
+            return SkippedCount;
+        }
+
+        final void skipped() {
+            SkippedCount++;
+        }
+    }
+
+    /**
+     * Returns an exporter that writes to the stream in the given format. Closing the exporter
+     * closes the stream.
+     */
+    static Exporter newExporter(OutputStream out, Format format) throws IOException {
+        if (format == Format.BINARY) {
+            return new BinaryExporter(out);
+        }
+        return new JsonLinesExporter(out);
+    }
+
+    /**
+     * Returns an importer for the file, of either format. A binary file is mapped into memory.
+     */
+    static Importer openImporter(File file) throws IOException {
+        if (hasMagic(file)) {
+            return new BinaryImporter(file);
+        }
+        return new JsonLinesImporter(new FileInputStream(file));
+    }
+
+    /**
+     * Returns true if the file starts with the magic of the binary format.
+     */
+    private static boolean hasMagic(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            int read = 0;
+            while (read < magic.length) {
+                int count = in.read(magic, read, magic.length - read);
+                if (count == -1) {
+                    return false;
+                }
+                read += count;
+            }
+            return Arrays.equals(magic, MAGIC);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the binary format.
+     */
+    private static final class BinaryExporter extends Exporter {
+
+        private final OutputStream Out;
+
+        /** The record being written, so its length can be written before it */
+        private final ByteArrayOutputStream Record = new ByteArrayOutputStream(256);
+
+        BinaryExporter(OutputStream out) throws IOException {
+            Out = new BufferedOutputStream(out, 64 * 1024);
+            Out.write(MAGIC);
+            Out.write(VERSION);
+        }
+
+        @Override
+        void writeBookListing(BookListing booklisting) throws IOException {
+            int flags = (booklisting.getId() != null ? HAS_ID : 0)
+                    | (isPresent(booklisting.getTitle(), BookListing.NO_TITLE) ? HAS_TITLE : 0)
+                    | (isPresent(booklisting.getAuthors(), BookListing.NO_AUTHOR) ? HAS_AUTHORS : 0)
+                    | (isPresent(booklisting.getPublishedDate(), BookListing.NO_PUBLISHED_DATE) ? HAS_PUBLISHED_DATE : 0)
+                    | (isPresent(booklisting.getThumbnail(), BookListing.NO_THUMBNAIL) ? HAS_THUMBNAIL : 0)
+                    | (isPresent(booklisting.getTextSnippet(), BookListing.NO_TEXT_SNIPPET) ? HAS_TEXT_SNIPPET : 0);
+
+            Record.reset();
+            Record.write(flags);
+            writeString(flags, HAS_ID, booklisting.getId());
+            writeString(flags, HAS_TITLE, booklisting.getTitle());
+            writeString(flags, HAS_AUTHORS, booklisting.getAuthors());
+            writeString(flags, HAS_PUBLISHED_DATE, booklisting.getPublishedDate());
+            writeString(flags, HAS_THUMBNAIL, booklisting.getThumbnail());
+            writeString(flags, HAS_TEXT_SNIPPET, booklisting.getTextSnippet());
+
+            writeVarint(Out, Record.size());
+            Record.writeTo(Out);
+        }
+
+        private void writeString(int flags, int flag, String value) throws IOException {
+            if ((flags & flag) == 0) {
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(Record, bytes.length);
+            Record.write(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            Out.close();
+        }
+    }
+
+    /**
+     * Reads the binary format from a memory-mapped file.
+     */
+    private static final class BinaryImporter extends Importer {
+
+        private final ByteBuffer Buffer;
+
+        /** Holds the bytes of one string while it is decoded */
+        private byte[] Scratch = new byte[256];
+
+        BinaryImporter(File file) throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Export file too large to map: " + size + " bytes");
+                }
+                // The mapping stays valid after the channel is closed
+                Buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } finally {
+                closeQuietly(randomAccessFile);
+            }
+
+            Buffer.position(MAGIC.length);
+            if (!Buffer.hasRemaining()) {
+                throw new IOException("Export file without a version");
+            }
+            int version = Buffer.get() & 0xff;
+            if (version != VERSION) {
+                throw new IOException("Unsupported export version " + version);
+            }
+        }
+
+        @Override
+        BookListing next() throws IOException {
+            while (Buffer.hasRemaining()) {
+                int length;
+                try {
+                    length = readVarint(Buffer);
+                } catch (BufferUnderflowException e) {
+                    // Cut off in the middle of a length
+                    skipped();
+                    return null;
+                }
+                if (length < 0 || length > Buffer.remaining()) {
+                    // Cut off in the middle of a record, or a length that cannot be trusted
+                    skipped();
+                    Buffer.position(Buffer.limit());
+                    return null;
+                }
+
+                int end = Buffer.position() + length;
+                ByteBuffer record = Buffer.duplicate();
+                record.limit(end);
+                Buffer.position(end);
+                try {
+                    return readRecord(record);
+                } catch (BufferUnderflowException e) {
+                    // A field runs past the end of its record; the next record is still good
+                    skipped();
+                } catch (IllegalArgumentException e) {
+                    skipped();
+                }
+            }
+            return null;
+        }
+
+        private BookListing readRecord(ByteBuffer record) {
+            int flags = record.get() & 0xff;
+            String id = (flags & HAS_ID) != 0 ? readString(record) : null;
+            String title = (flags & HAS_TITLE) != 0 ? readString(record) : BookListing.NO_TITLE;
+            String authors = (flags & HAS_AUTHORS) != 0
+                    ? StringPool.intern(readString(record)) : BookListing.NO_AUTHOR;
+            String publishedDate = (flags & HAS_PUBLISHED_DATE) != 0
+                    ? StringPool.intern(readString(record)) : BookListing.NO_PUBLISHED_DATE;
+            String thumbnail = (flags & HAS_THUMBNAIL) != 0 ? readString(record) : BookListing.NO_THUMBNAIL;
+            String textSnippet = (flags & HAS_TEXT_SNIPPET) != 0 ? readString(record) : BookListing.NO_TEXT_SNIPPET;
+            return new BookListing(id, title, authors, publishedDate, thumbnail, textSnippet);
+        }
+
+        private String readString(ByteBuffer record) {
+            int length = readVarint(record);
+            if (length < 0 || length > record.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            if (Scratch.length < length) {
+                Scratch = new byte[Math.max(length, Scratch.length * 2)];
+            }
+            record.get(Scratch, 0, length);
+            return new String(Scratch, 0, length, UTF_8);
+        }
+
+        @Override
+        public void close() {
+            // The mapping is released when the buffer is garbage collected
+        }
+    }
+
+    /**
+     * Writes the JSON-lines format.
+     */
+    private static final class JsonLinesExporter extends Exporter {
+
+        private final Writer Out;
+
+        JsonLinesExporter(OutputStream out) {
+            Out = new BufferedWriter(new OutputStreamWriter(out, UTF_8), 64 * 1024);
+        }
+
+        @Override
+        void writeBookListing(BookListing booklisting) throws IOException {
+            boolean first = true;
+            Out.write('{');
+            first = writeField(ID, booklisting.getId(), null, first);
+            first = writeField(TITLE, booklisting.getTitle(), BookListing.NO_TITLE, first);
+            first = writeField(AUTHORS, booklisting.getAuthors(), BookListing.NO_AUTHOR, first);
+            first = writeField(PUBLISHED_DATE, booklisting.getPublishedDate(), BookListing.NO_PUBLISHED_DATE, first);
+            first = writeField(THUMBNAIL, booklisting.getThumbnail(), BookListing.NO_THUMBNAIL, first);
+            writeField(TEXT_SNIPPET, booklisting.getTextSnippet(), BookListing.NO_TEXT_SNIPPET, first);
+            Out.write("}\n");
+        }
+
+        /**
+         * Write "name":"value" unless the value is its placeholder. Returns false once a field
+         * has been written.
+         */
+        private boolean writeField(String name, String value, String placeholder, boolean first) throws IOException {
+            if (!isPresent(value, placeholder)) {
+                return first;
+            }
+            if (!first) {
+                Out.write(',');
+            }
+            Out.write('"');
+            Out.write(name);
+            Out.write("\":\"");
+            writeEscaped(value);
+            Out.write('"');
+            return false;
+        }
+
+        private void writeEscaped(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        Out.write("\\\"");
+                        break;
+                    case '\\':
+                        Out.write("\\\\");
+                        break;
+                    case '\n':
+                        Out.write("\\n");
+                        break;
+                    case '\r':
+                        Out.write("\\r");
+                        break;
+                    case '\t':
+                        Out.write("\\t");
+                        break;
+                    default:
+                        // Control characters, and the separators that end a line in JavaScript
+                        if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                            Out.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            Out.write(c);
+                        }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            Out.close();
+        }
+    }
+
+    /**
+     * Reads the JSON-lines format. Blank lines are ignored.
+     */
+    private static final class JsonLinesImporter extends Importer {
+
+        private final BufferedReader In;
+
+        JsonLinesImporter(InputStream in) {
+            In = new BufferedReader(new InputStreamReader(in, UTF_8), 64 * 1024);
+        }
+
+        @Override
+        BookListing next() throws IOException {
+            String line;
+            while ((line = In.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    return readLine(line);
+                } catch (JsonPullReader.MalformedJsonException e) {
+                    skipped();
+                }
+            }
+            return null;
+        }
+
+        private static BookListing readLine(String line) throws IOException {
+            JsonPullReader reader = new JsonPullReader(new StringReader(line));
+            String id = null;
+            String title = null;
+            String authors = null;
+            String publishedDate = null;
+            String thumbnail = null;
+            String textSnippet = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (ID.equals(name)) {
+                    id = BookListingStreamParser.nextStringOrNull(reader);
+                } else if (TITLE.equals(name)) {
+                    title = BookListingStreamParser.nextStringOrNull(reader);
+                } else if (AUTHORS.equals(name)) {
+                    authors = BookListingStreamParser.nextStringOrNull(reader);
+                } else if (PUBLISHED_DATE.equals(name)) {
+                    publishedDate = BookListingStreamParser.nextStringOrNull(reader);
+                } else if (THUMBNAIL.equals(name)) {
+                    thumbnail = BookListingStreamParser.nextStringOrNull(reader);
+                } else if (TEXT_SNIPPET.equals(name)) {
+                    textSnippet = BookListingStreamParser.nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new BookListing(
+                    id,
+                    title != null ? title : BookListing.NO_TITLE,
+                    authors != null ? StringPool.intern(authors) : BookListing.NO_AUTHOR,
+                    publishedDate != null ? StringPool.intern(publishedDate) : BookListing.NO_PUBLISHED_DATE,
+                    thumbnail != null ? thumbnail : BookListing.NO_THUMBNAIL,
+                    textSnippet != null ? textSnippet : BookListing.NO_TEXT_SNIPPET);
+        }
+
+        @Override
+        public void close() throws IOException {
+            In.close();
+        }
+    }
+
+    /**
+     * Returns true if the value is there and is not the placeholder of its field.
+     */
+    private static boolean isPresent(String value, String placeholder) {
+        return value != null && !value.equals(placeholder);
+    }
+
+    /**
+     * Write an unsigned varint: seven bits per byte, low bits first, the high bit set on every
+     * byte but the last.
+     */
+    static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Read an unsigned varint. Returns -1 if it does not fit in an int.
+     *
+     * @throws BufferUnderflowException if the buffer ends in the middle of it
+     */
+    static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return shift == 28 && (b & 0x70) != 0 ? -1 : value;
+            }
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing useful to do here
+            }
+        }
+    }
+}
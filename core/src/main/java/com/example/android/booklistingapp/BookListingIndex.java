@@ -0,0 +1,490 @@
+package com.example.android.booklistingapp;
+
+//https://nlp.stanford.edu/IR-book/html/htmledition/a-first-take-at-building-an-inverted-index-1.html
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An in-memory inverted index over the books of a search, so the results that are already
+ * loaded can be refined, filtered and sorted without a new request.
+ *
+ * Every book gets the position it was added at. Each word of its title, authors and text
+ * snippet is lower-cased and added to the posting list of its field, a sorted array of
+ * positions; the year of its publishedDate goes to an index sorted by year. A {@link Refinement}
+ * intersects the posting lists of its words, which match as prefixes, keeps the books in its
+ * year range and returns their positions in the order it asks for.
+ *
+ * Books are only ever added, so every posting list stays sorted by appending to it, and adding
+ * a page costs only its own books. The index is not thread-safe: build and query it on one
+ * thread.
+ */
+final class BookListingIndex {
+
+    /**
+     * Orders of a refined list.
+     */
+    enum Sort {
+        /** The order the books were added in, which is the order of the API */
+        RELEVANCE,
+        /** Newest year first; books without a year last */
+        NEWEST,
+        /** Oldest year first; books without a year last */
+        OLDEST,
+        /** Title, ignoring case */
+        TITLE
+    }
+
+    /**
+     * Which books to keep and how to order them. Parse one with {@link #parse(String, Sort)}.
+     */
+    static final class Refinement {
+
+        /** Words that must each match the title, authors or text snippet */
+        final List<String> Words = new ArrayList<>();
+
+        /** Words that must each match the title */
+        final List<String> TitleWords = new ArrayList<>();
+
+        /** Words that must each match the authors */
+        final List<String> AuthorWords = new ArrayList<>();
+
+        /** Year range, inclusive; 0 leaves that end open */
+        int FromYear;
+        int ToYear;
+
+        Sort Order = Sort.RELEVANCE;
+
+        /**
+         * Parse a refinement the way a search is typed: free words, intitle: and inauthor:
+         * with the keywords of {@link BookQuery}, and year:1990, year:1990-1999, year:1990- or
+         * year:-1999. Anything else is matched as free words.
+         */
+        static Refinement parse(String text, Sort order) {
+            Refinement refinement = new Refinement();
+            refinement.Order = order;
+            if (text == null) {
+                return refinement;
+            }
+            for (String word : text.trim().split("\\s+")) {
+                int colon = word.indexOf(':');
+                String name = colon > 0 ? word.substring(0, colon) : "";
+                String value = word.substring(colon + 1);
+                if ("year".equalsIgnoreCase(name) && refinement.parseYears(value)) {
+                    continue;
+                }
+                BookQuery.Keyword keyword = BookQuery.Keyword.forName(name);
+                if (keyword == BookQuery.Keyword.INTITLE) {
+                    addTerms(value, refinement.TitleWords);
+                } else if (keyword == BookQuery.Keyword.INAUTHOR) {
+                    addTerms(value, refinement.AuthorWords);
+                } else {
+                    addTerms(word, refinement.Words);
+                }
+            }
+            return refinement;
+        }
+
+        /**
+         * Returns true if the refinement keeps every book in the order it was added.
+         */
+        boolean isEmpty() {
+            return Words.isEmpty() && TitleWords.isEmpty() && AuthorWords.isEmpty()
+                    && FromYear == 0 && ToYear == 0 && Order == Sort.RELEVANCE;
+        }
+
+        private boolean parseYears(String value) {
+            int dash = value.indexOf('-');
+            String from = dash >= 0 ? value.substring(0, dash) : value;
+            String to = dash >= 0 ? value.substring(dash + 1) : value;
+            try {
+                FromYear = from.isEmpty() ? 0 : Integer.parseInt(from);
+                ToYear = to.isEmpty() ? 0 : Integer.parseInt(to);
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+
+    /** Fields of a book that are indexed */
+    private static final int TITLE = 0;
+    private static final int AUTHORS = 1;
+    private static final int TEXT_SNIPPET = 2;
+    private static final int FIELDS = 3;
+
+    /** Books, by position */
+    private final List<BookListing> BookListings = new ArrayList<>();
+
+    /** Year of each book, by position, or 0 if it has none */
+    private int[] Years = new int[64];
+
+    /** Posting lists of each field, by word */
+    private final List<TreeMap<String, Postings>> Terms = new ArrayList<>(FIELDS);
+
+    /** Year in the high and position in the low 32 bits of every book, sorted */
+    private long[] ByYear = new long[0];
+
+    /** Positions sorted by title, or null until a sort by title needs them */
+    private int[] ByTitle;
+
+    BookListingIndex() {
+        for (int field = 0; field < FIELDS; field++) {
+            Terms.add(new TreeMap<String, Postings>());
+        }
+    }
+
+    /**
+     * Returns the number of books in the index.
+     */
+    int size() {
+        return BookListings.size();
+    }
+
+    /**
+     * Returns the book at the given position.
+     */
+    BookListing get(int position) {
+        return BookListings.get(position);
+    }
+
+    /**
+     * Add books after the ones already in the index. Their positions follow on.
+     */
+    void addAll(List<BookListing> booklistings) {
+        int first = BookListings.size();
+        if (first + booklistings.size() > Years.length) {
+            Years = Arrays.copyOf(Years, Math.max(Years.length * 2, first + booklistings.size()));
+        }
+
+        long[] newYears = new long[booklistings.size()];
+        for (int i = 0; i < booklistings.size(); i++) {
+            BookListing booklisting = booklistings.get(i);
+            int position = first + i;
+            BookListings.add(booklisting);
+
+            // The placeholders of a book without a value are not words of the book
+            if (!BookListing.NO_TITLE.equals(booklisting.getTitle())) {
+                index(TITLE, booklisting.getTitle(), position);
+            }
+            if (!BookListing.NO_AUTHOR.equals(booklisting.getAuthors())) {
+                index(AUTHORS, booklisting.getAuthors(), position);
+            }
+            if (!BookListing.NO_TEXT_SNIPPET.equals(booklisting.getTextSnippet())) {
+                index(TEXT_SNIPPET, booklisting.getTextSnippet(), position);
+            }
+
+            Years[position] = parseYear(booklisting.getPublishedDate());
+            newYears[i] = (long) Years[position] << 32 | position;
+        }
+
+        // Merge the new books into the year order, which costs one pass
+        Arrays.sort(newYears);
+        ByYear = merge(ByYear, newYears);
+        ByTitle = null;
+    }
+
+    /**
+     * Remove every book.
+     */
+    void clear() {
+        BookListings.clear();
+        for (TreeMap<String, Postings> terms : Terms) {
+            terms.clear();
+        }
+        ByYear = new long[0];
+        ByTitle = null;
+    }
+
+    /**
+     * Returns the positions of the books the refinement keeps, in its order.
+     */
+    int[] refine(Refinement refinement) {
+        // Intersect the posting lists of every word, narrowest field first
+        int[] matches = null;
+        for (String word : refinement.AuthorWords) {
+            matches = intersect(matches, lookup(word, AUTHORS, AUTHORS));
+        }
+        for (String word : refinement.TitleWords) {
+            matches = intersect(matches, lookup(word, TITLE, TITLE));
+        }
+        for (String word : refinement.Words) {
+            matches = intersect(matches, lookup(word, TITLE, TEXT_SNIPPET));
+        }
+
+        int from = refinement.FromYear;
+        int to = refinement.ToYear != 0 ? refinement.ToYear : Integer.MAX_VALUE;
+        boolean yearFilter = refinement.FromYear != 0 || refinement.ToYear != 0;
+
+        if (refinement.Order == Sort.RELEVANCE) {
+            if (matches == null) {
+                matches = all();
+            }
+            return yearFilter ? filterYears(matches, from, to) : matches;
+        }
+
+        BitSet kept = null;
+        if (matches != null) {
+            kept = new BitSet(BookListings.size());
+            for (int position : matches) {
+                kept.set(position);
+            }
+        }
+
+        if (refinement.Order == Sort.TITLE) {
+            int[] sorted = filter(getByTitle(), kept);
+            return yearFilter ? filterYears(sorted, from, to) : sorted;
+        }
+
+        // Walk the year index in the wanted direction, then add the books without a year
+        int[] result = new int[matches != null ? matches.length : BookListings.size()];
+        int count = 0;
+        int firstDated = firstIndexOfYear(yearFilter ? Math.max(from, 1) : 1);
+        int endDated = yearFilter && to != Integer.MAX_VALUE ? firstIndexOfYear(to + 1) : ByYear.length;
+        if (refinement.Order == Sort.OLDEST) {
+            for (int i = firstDated; i < endDated; i++) {
+                count = keep((int) ByYear[i], kept, result, count);
+            }
+        } else {
+            // Newest first, and the books of one year still in the order of the API
+            int i = endDated - 1;
+            while (i >= firstDated) {
+                int year = (int) (ByYear[i] >>> 32);
+                int start = i;
+                while (start > firstDated && (int) (ByYear[start - 1] >>> 32) == year) {
+                    start--;
+                }
+                for (int j = start; j <= i; j++) {
+                    count = keep((int) ByYear[j], kept, result, count);
+                }
+                i = start - 1;
+            }
+        }
+        if (!yearFilter) {
+            for (int i = 0; i < firstDated; i++) {
+                count = keep((int) ByYear[i], kept, result, count);
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the year at the start of a publishedDate, such as 2004 for "2004-05-01", or 0.
+     */
+    static int parseYear(String publishedDate) {
+        if (publishedDate == null || publishedDate.length() < 4) {
+            return 0;
+        }
+        int year = 0;
+        for (int i = 0; i < 4; i++) {
+            char c = publishedDate.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            year = year * 10 + (c - '0');
+        }
+        return year;
+    }
+
+    /**
+     * Split text into lower-case words of letters and digits.
+     */
+    static void addTerms(String text, List<String> terms) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                terms.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+    }
+
+    private void index(int field, String text, int position) {
+        List<String> words = new ArrayList<>();
+        addTerms(text, words);
+        TreeMap<String, Postings> terms = Terms.get(field);
+        for (String word : words) {
+            Postings postings = terms.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                terms.put(word, postings);
+            }
+            postings.add(position);
+        }
+    }
+
+    /**
+     * Returns the sorted positions of the books with a word that starts with the given one in
+     * any of the fields from firstField to lastField.
+     */
+    private int[] lookup(String word, int firstField, int lastField) {
+        // A short prefix can match many words, so their postings are collected in one bit set
+        BitSet union = new BitSet(BookListings.size());
+        for (int field = firstField; field <= lastField; field++) {
+            SortedMap<String, Postings> matches = Terms.get(field).subMap(word, word + Character.MAX_VALUE);
+            for (Map.Entry<String, Postings> entry : matches.entrySet()) {
+                Postings postings = entry.getValue();
+                for (int i = 0; i < postings.Size; i++) {
+                    union.set(postings.Positions[i]);
+                }
+            }
+        }
+        int[] positions = new int[union.cardinality()];
+        int count = 0;
+        for (int position = union.nextSetBit(0); position >= 0; position = union.nextSetBit(position + 1)) {
+            positions[count++] = position;
+        }
+        return positions;
+    }
+
+    private int[] all() {
+        int[] positions = new int[BookListings.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+        return positions;
+    }
+
+    private int[] filterYears(int[] positions, int from, int to) {
+        int[] result = new int[positions.length];
+        int count = 0;
+        for (int position : positions) {
+            int year = Years[position];
+            if (year != 0 && year >= from && year <= to) {
+                result[count++] = position;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the index in ByYear of the first book of the given year or later.
+     */
+    private int firstIndexOfYear(int year) {
+        int index = Arrays.binarySearch(ByYear, (long) year << 32);
+        // No book has a negative position, so the key itself is never found
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int[] getByTitle() {
+        if (ByTitle == null) {
+            Integer[] positions = new Integer[BookListings.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+            // A stable sort, so books with the same title keep the order of the API
+            Arrays.sort(positions, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    String titleA = BookListings.get(a).getTitle();
+                    String titleB = BookListings.get(b).getTitle();
+                    // Books without a title go last
+                    boolean noTitleA = BookListing.NO_TITLE.equals(titleA);
+                    boolean noTitleB = BookListing.NO_TITLE.equals(titleB);
+                    if (noTitleA || noTitleB) {
+                        return (noTitleA ? 1 : 0) - (noTitleB ? 1 : 0);
+                    }
+                    return titleA.compareToIgnoreCase(titleB);
+                }
+            });
+            ByTitle = new int[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                ByTitle[i] = positions[i];
+            }
+        }
+        return ByTitle;
+    }
+
+    private static int keep(int position, BitSet kept, int[] result, int count) {
+        if (kept == null || kept.get(position)) {
+            result[count++] = position;
+        }
+        return count;
+    }
+
+    private static int[] filter(int[] positions, BitSet kept) {
+        if (kept == null) {
+            return positions.clone();
+        }
+        int[] result = new int[kept.cardinality()];
+        int count = 0;
+        for (int position : positions) {
+            if (kept.get(position)) {
+                result[count++] = position;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the positions in both sorted arrays, or b if a is null.
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        if (a == null) {
+            return b;
+        }
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static long[] merge(long[] a, long[] b) {
+        long[] result = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length && j < b.length) {
+            result[k++] = a[i] <= b[j] ? a[i++] : b[j++];
+        }
+        while (i < a.length) {
+            result[k++] = a[i++];
+        }
+        while (j < b.length) {
+            result[k++] = b[j++];
+        }
+        return result;
+    }
+
+    /**
+     * Positions of the books with a word in a field, in the order they were added.
+     */
+    private static final class Postings {
+
+        int[] Positions = new int[4];
+        int Size;
+
+        void add(int position) {
+            // A word that appears twice in a field is listed once
+            if (Size > 0 && Positions[Size - 1] == position) {
+                return;
+            }
+            if (Size == Positions.length) {
+                Positions = Arrays.copyOf(Positions, Size * 2);
+            }
+            Positions[Size++] = position;
+        }
+    }
+}
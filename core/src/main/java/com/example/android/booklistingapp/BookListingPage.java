@@ -0,0 +1,71 @@
+package com.example.android.booklistingapp;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link BookListingPage} object holds one page of search results, together with the
+ * total number of results the query has. A page that is about to be shown also holds the
+ * {@link BookListingRow}s of its books.
+ */
+public class BookListingPage {
+
+    /**
+     * Books on this page
+     */
+    private List<BookListing> BookListings;
+
+    /**
+     * Total number of results for the query, as reported by Google Books
+     */
+    private int TotalItems;
+
+    /**
+     * Formatted rows of the books, in the same order, or null
+     */
+    private List<BookListingRow> Rows;
+
+    /**
+     * Constructs a new {@link BookListingPage} object.
+     *
+     * @param booklistings is the list of books on the page
+     * @param totalItems is the total number of results for the query
+     */
+    public BookListingPage(List<BookListing> booklistings, int totalItems) {
+        BookListings = Collections.unmodifiableList(booklistings);
+        TotalItems = totalItems;
+    }
+
+    /**
+     * Constructs a new {@link BookListingPage} object with the formatted rows of its books.
+     *
+     * @param page is the page of books
+     * @param rows are the rows of the books, in the same order
+     */
+    BookListingPage(BookListingPage page, List<BookListingRow> rows) {
+        BookListings = page.BookListings;
+        TotalItems = page.TotalItems;
+        Rows = Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * Returns the books on this page.
+     */
+    public List<BookListing> getBookListings() {
+        return BookListings;
+    }
+
+    /**
+     * Returns the total number of results for the query.
+     */
+    public int getTotalItems() {
+        return TotalItems;
+    }
+
+    /**
+     * Returns the formatted rows of the books, or null if they were not formatted.
+     */
+    List<BookListingRow> getRows() {
+        return Rows;
+    }
+}
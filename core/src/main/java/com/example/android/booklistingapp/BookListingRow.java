@@ -0,0 +1,53 @@
+package com.example.android.booklistingapp;
+
+/**
+ * The text of one row of the list, ready to be set on its views. It is made from a
+ * {@link BookListing} by a {@link BookListingFormatter} on a background thread, so binding a row
+ * only assigns these fields.
+ */
+final class BookListingRow {
+
+    private final CharSequence Title;
+    private final CharSequence Authors;
+    private final CharSequence PublishedDate;
+    private final String Thumbnail;
+    private final CharSequence TextSnippet;
+
+    /**
+     * Constructs a new {@link BookListingRow}.
+     *
+     * @param title is the title of the book
+     * @param authors is the names of the authors, joined
+     * @param publishedDate is the publishedDate, formatted for the locale
+     * @param thumbnail is the thumbnail URL of the book
+     * @param textSnippet is the textSnippet with its HTML decoded
+     */
+    BookListingRow(CharSequence title, CharSequence authors, CharSequence publishedDate, String thumbnail,
+                   CharSequence textSnippet) {
+        Title = title;
+        Authors = authors;
+        PublishedDate = publishedDate;
+        Thumbnail = thumbnail;
+        TextSnippet = textSnippet;
+    }
+
+    CharSequence getTitle() {
+        return Title;
+    }
+
+    CharSequence getAuthors() {
+        return Authors;
+    }
+
+    CharSequence getPublishedDate() {
+        return PublishedDate;
+    }
+
+    String getThumbnail() {
+        return Thumbnail;
+    }
+
+    CharSequence getTextSnippet() {
+        return TextSnippet;
+    }
+}
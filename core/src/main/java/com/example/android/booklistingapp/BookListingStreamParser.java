@@ -0,0 +1,279 @@
+package com.example.android.booklistingapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Streaming parser for Google Books volume search responses.
+ *
+ * It reads the {@link InputStream} once with a {@link JsonPullReader} and hands out each
+ * {@link BookListing} as soon as its element of the "items" array is finished. Parts of the
+ * response that the app never reads (saleInfo, accessInfo, industryIdentifiers, ...) are skipped
+ * without being decoded.
+ *
+ * A malformed item only costs itself: an element that is not an object is skipped, and a missing
+ * or mistyped field gets its placeholder. Both are counted in {@link FetchMetrics}.
+ */
+public final class BookListingStreamParser {
+
+    /**
+     * Receives the results of a parse as they are read.
+     */
+    public interface Callback {
+
+        /**
+         * Called with the "totalItems" count of the response, if it has one.
+         */
+        void onTotalItems(int totalItems);
+
+        /**
+         * Called once for every book in the "items" array, in order.
+         */
+        void onBookListing(BookListing booklisting);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link BookListingStreamParser} object.
+     */
+    private BookListingStreamParser() {
+    }
+
+    /**
+     * Parse the whole response and return the page of {@link BookListing}s it contains.
+     */
+    public static BookListingPage parse(InputStream inputStream) throws IOException {
+        final CompactBookListingList booklistings = new CompactBookListingList();
+        final int[] totalItems = {0};
+        parse(inputStream, new Callback() {
+            @Override
+            public void onTotalItems(int total) {
+                totalItems[0] = total;
+            }
+
+            @Override
+            public void onBookListing(BookListing booklisting) {
+                booklistings.add(booklisting);
+            }
+        });
+        booklistings.trimToSize();
+        return new BookListingPage(booklistings, totalItems[0]);
+    }
+
+    /**
+     * Parse the response, passing each {@link BookListing} to the callback as soon as it has
+     * been read.
+     */
+    public static void parse(InputStream inputStream, Callback callback) throws IOException {
+        JsonPullReader reader = new JsonPullReader(new InputStreamReader(inputStream, UTF_8));
+        ItemFields fields = new ItemFields();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("items".equals(name) && reader.peek() == JsonPullReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    fields.clear();
+                    if (readItem(reader, fields)) {
+                        callback.onBookListing(fields.toBookListing());
+                    }
+                }
+                reader.endArray();
+            } else if ("totalItems".equals(name) && reader.peek() == JsonPullReader.Token.NUMBER) {
+                readTotalItems(reader, callback);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "totalItems" count. A number that is not an int, such as 1.5e3, is counted as a
+     * {@link FetchMetrics.ItemError#WRONG_TYPE} and ignored instead of failing the response.
+     */
+    private static void readTotalItems(JsonPullReader reader, Callback callback) throws IOException {
+        String totalItems = reader.nextString();
+        try {
+            callback.onTotalItems(Integer.parseInt(totalItems));
+        } catch (NumberFormatException e) {
+            FetchMetrics.recordItemError(FetchMetrics.ItemError.WRONG_TYPE);
+        }
+    }
+
+    /**
+     * Read one element of the "items" array. Returns false, and skips the element, if it is not
+     * an object; a missing or malformed field only loses that field.
+     */
+    private static boolean readItem(JsonPullReader reader, ItemFields fields) throws IOException {
+        if (reader.peek() != JsonPullReader.Token.BEGIN_OBJECT) {
+            FetchMetrics.recordItemError(FetchMetrics.ItemError.NOT_AN_OBJECT);
+            reader.skipValue();
+            return false;
+        }
+        boolean hasVolumeInfo = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name)) {
+                fields.Id = nextStringOrNull(reader);
+            } else if ("volumeInfo".equals(name)) {
+                hasVolumeInfo = readVolumeInfo(reader, fields);
+            } else if ("searchInfo".equals(name)) {
+                readSearchInfo(reader, fields);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!hasVolumeInfo) {
+            FetchMetrics.recordItemError(FetchMetrics.ItemError.NO_VOLUME_INFO);
+        }
+        return true;
+    }
+
+    private static boolean readVolumeInfo(JsonPullReader reader, ItemFields fields) throws IOException {
+        if (!beginObjectOrSkip(reader)) {
+            return false;
+        }
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("title".equals(name)) {
+                fields.Title = nextStringOrNull(reader);
+            } else if ("authors".equals(name)) {
+                fields.Authors = readJoined(reader);
+            } else if ("publishedDate".equals(name)) {
+                fields.PublishedDate = nextStringOrNull(reader);
+            } else if ("imageLinks".equals(name)) {
+                readImageLinks(reader, fields);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return true;
+    }
+
+    private static void readImageLinks(JsonPullReader reader, ItemFields fields) throws IOException {
+        if (!beginObjectOrSkip(reader)) {
+            return;
+        }
+        while (reader.hasNext()) {
+            if ("thumbnail".equals(reader.nextName())) {
+                fields.Thumbnail = nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readSearchInfo(JsonPullReader reader, ItemFields fields) throws IOException {
+        if (!beginObjectOrSkip(reader)) {
+            return;
+        }
+        while (reader.hasNext()) {
+            if ("textSnippet".equals(reader.nextName())) {
+                fields.TextSnippet = nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read an array of names, such as "authors", and join them with ", ".
+     */
+    static String readJoined(JsonPullReader reader) throws IOException {
+        if (reader.peek() != JsonPullReader.Token.BEGIN_ARRAY) {
+            return nextStringOrNull(reader);
+        }
+
+        StringBuilder joined = new StringBuilder();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String name = nextStringOrNull(reader);
+            if (name != null) {
+                if (joined.length() > 0) {
+                    joined.append(", ");
+                }
+                joined.append(name);
+            }
+        }
+        reader.endArray();
+        return joined.length() > 0 ? joined.toString() : null;
+    }
+
+    /**
+     * Enter the object that comes next, or skip the value if it is not an object. A value other
+     * than null is counted as a {@link FetchMetrics.ItemError#WRONG_TYPE}.
+     */
+    static boolean beginObjectOrSkip(JsonPullReader reader) throws IOException {
+        JsonPullReader.Token token = reader.peek();
+        if (token == JsonPullReader.Token.BEGIN_OBJECT) {
+            reader.beginObject();
+            return true;
+        }
+        if (token != JsonPullReader.Token.NULL) {
+            FetchMetrics.recordItemError(FetchMetrics.ItemError.WRONG_TYPE);
+        }
+        reader.skipValue();
+        return false;
+    }
+
+    /**
+     * Read a string, number or boolean value as text. Returns null for anything else; an object
+     * or an array is counted as a {@link FetchMetrics.ItemError#WRONG_TYPE}.
+     */
+    static String nextStringOrNull(JsonPullReader reader) throws IOException {
+        JsonPullReader.Token token = reader.peek();
+        if (token == JsonPullReader.Token.STRING || token == JsonPullReader.Token.NUMBER
+                || token == JsonPullReader.Token.BOOLEAN) {
+            return reader.nextString();
+        }
+        if (token != JsonPullReader.Token.NULL) {
+            FetchMetrics.recordItemError(FetchMetrics.ItemError.WRONG_TYPE);
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * The fields of the item that is being read. One instance is reused for the whole response.
+     */
+    private static final class ItemFields {
+
+        String Id;
+        String Title;
+        String Authors;
+        String PublishedDate;
+        String Thumbnail;
+        String TextSnippet;
+
+        void clear() {
+            Id = null;
+            Title = null;
+            Authors = null;
+            PublishedDate = null;
+            Thumbnail = null;
+            TextSnippet = null;
+        }
+
+        BookListing toBookListing() {
+            return new BookListing(
+                    Id,
+                    Title != null ? Title : BookListing.NO_TITLE,
+                    Authors != null ? StringPool.intern(Authors) : BookListing.NO_AUTHOR,
+                    PublishedDate != null ? StringPool.intern(PublishedDate) : BookListing.NO_PUBLISHED_DATE,
+                    Thumbnail != null ? Thumbnail : BookListing.NO_THUMBNAIL,
+                    TextSnippet != null ? TextSnippet : BookListing.NO_TEXT_SNIPPET);
+        }
+    }
+}
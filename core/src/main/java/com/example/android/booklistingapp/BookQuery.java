@@ -0,0 +1,524 @@
+package com.example.android.booklistingapp;
+
+//https://developers.google.com/books/docs/v1/using#PerformingSearch
+//https://developers.google.com/books/docs/v1/reference/volumes/list
+//https://tools.ietf.org/html/rfc3986#section-2.3
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A search of the Google Books volumes collection, built from typed parts instead of by
+ * concatenating strings.
+ *
+ * Every query has one canonical URL: the search terms and keyword values are trimmed, their
+ * whitespace collapsed and lower-cased (the API ignores case), the keywords are written in a fixed
+ * order after the free text, default parameters are left out, and the parameters are sorted by
+ * name and percent-encoded the same way every time. Two queries that ask the API for the same
+ * results therefore have the same URL and the same {@link #getKey()}, which the result cache and
+ * the in-flight request table use to find each other's work.
+ *
+ * Build a query with a {@link Builder}, or read one back from a URL with {@link #parse(String)}.
+ */
+final class BookQuery {
+
+    /** Volumes search endpoint of the Google Books API */
+    static final String DEFAULT_ENDPOINT = "https://www.googleapis.com/books/v1/volumes";
+
+    /** Largest page the API returns */
+    static final int MAX_RESULTS_LIMIT = 40;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** FNV-1a constants for {@link #hashKey(String)} */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Characters written as they are in the canonical URL, besides letters and digits */
+    private static final String UNESCAPED = "-._~(),:";
+
+    /**
+     * Special keywords of the q parameter, in the order they are written.
+     */
+    enum Keyword {
+        INTITLE("intitle"),
+        INAUTHOR("inauthor"),
+        INPUBLISHER("inpublisher"),
+        SUBJECT("subject"),
+        ISBN("isbn"),
+        LCCN("lccn"),
+        OCLC("oclc");
+
+        private final String Name;
+
+        Keyword(String name) {
+            Name = name;
+        }
+
+        /**
+         * Returns the keyword for its name in a query, or null.
+         */
+        static Keyword forName(String name) {
+            for (Keyword keyword : values()) {
+                if (keyword.Name.equalsIgnoreCase(name)) {
+                    return keyword;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Values of the orderBy parameter.
+     */
+    enum OrderBy {
+        RELEVANCE,
+        NEWEST
+    }
+
+    /**
+     * Values of the printType parameter.
+     */
+    enum PrintType {
+        ALL,
+        BOOKS,
+        MAGAZINES
+    }
+
+    /**
+     * Values of the projection parameter.
+     */
+    enum Projection {
+        FULL,
+        LITE
+    }
+
+    private final String Endpoint;
+    private final String Terms;
+    private final Map<Keyword, String> Keywords;
+    private final OrderBy Order;
+    private final PrintType Print;
+    private final String LangRestrict;
+    private final Projection ProjectionValue;
+    private final String Fields;
+    private final int StartIndex;
+    private final int MaxResults;
+    private final Map<String, String> OtherParameters;
+
+    /** Canonical URL, built once */
+    private final String Url;
+
+    private BookQuery(Builder builder) {
+        Endpoint = builder.Endpoint;
+        Terms = builder.Terms;
+        Keywords = new EnumMap<>(builder.Keywords);
+        Order = builder.Order;
+        Print = builder.Print;
+        LangRestrict = builder.LangRestrict;
+        ProjectionValue = builder.ProjectionValue;
+        Fields = builder.Fields;
+        StartIndex = builder.StartIndex;
+        MaxResults = builder.MaxResults;
+        OtherParameters = new TreeMap<>(builder.OtherParameters);
+        Url = buildUrl();
+    }
+
+    /**
+     * Returns the canonical URL of the query.
+     */
+    String getUrl() {
+        return Url;
+    }
+
+    /**
+     * Returns a short key of the canonical URL that is the same on every run and every device.
+     */
+    String getKey() {
+        return hashKey(Url);
+    }
+
+    /**
+     * Returns the value of the q parameter: the free text followed by the keywords.
+     */
+    String getQ() {
+        StringBuilder q = new StringBuilder(Terms);
+        for (Map.Entry<Keyword, String> keyword : Keywords.entrySet()) {
+            if (q.length() > 0) {
+                q.append(' ');
+            }
+            String value = keyword.getValue();
+            q.append(keyword.getKey().Name).append(':');
+            if (value.indexOf(' ') >= 0) {
+                q.append('"').append(value).append('"');
+            } else {
+                q.append(value);
+            }
+        }
+        return q.toString();
+    }
+
+    int getStartIndex() {
+        return StartIndex;
+    }
+
+    int getMaxResults() {
+        return MaxResults;
+    }
+
+    /**
+     * Returns a builder that starts with the values of this query.
+     */
+    Builder buildUpon() {
+        Builder builder = new Builder();
+        builder.Endpoint = Endpoint;
+        builder.Terms = Terms;
+        builder.Keywords.putAll(Keywords);
+        builder.Order = Order;
+        builder.Print = Print;
+        builder.LangRestrict = LangRestrict;
+        builder.ProjectionValue = ProjectionValue;
+        builder.Fields = Fields;
+        builder.StartIndex = StartIndex;
+        builder.MaxResults = MaxResults;
+        builder.OtherParameters.putAll(OtherParameters);
+        return builder;
+    }
+
+    /**
+     * Returns the same query for one page of results.
+     */
+    BookQuery page(int startIndex, int maxResults) {
+        return buildUpon().setStartIndex(startIndex).setMaxResults(maxResults).build();
+    }
+
+    private String buildUrl() {
+        // Sorted by name; defaults are left out
+        Map<String, String> parameters = new TreeMap<>(OtherParameters);
+        if (Fields != null) {
+            parameters.put("fields", Fields);
+        }
+        if (LangRestrict != null) {
+            parameters.put("langRestrict", LangRestrict);
+        }
+        if (MaxResults > 0) {
+            parameters.put("maxResults", String.valueOf(MaxResults));
+        }
+        if (Order != OrderBy.RELEVANCE) {
+            parameters.put("orderBy", Order.name().toLowerCase(Locale.US));
+        }
+        if (Print != PrintType.ALL) {
+            parameters.put("printType", Print.name().toLowerCase(Locale.US));
+        }
+        if (ProjectionValue != Projection.FULL) {
+            parameters.put("projection", ProjectionValue.name().toLowerCase(Locale.US));
+        }
+        parameters.put("q", getQ());
+        if (StartIndex > 0) {
+            parameters.put("startIndex", String.valueOf(StartIndex));
+        }
+
+        StringBuilder url = new StringBuilder(Endpoint);
+        char separator = '?';
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            url.append(separator).append(parameter.getKey()).append('=');
+            encode(parameter.getValue(), url);
+            separator = '&';
+        }
+        return url.toString();
+    }
+
+    /**
+     * Read a volumes search URL back into a query, or return null if the URL is not one.
+     */
+    static BookQuery parse(String url) {
+        String trimmed = url.trim();
+        int queryStart = trimmed.indexOf('?');
+        String endpoint = queryStart == -1 ? trimmed : trimmed.substring(0, queryStart);
+        if (!endpoint.endsWith("/volumes")) {
+            return null;
+        }
+
+        Builder builder = new Builder().setEndpoint(endpoint);
+        if (queryStart == -1) {
+            return builder.build();
+        }
+        try {
+            for (String parameter : trimmed.substring(queryStart + 1).split("&")) {
+                if (parameter.isEmpty()) {
+                    continue;
+                }
+                int equals = parameter.indexOf('=');
+                String name = equals == -1 ? parameter : parameter.substring(0, equals);
+                String value = equals == -1 ? "" : URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+                if ("q".equals(name)) {
+                    parseQ(value, builder);
+                } else if ("orderBy".equals(name)) {
+                    builder.setOrderBy(OrderBy.valueOf(value.toUpperCase(Locale.US)));
+                } else if ("printType".equals(name)) {
+                    builder.setPrintType(PrintType.valueOf(value.toUpperCase(Locale.US)));
+                } else if ("projection".equals(name)) {
+                    builder.setProjection(Projection.valueOf(value.toUpperCase(Locale.US)));
+                } else if ("langRestrict".equals(name)) {
+                    builder.setLangRestrict(value);
+                } else if ("fields".equals(name)) {
+                    builder.setFields(value);
+                } else if ("startIndex".equals(name)) {
+                    builder.setStartIndex(Integer.parseInt(value));
+                } else if ("maxResults".equals(name)) {
+                    builder.setMaxResults(Integer.parseInt(value));
+                } else {
+                    builder.setParameter(name, value);
+                }
+            }
+            return builder.build();
+        } catch (IllegalArgumentException e) {
+            // Also a NumberFormatException, or a value the API doesn't know
+            return null;
+        } catch (UnsupportedEncodingException e) {
+            // Every Java platform supports UTF-8
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Split the q parameter into free text and keywords. A quoted phrase stays one word.
+     */
+    private static void parseQ(String q, Builder builder) {
+        StringBuilder terms = new StringBuilder();
+        for (String word : splitWords(q)) {
+            int colon = word.indexOf(':');
+            Keyword keyword = colon > 0 ? Keyword.forName(word.substring(0, colon)) : null;
+            if (keyword == null) {
+                terms.append(word).append(' ');
+                continue;
+            }
+            String value = word.substring(colon + 1);
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            builder.setKeyword(keyword, value);
+        }
+        builder.setTerms(terms.toString());
+    }
+
+    private static List<String> splitWords(String q) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < q.length(); i++) {
+            char c = q.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+                continue;
+            }
+            word.append(c);
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * Returns the canonical form of a URL: a volumes search URL as {@link #getUrl()} writes it,
+     * and any other URL as it is, trimmed.
+     */
+    static String canonicalize(String url) {
+        BookQuery query = parse(url);
+        return query != null ? query.getUrl() : url.trim();
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the UTF-8 bytes of a canonical URL, as 16 hex digits.
+     */
+    static String hashKey(String canonicalUrl) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : canonicalUrl.getBytes(UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return String.format(Locale.US, "%016x", hash);
+    }
+
+    /**
+     * Returns the URL of a single volume, {endpoint}/{id}, asking for a partial response with
+     * the given fields.
+     */
+    static String volumeUrl(String endpoint, String volumeId, String fields) {
+        StringBuilder url = new StringBuilder(endpoint).append('/');
+        encode(volumeId, url);
+        url.append("?fields=");
+        encode(fields, url);
+        return url.toString();
+    }
+
+    /**
+     * Percent-encode a parameter value as UTF-8, leaving letters, digits and {@link #UNESCAPED}
+     * as they are. A space becomes %20.
+     */
+    private static void encode(String value, StringBuilder out) {
+        for (byte b : value.getBytes(UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || UNESCAPED.indexOf(c) >= 0) {
+                out.append(c);
+            } else {
+                out.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+            }
+        }
+    }
+
+    /**
+     * Trim the text, collapse its whitespace and lower-case it.
+     */
+    private static String normalizeText(String text) {
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.US);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof BookQuery && Url.equals(((BookQuery) other).Url);
+    }
+
+    @Override
+    public int hashCode() {
+        return Url.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return Url;
+    }
+
+    /**
+     * Builds a {@link BookQuery}. Every setter normalizes its value, so the order and the form in
+     * which the parts are given doesn't change the URL.
+     */
+    static final class Builder {
+
+        private String Endpoint = DEFAULT_ENDPOINT;
+        private String Terms = "";
+        private final Map<Keyword, String> Keywords = new EnumMap<>(Keyword.class);
+        private OrderBy Order = OrderBy.RELEVANCE;
+        private PrintType Print = PrintType.ALL;
+        private String LangRestrict;
+        private Projection ProjectionValue = Projection.FULL;
+        private String Fields;
+        private int StartIndex;
+        private int MaxResults;
+        private final Map<String, String> OtherParameters = new TreeMap<>();
+
+        /**
+         * Set the URL of the volumes collection, for example of a test server.
+         */
+        Builder setEndpoint(String endpoint) {
+            int pathStart = endpoint.indexOf('/', endpoint.indexOf("://") + 3);
+            Endpoint = pathStart == -1 ? endpoint.toLowerCase(Locale.US)
+                    : endpoint.substring(0, pathStart).toLowerCase(Locale.US) + endpoint.substring(pathStart);
+            return this;
+        }
+
+        /**
+         * Set the free text of the search, as the user typed it.
+         */
+        Builder setTerms(String terms) {
+            Terms = normalizeText(terms);
+            return this;
+        }
+
+        /**
+         * Restrict the search with a keyword, such as intitle:, or remove it with null.
+         */
+        Builder setKeyword(Keyword keyword, String value) {
+            if (value == null) {
+                Keywords.remove(keyword);
+                return this;
+            }
+            value = normalizeText(value.replace("\"", ""));
+            if (keyword == Keyword.ISBN) {
+                value = value.replaceAll("[^0-9x]", "");
+            }
+            if (value.isEmpty()) {
+                Keywords.remove(keyword);
+            } else {
+                Keywords.put(keyword, value);
+            }
+            return this;
+        }
+
+        Builder setOrderBy(OrderBy orderBy) {
+            Order = orderBy;
+            return this;
+        }
+
+        Builder setPrintType(PrintType printType) {
+            Print = printType;
+            return this;
+        }
+
+        /**
+         * Restrict the results to a language, as an ISO-639-1 code such as "en", or null.
+         */
+        Builder setLangRestrict(String langRestrict) {
+            LangRestrict = langRestrict == null || langRestrict.trim().isEmpty()
+                    ? null : langRestrict.trim().toLowerCase(Locale.US);
+            return this;
+        }
+
+        Builder setProjection(Projection projection) {
+            ProjectionValue = projection;
+            return this;
+        }
+
+        /**
+         * Set the partial response selector, not encoded, or null for the whole response.
+         */
+        Builder setFields(String fields) {
+            Fields = fields == null || fields.isEmpty() ? null : fields.replace(" ", "");
+            return this;
+        }
+
+        Builder setStartIndex(int startIndex) {
+            if (startIndex < 0) {
+                throw new IllegalArgumentException("startIndex " + startIndex);
+            }
+            StartIndex = startIndex;
+            return this;
+        }
+
+        /**
+         * Set the page size, from 1 to {@link #MAX_RESULTS_LIMIT}, or 0 for the API default.
+         */
+        Builder setMaxResults(int maxResults) {
+            if (maxResults < 0 || maxResults > MAX_RESULTS_LIMIT) {
+                throw new IllegalArgumentException("maxResults " + maxResults);
+            }
+            MaxResults = maxResults;
+            return this;
+        }
+
+        /**
+         * Set a parameter this class has no setter for, such as key.
+         */
+        Builder setParameter(String name, String value) {
+            OtherParameters.put(name, value);
+            return this;
+        }
+
+        BookQuery build() {
+            return new BookQuery(this);
+        }
+    }
+}
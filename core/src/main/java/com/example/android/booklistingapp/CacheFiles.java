@@ -0,0 +1,142 @@
+package com.example.android.booklistingapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The on-disk tier of the {@link BookListingCache} and the {@link BookDetailCache}: one file per
+ * key in a directory of its own, trimmed to a total size by deleting the least recently written
+ * files first.
+ *
+ * The files are guarded by the monitor of this object. A cache takes it around every read, write
+ * and trim, and never while it holds its own monitor, so a lookup answered from memory never
+ * waits for a file.
+ */
+final class CacheFiles {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = CacheFiles.class.getSimpleName();
+
+    private final File Directory;
+    private final long MaxBytes;
+
+    /**
+     * Constructs a new {@link CacheFiles}.
+     *
+     * @param directory is where the files are kept
+     * @param maxBytes is the total size the files may use
+     */
+    CacheFiles(File directory, long maxBytes) {
+        Directory = directory;
+        MaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the file of a key. It is named by the hash key, so the file has to record the key
+     * itself, and two keys with the same hash never read each other's entry.
+     */
+    File fileFor(String key) {
+        return new File(Directory, BookQuery.hashKey(key));
+    }
+
+    /**
+     * Create the directory if it does not exist yet. Returns false if it could not be created.
+     */
+    boolean makeDirectory() {
+        if (!Directory.exists() && !Directory.mkdirs()) {
+            CoreLog.w(LOG_TAG, "Problem creating the cache directory " + Directory);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Delete the least recently written files until the directory fits in {@link #MaxBytes}.
+     * Returns the number of files deleted.
+     */
+    int trim() {
+        File[] files = Directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= MaxBytes) {
+            return 0;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        int evicted = 0;
+        for (File file : files) {
+            if (size <= MaxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing useful to do here
+            }
+        }
+    }
+
+    /**
+     * The memory tier of a cache: a map in access order that drops the least recently used entry
+     * once it holds more than its capacity, and counts the entries it dropped. It is guarded by
+     * the cache's monitor.
+     *
+     * @param <V> is the type of the entries
+     */
+    static final class LruMap<V> extends LinkedHashMap<String, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int Capacity;
+        private int EvictionCount;
+
+        LruMap(int capacity) {
+            super(capacity, 0.75f, true);
+            Capacity = capacity;
+        }
+
+        /**
+         * Returns the number of entries dropped to stay within the capacity.
+         */
+        int getEvictionCount() {
+            return EvictionCount;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+            if (size() > Capacity) {
+                EvictionCount++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/reference/android/os/CancellationSignal.html
+
+/**
+ * Cancels a fetch in progress. It works like {@code android.os.CancellationSignal}, which the
+ * core classes cannot use because they also run on a plain JVM.
+ *
+ * All methods are thread-safe.
+ */
+final class CancellationToken {
+
+    /**
+     * Called once when the token is cancelled.
+     */
+    interface OnCancelListener {
+        void onCancel();
+    }
+
+    private boolean Canceled;
+    private OnCancelListener Listener;
+
+    /**
+     * Returns true if the token has been cancelled.
+     */
+    synchronized boolean isCanceled() {
+        return Canceled;
+    }
+
+    /**
+     * Throws {@link FetchCanceledException} if the token has been cancelled.
+     */
+    void throwIfCanceled() {
+        if (isCanceled()) {
+            throw new FetchCanceledException();
+        }
+    }
+
+    /**
+     * Cancel the token and call its listener, on the calling thread. Cancelling it again does
+     * nothing.
+     */
+    void cancel() {
+        OnCancelListener listener;
+        synchronized (this) {
+            if (Canceled) {
+                return;
+            }
+            Canceled = true;
+            listener = Listener;
+        }
+        if (listener != null) {
+            listener.onCancel();
+        }
+    }
+
+    /**
+     * Set the listener to call when the token is cancelled, replacing the previous one. If the
+     * token was already cancelled the listener is called at once.
+     *
+     * @param listener is the listener, or null to remove it
+     */
+    void setOnCancelListener(OnCancelListener listener) {
+        synchronized (this) {
+            Listener = listener;
+            if (!Canceled || listener == null) {
+                return;
+            }
+        }
+        listener.onCancel();
+    }
+}
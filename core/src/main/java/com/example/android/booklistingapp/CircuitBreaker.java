@@ -0,0 +1,114 @@
+package com.example.android.booklistingapp;
+
+//https://martinfowler.com/bliki/CircuitBreaker.html
+
+
+/**
+ * Stops sending requests to an API that keeps failing.
+ *
+ * The breaker starts closed and lets every request through. After a number of failures in a row
+ * it opens, and for a while no request is sent at all; callers answer from the cache instead.
+ * Once that time has passed it lets a single trial request through: if it succeeds the breaker
+ * closes again, and if it fails the breaker stays open for another period.
+ *
+ * All methods are thread-safe.
+ */
+final class CircuitBreaker {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = CircuitBreaker.class.getSimpleName();
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int FailureThreshold;
+    private final long OpenNanos;
+
+    private State CurrentState = State.CLOSED;
+    private int ConsecutiveFailures;
+    private long OpenedAtNanos;
+
+    /** Set while the trial request of a half open breaker is in flight */
+    private boolean TrialInFlight;
+
+    /**
+     * Constructs a new {@link CircuitBreaker}.
+     *
+     * @param failureThreshold is the number of failures in a row that open the breaker
+     * @param openMillis is how long the breaker stays open before it lets a trial request through
+     */
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        FailureThreshold = failureThreshold;
+        OpenNanos = openMillis * 1000000;
+    }
+
+    /**
+     * Returns true if a request may be sent now. A caller that gets true must report the outcome
+     * with {@link #recordSuccess()} or {@link #recordFailure()}.
+     */
+    synchronized boolean allowRequest() {
+        switch (CurrentState) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - OpenedAtNanos < OpenNanos) {
+                    return false;
+                }
+                CurrentState = State.HALF_OPEN;
+                TrialInFlight = true;
+                CoreLog.i(LOG_TAG, "Half open, sending a trial request");
+                return true;
+            default:
+                // Only one trial request at a time
+                if (TrialInFlight) {
+                    return false;
+                }
+                TrialInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * Report a request that got an answer from a healthy API.
+     */
+    synchronized void recordSuccess() {
+        if (CurrentState != State.CLOSED) {
+            CoreLog.i(LOG_TAG, "Closed");
+        }
+        CurrentState = State.CLOSED;
+        ConsecutiveFailures = 0;
+        TrialInFlight = false;
+    }
+
+    /**
+     * Report a request that failed because the API or the network is unhealthy.
+     */
+    synchronized void recordFailure() {
+        ConsecutiveFailures++;
+        TrialInFlight = false;
+        if (CurrentState == State.HALF_OPEN || ConsecutiveFailures >= FailureThreshold) {
+            if (CurrentState != State.OPEN) {
+                CoreLog.w(LOG_TAG, "Open after " + ConsecutiveFailures + " failures in a row");
+            }
+            CurrentState = State.OPEN;
+            OpenedAtNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Report a request whose outcome says nothing about the API, for example a cancelled one.
+     */
+    synchronized void recordIgnored() {
+        TrialInFlight = false;
+    }
+
+    /**
+     * Returns the state of the breaker, without moving it from open to half open.
+     */
+    synchronized State getState() {
+        return CurrentState;
+    }
+}
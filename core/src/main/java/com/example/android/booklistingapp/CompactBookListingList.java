@@ -0,0 +1,354 @@
+package com.example.android.booklistingapp;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list of {@link BookListing}s stored by column instead of as one object per book, for result
+ * sets of thousands of books.
+ *
+ * The values that are different for every book (id, title, thumbnail and textSnippet) are packed
+ * one after another as UTF-8 into a single byte array. The values that repeat across books
+ * (authors and publishedDate) are kept as references to strings from the {@link StringPool}, and
+ * the placeholders of {@link BookListing} are kept as one flag bit each. Thumbnail URLs contain
+ * the volume id, so only the pooled text before and after the id is kept for them. A null value
+ * other than the id is stored as the placeholder for it. A row therefore
+ * costs a few ints plus its text, instead of a {@link BookListing} and six {@link String}s.
+ *
+ * {@link #get(int)} builds a {@link BookListing} for the row, so callers such as the adapter keep
+ * using the usual getters. Books can only be added at the end, and the list can be cleared.
+ *
+ * Because rows are never changed once added, {@link #snapshot()} can share the arrays of the list
+ * instead of copying them: later books are written past the end of the snapshot, growing replaces
+ * the arrays, and clearing starts over with new ones.
+ */
+final class CompactBookListingList extends AbstractList<BookListing> implements RandomAccess {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Packed columns, in the order they are stored in the text array */
+    private static final int ID = 0;
+    private static final int TITLE = 1;
+    private static final int THUMBNAIL = 2;
+    private static final int TEXT_SNIPPET = 3;
+    private static final int PACKED_COLUMNS = 4;
+
+    /** Flag bits of a row for the values it does not have */
+    private static final int FLAG_NO_ID = 1 << ID;
+    private static final int FLAG_NO_TITLE = 1 << TITLE;
+    private static final int FLAG_NO_THUMBNAIL = 1 << THUMBNAIL;
+    private static final int FLAG_NO_TEXT_SNIPPET = 1 << TEXT_SNIPPET;
+    private static final int FLAG_THUMBNAIL_AROUND_ID = 1 << PACKED_COLUMNS;
+
+    private static final int DEFAULT_CAPACITY = 40;
+
+    /** Largest capacity allocated up front; the list grows beyond it as books are added */
+    private static final int MAX_INITIAL_CAPACITY = 1000;
+
+    /** Average number of text bytes a book is expected to need */
+    private static final int BYTES_PER_BOOK = 256;
+
+    /** FNV-1a constants for {@link #getStableId(int)} */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Number of books in the list */
+    private int Size;
+
+    /** True for a snapshot, which cannot be changed */
+    private boolean ReadOnly;
+
+    /** UTF-8 text of the packed columns of every book */
+    private byte[] Text;
+    private int TextLength;
+
+    /** End offset in Text of each packed column, PACKED_COLUMNS per book */
+    private int[] Ends;
+
+    /** Flag bits of each book */
+    private byte[] Flags;
+
+    /** Pooled authors and publishedDate of each book */
+    private String[] Authors;
+    private String[] PublishedDates;
+
+    /** Pooled text before and after the volume id in the thumbnail URL of each book, or null */
+    private String[] ThumbnailPrefixes;
+    private String[] ThumbnailSuffixes;
+
+    /**
+     * Constructs a new, empty {@link CompactBookListingList}.
+     */
+    CompactBookListingList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty {@link CompactBookListingList} with room for the given number of books.
+     */
+    CompactBookListingList(int capacity) {
+        allocate(Math.min(Math.max(capacity, 1), MAX_INITIAL_CAPACITY));
+    }
+
+    private void allocate(int capacity) {
+        Text = new byte[capacity * BYTES_PER_BOOK];
+        Ends = new int[capacity * PACKED_COLUMNS];
+        Flags = new byte[capacity];
+        Authors = new String[capacity];
+        PublishedDates = new String[capacity];
+        ThumbnailPrefixes = new String[capacity];
+        ThumbnailSuffixes = new String[capacity];
+    }
+
+    @Override
+    public int size() {
+        return Size;
+    }
+
+    @Override
+    public BookListing get(int index) {
+        if (index < 0 || index >= Size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + Size);
+        }
+        int flags = Flags[index];
+        String id = (flags & FLAG_NO_ID) != 0 ? null : column(index, ID);
+
+        String thumbnail;
+        if ((flags & FLAG_NO_THUMBNAIL) != 0) {
+            thumbnail = BookListing.NO_THUMBNAIL;
+        } else if ((flags & FLAG_THUMBNAIL_AROUND_ID) != 0) {
+            thumbnail = ThumbnailPrefixes[index] + id + ThumbnailSuffixes[index];
+        } else {
+            thumbnail = column(index, THUMBNAIL);
+        }
+
+        return new BookListing(
+                id,
+                (flags & FLAG_NO_TITLE) != 0 ? BookListing.NO_TITLE : column(index, TITLE),
+                Authors[index],
+                PublishedDates[index],
+                thumbnail,
+                (flags & FLAG_NO_TEXT_SNIPPET) != 0 ? BookListing.NO_TEXT_SNIPPET : column(index, TEXT_SNIPPET));
+    }
+
+    /**
+     * Returns the volume id of a book without building its {@link BookListing}.
+     */
+    String getId(int index) {
+        if (index < 0 || index >= Size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + Size);
+        }
+        return (Flags[index] & FLAG_NO_ID) != 0 ? null : column(index, ID);
+    }
+
+    /**
+     * Returns a stable 64-bit id for a book, a hash of its volume id, without building its
+     * {@link BookListing}. Books without a volume id are hashed by title, authors and date.
+     */
+    long getStableId(int index) {
+        if (index < 0 || index >= Size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + Size);
+        }
+        if ((Flags[index] & FLAG_NO_ID) == 0) {
+            return hash(FNV_OFFSET_BASIS, index, ID);
+        }
+        long hash = hash(FNV_OFFSET_BASIS, index, TITLE);
+        hash = (hash ^ Authors[index].hashCode()) * FNV_PRIME;
+        return (hash ^ PublishedDates[index].hashCode()) * FNV_PRIME;
+    }
+
+    /**
+     * Returns true if a book of this list has the same values as a book of the other list,
+     * without building either {@link BookListing}.
+     */
+    boolean sameContents(int index, CompactBookListingList other, int otherIndex) {
+        if (Flags[index] != other.Flags[otherIndex]
+                || !Authors[index].equals(other.Authors[otherIndex])
+                || !PublishedDates[index].equals(other.PublishedDates[otherIndex])) {
+            return false;
+        }
+        if ((Flags[index] & FLAG_THUMBNAIL_AROUND_ID) != 0
+                && (!ThumbnailPrefixes[index].equals(other.ThumbnailPrefixes[otherIndex])
+                || !ThumbnailSuffixes[index].equals(other.ThumbnailSuffixes[otherIndex]))) {
+            return false;
+        }
+        for (int column = 0; column < PACKED_COLUMNS; column++) {
+            int end = index * PACKED_COLUMNS + column;
+            int start = end == 0 ? 0 : Ends[end - 1];
+            int otherEnd = otherIndex * PACKED_COLUMNS + column;
+            int otherStart = otherEnd == 0 ? 0 : other.Ends[otherEnd - 1];
+            int length = Ends[end] - start;
+            if (length != other.Ends[otherEnd] - otherStart) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (Text[start + i] != other.Text[otherStart + i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns an unmodifiable copy of the list as it is now, in constant time. The copy is safe
+     * to read from another thread while this list keeps growing.
+     */
+    CompactBookListingList snapshot() {
+        CompactBookListingList snapshot = new CompactBookListingList(this);
+        snapshot.ReadOnly = true;
+        return snapshot;
+    }
+
+    private CompactBookListingList(CompactBookListingList other) {
+        Size = other.Size;
+        Text = other.Text;
+        TextLength = other.TextLength;
+        Ends = other.Ends;
+        Flags = other.Flags;
+        Authors = other.Authors;
+        PublishedDates = other.PublishedDates;
+        ThumbnailPrefixes = other.ThumbnailPrefixes;
+        ThumbnailSuffixes = other.ThumbnailSuffixes;
+    }
+
+    @Override
+    public boolean add(BookListing booklisting) {
+        checkWritable();
+        ensureCapacity(Size + 1);
+
+        String id = booklisting.getId();
+        String title = orPlaceholder(booklisting.getTitle(), BookListing.NO_TITLE);
+        String thumbnail = orPlaceholder(booklisting.getThumbnail(), BookListing.NO_THUMBNAIL);
+        String textSnippet = orPlaceholder(booklisting.getTextSnippet(), BookListing.NO_TEXT_SNIPPET);
+
+        int flags = 0;
+        if (id == null) {
+            flags |= FLAG_NO_ID;
+        }
+        if (BookListing.NO_TITLE.equals(title)) {
+            flags |= FLAG_NO_TITLE;
+        }
+        if (BookListing.NO_TEXT_SNIPPET.equals(textSnippet)) {
+            flags |= FLAG_NO_TEXT_SNIPPET;
+        }
+
+        int idStart = -1;
+        if (BookListing.NO_THUMBNAIL.equals(thumbnail)) {
+            flags |= FLAG_NO_THUMBNAIL;
+        } else if (id != null && !id.isEmpty()) {
+            idStart = thumbnail.indexOf(id);
+        }
+        if (idStart >= 0) {
+            flags |= FLAG_THUMBNAIL_AROUND_ID;
+            ThumbnailPrefixes[Size] = StringPool.intern(thumbnail.substring(0, idStart));
+            ThumbnailSuffixes[Size] = StringPool.intern(thumbnail.substring(idStart + id.length()));
+        } else {
+            ThumbnailPrefixes[Size] = null;
+            ThumbnailSuffixes[Size] = null;
+        }
+
+        pack(ID, (flags & FLAG_NO_ID) != 0 ? null : id);
+        pack(TITLE, (flags & FLAG_NO_TITLE) != 0 ? null : title);
+        pack(THUMBNAIL, (flags & (FLAG_NO_THUMBNAIL | FLAG_THUMBNAIL_AROUND_ID)) != 0 ? null : thumbnail);
+        pack(TEXT_SNIPPET, (flags & FLAG_NO_TEXT_SNIPPET) != 0 ? null : textSnippet);
+        Flags[Size] = (byte) flags;
+
+        Authors[Size] = StringPool.intern(orPlaceholder(booklisting.getAuthors(), BookListing.NO_AUTHOR));
+        PublishedDates[Size] = StringPool.intern(
+                orPlaceholder(booklisting.getPublishedDate(), BookListing.NO_PUBLISHED_DATE));
+
+        Size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int index, BookListing booklisting) {
+        if (index != Size) {
+            throw new UnsupportedOperationException("Books can only be added at the end");
+        }
+        add(booklisting);
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        // New arrays, because snapshots may still be reading the old ones
+        allocate(DEFAULT_CAPACITY);
+        Size = 0;
+        TextLength = 0;
+        modCount++;
+    }
+
+    /**
+     * Release the room reserved for books that have not been added, once the list is complete.
+     */
+    void trimToSize() {
+        checkWritable();
+        if (TextLength < Text.length) {
+            Text = Arrays.copyOf(Text, TextLength);
+        }
+        if (Size < Flags.length) {
+            resize(Size);
+        }
+    }
+
+    /**
+     * Append a packed column of the book being added. Nothing is stored for a null value.
+     */
+    private void pack(int column, String value) {
+        if (value != null) {
+            byte[] bytes = value.getBytes(UTF_8);
+            if (TextLength + bytes.length > Text.length) {
+                Text = Arrays.copyOf(Text, Math.max(Text.length + (Text.length >> 1), TextLength + bytes.length));
+            }
+            System.arraycopy(bytes, 0, Text, TextLength, bytes.length);
+            TextLength += bytes.length;
+        }
+        Ends[Size * PACKED_COLUMNS + column] = TextLength;
+    }
+
+    private static String orPlaceholder(String value, String placeholder) {
+        return value != null ? value : placeholder;
+    }
+
+    private long hash(long hash, int index, int column) {
+        int end = index * PACKED_COLUMNS + column;
+        int start = end == 0 ? 0 : Ends[end - 1];
+        for (int i = start; i < Ends[end]; i++) {
+            hash = (hash ^ (Text[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private void checkWritable() {
+        if (ReadOnly) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+    }
+
+    private String column(int index, int column) {
+        int end = index * PACKED_COLUMNS + column;
+        int start = end == 0 ? 0 : Ends[end - 1];
+        return new String(Text, start, Ends[end] - start, UTF_8);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= Flags.length) {
+            return;
+        }
+        resize(Math.max(capacity, Flags.length + (Flags.length >> 1)));
+    }
+
+    private void resize(int newCapacity) {
+        Ends = Arrays.copyOf(Ends, newCapacity * PACKED_COLUMNS);
+        Flags = Arrays.copyOf(Flags, newCapacity);
+        Authors = Arrays.copyOf(Authors, newCapacity);
+        PublishedDates = Arrays.copyOf(PublishedDates, newCapacity);
+        ThumbnailPrefixes = Arrays.copyOf(ThumbnailPrefixes, newCapacity);
+        ThumbnailSuffixes = Arrays.copyOf(ThumbnailSuffixes, newCapacity);
+    }
+}
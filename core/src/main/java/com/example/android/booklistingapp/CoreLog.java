@@ -0,0 +1,79 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/reference/android/util/Log.html
+
+/**
+ * Log messages of the core classes, which cannot use {@code android.util.Log} because they also
+ * run on a plain JVM. The methods take the same arguments as those of {@code android.util.Log}.
+ *
+ * Messages go to the {@link Sink} set with {@link #setSink(Sink)}: the app sends them to logcat,
+ * and the harvester to standard error. Until a sink is set they are dropped, as they are in the
+ * unit tests.
+ */
+final class CoreLog {
+
+    /** Priorities of the messages, with the values of {@code android.util.Log} */
+    static final int DEBUG = 3;
+    static final int INFO = 4;
+    static final int WARN = 5;
+    static final int ERROR = 6;
+
+    /**
+     * Receives the log messages.
+     */
+    interface Sink {
+        /**
+         * @param priority is one of {@link #DEBUG}, {@link #INFO}, {@link #WARN} and {@link #ERROR}
+         * @param throwable is the exception to log with the message, or null
+         */
+        void log(int priority, String tag, String message, Throwable throwable);
+    }
+
+    private static volatile Sink sSink;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link CoreLog} object.
+     */
+    private CoreLog() {
+    }
+
+    /**
+     * Send the messages to the sink from now on.
+     *
+     * @param sink is the sink, or null to drop the messages
+     */
+    static void setSink(Sink sink) {
+        sSink = sink;
+    }
+
+    static void d(String tag, String message) {
+        log(DEBUG, tag, message, null);
+    }
+
+    static void i(String tag, String message) {
+        log(INFO, tag, message, null);
+    }
+
+    static void w(String tag, String message) {
+        log(WARN, tag, message, null);
+    }
+
+    static void w(String tag, String message, Throwable throwable) {
+        log(WARN, tag, message, throwable);
+    }
+
+    static void e(String tag, String message) {
+        log(ERROR, tag, message, null);
+    }
+
+    static void e(String tag, String message, Throwable throwable) {
+        log(ERROR, tag, message, throwable);
+    }
+
+    private static void log(int priority, String tag, String message, Throwable throwable) {
+        Sink sink = sSink;
+        if (sink != null) {
+            sink.log(priority, tag, message, throwable);
+        }
+    }
+}
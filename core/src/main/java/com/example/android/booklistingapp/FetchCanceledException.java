@@ -0,0 +1,15 @@
+package com.example.android.booklistingapp;
+
+/**
+ * Thrown by a fetch whose {@link CancellationToken} was cancelled. Loaders turn it into
+ * {@code android.os.OperationCanceledException}, which the framework expects from a cancelled
+ * load.
+ */
+final class FetchCanceledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    FetchCanceledException() {
+        super("The fetch has been canceled");
+    }
+}
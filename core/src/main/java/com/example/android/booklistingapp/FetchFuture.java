@@ -0,0 +1,317 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/reference/java/util/concurrent/Future.html
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of a fetch that completes later. It works like {@code CompletableFuture}, which
+ * Android only has from API 24: callers add callbacks instead of blocking a thread on
+ * {@link #get()}, and chain steps with {@link #then(Transform, Executor)} and
+ * {@link #withTimeout(long)}.
+ *
+ * Cancelling a future cancels the {@link CancellationToken} of its fetch, which disconnects
+ * the HTTP connection. Cancelling a chained future cancels the futures it was chained from.
+ *
+ * All methods are thread-safe.
+ */
+final class FetchFuture<V> implements Future<V> {
+
+    /**
+     * Called once when the future completes.
+     */
+    interface Callback<V> {
+
+        /**
+         * @param result is the result, which may be null when the fetch found nothing
+         */
+        void onSuccess(V result);
+
+        /**
+         * @param error is {@link FetchCanceledException} if the future was cancelled, or
+         *              {@link TimeoutException} if it timed out
+         */
+        void onFailure(Throwable error);
+    }
+
+    /**
+     * A step that turns the result of one future into the result of the next.
+     */
+    interface Transform<V, R> {
+        R apply(V value) throws Exception;
+    }
+
+    /** Single daemon thread that fires the timeouts of every future */
+    private static ScheduledExecutorService sTimer;
+
+    /** Cancelled when the future is cancelled, to stop its fetch */
+    private final CancellationToken Token = new CancellationToken();
+
+    private boolean Done;
+    private boolean Canceled;
+    private V Result;
+    private Throwable Error;
+
+    /** Run once when the future completes, or null once it has completed */
+    private List<Runnable> Listeners = new ArrayList<>();
+
+    /**
+     * Returns a future that has already completed with the given result.
+     */
+    static <V> FetchFuture<V> completed(V result) {
+        FetchFuture<V> future = new FetchFuture<>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * Returns the token the fetch should check and listen to. It is cancelled when the future
+     * is cancelled.
+     */
+    CancellationToken getToken() {
+        return Token;
+    }
+
+    /**
+     * Complete the future with a result. Does nothing if it has already completed.
+     *
+     * @return true if this call completed the future
+     */
+    boolean complete(V result) {
+        return finish(result, null, false);
+    }
+
+    /**
+     * Complete the future with an error. Does nothing if it has already completed.
+     *
+     * @return true if this call completed the future
+     */
+    boolean fail(Throwable error) {
+        return finish(null, error, false);
+    }
+
+    /**
+     * Complete the future with {@link FetchCanceledException} and cancel its token. Does
+     * nothing if it has already completed.
+     *
+     * @param mayInterruptIfRunning is ignored, cancelling the token already stops the fetch
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(null, new FetchCanceledException(), true);
+    }
+
+    private boolean finish(V result, Throwable error, boolean canceled) {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (Done) {
+                return false;
+            }
+            Done = true;
+            Canceled = canceled;
+            Result = result;
+            Error = error;
+            listeners = Listeners;
+            Listeners = null;
+        }
+        // The token is cancelled before anyone learns of the cancellation
+        if (canceled) {
+            Token.cancel();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return Canceled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return Done;
+    }
+
+    /**
+     * Wait for the result. Prefer {@link #addCallback(Callback, Executor)}, which does not hold
+     * a thread while the fetch is in flight.
+     */
+    @Override
+    public synchronized V get() throws InterruptedException, ExecutionException {
+        while (!Done) {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized V get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!Done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private V getResult() throws ExecutionException {
+        if (Canceled) {
+            throw new CancellationException();
+        }
+        if (Error != null) {
+            throw new ExecutionException(Error);
+        }
+        return Result;
+    }
+
+    /**
+     * Call the callback on the given executor once the future completes, or at once if it has
+     * already completed.
+     */
+    void addCallback(final Callback<? super V> callback, final Executor executor) {
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        V result;
+                        Throwable error;
+                        synchronized (FetchFuture.this) {
+                            result = Result;
+                            error = Error;
+                        }
+                        if (error != null) {
+                            callback.onFailure(error);
+                        } else {
+                            callback.onSuccess(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns a future for the result of applying the transform, on the given executor, to the
+     * result of this one. An error of this future skips the transform and fails the returned
+     * one; an exception thrown by the transform fails it too.
+     */
+    <R> FetchFuture<R> then(final Transform<? super V, ? extends R> transform, final Executor executor) {
+        final FetchFuture<R> next = new FetchFuture<>();
+        next.cancelWith(this);
+        addCallback(new Callback<V>() {
+            @Override
+            public void onSuccess(V result) {
+                if (next.isDone()) {
+                    return;
+                }
+                try {
+                    next.complete(transform.apply(result));
+                } catch (Exception e) {
+                    next.fail(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                next.fail(error);
+            }
+        }, executor);
+        return next;
+    }
+
+    /**
+     * Returns a future with the result of this one that fails with {@link TimeoutException}
+     * if this one has not completed within the given time. The timeout also cancels this
+     * future, so the fetch stops. Timeouts compose: the shortest one in a chain wins.
+     */
+    FetchFuture<V> withTimeout(final long timeoutMillis) {
+        final FetchFuture<V> next = new FetchFuture<>();
+        next.cancelWith(this);
+        final ScheduledFuture<?> timeout = getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (next.fail(new TimeoutException("No result within " + timeoutMillis + " ms"))) {
+                    cancel(true);
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                timeout.cancel(false);
+                synchronized (FetchFuture.this) {
+                    if (Error != null) {
+                        next.fail(Error);
+                    } else {
+                        next.complete(Result);
+                    }
+                }
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Cancel the given upstream future when this one is cancelled.
+     */
+    private void cancelWith(final FetchFuture<?> upstream) {
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (isCancelled()) {
+                    upstream.cancel(true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Run the listener on the completing thread once the future completes, or at once on the
+     * calling thread if it has already completed.
+     */
+    private void addListener(Runnable listener) {
+        synchronized (this) {
+            if (!Done) {
+                Listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (sTimer == null) {
+            sTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "FetchFuture-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sTimer;
+    }
+}
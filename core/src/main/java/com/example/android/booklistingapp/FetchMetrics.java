@@ -0,0 +1,359 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/studio/command-line/dumpsys.html
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records how long each stage of a search takes, in histograms kept in memory:
+ *
+ * - connect: opening the connection, including DNS and TLS
+ * - time to first byte: from opening the request until the response headers arrived
+ * - download: time spent waiting for the body to come off the network
+ * - parse: time spent parsing the body, without the time waiting for the network
+ * - first batch: from opening the request until its first books were parsed
+ * - full page: from opening the request until the whole response was parsed
+ * - first row bound: from the start of a query until the first result is on screen
+ *
+ * It also records the bytes on the wire and the number of results of every response, and counts
+ * failed requests by {@link ErrorCategory} and by HTTP status code. Malformed items of a response
+ * that otherwise parsed are counted by {@link ItemError}; they never fail the request.
+ *
+ * Recording is off until {@link #setEnabled(boolean)} turns it on. While it is off every record
+ * method returns after reading one volatile field, and the stages are not timed at all. The
+ * histograms can be written as text with {@link #dump(PrintWriter)}, which the activity does for
+ * adb shell dumpsys activity, or as CSV with {@link #export(Writer)}.
+ */
+final class FetchMetrics {
+
+    /**
+     * The stages of a search that are timed, in nanoseconds.
+     */
+    enum Stage {
+        CONNECT,
+        TIME_TO_FIRST_BYTE,
+        DOWNLOAD,
+        PARSE,
+        FIRST_BATCH,
+        FULL_PAGE,
+        FIRST_ROW_BOUND
+    }
+
+    /**
+     * Why a request failed.
+     */
+    enum ErrorCategory {
+        /** The server answered with a status code other than 200 or 304 */
+        HTTP,
+        /** The body was not the JSON we expected */
+        PARSE,
+        /** The connection or a read timed out */
+        TIMEOUT,
+        /** Any other problem with the connection */
+        NETWORK
+    }
+
+    /**
+     * Why an item of the "items" array could not be read completely.
+     */
+    enum ItemError {
+        /** The item was not a JSON object, and was skipped */
+        NOT_AN_OBJECT,
+        /** The item had no "volumeInfo" object; the book only has placeholders */
+        NO_VOLUME_INFO,
+        /** A field had the wrong type, such as an object for a title; the field got its placeholder */
+        WRONG_TYPE
+    }
+
+    private static volatile boolean sEnabled;
+
+    private static final Histogram[] STAGES = new Histogram[Stage.values().length];
+    private static final Histogram BYTES_ON_WIRE = new Histogram();
+    private static final Histogram RESULTS = new Histogram();
+
+    /** Failed requests, by category and by HTTP status code */
+    private static final long[] ERRORS = new long[ErrorCategory.values().length];
+    private static final Map<Integer, Long> HTTP_ERRORS = new TreeMap<>();
+
+    /** Malformed items, by kind */
+    private static final long[] ITEM_ERRORS = new long[ItemError.values().length];
+
+    static {
+        for (int i = 0; i < STAGES.length; i++) {
+            STAGES[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link FetchMetrics} object.
+     */
+    private FetchMetrics() {
+    }
+
+    /**
+     * Turn recording on or off. What was recorded is kept.
+     */
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Returns true if recording is on. Check it before timing a stage.
+     */
+    static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Record the stages of a response that was read to the end.
+     *
+     * @param connectNanos is the time to open the connection
+     * @param timeToFirstByteNanos is the time until the response headers arrived
+     * @param downloadNanos is the time spent waiting for the body
+     * @param parseNanos is the time spent parsing the body, without downloadNanos
+     * @param bytesOnWire is the size of the body as sent (compressed)
+     * @param results is the number of books in the response
+     */
+    static void recordResponse(long connectNanos, long timeToFirstByteNanos, long downloadNanos,
+                               long parseNanos, long bytesOnWire, int results) {
+        if (!sEnabled) {
+            return;
+        }
+        STAGES[Stage.CONNECT.ordinal()].record(connectNanos);
+        STAGES[Stage.TIME_TO_FIRST_BYTE.ordinal()].record(timeToFirstByteNanos);
+        STAGES[Stage.DOWNLOAD.ordinal()].record(downloadNanos);
+        STAGES[Stage.PARSE.ordinal()].record(parseNanos);
+        BYTES_ON_WIRE.record(bytesOnWire);
+        RESULTS.record(results);
+    }
+
+    /**
+     * Record how soon the first books of a response were parsed, against how long the whole
+     * response took. The gap between the two is what progressive delivery saves.
+     *
+     * @param firstBatchNanos is the time until the first batch, or 0 if the response was too
+     *                        short to have one
+     * @param fullPageNanos is the time until the whole response was parsed
+     */
+    static void recordBatches(long firstBatchNanos, long fullPageNanos) {
+        if (!sEnabled) {
+            return;
+        }
+        if (firstBatchNanos > 0) {
+            STAGES[Stage.FIRST_BATCH.ordinal()].record(firstBatchNanos);
+        }
+        STAGES[Stage.FULL_PAGE.ordinal()].record(fullPageNanos);
+    }
+
+    /**
+     * Record the time from the start of a query until its first result was bound to a row.
+     */
+    static void recordFirstRowBound(long nanos) {
+        if (!sEnabled) {
+            return;
+        }
+        STAGES[Stage.FIRST_ROW_BOUND.ordinal()].record(nanos);
+    }
+
+    /**
+     * Count a response with an HTTP status code other than 200 or 304.
+     */
+    static void recordHttpError(int responseCode) {
+        if (!sEnabled) {
+            return;
+        }
+        synchronized (ERRORS) {
+            ERRORS[ErrorCategory.HTTP.ordinal()]++;
+            Long count = HTTP_ERRORS.get(responseCode);
+            HTTP_ERRORS.put(responseCode, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Count a request that failed with the given exception.
+     */
+    static void recordError(IOException e) {
+        recordError(categorize(e));
+    }
+
+    /**
+     * Count a failed request.
+     */
+    static void recordError(ErrorCategory category) {
+        if (!sEnabled) {
+            return;
+        }
+        synchronized (ERRORS) {
+            ERRORS[category.ordinal()]++;
+        }
+    }
+
+    /**
+     * Count a malformed item of a response.
+     */
+    static void recordItemError(ItemError error) {
+        if (!sEnabled) {
+            return;
+        }
+        synchronized (ITEM_ERRORS) {
+            ITEM_ERRORS[error.ordinal()]++;
+        }
+    }
+
+    /**
+     * Returns the category of a failure.
+     */
+    static ErrorCategory categorize(IOException e) {
+        if (e instanceof JsonPullReader.MalformedJsonException) {
+            return ErrorCategory.PARSE;
+        }
+        // Includes SocketTimeoutException
+        if (e instanceof InterruptedIOException) {
+            return ErrorCategory.TIMEOUT;
+        }
+        return ErrorCategory.NETWORK;
+    }
+
+    /**
+     * Returns the histogram of a stage, in nanoseconds.
+     */
+    static Histogram getStage(Stage stage) {
+        return STAGES[stage.ordinal()];
+    }
+
+    /**
+     * Returns the histogram of the bytes on the wire per response.
+     */
+    static Histogram getBytesOnWire() {
+        return BYTES_ON_WIRE;
+    }
+
+    /**
+     * Returns the histogram of the number of results per response.
+     */
+    static Histogram getResults() {
+        return RESULTS;
+    }
+
+    /**
+     * Returns the number of requests that failed in the given way.
+     */
+    static long getErrorCount(ErrorCategory category) {
+        synchronized (ERRORS) {
+            return ERRORS[category.ordinal()];
+        }
+    }
+
+    /**
+     * Returns the number of responses with the given HTTP status code that were counted as errors.
+     */
+    static long getHttpErrorCount(int responseCode) {
+        synchronized (ERRORS) {
+            Long count = HTTP_ERRORS.get(responseCode);
+            return count == null ? 0 : count;
+        }
+    }
+
+    /**
+     * Returns the number of malformed items of the given kind.
+     */
+    static long getItemErrorCount(ItemError error) {
+        synchronized (ITEM_ERRORS) {
+            return ITEM_ERRORS[error.ordinal()];
+        }
+    }
+
+    /**
+     * Forget everything recorded.
+     */
+    static void reset() {
+        for (Histogram histogram : STAGES) {
+            histogram.reset();
+        }
+        BYTES_ON_WIRE.reset();
+        RESULTS.reset();
+        synchronized (ERRORS) {
+            Arrays.fill(ERRORS, 0);
+            HTTP_ERRORS.clear();
+        }
+        synchronized (ITEM_ERRORS) {
+            Arrays.fill(ITEM_ERRORS, 0);
+        }
+    }
+
+    /**
+     * Write the histograms and error counts as text, times in milliseconds.
+     */
+    static void dump(PrintWriter writer) {
+        writer.println("FetchMetrics (" + (sEnabled ? "enabled" : "disabled") + ")");
+        writer.println(String.format("  %-20s %8s %10s %10s %10s %10s %10s",
+                "", "count", "p50", "p90", "p99", "max", "mean"));
+        for (Stage stage : Stage.values()) {
+            dumpHistogram(writer, stage.name().toLowerCase() + " ms", STAGES[stage.ordinal()], 1000000);
+        }
+        dumpHistogram(writer, "bytes on wire", BYTES_ON_WIRE, 1);
+        dumpHistogram(writer, "results", RESULTS, 1);
+
+        synchronized (ERRORS) {
+            for (ErrorCategory category : ErrorCategory.values()) {
+                writer.println("  " + category.name().toLowerCase() + " errors: " + ERRORS[category.ordinal()]);
+            }
+            for (Map.Entry<Integer, Long> entry : HTTP_ERRORS.entrySet()) {
+                writer.println("    HTTP " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+        synchronized (ITEM_ERRORS) {
+            for (ItemError error : ItemError.values()) {
+                writer.println("  items " + error.name().toLowerCase() + ": " + ITEM_ERRORS[error.ordinal()]);
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write the histograms and error counts as CSV, with one line per metric. Times are in
+     * nanoseconds.
+     */
+    static void export(Writer writer) throws IOException {
+        writer.write("metric,count,min,p50,p90,p99,max,mean\n");
+        for (Stage stage : Stage.values()) {
+            exportHistogram(writer, stage.name().toLowerCase() + "_nanos", STAGES[stage.ordinal()]);
+        }
+        exportHistogram(writer, "bytes_on_wire", BYTES_ON_WIRE);
+        exportHistogram(writer, "results", RESULTS);
+
+        synchronized (ERRORS) {
+            for (ErrorCategory category : ErrorCategory.values()) {
+                writer.write("error_" + category.name().toLowerCase() + "," + ERRORS[category.ordinal()] + ",,,,,,\n");
+            }
+            for (Map.Entry<Integer, Long> entry : HTTP_ERRORS.entrySet()) {
+                writer.write("error_http_" + entry.getKey() + "," + entry.getValue() + ",,,,,,\n");
+            }
+        }
+        synchronized (ITEM_ERRORS) {
+            for (ItemError error : ItemError.values()) {
+                writer.write("item_" + error.name().toLowerCase() + "," + ITEM_ERRORS[error.ordinal()] + ",,,,,,\n");
+            }
+        }
+        writer.flush();
+    }
+
+    private static void dumpHistogram(PrintWriter writer, String name, Histogram histogram, long unit) {
+        writer.println(String.format("  %-20s %8d %10.1f %10.1f %10.1f %10.1f %10.1f", name, histogram.getCount(),
+                (double) histogram.getPercentile(50) / unit, (double) histogram.getPercentile(90) / unit,
+                (double) histogram.getPercentile(99) / unit, (double) histogram.getMax() / unit,
+                (double) histogram.getMean() / unit));
+    }
+
+    private static void exportHistogram(Writer writer, String name, Histogram histogram) throws IOException {
+        writer.write(name + "," + histogram.getCount() + "," + histogram.getMin() + ","
+                + histogram.getPercentile(50) + "," + histogram.getPercentile(90) + ","
+                + histogram.getPercentile(99) + "," + histogram.getMax() + "," + histogram.getMean() + "\n");
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.android.booklistingapp;
+
+//https://aws.amazon.com/blogs/architecture/exponential-backoff-and-jitter/
+//https://tools.ietf.org/html/rfc7231#section-7.1.3 (Retry-After)
+
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Decides how a GET request to the Books API is sent and retried.
+ *
+ * Before every attempt the {@link CircuitBreaker} is asked whether the API is healthy, and the
+ * {@link RateLimiter} hands out a token. A failed attempt is classified: timeouts, broken
+ * connections and the status codes that mean "try again later" (429, 500, 502, 503 and 504) are
+ * retried after a delay, everything else is not. The delay grows exponentially with full jitter,
+ * so many clients that failed at the same moment don't all retry at the same moment. A
+ * Retry-After header from the server is honored, and holds back every request, not only the one
+ * that got it.
+ */
+final class FetchPolicy {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = FetchPolicy.class.getSimpleName();
+
+    /** Number of attempts per request, including the first one */
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /** Delay cap of the first retry; it doubles for every retry after that */
+    static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+
+    /** Largest delay between attempts */
+    static final long DEFAULT_MAX_DELAY_MILLIS = 8000;
+
+    /** Longest Retry-After that is waited for; a longer one fails the request at once */
+    static final long MAX_RETRY_AFTER_MILLIS = 30000;
+
+    /** Failures in a row that open the circuit breaker, and how long it stays open */
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final long DEFAULT_OPEN_MILLIS = 30000;
+
+    /** Steady request rate and burst of the rate limiter */
+    static final double DEFAULT_PERMITS_PER_SECOND = 4;
+    static final int DEFAULT_BURST = 8;
+
+    private static FetchPolicy sDefault;
+
+    private final int MaxAttempts;
+    private final long BaseDelayMillis;
+    private final long MaxDelayMillis;
+    private final CircuitBreaker Breaker;
+    private final RateLimiter Limiter;
+    private final Random Jitter;
+
+    /**
+     * One attempt at a request.
+     *
+     * @param <T> is the type of the result
+     */
+    interface Attempt<T> {
+
+        /**
+         * Send the request and return its result.
+         *
+         * @throws HttpStatusException if the server answered with an error status
+         * @throws IOException if there was no answer
+         */
+        T run() throws IOException;
+    }
+
+    /**
+     * Returns the policy shared by the app, with the default limits.
+     */
+    static synchronized FetchPolicy getDefault() {
+        if (sDefault == null) {
+            sDefault = new FetchPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS,
+                    new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS),
+                    new RateLimiter(DEFAULT_PERMITS_PER_SECOND, DEFAULT_BURST), new Random());
+        }
+        return sDefault;
+    }
+
+    /**
+     * Constructs a new {@link FetchPolicy}.
+     *
+     * @param maxAttempts is the number of attempts per request, including the first one
+     * @param baseDelayMillis is the delay cap of the first retry
+     * @param maxDelayMillis is the largest delay between attempts
+     * @param breaker is asked before every attempt
+     * @param limiter hands out a token for every attempt
+     * @param jitter picks the delays
+     */
+    FetchPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, CircuitBreaker breaker,
+                RateLimiter limiter, Random jitter) {
+        MaxAttempts = maxAttempts;
+        BaseDelayMillis = baseDelayMillis;
+        MaxDelayMillis = maxDelayMillis;
+        Breaker = breaker;
+        Limiter = limiter;
+        Jitter = jitter;
+    }
+
+    /**
+     * Returns the circuit breaker of this policy.
+     */
+    CircuitBreaker getBreaker() {
+        return Breaker;
+    }
+
+    /**
+     * Run a request, retrying it while it fails in a way that may go away.
+     *
+     * @param cancellationToken stops the waits between attempts, or null
+     * @throws CircuitOpenException if the API is unhealthy and no request was sent
+     * @throws IOException of the last attempt if every attempt failed, or of the first attempt
+     * that failed in a way that is not retried
+     * @throws FetchCanceledException if the token is cancelled
+     */
+    <T> T execute(Attempt<T> attempt, CancellationToken cancellationToken) throws IOException {
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            if (!Breaker.allowRequest()) {
+                throw new CircuitOpenException();
+            }
+
+            long delayMillis;
+            try {
+                Limiter.acquire(cancellationToken);
+                T result = attempt.run();
+                Breaker.recordSuccess();
+                return result;
+            } catch (HttpStatusException e) {
+                if (!isRetryable(e.getResponseCode())) {
+                    // The API is up; it just doesn't like this request
+                    Breaker.recordSuccess();
+                    throw e;
+                }
+                Breaker.recordFailure();
+
+                long retryAfterMillis = e.getRetryAfterMillis();
+                if (retryAfterMillis > 0) {
+                    Limiter.pauseFor(Math.min(retryAfterMillis, MAX_RETRY_AFTER_MILLIS));
+                }
+                if (attemptNumber >= MaxAttempts || retryAfterMillis > MAX_RETRY_AFTER_MILLIS) {
+                    throw e;
+                }
+                delayMillis = Math.max(backoffMillis(attemptNumber), retryAfterMillis);
+            } catch (FetchCanceledException e) {
+                Breaker.recordIgnored();
+                throw e;
+            } catch (RuntimeException e) {
+                // A bug or a callback failed, not the API; release the trial so the breaker
+                // doesn't stay half open for good
+                Breaker.recordIgnored();
+                throw e;
+            } catch (IOException e) {
+                if (cancellationToken != null && cancellationToken.isCanceled()) {
+                    Breaker.recordIgnored();
+                    throw e;
+                }
+                Breaker.recordFailure();
+                if (attemptNumber >= MaxAttempts) {
+                    throw e;
+                }
+                delayMillis = backoffMillis(attemptNumber);
+            }
+
+            CoreLog.w(LOG_TAG, "Attempt " + attemptNumber + " failed, retrying in " + delayMillis + " ms");
+            sleep(delayMillis, cancellationToken);
+        }
+    }
+
+    /**
+     * Returns true for the status codes that mean the same request may succeed later.
+     */
+    static boolean isRetryable(int responseCode) {
+        return responseCode == 429 || responseCode == 500 || responseCode == 502
+                || responseCode == 503 || responseCode == 504;
+    }
+
+    /**
+     * Returns a random delay between 0 and the exponential cap for the given attempt.
+     */
+    long backoffMillis(int attemptNumber) {
+        long cap = MaxDelayMillis;
+        if (attemptNumber - 1 < 31) {
+            cap = Math.min(cap, BaseDelayMillis << (attemptNumber - 1));
+        }
+        synchronized (Jitter) {
+            return (long) (Jitter.nextDouble() * cap);
+        }
+    }
+
+    /**
+     * Returns the delay a Retry-After header asks for, in milliseconds, or 0 if there is none or
+     * it can't be read. The header is either a number of seconds or an HTTP date.
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            return Math.max(Long.parseLong(retryAfter) * 1000, 0);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(format.parse(retryAfter).getTime() - System.currentTimeMillis(), 0);
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+    private static void sleep(long millis, CancellationToken cancellationToken) {
+        long end = System.nanoTime() + millis * 1000000;
+        long remaining = millis;
+        while (remaining > 0) {
+            if (cancellationToken != null) {
+                cancellationToken.throwIfCanceled();
+            }
+            try {
+                Thread.sleep(Math.min(remaining, 100));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FetchCanceledException();
+            }
+            remaining = (end - System.nanoTime()) / 1000000;
+        }
+        if (cancellationToken != null) {
+            cancellationToken.throwIfCanceled();
+        }
+    }
+
+    /**
+     * Thrown when the server answered with a status code other than 200 or 304.
+     */
+    static final class HttpStatusException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int ResponseCode;
+        private final long RetryAfterMillis;
+
+        HttpStatusException(int responseCode, long retryAfterMillis) {
+            super("HTTP " + responseCode);
+            ResponseCode = responseCode;
+            RetryAfterMillis = retryAfterMillis;
+        }
+
+        int getResponseCode() {
+            return ResponseCode;
+        }
+
+        /**
+         * Returns the delay the server asked for with Retry-After, or 0.
+         */
+        long getRetryAfterMillis() {
+            return RetryAfterMillis;
+        }
+    }
+
+    /**
+     * Thrown instead of sending a request while the circuit breaker is open.
+     */
+    static final class CircuitOpenException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException() {
+            super("Circuit breaker open");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.android.booklistingapp;
+
+//https://github.com/HdrHistogram/HdrHistogram (the bucket layout is a much smaller version of it)
+
+import java.util.Arrays;
+
+/**
+ * Counts recorded values in buckets whose width grows with the value, so it has a fixed size
+ * however many values are recorded, and percentiles are within 1/8 of the true value.
+ *
+ * Values below 16 have a bucket each. Above that, every power of two is split into 8 buckets of
+ * equal width. Negative values are recorded as 0.
+ *
+ * All methods are thread-safe.
+ */
+final class Histogram {
+
+    /** Values below this have a bucket of their own */
+    private static final int LINEAR_BUCKETS = 16;
+
+    /** Number of buckets every power of two above LINEAR_BUCKETS is split into */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Enough buckets for every positive long */
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - 4) * SUB_BUCKETS;
+
+    private final long[] Counts = new long[BUCKET_COUNT];
+    private long Count;
+    private long Sum;
+    private long Min = Long.MAX_VALUE;
+    private long Max;
+
+    /**
+     * Add a value.
+     */
+    synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        Counts[bucketOf(value)]++;
+        Count++;
+        Sum += value;
+        Min = Math.min(Min, value);
+        Max = Math.max(Max, value);
+    }
+
+    /**
+     * Returns the number of values recorded.
+     */
+    synchronized long getCount() {
+        return Count;
+    }
+
+    /**
+     * Returns the smallest value recorded, or 0 if there are none.
+     */
+    synchronized long getMin() {
+        return Count == 0 ? 0 : Min;
+    }
+
+    /**
+     * Returns the largest value recorded, or 0 if there are none.
+     */
+    synchronized long getMax() {
+        return Max;
+    }
+
+    /**
+     * Returns the mean of the values recorded, or 0 if there are none.
+     */
+    synchronized long getMean() {
+        return Count == 0 ? 0 : Sum / Count;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values fall, rounded up
+     * to the top of its bucket, or 0 if there are none.
+     *
+     * @param percentile is between 0 and 100
+     */
+    synchronized long getPercentile(double percentile) {
+        if (Count == 0) {
+            return 0;
+        }
+        long rank = Math.max((long) Math.ceil(Count * percentile / 100), 1);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += Counts[bucket];
+            if (seen >= rank) {
+                return Math.max(Math.min(highestValueIn(bucket), Max), Min);
+            }
+        }
+        return Max;
+    }
+
+    /**
+     * Forget every value recorded.
+     */
+    synchronized void reset() {
+        Arrays.fill(Counts, 0);
+        Count = 0;
+        Sum = 0;
+        Min = Long.MAX_VALUE;
+        Max = 0;
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long lowest = (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
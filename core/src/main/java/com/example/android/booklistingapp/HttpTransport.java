@@ -0,0 +1,324 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/reference/java/net/HttpURLConnection.html (Performance)
+//https://docs.oracle.com/javase/8/docs/technotes/guides/net/http-keepalive.html
+
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens HTTP GET requests in a way that lets the platform keep connections alive.
+ *
+ * HttpURLConnection returns a connection to its pool when the response body has been read to the
+ * end and closed, but throws it away on disconnect(). A {@link Response} therefore drains and
+ * closes its body instead of disconnecting, and only disconnects when something went wrong.
+ *
+ * Requests ask for a gzip body, which is decoded as a stream. The compressed size of the body and
+ * the time to first byte of every request are added to running totals. While
+ * {@link FetchMetrics} is enabled a response also times its connect and the reads of its body.
+ */
+final class HttpTransport {
+
+    /** Timeouts, in milliseconds */
+    private static final int READ_TIMEOUT = 10000;
+    private static final int CONNECT_TIMEOUT = 15000;
+
+    /** Largest remainder of a body that is read just to keep its connection alive */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    /** Running totals over all requests */
+    private static long sRequestCount;
+    private static long sBytesOnWire;
+    private static long sTimeToFirstByteMillis;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link HttpTransport} object.
+     */
+    private HttpTransport() {
+    }
+
+    /**
+     * Send a GET request and wait for the response headers.
+     *
+     * @param eTag is sent as If-None-Match, or null
+     * @param cancellationToken disconnects the request when cancelled, or null
+     */
+    static Response open(URL url, String eTag, CancellationToken cancellationToken) throws IOException {
+        long startNanos = System.nanoTime();
+
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+
+        // Disconnecting from another thread makes the blocked connect or read fail at once
+        if (cancellationToken != null) {
+            cancellationToken.setOnCancelListener(new CancellationToken.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    urlConnection.disconnect();
+                }
+            });
+        }
+
+        Response response = new Response(urlConnection, cancellationToken);
+        try {
+            urlConnection.setReadTimeout(READ_TIMEOUT);
+            urlConnection.setConnectTimeout(CONNECT_TIMEOUT);
+            urlConnection.setRequestMethod("GET");
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+            if (eTag != null) {
+                urlConnection.setRequestProperty("If-None-Match", eTag);
+            }
+            urlConnection.connect();
+            response.ConnectNanos = System.nanoTime() - startNanos;
+
+            // Blocks until the status line and headers have arrived
+            response.ResponseCode = urlConnection.getResponseCode();
+            response.TimeToFirstByteNanos = System.nanoTime() - startNanos;
+        } catch (IOException e) {
+            response.Failed = true;
+            response.close();
+            throw e;
+        } catch (RuntimeException e) {
+            // The JVM's connection can fail this way when it is disconnected while it waits for
+            // the headers; that is a cancellation, not a bug
+            response.Failed = true;
+            response.close();
+            if (cancellationToken != null && cancellationToken.isCanceled()) {
+                throw new FetchCanceledException();
+            }
+            throw e;
+        }
+        return response;
+    }
+
+    /**
+     * Returns the number of requests made so far.
+     */
+    static synchronized long getRequestCount() {
+        return sRequestCount;
+    }
+
+    /**
+     * Returns the number of body bytes received so far, as sent on the wire (compressed).
+     */
+    static synchronized long getBytesOnWire() {
+        return sBytesOnWire;
+    }
+
+    /**
+     * Returns the average time to first byte so far, in milliseconds.
+     */
+    static synchronized long getAverageTimeToFirstByteMillis() {
+        return sRequestCount == 0 ? 0 : sTimeToFirstByteMillis / sRequestCount;
+    }
+
+    private static synchronized void record(long bytesOnWire, long timeToFirstByteMillis) {
+        sRequestCount++;
+        sBytesOnWire += bytesOnWire;
+        sTimeToFirstByteMillis += timeToFirstByteMillis;
+    }
+
+    /**
+     * The response to a request. It must always be closed.
+     */
+    static final class Response {
+
+        private final HttpURLConnection Connection;
+        private final CancellationToken Cancellation;
+
+        private int ResponseCode = -1;
+        private long ConnectNanos;
+        private long TimeToFirstByteNanos;
+        private CountingInputStream WireStream;
+        private InputStream BodyStream;
+        private boolean Failed;
+        private boolean Closed;
+
+        private Response(HttpURLConnection connection, CancellationToken cancellation) {
+            Connection = connection;
+            Cancellation = cancellation;
+        }
+
+        /**
+         * Returns the HTTP status code.
+         */
+        int getResponseCode() {
+            return ResponseCode;
+        }
+
+        /**
+         * Returns the value of a response header, or null.
+         */
+        String getHeaderField(String name) {
+            return Connection.getHeaderField(name);
+        }
+
+        /**
+         * Returns the response body, already decoded if it was sent with gzip.
+         */
+        InputStream getInputStream() throws IOException {
+            if (BodyStream == null) {
+                WireStream = new CountingInputStream(Connection.getInputStream(), FetchMetrics.isEnabled());
+                if ("gzip".equalsIgnoreCase(Connection.getContentEncoding())) {
+                    BodyStream = new GZIPInputStream(WireStream);
+                } else {
+                    BodyStream = WireStream;
+                }
+            }
+            return BodyStream;
+        }
+
+        /**
+         * Returns the number of body bytes read from the wire so far.
+         */
+        long getBytesOnWire() {
+            return WireStream != null ? WireStream.Count : 0;
+        }
+
+        /**
+         * Returns the time it took to open the connection, including DNS and TLS, in nanoseconds.
+         */
+        long getConnectNanos() {
+            return ConnectNanos;
+        }
+
+        /**
+         * Returns the time from opening the request until the response headers arrived, in
+         * nanoseconds.
+         */
+        long getTimeToFirstByteNanos() {
+            return TimeToFirstByteNanos;
+        }
+
+        /**
+         * Returns the time spent waiting for the body to come off the network so far, in
+         * nanoseconds. Only measured while {@link FetchMetrics} is enabled.
+         */
+        long getReadNanos() {
+            return WireStream != null ? WireStream.ReadNanos : 0;
+        }
+
+        /**
+         * Mark the connection as unusable, so close() disconnects it instead of reusing it.
+         */
+        void fail() {
+            Failed = true;
+        }
+
+        /**
+         * Finish the response. A successful response is drained so its connection goes back to
+         * the pool; a failed or cancelled one is disconnected.
+         */
+        void close() {
+            if (Closed) {
+                return;
+            }
+            Closed = true;
+
+            if (Cancellation != null) {
+                Cancellation.setOnCancelListener(null);
+                if (Cancellation.isCanceled()) {
+                    Failed = true;
+                }
+            }
+
+            if (!Failed) {
+                try {
+                    // Error responses have their body on the error stream
+                    InputStream remaining = WireStream;
+                    if (remaining == null) {
+                        remaining = ResponseCode >= 400 ? Connection.getErrorStream() : Connection.getInputStream();
+                        if (remaining != null) {
+                            WireStream = new CountingInputStream(remaining, false);
+                            remaining = WireStream;
+                        }
+                    }
+                    if (remaining != null) {
+                        drain(remaining);
+                    }
+                    // Closing the decoded stream also releases the gzip inflater
+                    if (BodyStream != null) {
+                        BodyStream.close();
+                    } else if (remaining != null) {
+                        remaining.close();
+                    }
+                } catch (IOException e) {
+                    Failed = true;
+                }
+            }
+
+            if (Failed) {
+                Connection.disconnect();
+            }
+
+            record(getBytesOnWire(), TimeToFirstByteNanos / 1000000);
+        }
+
+        private void drain(InputStream in) throws IOException {
+            byte[] buffer = new byte[4096];
+            long drained = 0;
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                drained += count;
+                if (drained > MAX_DRAIN_BYTES) {
+                    // Cheaper to open a new connection than to download the rest
+                    Failed = true;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, and optionally the time spent in reads.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final boolean Timed;
+
+        long Count;
+        long ReadNanos;
+
+        CountingInputStream(InputStream in, boolean timed) {
+            super(in);
+            Timed = timed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = Timed ? System.nanoTime() : 0;
+            int b = super.read();
+            if (Timed) {
+                ReadNanos += System.nanoTime() - start;
+            }
+            if (b != -1) {
+                Count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = Timed ? System.nanoTime() : 0;
+            int count = super.read(buffer, offset, length);
+            if (Timed) {
+                ReadNanos += System.nanoTime() - start;
+            }
+            if (count > 0) {
+                Count += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            Count += skipped;
+            return skipped;
+        }
+    }
+}
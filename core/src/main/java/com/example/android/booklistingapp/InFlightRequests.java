@@ -0,0 +1,152 @@
+package com.example.android.booklistingapp;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Coalesces identical concurrent queries into one fetch.
+ *
+ * The first caller for a URL performs the request; callers that ask for the same URL while it
+ * is in flight wait for its result instead of opening a second connection. The shared request
+ * is only cancelled once every caller waiting on it has cancelled.
+ */
+final class InFlightRequests {
+
+    /** Requests in flight, keyed by normalized URL */
+    private static final Map<String, Call> sCalls = new HashMap<>();
+
+    /**
+     * Create a private constructor because no one should ever create an {@link InFlightRequests} object.
+     */
+    private InFlightRequests() {
+    }
+
+    /**
+     * Fetch a page of results, sharing the request with any identical one already in flight.
+     *
+     * @throws FetchCanceledException if the caller's token is cancelled before the result arrives
+     */
+    static BookListingPage fetch(String requestUrl, BookListingCache cache, CancellationToken cancellationToken) {
+        return fetch(requestUrl, cache, cancellationToken, FetchPolicy.getDefault());
+    }
+
+    /**
+     * Fetch a page of results as {@link #fetch(String, BookListingCache, CancellationToken)}
+     * does, with the given retry policy for a request that is not shared.
+     */
+    static BookListingPage fetch(String requestUrl, BookListingCache cache, CancellationToken cancellationToken,
+                                 FetchPolicy policy) {
+        return fetch(requestUrl, cache, cancellationToken, policy, null);
+    }
+
+    /**
+     * Fetch a page of results as {@link #fetch(String, BookListingCache, CancellationToken,
+     * FetchPolicy)} does. If this caller sends the request, the listener receives the books of
+     * the response in batches while it is parsed; a caller that waits for a shared request only
+     * gets the finished page.
+     *
+     * @param batchListener receives the books parsed so far, or null
+     */
+    static BookListingPage fetch(String requestUrl, BookListingCache cache, CancellationToken cancellationToken,
+                                 FetchPolicy policy, QueryUtils.BatchListener batchListener) {
+        String key = BookListingCache.normalizeUrl(requestUrl);
+
+        final Call call;
+        boolean owner = false;
+        synchronized (sCalls) {
+            Call existing = sCalls.get(key);
+            if (existing == null || existing.Signal.isCanceled()) {
+                existing = new Call();
+                sCalls.put(key, existing);
+                owner = true;
+            }
+            call = existing;
+            call.join();
+        }
+
+        cancellationToken.setOnCancelListener(new CancellationToken.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                call.leave();
+            }
+        });
+
+        try {
+            if (owner) {
+                // The owner keeps fetching even if its own loader was cancelled, as long as
+                // another caller still wants the result
+                BookListingPage page = null;
+                try {
+                    page = QueryUtils.fetchBookListingPage(requestUrl, cache, call.Signal, policy, batchListener);
+                } catch (FetchCanceledException e) {
+                    // Every caller has gone away
+                } finally {
+                    synchronized (sCalls) {
+                        if (sCalls.get(key) == call) {
+                            sCalls.remove(key);
+                        }
+                    }
+                    call.complete(page);
+                }
+                cancellationToken.throwIfCanceled();
+                return page;
+            }
+
+            return call.await(cancellationToken);
+        } finally {
+            cancellationToken.setOnCancelListener(null);
+        }
+    }
+
+    /**
+     * One shared request and the callers waiting for it.
+     */
+    private static final class Call {
+
+        /** Cancels the shared request */
+        final CancellationToken Signal = new CancellationToken();
+
+        private int Waiters;
+        private boolean Done;
+        private BookListingPage Page;
+
+        synchronized void join() {
+            Waiters++;
+        }
+
+        /**
+         * A caller no longer wants the result. The last one to leave cancels the request.
+         */
+        void leave() {
+            boolean cancel;
+            synchronized (this) {
+                Waiters--;
+                cancel = Waiters == 0 && !Done;
+                notifyAll();
+            }
+            if (cancel) {
+                Signal.cancel();
+            }
+        }
+
+        synchronized void complete(BookListingPage page) {
+            Page = page;
+            Done = true;
+            notifyAll();
+        }
+
+        synchronized BookListingPage await(CancellationToken cancellationToken) {
+            while (!Done) {
+                cancellationToken.throwIfCanceled();
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new FetchCanceledException();
+                }
+            }
+            return Page;
+        }
+    }
+}
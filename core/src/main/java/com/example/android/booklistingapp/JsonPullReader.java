@@ -0,0 +1,444 @@
+package com.example.android.booklistingapp;
+
+//https://developer.android.com/reference/android/util/JsonReader.html
+//https://tools.ietf.org/html/rfc7159
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A small pull-based JSON reader. It reads tokens one at a time straight from a {@link Reader},
+ * so a response never has to be held in memory as a String or as a tree of JSONObjects.
+ *
+ * The API follows {@link android.util.JsonReader}, but this class only uses plain Java so the
+ * parsing code can also run (and be measured) on the JVM.
+ */
+final class JsonPullReader implements Closeable {
+
+    /**
+     * The kinds of token that {@link #peek()} can return.
+     */
+    enum Token {
+        BEGIN_ARRAY,
+        END_ARRAY,
+        BEGIN_OBJECT,
+        END_OBJECT,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    /** Scopes on the nesting stack */
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    /** Source of the characters */
+    private final Reader In;
+
+    /** Read buffer, refilled from {@link #In} when it runs out */
+    private final char[] Buffer = new char[1024];
+    private int Pos = 0;
+    private int Limit = 0;
+
+    /** Nesting stack, grown on demand */
+    private int[] Stack = new int[32];
+    private int StackSize = 0;
+
+    /** The token that was peeked but not consumed yet, or null */
+    private Token Peeked;
+
+    /** Text of the peeked NAME, STRING, NUMBER or BOOLEAN token */
+    private String PeekedValue;
+
+    /** Reused when decoding strings */
+    private final StringBuilder Builder = new StringBuilder();
+
+    /**
+     * Constructs a new {@link JsonPullReader}.
+     *
+     * @param in is the reader that supplies the JSON document
+     */
+    JsonPullReader(Reader in) {
+        In = in;
+        push(EMPTY_DOCUMENT);
+    }
+
+    /**
+     * Consumes the next token, which must be the opening of an array.
+     */
+    void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    /**
+     * Consumes the next token, which must be the end of the current array.
+     */
+    void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        StackSize--;
+    }
+
+    /**
+     * Consumes the next token, which must be the opening of an object.
+     */
+    void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    /**
+     * Consumes the next token, which must be the end of the current object.
+     */
+    void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        StackSize--;
+    }
+
+    /**
+     * Returns true if the current array or object has another element.
+     */
+    boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consumes the next token, which must be a property name, and returns it.
+     */
+    String nextName() throws IOException {
+        expect(Token.NAME);
+        return PeekedValue;
+    }
+
+    /**
+     * Consumes the next token and returns its text. Numbers and booleans are returned as they
+     * appear in the document.
+     */
+    String nextString() throws IOException {
+        Token token = peek();
+        if (token != Token.STRING && token != Token.NUMBER && token != Token.BOOLEAN) {
+            throw syntaxError("Expected a string but was " + token);
+        }
+        Peeked = null;
+        return PeekedValue;
+    }
+
+    /**
+     * Consumes the next token, which must be a number, and returns it as an int.
+     */
+    int nextInt() throws IOException {
+        Token token = peek();
+        if (token != Token.NUMBER && token != Token.STRING) {
+            throw syntaxError("Expected an int but was " + token);
+        }
+        Peeked = null;
+        try {
+            return Integer.parseInt(PeekedValue);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected an int but was " + PeekedValue);
+        }
+    }
+
+    /**
+     * Consumes the next token, which must be a literal null.
+     */
+    void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    /**
+     * Skips the next value, including all of its nested arrays and objects. Strings inside a
+     * skipped value are scanned but never copied.
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peekValue(true);
+            if (token == Token.BEGIN_ARRAY) {
+                push(EMPTY_ARRAY);
+                depth++;
+            } else if (token == Token.BEGIN_OBJECT) {
+                push(EMPTY_OBJECT);
+                depth++;
+            } else if (token == Token.END_ARRAY || token == Token.END_OBJECT) {
+                StackSize--;
+                depth--;
+            } else if (token == Token.END_DOCUMENT) {
+                throw syntaxError("Unexpected end of document");
+            }
+            Peeked = null;
+        } while (depth > 0);
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     */
+    Token peek() throws IOException {
+        return peekValue(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        Peeked = null;
+        StackSize = 0;
+        In.close();
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        Peeked = null;
+    }
+
+    private void push(int scope) {
+        if (StackSize == Stack.length) {
+            int[] newStack = new int[StackSize * 2];
+            System.arraycopy(Stack, 0, newStack, 0, StackSize);
+            Stack = newStack;
+        }
+        Stack[StackSize++] = scope;
+    }
+
+    /**
+     * Works out the next token. When skipping is true, string contents are not decoded.
+     */
+    private Token peekValue(boolean skipping) throws IOException {
+        if (Peeked != null) {
+            return Peeked;
+        }
+
+        int scope = Stack[StackSize - 1];
+        int c;
+
+        if (scope == EMPTY_ARRAY || scope == NONEMPTY_ARRAY) {
+            c = nextNonWhitespace();
+            if (c == ']') {
+                return Peeked = Token.END_ARRAY;
+            }
+            if (scope == NONEMPTY_ARRAY) {
+                if (c != ',') {
+                    throw syntaxError("Unterminated array");
+                }
+            } else {
+                Pos--;
+            }
+            Stack[StackSize - 1] = NONEMPTY_ARRAY;
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            c = nextNonWhitespace();
+            if (c == '}') {
+                return Peeked = Token.END_OBJECT;
+            }
+            if (scope == NONEMPTY_OBJECT) {
+                if (c != ',') {
+                    throw syntaxError("Unterminated object");
+                }
+                c = nextNonWhitespace();
+            }
+            if (c != '"') {
+                throw syntaxError("Expected a name");
+            }
+            Stack[StackSize - 1] = DANGLING_NAME;
+            PeekedValue = readString(skipping);
+            return Peeked = Token.NAME;
+        } else if (scope == DANGLING_NAME) {
+            if (nextNonWhitespace() != ':') {
+                throw syntaxError("Expected ':'");
+            }
+            Stack[StackSize - 1] = NONEMPTY_OBJECT;
+        } else if (scope == EMPTY_DOCUMENT) {
+            Stack[StackSize - 1] = NONEMPTY_DOCUMENT;
+        } else {
+            if (nextNonWhitespaceOrEnd() == -1) {
+                return Peeked = Token.END_DOCUMENT;
+            }
+            throw syntaxError("Expected end of document");
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return Peeked = Token.BEGIN_OBJECT;
+            case '[':
+                return Peeked = Token.BEGIN_ARRAY;
+            case '"':
+                PeekedValue = readString(skipping);
+                return Peeked = Token.STRING;
+            default:
+                Pos--;
+                return Peeked = readLiteral();
+        }
+    }
+
+    /**
+     * Reads a string whose opening quote has already been consumed.
+     */
+    private String readString(boolean skipping) throws IOException {
+        StringBuilder builder = Builder;
+        builder.setLength(0);
+        while (true) {
+            if (Pos == Limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+
+            // Copy runs of plain characters in one go
+            int start = Pos;
+            while (Pos < Limit) {
+                char c = Buffer[Pos];
+                if (c == '"') {
+                    if (!skipping) {
+                        builder.append(Buffer, start, Pos - start);
+                    }
+                    Pos++;
+                    return skipping ? null : builder.toString();
+                }
+                if (c == '\\') {
+                    break;
+                }
+                Pos++;
+            }
+            if (!skipping) {
+                builder.append(Buffer, start, Pos - start);
+            }
+
+            if (Pos < Limit) {
+                // Skip the backslash and decode the escape sequence
+                Pos++;
+                char escaped = readEscape();
+                if (!skipping) {
+                    builder.append(escaped);
+                }
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int hex = read();
+                    int digit = Character.digit(hex, 16);
+                    if (hex == -1 || digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Reads a number, true, false or null.
+     */
+    private Token readLiteral() throws IOException {
+        StringBuilder builder = Builder;
+        builder.setLength(0);
+        while (true) {
+            if (Pos == Limit && !fill()) {
+                break;
+            }
+            char c = Buffer[Pos];
+            if (c == ',' || c == '}' || c == ']' || c == ':'
+                    || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                break;
+            }
+            builder.append(c);
+            Pos++;
+        }
+
+        if (builder.length() == 0) {
+            throw syntaxError("Expected a value");
+        }
+
+        String literal = builder.toString();
+        PeekedValue = literal;
+        if ("null".equals(literal)) {
+            return Token.NULL;
+        }
+        if ("true".equals(literal) || "false".equals(literal)) {
+            return Token.BOOLEAN;
+        }
+        char first = literal.charAt(0);
+        if (first == '-' || (first >= '0' && first <= '9')) {
+            return Token.NUMBER;
+        }
+        throw syntaxError("Unexpected value " + literal);
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = nextNonWhitespaceOrEnd();
+        if (c == -1) {
+            throw syntaxError("Unexpected end of document");
+        }
+        return c;
+    }
+
+    private int nextNonWhitespaceOrEnd() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (Pos == Limit && !fill()) {
+            return -1;
+        }
+        return Buffer[Pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int count = In.read(Buffer, 0, Buffer.length);
+        Pos = 0;
+        Limit = count > 0 ? count : 0;
+        return count > 0;
+    }
+
+    private IOException syntaxError(String message) {
+        return new MalformedJsonException(message);
+    }
+
+    /**
+     * Thrown when the input is not valid JSON, as opposed to an {@link IOException} of the
+     * underlying reader.
+     */
+    static final class MalformedJsonException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        MalformedJsonException(String message) {
+            super(message);
+        }
+    }
+}
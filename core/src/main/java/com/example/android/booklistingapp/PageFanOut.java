@@ -0,0 +1,353 @@
+package com.example.android.booklistingapp;
+
+//https://developers.google.com/books/docs/v1/using#pagination
+//https://docs.oracle.com/javase/7/docs/api/java/util/concurrent/ExecutorCompletionService.html
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the first results of a query as several page requests in parallel.
+ *
+ * The first page is fetched on its own, because it tells how many results there are. The pages
+ * after it are then requested at the same time with the startIndex parameter, at most
+ * {@link #getMaxConcurrency()} at once, so the app stays within its API quota. Every page is
+ * parsed as it is downloaded on its own thread, so one page is parsed while others are still
+ * waiting for the network.
+ *
+ * Each page has its own timeout, counted from the moment its request starts. A page that takes
+ * longer is cancelled and left out, and does not hold back the pages that already arrived: they
+ * are passed to the {@link Callback} as soon as each one is done, and the merged result keeps the
+ * order of the pages.
+ */
+final class PageFanOut {
+
+    /**
+     * Receives pages as they arrive, on the thread that called {@link #fetch}.
+     */
+    interface Callback {
+
+        /**
+         * Called once for every page that arrived in time, in the order they arrive.
+         */
+        void onPage(int pageIndex, BookListingPage page);
+    }
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = PageFanOut.class.getSimpleName();
+
+    /** Largest maxResults the API accepts */
+    static final int PAGE_SIZE = 40;
+
+    /** Default number of page requests in flight at once */
+    static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+    /** Default time a page request may take, in milliseconds */
+    static final long DEFAULT_PAGE_TIMEOUT_MILLIS = 8000;
+
+    private static PageFanOut sDefault;
+
+    private final int MaxConcurrency;
+    private final long PageTimeoutMillis;
+    private final FetchPolicy Policy;
+    private final ThreadPoolExecutor Executor;
+
+    /**
+     * Returns the fan-out shared by the app, with the default limits.
+     */
+    static synchronized PageFanOut getDefault() {
+        if (sDefault == null) {
+            sDefault = new PageFanOut(DEFAULT_MAX_CONCURRENCY, DEFAULT_PAGE_TIMEOUT_MILLIS, FetchPolicy.getDefault());
+        }
+        return sDefault;
+    }
+
+    /**
+     * Constructs a new {@link PageFanOut}.
+     *
+     * @param maxConcurrency is the largest number of page requests in flight at once
+     * @param pageTimeoutMillis is the time a page request may take
+     * @param policy retries and throttles the page requests
+     */
+    PageFanOut(int maxConcurrency, long pageTimeoutMillis, FetchPolicy policy) {
+        MaxConcurrency = maxConcurrency;
+        PageTimeoutMillis = pageTimeoutMillis;
+        Policy = policy;
+
+        // The pool never has more threads than requests it may have in flight, and lets them
+        // go when there is nothing to fetch
+        Executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger Count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "PageFanOut #" + Count.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        Executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the largest number of page requests in flight at once.
+     */
+    int getMaxConcurrency() {
+        return MaxConcurrency;
+    }
+
+    /**
+     * Fetch the first results of a query and return them merged into one page, in order. Pages
+     * that failed or timed out are left out. Blocks until every page has arrived or timed out.
+     *
+     * @param baseUrl is the query URL without the maxResults and startIndex parameters
+     * @param maxResults is the number of results wanted
+     * @param cache is the result cache to read and fill, or null
+     * @param cancellationToken cancels every page request
+     * @param callback receives pages as they arrive, or null
+     * @throws FetchCanceledException if the token is cancelled
+     */
+    BookListingPage fetch(String baseUrl, int maxResults, BookListingCache cache,
+                          CancellationToken cancellationToken, Callback callback) {
+        long start = System.nanoTime();
+        int pageCount = (maxResults + PAGE_SIZE - 1) / PAGE_SIZE;
+        BookListingPage[] pages = new BookListingPage[Math.max(pageCount, 1)];
+
+        // The first page says how many pages there are
+        pages[0] = fetchPage(QueryUtils.pageUrl(baseUrl, 0, PAGE_SIZE), cache, cancellationToken, Policy);
+        if (pages[0] == null) {
+            return null;
+        }
+        if (callback != null) {
+            callback.onPage(0, pages[0]);
+        }
+        int totalItems = pages[0].getTotalItems();
+        pageCount = Math.max(Math.min(pageCount, (Math.min(totalItems, maxResults) + PAGE_SIZE - 1) / PAGE_SIZE), 1);
+        if (pages[0].getBookListings().size() < PAGE_SIZE) {
+            pageCount = 1;
+        }
+
+        if (pageCount > 1) {
+            fetchRemainingPages(baseUrl, pageCount, cache, cancellationToken, callback, pages);
+        }
+
+        // Merge in page order; books that moved between pages while they were fetched are
+        // only kept once
+        List<BookListing> booklistings = new CompactBookListingList(pageCount * PAGE_SIZE);
+        Set<String> seenIds = new HashSet<>();
+        int received = 0;
+        for (int i = 0; i < pageCount; i++) {
+            if (pages[i] == null) {
+                continue;
+            }
+            received++;
+            for (BookListing booklisting : pages[i].getBookListings()) {
+                if (booklistings.size() < maxResults
+                        && (booklisting.getId() == null || seenIds.add(booklisting.getId()))) {
+                    booklistings.add(booklisting);
+                }
+            }
+        }
+
+        CoreLog.d(LOG_TAG, received + "/" + pageCount + " pages, " + booklistings.size() + " books in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return new BookListingPage(booklistings, totalItems);
+    }
+
+    /**
+     * Fetch pages 1 to pageCount - 1 in parallel into the array.
+     */
+    private void fetchRemainingPages(String baseUrl, int pageCount, final BookListingCache cache,
+                                     CancellationToken cancellationToken, Callback callback,
+                                     BookListingPage[] pages) {
+        ExecutorCompletionService<Integer> completion = new ExecutorCompletionService<>(Executor);
+        final PageRequest[] requests = new PageRequest[pageCount];
+        for (int i = 1; i < pageCount; i++) {
+            requests[i] = new PageRequest(i, QueryUtils.pageUrl(baseUrl, i * PAGE_SIZE, PAGE_SIZE), cache, Policy);
+            requests[i].Task = completion.submit(requests[i]);
+        }
+
+        // Cancelling the fan-out cancels every page
+        if (cancellationToken != null) {
+            cancellationToken.setOnCancelListener(new CancellationToken.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    for (PageRequest request : requests) {
+                        if (request != null) {
+                            request.cancel();
+                        }
+                    }
+                }
+            });
+        }
+
+        try {
+            int pending = pageCount - 1;
+            while (pending > 0) {
+                if (cancellationToken != null) {
+                    cancellationToken.throwIfCanceled();
+                }
+
+                Future<Integer> done;
+                try {
+                    done = completion.poll(nextDeadlineMillis(requests), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new FetchCanceledException();
+                }
+
+                // The request is found from its future, so one that failed is counted as
+                // finished too, rather than waited for until its timeout
+                PageRequest finished = done != null ? requestOf(done, requests) : null;
+                if (finished != null && !finished.Finished && !finished.TimedOut) {
+                    finished.Finished = true;
+                    pending--;
+                    if (succeeded(done) && finished.Page != null) {
+                        pages[finished.PageIndex] = finished.Page;
+                        if (callback != null) {
+                            callback.onPage(finished.PageIndex, finished.Page);
+                        }
+                    }
+                }
+
+                // Give up on the pages that have taken too long
+                long now = System.nanoTime();
+                for (int i = 1; i < pageCount; i++) {
+                    PageRequest request = requests[i];
+                    if (!request.Finished && !request.TimedOut && request.StartNanos != 0
+                            && now - request.StartNanos >= PageTimeoutMillis * 1000000) {
+                        request.TimedOut = true;
+                        request.cancel();
+                        pending--;
+                        CoreLog.w(LOG_TAG, "Page " + i + " timed out after " + PageTimeoutMillis + " ms");
+                    }
+                }
+            }
+        } finally {
+            if (cancellationToken != null) {
+                cancellationToken.setOnCancelListener(null);
+            }
+
+            // Don't start the requests that are still queued after a cancellation
+            for (PageRequest request : requests) {
+                if (request != null && !request.Finished) {
+                    request.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns how long to wait for the next page before checking the timeouts again.
+     */
+    private long nextDeadlineMillis(PageRequest[] requests) {
+        long now = System.nanoTime();
+        long wait = PageTimeoutMillis;
+        for (PageRequest request : requests) {
+            if (request != null && !request.Finished && !request.TimedOut && request.StartNanos != 0) {
+                long remaining = (request.StartNanos + PageTimeoutMillis * 1000000 - now) / 1000000;
+                wait = Math.min(wait, Math.max(remaining, 1));
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Returns the request the future belongs to, or null.
+     */
+    private static PageRequest requestOf(Future<Integer> done, PageRequest[] requests) {
+        for (PageRequest request : requests) {
+            if (request != null && request.Task == done) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if a finished request ran to its end, and false if it failed or never started.
+     */
+    private static boolean succeeded(Future<Integer> done) {
+        try {
+            done.get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FetchCanceledException();
+        } catch (CancellationException e) {
+            // Cancelled before it started
+            return false;
+        } catch (ExecutionException e) {
+            CoreLog.e(LOG_TAG, "Page request failed", e.getCause());
+            return false;
+        }
+    }
+
+    private static BookListingPage fetchPage(String pageUrl, BookListingCache cache,
+                                             CancellationToken cancellationToken, FetchPolicy policy) {
+        if (cancellationToken == null) {
+            cancellationToken = new CancellationToken();
+        }
+        return InFlightRequests.fetch(pageUrl, cache, cancellationToken, policy);
+    }
+
+    /**
+     * One page request of a fan-out.
+     */
+    private static final class PageRequest implements Callable<Integer> {
+
+        final int PageIndex;
+        final String Url;
+        final BookListingCache Cache;
+        final FetchPolicy Policy;
+        final CancellationToken Signal = new CancellationToken();
+
+        /** Set by the request thread */
+        volatile long StartNanos;
+        volatile BookListingPage Page;
+
+        /** Used by the fan-out thread only */
+        Future<Integer> Task;
+        boolean Finished;
+        boolean TimedOut;
+
+        PageRequest(int pageIndex, String url, BookListingCache cache, FetchPolicy policy) {
+            PageIndex = pageIndex;
+            Url = url;
+            Cache = cache;
+            Policy = policy;
+        }
+
+        /**
+         * Stop the request: a queued one never starts, a running one is disconnected.
+         */
+        void cancel() {
+            Task.cancel(false);
+            Signal.cancel();
+        }
+
+        @Override
+        public Integer call() {
+            StartNanos = System.nanoTime();
+            try {
+                Page = fetchPage(Url, Cache, Signal, Policy);
+            } catch (FetchCanceledException e) {
+                // Timed out, or the whole fan-out was cancelled
+                Page = null;
+            }
+            return PageIndex;
+        }
+    }
+}
@@ -0,0 +1,678 @@
+package com.example.android.booklistingapp;
+
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper methods related to requesting and receiving book listing data from Google Books.
+ */
+public final class QueryUtils {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = QueryUtils.class.getSimpleName();
+
+    /**
+     * Partial response selector for search results. Only the fields that a {@link BookListing}
+     * holds are requested.
+     */
+    static final String BOOK_LISTING_FIELDS =
+            "items(id,volumeInfo(title,authors,publishedDate,imageLinks/thumbnail),searchInfo/textSnippet),totalItems";
+
+    /**
+     * Partial response selector for a single volume. Only the fields that a {@link BookDetail}
+     * holds are requested.
+     */
+    static final String BOOK_DETAIL_FIELDS = "id,volumeInfo(title,subtitle,authors,publisher,publishedDate,"
+            + "description,pageCount,categories,averageRating,ratingsCount,imageLinks,infoLink)";
+
+    /** Number of books in the first batch handed to a {@link BatchListener} */
+    static final int FIRST_BATCH_SIZE = 5;
+
+    /**
+     * Receives the books of a response while it is still being parsed, so the first of them can
+     * be shown before the rest of the response has arrived.
+     */
+    interface BatchListener {
+
+        /**
+         * Called on the fetching thread once the first {@link #FIRST_BATCH_SIZE} books have been
+         * parsed, and again each time their number has doubled. The books after the last batch
+         * only come with the finished page.
+         *
+         * @param booklistings are the books parsed so far, from the first book of the response;
+         *                     a request that is retried starts again from its first book
+         */
+        void onBatch(List<BookListing> booklistings);
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryUtils} object.
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name QueryUtils (and an object instance of QueryUtils is not needed).
+     */
+    private QueryUtils() {
+    }
+
+    /**
+     * Query the Google Books dataset and return a list of {@link BookListing} objects.
+     */
+    public static List<BookListing> fetchBookListingData(String requestUrl) {
+        return fetchBookListingData(requestUrl, null);
+    }
+
+    /**
+     * Query the Google Books dataset and return a list of {@link BookListing} objects,
+     * answering from the cache while its entry for the URL is fresh.
+     *
+     * @param cache is the result cache to read and fill, or null to always use the network
+     */
+    public static List<BookListing> fetchBookListingData(String requestUrl, BookListingCache cache) {
+        BookListingPage page = fetchBookListingPage(requestUrl, cache);
+        return page != null ? page.getBookListings() : null;
+    }
+
+    /**
+     * Query the Google Books dataset and return one {@link BookListingPage} of results,
+     * answering from the cache while its entry for the URL is fresh.
+     *
+     * @param cache is the result cache to read and fill, or null to always use the network
+     */
+    public static BookListingPage fetchBookListingPage(String requestUrl, BookListingCache cache) {
+        return fetchBookListingPage(requestUrl, cache, null);
+    }
+
+    /**
+     * Query the Google Books dataset and return one {@link BookListingPage} of results,
+     * answering from the cache while its entry for the URL is fresh.
+     *
+     * Cancelling the token disconnects the HTTP connection straight away, so a superseded
+     * request stops downloading and parsing, and throws {@link FetchCanceledException}.
+     *
+     * Failed requests are retried as the default {@link FetchPolicy} decides. While the API is
+     * unhealthy no request is sent, and the cached result is returned even if it has expired.
+     *
+     * @param cache is the result cache to read and fill, or null to always use the network
+     * @param cancellationToken is used to cancel the request, or null
+     */
+    public static BookListingPage fetchBookListingPage(String requestUrl, BookListingCache cache,
+                                                       CancellationToken cancellationToken) {
+        return fetchBookListingPage(requestUrl, cache, cancellationToken, FetchPolicy.getDefault());
+    }
+
+    /**
+     * Query the Google Books dataset as {@link #fetchBookListingPage(String, BookListingCache,
+     * CancellationToken)} does, with the given retry policy.
+     */
+    static BookListingPage fetchBookListingPage(String requestUrl, BookListingCache cache,
+                                                CancellationToken cancellationToken, FetchPolicy policy) {
+        return fetchBookListingPage(requestUrl, cache, cancellationToken, policy, null);
+    }
+
+    /**
+     * Query the Google Books dataset as {@link #fetchBookListingPage(String, BookListingCache,
+     * CancellationToken)} does, with the given retry policy, handing the books of the response to
+     * the listener in batches while it is parsed. A page from the cache comes without batches.
+     *
+     * @param batchListener receives the books parsed so far, or null
+     */
+    static BookListingPage fetchBookListingPage(final String requestUrl, final BookListingCache cache,
+                                                final CancellationToken cancellationToken, FetchPolicy policy,
+                                                final BatchListener batchListener) {
+        // Serve a fresh cached result without touching the network
+        final BookListingCache.Entry cached = cache != null ? cache.get(requestUrl) : null;
+        if (cached != null && cached.isFresh()) {
+            return cached.getPage();
+        }
+
+        // Create URL object
+        final URL url = createUrl(requestUrl);
+
+        // Perform HTTP request to the URL and parse the JSON response as it is received,
+        // retrying failures that may go away
+        BookListingPage page = null;
+        try {
+            page = policy.execute(new FetchPolicy.Attempt<BookListingPage>() {
+                @Override
+                public BookListingPage run() throws IOException {
+                    return makeHttpRequest(url, requestUrl, cache, cached, cancellationToken, batchListener);
+                }
+            }, cancellationToken);
+        } catch (FetchPolicy.CircuitOpenException e) {
+            CoreLog.w(LOG_TAG, "The API is unhealthy, not sending " + requestUrl);
+        } catch (IOException e) {
+            if (cancellationToken == null || !cancellationToken.isCanceled()) {
+                CoreLog.e(LOG_TAG, "Problem making the HTTP request.", e);
+            }
+        }
+
+        // Whatever was read before a cancellation is of no use to anyone
+        if (cancellationToken != null) {
+            cancellationToken.throwIfCanceled();
+        }
+
+        // If the network failed, an expired result is better than none
+        if (page == null && cached != null) {
+            page = cached.getPage();
+        }
+
+        // Return the {@link BookListingPage}
+        return page;
+    }
+
+    /**
+     * Returns the canonical URL of one page of results for a volumes search URL. The fields
+     * parameter asks for a partial response with only what a {@link BookListing} holds.
+     *
+     * @throws IllegalArgumentException if the URL is not a volumes search URL
+     */
+    static String pageUrl(String baseUrl, int startIndex, int maxResults) {
+        BookQuery query = BookQuery.parse(baseUrl);
+        if (query == null) {
+            throw new IllegalArgumentException("Not a volumes search URL: " + baseUrl);
+        }
+        return query.buildUpon()
+                .setStartIndex(startIndex)
+                .setMaxResults(maxResults)
+                .setFields(BOOK_LISTING_FIELDS)
+                .setProjection(BookQuery.Projection.LITE)
+                .build()
+                .getUrl();
+    }
+
+    /**
+     * Query the Google Books dataset for the {@link BookDetail} of one volume, answering from
+     * the cache while its entry is fresh. Returns null if the volume could not be fetched and
+     * nothing was cached.
+     *
+     * @param cache is the detail cache to read and fill, or null to always use the network
+     * @param cancellationToken is used to cancel the request, or null
+     * @throws FetchCanceledException if the token is cancelled
+     */
+    static BookDetail fetchBookDetail(String volumeId, BookDetailCache cache, CancellationToken cancellationToken) {
+        String requestUrl = BookQuery.volumeUrl(BookQuery.DEFAULT_ENDPOINT, volumeId, BOOK_DETAIL_FIELDS);
+        return fetchBookDetail(requestUrl, volumeId, cache, cancellationToken, FetchPolicy.getDefault());
+    }
+
+    /**
+     * Query the Google Books dataset for a {@link BookDetail} as {@link #fetchBookDetail(String,
+     * BookDetailCache, CancellationToken)} does, from the given URL and with the given retry policy.
+     */
+    static BookDetail fetchBookDetail(String requestUrl, String volumeId, BookDetailCache cache,
+                                      final CancellationToken cancellationToken, FetchPolicy policy) {
+        BookDetailCache.Entry cached = cache != null ? cache.get(volumeId) : null;
+        if (cached != null && cached.isFresh()) {
+            return cached.getDetail();
+        }
+
+        final URL url = createUrl(requestUrl);
+        BookDetail detail = null;
+        try {
+            detail = policy.execute(new FetchPolicy.Attempt<BookDetail>() {
+                @Override
+                public BookDetail run() throws IOException {
+                    return makeDetailRequest(url, cancellationToken);
+                }
+            }, cancellationToken);
+        } catch (FetchPolicy.CircuitOpenException e) {
+            CoreLog.w(LOG_TAG, "The API is unhealthy, not sending " + requestUrl);
+        } catch (IOException e) {
+            if (cancellationToken == null || !cancellationToken.isCanceled()) {
+                CoreLog.e(LOG_TAG, "Problem making the HTTP request.", e);
+            }
+        }
+
+        if (cancellationToken != null) {
+            cancellationToken.throwIfCanceled();
+        }
+
+        if (detail != null && cache != null && volumeId.equals(detail.getId())) {
+            cache.put(detail);
+        }
+
+        // If the network failed, an expired detail is better than none
+        if (detail == null && cached != null) {
+            detail = cached.getDetail();
+        }
+        return detail;
+    }
+
+    /**
+     * Returns new URL object from the given string URL.
+     */
+    private static URL createUrl(String stringUrl) {
+        URL url = null;
+        try {
+            url = new URL(stringUrl);
+        } catch (MalformedURLException e) {
+            CoreLog.e(LOG_TAG, "Problem building the URL ", e);
+        }
+        return url;
+    }
+
+    /**
+     * Make an HTTP request to the given URL and return the page of books in the response.
+     * Returns null if the URL is null.
+     *
+     * If there is an expired cache entry with an ETag the request is made conditional, and a
+     * 304 Not Modified response returns the cached books.
+     *
+     * The connection is left open for reuse by the next request; see {@link HttpTransport}.
+     *
+     * @throws FetchPolicy.HttpStatusException if the response has another status code
+     * @throws IOException if there was no response, or its body could not be read to its end
+     */
+
+    private static BookListingPage makeHttpRequest(URL url, String requestUrl, BookListingCache cache,
+                                                   BookListingCache.Entry cached,
+                                                   CancellationToken cancellationToken,
+                                                   BatchListener batchListener) throws IOException {
+        BookListingPage page = null;
+
+        // If the URL is null, then return early.
+
+        if (url == null) {
+            return page;
+        }
+
+        HttpTransport.Response response = null;
+        long requestStartNanos = FetchMetrics.isEnabled() ? System.nanoTime() : 0;
+        try {
+            String eTag = cached != null ? cached.getETag() : null;
+            response = HttpTransport.open(url, eTag, cancellationToken);
+
+            // If the request was successful (response code 200),
+            // then parse the response straight from the input stream.
+
+            int responseCode = response.getResponseCode();
+            if (responseCode == 200) {
+                long parseStartNanos = FetchMetrics.isEnabled() ? System.nanoTime() : 0;
+                BatchTimer batches = batchListener != null || requestStartNanos != 0
+                        ? new BatchTimer(batchListener, requestStartNanos) : null;
+                CompactBookListingList booklistings = new CompactBookListingList();
+                int[] totalItems = {0};
+
+                // A body that is cut off or broken fails the attempt, the same way a failed
+                // connection does, so it is retried and never cached
+                parsePage(response.getInputStream(), booklistings, totalItems, batches);
+                booklistings.trimToSize();
+                page = new BookListingPage(booklistings, totalItems[0]);
+                if (FetchMetrics.isEnabled() && parseStartNanos != 0) {
+                    // The parser pulls the body off the network as it goes; whatever time was
+                    // not spent waiting in a read was spent parsing
+                    long readNanos = response.getReadNanos();
+                    FetchMetrics.recordResponse(response.getConnectNanos(), response.getTimeToFirstByteNanos(),
+                            readNanos, System.nanoTime() - parseStartNanos - readNanos,
+                            response.getBytesOnWire(), page.getBookListings().size());
+                    if (batches != null && requestStartNanos != 0) {
+                        FetchMetrics.recordBatches(batches.getFirstBatchNanos(), System.nanoTime() - requestStartNanos);
+                    }
+                }
+
+                // A cancelled request may have been cut off part way, so never cache it
+                if (cancellationToken != null) {
+                    cancellationToken.throwIfCanceled();
+                }
+                if (cache != null && !page.getBookListings().isEmpty()) {
+                    cache.put(requestUrl, page, response.getHeaderField("ETag"),
+                            response.getHeaderField("Cache-Control"));
+                }
+            } else if (responseCode == 304 && cache != null && cached != null) {
+                // Nothing changed since the cached response
+                BookListingCache.Entry refreshed =
+                        cache.refresh(requestUrl, response.getHeaderField("Cache-Control"));
+                page = (refreshed != null ? refreshed : cached).getPage();
+            } else {
+                // One attempt of possibly several; the outcome is logged once by the caller
+                CoreLog.d(LOG_TAG, "Error response code: " + responseCode);
+                FetchMetrics.recordHttpError(responseCode);
+                throw new FetchPolicy.HttpStatusException(responseCode,
+                        FetchPolicy.parseRetryAfter(response.getHeaderField("Retry-After")));
+            }
+        } catch (FetchPolicy.HttpStatusException e) {
+            throw e;
+        } catch (IOException e) {
+            if (response != null) {
+                response.fail();
+            }
+            if (cancellationToken == null || !cancellationToken.isCanceled()) {
+                CoreLog.d(LOG_TAG, "Problem retrieving the JSON results: " + e);
+                FetchMetrics.recordError(e);
+            }
+            throw e;
+        } finally {
+            // Closing drains what is left of the body, so the connection can be reused
+            if (response != null) {
+                response.close();
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Make an HTTP request for a single volume and return the {@link BookDetail} in the response.
+     * Returns null if the URL is null.
+     *
+     * @throws FetchPolicy.HttpStatusException if the response is not 200 OK
+     * @throws IOException if there was no response or it could not be parsed
+     */
+    private static BookDetail makeDetailRequest(URL url, CancellationToken cancellationToken) throws IOException {
+        if (url == null) {
+            return null;
+        }
+
+        HttpTransport.Response response = null;
+        try {
+            response = HttpTransport.open(url, null, cancellationToken);
+            int responseCode = response.getResponseCode();
+            if (responseCode != 200) {
+                // One attempt of possibly several; the outcome is logged once by the caller
+                CoreLog.d(LOG_TAG, "Error response code: " + responseCode);
+                FetchMetrics.recordHttpError(responseCode);
+                throw new FetchPolicy.HttpStatusException(responseCode,
+                        FetchPolicy.parseRetryAfter(response.getHeaderField("Retry-After")));
+            }
+            return BookDetailParser.parse(response.getInputStream());
+        } catch (FetchPolicy.HttpStatusException e) {
+            throw e;
+        } catch (IOException e) {
+            if (response != null) {
+                response.fail();
+            }
+            if (cancellationToken == null || !cancellationToken.isCanceled()) {
+                CoreLog.d(LOG_TAG, "Problem retrieving the JSON detail: " + e);
+                FetchMetrics.recordError(e);
+            }
+            throw e;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * Return a list of {@link BookListing} objects parsed directly from the response stream.
+     * Books are added as soon as their JSON element has been read, so if the response is cut
+     * off or malformed the books read before the problem are still returned.
+     */
+
+    static List<BookListing> extractFeatureFromStream(InputStream inputStream) {
+        return extractPageFromStream(inputStream).getBookListings();
+    }
+
+    /**
+     * Return the {@link BookListingPage} parsed directly from the response stream, keeping the
+     * books read before any problem in the stream.
+     */
+
+    static BookListingPage extractPageFromStream(InputStream inputStream) {
+        CompactBookListingList booklistings = new CompactBookListingList();
+        int[] totalItems = {0};
+        try {
+            parsePage(inputStream, booklistings, totalItems, null);
+        } catch (IOException e) {
+            CoreLog.e(LOG_TAG, "Problem parsing the JSON results", e);
+            FetchMetrics.recordError(e);
+        }
+        booklistings.trimToSize();
+        return new BookListingPage(booklistings, totalItems[0]);
+    }
+
+    /**
+     * Parse the page in the response stream, adding each book to the list as soon as its JSON
+     * element has been read.
+     *
+     * @param totalItems receives the total number of results in its first element
+     * @param batchListener receives the books parsed so far in batches, or null
+     * @throws IOException if the stream could not be read to its end or is malformed; the books
+     * read before the problem are in the list
+     */
+    private static void parsePage(InputStream inputStream, final CompactBookListingList booklistings,
+                                  final int[] totalItems, final BatchListener batchListener) throws IOException {
+        BookListingStreamParser.parse(inputStream, new BookListingStreamParser.Callback() {
+            @Override
+            public void onTotalItems(int total) {
+                totalItems[0] = total;
+            }
+
+            @Override
+            public void onBookListing(BookListing booklisting) {
+                booklistings.add(booklisting);
+                if (batchListener != null && isBatchBoundary(booklistings.size())) {
+                    // A snapshot shares the arrays of the list, so a batch costs no copy
+                    batchListener.onBatch(booklistings.snapshot());
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns true if a batch ends after the given number of books: after
+     * {@link #FIRST_BATCH_SIZE} books, and then each time the number has doubled.
+     */
+    static boolean isBatchBoundary(int count) {
+        if (count < FIRST_BATCH_SIZE || count % FIRST_BATCH_SIZE != 0) {
+            return false;
+        }
+        int batches = count / FIRST_BATCH_SIZE;
+        return (batches & (batches - 1)) == 0;
+    }
+
+    /**
+     * Passes batches on to a listener, and remembers when the first one was handed out.
+     */
+    private static final class BatchTimer implements BatchListener {
+
+        private final BatchListener Listener;
+        private final long RequestStartNanos;
+        private long FirstBatchNanos;
+
+        BatchTimer(BatchListener listener, long requestStartNanos) {
+            Listener = listener;
+            RequestStartNanos = requestStartNanos;
+        }
+
+        @Override
+        public void onBatch(List<BookListing> booklistings) {
+            if (FirstBatchNanos == 0 && RequestStartNanos != 0) {
+                FirstBatchNanos = System.nanoTime() - RequestStartNanos;
+            }
+            if (Listener != null) {
+                Listener.onBatch(booklistings);
+            }
+        }
+
+        /**
+         * Returns the time from opening the request until the first batch, or 0 if the
+         * response was too short to have one.
+         */
+        long getFirstBatchNanos() {
+            return FirstBatchNanos;
+        }
+    }
+
+    /**
+     * Convert the {@link InputStream} into a String which contains the
+     * whole JSON response from the server.
+     *
+     * The app parses responses with {@link #extractFeatureFromStream(InputStream)}; this and
+     * {@link #extractFeatureFromJson(String)} are the buffered path it replaced, kept for comparison.
+     */
+
+    static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        if (inputStream != null) {
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+            BufferedReader reader = new BufferedReader(inputStreamReader);
+            String line = reader.readLine();
+            while (line != null) {
+                output.append(line);
+                line = reader.readLine();
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Return a list of {@link BookListing} objects that has been built up from
+     * parsing the given JSON response.
+     *
+     * Every node is looked up once with an opt accessor, so a volume without imageLinks or
+     * searchInfo gets placeholders instead of throwing, and one malformed item never loses the
+     * rest of the page. Malformed items are counted in {@link FetchMetrics} the same way
+     * {@link BookListingStreamParser} counts them.
+     */
+
+    static List<BookListing> extractFeatureFromJson(String JSON) {
+
+        // If the JSON string is empty or null, then return early.
+
+        if (JSON == null || JSON.isEmpty()) {
+            return null;
+        }
+
+        // Create an empty ArrayList that we can start adding books to
+
+        List<BookListing> booklistings = new ArrayList<>();
+
+        // Only a response that is not JSON at all loses the page
+
+        JSONObject jsonObject;
+        try {
+            jsonObject = new JSONObject(JSON);
+        } catch (JSONException e) {
+            CoreLog.e(LOG_TAG, "Problem parsing the JSON results", e);
+            FetchMetrics.recordError(FetchMetrics.ErrorCategory.PARSE);
+            return booklistings;
+        } catch (NumberFormatException e) {
+            // org.json throws this instead of a JSONException for a broken unicode escape
+            CoreLog.e(LOG_TAG, "Problem parsing the JSON results", e);
+            FetchMetrics.recordError(FetchMetrics.ErrorCategory.PARSE);
+            return booklistings;
+        }
+
+        // A search without results has no "items" at all
+
+        JSONArray itemsArray = jsonObject.optJSONArray("items");
+        if (itemsArray == null) {
+            return booklistings;
+        }
+
+        // For each book in the itemsArray, create an {@link BookListing} object
+
+        for (int i = 0; i < itemsArray.length(); i++) {
+            JSONObject currentBookListing = itemsArray.optJSONObject(i);
+            if (currentBookListing == null) {
+                FetchMetrics.recordItemError(FetchMetrics.ItemError.NOT_AN_OBJECT);
+                continue;
+            }
+            booklistings.add(extractBookListing(currentBookListing));
+        }
+
+        // Return the list of books
+
+        return booklistings;
+    }
+
+    /**
+     * Create a {@link BookListing} from one element of the "items" array, with a placeholder for
+     * every field that is missing or has the wrong type.
+     */
+    private static BookListing extractBookListing(JSONObject item) {
+        JSONObject volumeInfo = optObject(item, "volumeInfo");
+        if (volumeInfo == null) {
+            FetchMetrics.recordItemError(FetchMetrics.ItemError.NO_VOLUME_INFO);
+        }
+        JSONObject imageLinks = volumeInfo != null ? optObject(volumeInfo, "imageLinks") : null;
+        JSONObject searchInfo = optObject(item, "searchInfo");
+
+        String title = volumeInfo != null ? optText(volumeInfo, "title") : null;
+        String authors = volumeInfo != null ? optNames(volumeInfo, "authors") : null;
+        String publishedDate = volumeInfo != null ? optText(volumeInfo, "publishedDate") : null;
+        String thumbnail = imageLinks != null ? optText(imageLinks, "thumbnail") : null;
+        String textSnippet = searchInfo != null ? optText(searchInfo, "textSnippet") : null;
+
+        return new BookListing(
+                optText(item, "id"),
+                title != null ? title : BookListing.NO_TITLE,
+                authors != null ? StringPool.intern(authors) : BookListing.NO_AUTHOR,
+                publishedDate != null ? StringPool.intern(publishedDate) : BookListing.NO_PUBLISHED_DATE,
+                thumbnail != null ? thumbnail : BookListing.NO_THUMBNAIL,
+                textSnippet != null ? textSnippet : BookListing.NO_TEXT_SNIPPET);
+    }
+
+    /**
+     * Returns the object value of the name, or null. A value of another type than object or
+     * null is counted as a {@link FetchMetrics.ItemError#WRONG_TYPE}.
+     */
+    private static JSONObject optObject(JSONObject object, String name) {
+        Object value = object.opt(name);
+        if (value instanceof JSONObject) {
+            return (JSONObject) value;
+        }
+        if (value != null && !JSONObject.NULL.equals(value)) {
+            FetchMetrics.recordItemError(FetchMetrics.ItemError.WRONG_TYPE);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the string, number or boolean value of the name as text, or null.
+     */
+    private static String optText(JSONObject object, String name) {
+        return toText(object.opt(name));
+    }
+
+    /**
+     * Returns an array of names, such as "authors", joined with ", ", or a single name, or null.
+     */
+    private static String optNames(JSONObject object, String name) {
+        Object value = object.opt(name);
+        if (!(value instanceof JSONArray)) {
+            return toText(value);
+        }
+
+        JSONArray names = (JSONArray) value;
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < names.length(); i++) {
+            String text = toText(names.opt(i));
+            if (text != null) {
+                if (joined.length() > 0) {
+                    joined.append(", ");
+                }
+                joined.append(text);
+            }
+        }
+        return joined.length() > 0 ? joined.toString() : null;
+    }
+
+    /**
+     * Returns a string, number or boolean value as text, or null for anything else. An object or
+     * an array is counted as a {@link FetchMetrics.ItemError#WRONG_TYPE}.
+     */
+    private static String toText(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof JSONObject || value instanceof JSONArray) {
+            FetchMetrics.recordItemError(FetchMetrics.ItemError.WRONG_TYPE);
+        }
+        return null;
+    }
+
+}
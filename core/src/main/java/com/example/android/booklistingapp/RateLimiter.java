@@ -0,0 +1,94 @@
+package com.example.android.booklistingapp;
+
+//https://en.wikipedia.org/wiki/Token_bucket
+//https://developers.google.com/books/docs/v1/using#APIKey (quota)
+
+
+/**
+ * Spaces out requests so the app stays within its API quota.
+ *
+ * A token bucket: every request takes a token, tokens come back at a steady rate, and the
+ * bucket holds enough of them for a short burst, such as the pages of a {@link PageFanOut}. When
+ * the server asks for a pause with Retry-After, no request gets a token until it is over.
+ *
+ * All methods are thread-safe.
+ */
+final class RateLimiter {
+
+    /** Longest sleep between checks of the cancellation token, in milliseconds */
+    private static final long MAX_SLEEP_MILLIS = 100;
+
+    private final double PermitsPerNano;
+    private final double MaxPermits;
+
+    private double StoredPermits;
+    private long LastRefillNanos;
+    private long PausedUntilNanos;
+
+    /**
+     * Constructs a new {@link RateLimiter} that starts with a full bucket.
+     *
+     * @param permitsPerSecond is the steady number of requests per second
+     * @param burst is the number of requests that may be sent at once after a quiet period
+     */
+    RateLimiter(double permitsPerSecond, int burst) {
+        PermitsPerNano = permitsPerSecond / 1e9;
+        MaxPermits = burst;
+        StoredPermits = burst;
+        LastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Wait until a request may be sent, and take its token.
+     *
+     * @param cancellationToken stops the wait, or null
+     * @throws FetchCanceledException if the token is cancelled while waiting
+     */
+    void acquire(CancellationToken cancellationToken) {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                waitNanos = reserve();
+            }
+            if (waitNanos <= 0) {
+                return;
+            }
+            if (cancellationToken != null) {
+                cancellationToken.throwIfCanceled();
+            }
+            try {
+                Thread.sleep(Math.max(Math.min(waitNanos / 1000000, MAX_SLEEP_MILLIS), 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FetchCanceledException();
+            }
+        }
+    }
+
+    /**
+     * Hold back every request for the given time, for example because the server answered
+     * with Retry-After. A shorter pause than one already in place is ignored.
+     */
+    synchronized void pauseFor(long millis) {
+        PausedUntilNanos = Math.max(PausedUntilNanos, System.nanoTime() + millis * 1000000);
+    }
+
+    /**
+     * Take a token if there is one. Returns 0 if it was taken, or how long to wait before
+     * trying again.
+     */
+    private long reserve() {
+        long now = System.nanoTime();
+        if (now < PausedUntilNanos) {
+            return PausedUntilNanos - now;
+        }
+
+        StoredPermits = Math.min(MaxPermits, StoredPermits + (now - LastRefillNanos) * PermitsPerNano);
+        LastRefillNanos = now;
+        if (StoredPermits >= 1) {
+            StoredPermits -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - StoredPermits) / PermitsPerNano);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.android.booklistingapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The search suggestions of the app: the queries the user submitted and the titles and authors
+ * of the books that were loaded, in a {@link SuggestionTrie}.
+ *
+ * The trie is kept in one small file. It is read the first time it is needed rather than when
+ * the app starts, and written back by {@link #saveIfChanged()} with only its highest ranked
+ * texts, so the file does not grow without bound. All methods are thread-safe; call them off
+ * the main thread, since the first one reads the file.
+ */
+final class SearchSuggestions {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = SearchSuggestions.class.getSimpleName();
+
+    /** Name of the file inside the directory given to {@link #getInstance(File)} */
+    static final String FILE_NAME = "search_suggestions";
+
+    /** Largest number of texts written to the file */
+    static final int MAX_SAVED_SUGGESTIONS = 2000;
+
+    /** Score of one submitted query */
+    static final double QUERY_WEIGHT = 1.0;
+
+    /** Score of one appearance of a title or author in the results, which the user did not type */
+    static final double BOOK_WEIGHT = 0.2;
+
+    private static SearchSuggestions sInstance;
+
+    private final File TrieFile;
+
+    /** The trie, or null until it is first needed */
+    private SuggestionTrie Trie;
+
+    /** True if the trie changed since it was read or written */
+    private boolean Changed;
+
+    /**
+     * Returns the suggestions of the app, kept in the given directory.
+     */
+    static synchronized SearchSuggestions getInstance(File directory) {
+        if (sInstance == null) {
+            sInstance = new SearchSuggestions(new File(directory, FILE_NAME));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link SearchSuggestions}.
+     *
+     * @param file holds the trie; it does not need to exist
+     */
+    SearchSuggestions(File file) {
+        TrieFile = file;
+    }
+
+    /**
+     * Record a query the user submitted.
+     */
+    synchronized void recordQuery(String query) {
+        getTrie().add(query, SuggestionTrie.Source.QUERY, QUERY_WEIGHT, System.currentTimeMillis());
+        Changed = true;
+    }
+
+    /**
+     * Record the titles and authors of books that were loaded. Books without a title or an
+     * author add nothing for it.
+     */
+    synchronized void addBookListings(List<BookListing> booklistings) {
+        SuggestionTrie trie = getTrie();
+        long now = System.currentTimeMillis();
+        for (BookListing booklisting : booklistings) {
+            if (!BookListing.NO_TITLE.equals(booklisting.getTitle())) {
+                trie.add(booklisting.getTitle(), SuggestionTrie.Source.TITLE, BOOK_WEIGHT, now);
+            }
+            if (!BookListing.NO_AUTHOR.equals(booklisting.getAuthors())) {
+                // The authors are joined with ", "; each one is suggested on its own
+                for (String author : booklisting.getAuthors().split(",")) {
+                    trie.add(author, SuggestionTrie.Source.AUTHOR, BOOK_WEIGHT, now);
+                }
+            }
+        }
+        Changed = true;
+    }
+
+    /**
+     * Returns up to limit suggestions that start with the prefix, best first.
+     */
+    synchronized List<SuggestionTrie.Suggestion> suggest(String prefix, int limit) {
+        return getTrie().suggest(prefix, limit);
+    }
+
+    /**
+     * Write the trie to its file if it changed since it was read or last written.
+     */
+    synchronized void saveIfChanged() {
+        if (!Changed) {
+            return;
+        }
+        File directory = TrieFile.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            CoreLog.w(LOG_TAG, "Problem creating the directory " + directory);
+            return;
+        }
+
+        // Write a new file and then replace the old one, so a crash never leaves half a file
+        File temporary = new File(TrieFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            Trie.writeTo(out, MAX_SAVED_SUGGESTIONS);
+            out.close();
+            out = null;
+            if (!temporary.renameTo(TrieFile)) {
+                throw new IOException("Could not rename " + temporary);
+            }
+            Changed = false;
+        } catch (IOException e) {
+            CoreLog.w(LOG_TAG, "Problem writing the suggestions file " + TrieFile, e);
+            temporary.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private SuggestionTrie getTrie() {
+        if (Trie == null) {
+            Trie = readFromDisk();
+        }
+        return Trie;
+    }
+
+    private SuggestionTrie readFromDisk() {
+        if (!TrieFile.exists()) {
+            return new SuggestionTrie();
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(TrieFile)));
+            return SuggestionTrie.read(in);
+        } catch (IOException e) {
+            CoreLog.w(LOG_TAG, "Problem reading the suggestions file " + TrieFile, e);
+            TrieFile.delete();
+            return new SuggestionTrie();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing useful to do here
+            }
+        }
+    }
+}
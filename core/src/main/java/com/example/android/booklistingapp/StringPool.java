@@ -0,0 +1,59 @@
+package com.example.android.booklistingapp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deduplicates strings that repeat across many books, such as author names and published dates,
+ * so every book that shares a value also shares one {@link String} object.
+ *
+ * The placeholder values of {@link BookListing} always map to its shared constants. The pool is
+ * bounded and simply starts over when it is full, which keeps the common values without letting
+ * a long session grow it forever. Unlike {@link String#intern()}, it never touches the VM's
+ * string table.
+ */
+final class StringPool {
+
+    /** Largest number of strings kept */
+    private static final int MAX_SIZE = 4096;
+
+    private static final Map<String, String> sStrings = new HashMap<>();
+
+    static {
+        addPlaceholders();
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link StringPool} object.
+     */
+    private StringPool() {
+    }
+
+    /**
+     * Returns the pooled string equal to the given one, adding it to the pool if needed.
+     */
+    static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (sStrings) {
+            String pooled = sStrings.get(value);
+            if (pooled != null) {
+                return pooled;
+            }
+            if (sStrings.size() >= MAX_SIZE) {
+                sStrings.clear();
+                addPlaceholders();
+            }
+            sStrings.put(value, value);
+            return value;
+        }
+    }
+
+    private static void addPlaceholders() {
+        for (String placeholder : new String[]{BookListing.NO_TITLE, BookListing.NO_AUTHOR,
+                BookListing.NO_PUBLISHED_DATE, BookListing.NO_THUMBNAIL, BookListing.NO_TEXT_SNIPPET}) {
+            sStrings.put(placeholder, placeholder);
+        }
+    }
+}
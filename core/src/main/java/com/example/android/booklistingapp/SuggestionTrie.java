@@ -0,0 +1,400 @@
+package com.example.android.booklistingapp;
+
+//https://en.wikipedia.org/wiki/Trie
+//https://en.wikipedia.org/wiki/Left-child_right-sibling_binary_tree
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Prefix trie of the texts offered as search suggestions, such as the queries the user submitted
+ * and the titles and authors of the books that were loaded.
+ *
+ * Every use of a text adds to its score, and scores halve every {@link #HALF_LIFE_MILLIS}, so a
+ * text used often and lately ranks first. Instead of decaying every score as time passes, an
+ * entry keeps its rank, log2(score) + time / half-life, which orders the entries the same way
+ * their scores do at any later time. A rank only changes when its text is used again, and every
+ * node keeps the highest rank below it, so the best suggestions for a prefix are found without
+ * visiting the rest of its subtree.
+ *
+ * The nodes are parallel arrays with one char each, linked first child to next sibling, so the
+ * trie holds no object per node. It is not thread-safe.
+ */
+final class SuggestionTrie {
+
+    /**
+     * Where a suggestion came from. A text that came from more than one keeps the first.
+     */
+    enum Source {
+        QUERY,
+        TITLE,
+        AUTHOR
+    }
+
+    /**
+     * A suggested text and where it came from.
+     */
+    static final class Suggestion {
+
+        private final String Text;
+        private final Source TextSource;
+
+        Suggestion(String text, Source source) {
+            Text = text;
+            TextSource = source;
+        }
+
+        String getText() {
+            return Text;
+        }
+
+        Source getSource() {
+            return TextSource;
+        }
+
+        @Override
+        public String toString() {
+            return Text;
+        }
+    }
+
+    /** Time after which a score has halved */
+    static final long HALF_LIFE_MILLIS = 14L * 24 * 60 * 60 * 1000;
+
+    /** Characters of a text that are indexed; longer texts share the entry of their beginning */
+    static final int MAX_KEY_LENGTH = 64;
+
+    /** Version of the binary form. Bump it whenever the layout changes. */
+    static final int VERSION = 1;
+
+    /** Character of each node */
+    private char[] Labels = new char[256];
+
+    /** First child and next sibling of each node, or -1 */
+    private int[] FirstChild = new int[256];
+    private int[] NextSibling = new int[256];
+
+    /** Entry that ends at each node, or -1 */
+    private int[] NodeEntries = new int[256];
+
+    /** Highest rank of the entries at or below each node */
+    private double[] MaxRanks = new double[256];
+
+    /** Number of nodes; node 0 is the root */
+    private int NodeCount;
+
+    /** Text, source and rank of each entry */
+    private String[] Texts = new String[64];
+    private byte[] Sources = new byte[64];
+    private double[] Ranks = new double[64];
+
+    private int EntryCount;
+
+    /**
+     * Constructs a new, empty {@link SuggestionTrie}.
+     */
+    SuggestionTrie() {
+        newNode('\0');
+    }
+
+    /**
+     * Returns the number of texts.
+     */
+    int size() {
+        return EntryCount;
+    }
+
+    /**
+     * Record a use of a text.
+     *
+     * @param weight is added to the score of the text; a score counts uses at the given time
+     * @param nowMillis is the time of the use
+     */
+    void add(String text, Source source, double weight, long nowMillis) {
+        double now = (double) nowMillis / HALF_LIFE_MILLIS;
+        int entry = findEntry(text);
+        double rank = entry < 0
+                ? log2(weight) + now
+                // The score decayed to now, plus this use
+                : log2(Math.pow(2, Ranks[entry] - now) + weight) + now;
+        put(text, source, rank);
+    }
+
+    /**
+     * Returns up to limit texts that start with the prefix, ignoring case and repeated spaces,
+     * highest score first.
+     */
+    List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix, false);
+        int node = 0;
+        for (int i = 0; i < key.length() && node >= 0; i++) {
+            node = findChild(node, key.charAt(i));
+        }
+        if (node < 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        // Best first: a node is only opened when no entry found so far ranks higher than it
+        List<Suggestion> suggestions = new ArrayList<>(Math.min(limit, EntryCount));
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(16, Candidate.HIGHEST_RANK_FIRST);
+        candidates.add(new Candidate(MaxRanks[node], node, -1));
+        while (!candidates.isEmpty() && suggestions.size() < limit) {
+            Candidate candidate = candidates.poll();
+            if (candidate.Entry >= 0) {
+                suggestions.add(new Suggestion(Texts[candidate.Entry], Source.values()[Sources[candidate.Entry]]));
+                continue;
+            }
+            int entry = NodeEntries[candidate.Node];
+            if (entry >= 0) {
+                candidates.add(new Candidate(Ranks[entry], -1, entry));
+            }
+            for (int child = FirstChild[candidate.Node]; child >= 0; child = NextSibling[child]) {
+                candidates.add(new Candidate(MaxRanks[child], child, -1));
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Write the highest ranked texts to the output stream: a version byte, the number of texts,
+     * and then each text in key order, with the characters it shares with the text before it
+     * left out.
+     *
+     * @param maxEntries is the largest number of texts to write; the rest are dropped
+     */
+    void writeTo(DataOutputStream out, int maxEntries) throws IOException {
+        Integer[] entries = new Integer[EntryCount];
+        for (int i = 0; i < EntryCount; i++) {
+            entries[i] = i;
+        }
+        if (entries.length > maxEntries) {
+            Arrays.sort(entries, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(Ranks[b], Ranks[a]);
+                }
+            });
+            entries = Arrays.copyOf(entries, maxEntries);
+        }
+        final String[] keys = new String[EntryCount];
+        for (int entry : entries) {
+            keys[entry] = normalize(Texts[entry], true);
+        }
+        Arrays.sort(entries, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return keys[a].compareTo(keys[b]);
+            }
+        });
+
+        out.writeByte(VERSION);
+        out.writeInt(entries.length);
+        String previous = "";
+        for (int entry : entries) {
+            String text = Texts[entry];
+            int shared = 0;
+            int max = Math.min(Math.min(previous.length(), text.length()), 0xFFFF);
+            while (shared < max && previous.charAt(shared) == text.charAt(shared)) {
+                shared++;
+            }
+            out.writeByte(Sources[entry]);
+            out.writeDouble(Ranks[entry]);
+            out.writeShort(shared);
+            out.writeUTF(text.substring(shared));
+            previous = text;
+        }
+    }
+
+    /**
+     * Read a trie written by {@link #writeTo(DataOutputStream, int)}.
+     */
+    static SuggestionTrie read(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported suggestion trie version " + version);
+        }
+
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid suggestion count " + count);
+        }
+
+        SuggestionTrie trie = new SuggestionTrie();
+        Source[] sources = Source.values();
+        String previous = "";
+        for (int i = 0; i < count; i++) {
+            int source = in.readUnsignedByte();
+            double rank = in.readDouble();
+            int shared = in.readUnsignedShort();
+            if (source >= sources.length || shared > previous.length()) {
+                throw new IOException("Invalid suggestion " + i);
+            }
+            String text = previous.substring(0, shared) + in.readUTF();
+            trie.put(text, sources[source], rank);
+            previous = text;
+        }
+        return trie;
+    }
+
+    /**
+     * Returns the text as it is indexed: lower case, with runs of white space made one space
+     * and at most {@link #MAX_KEY_LENGTH} characters.
+     *
+     * @param trim is false for a prefix, whose trailing space separates a word the user finished
+     */
+    static String normalize(String text, boolean trim) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder(Math.min(text.length(), MAX_KEY_LENGTH));
+        boolean space = false;
+        for (int i = 0; i < text.length() && key.length() < MAX_KEY_LENGTH; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = key.length() > 0;
+                continue;
+            }
+            if (space) {
+                key.append(' ');
+                space = false;
+                if (key.length() == MAX_KEY_LENGTH) {
+                    break;
+                }
+            }
+            key.append(c);
+        }
+        if (space && !trim && key.length() < MAX_KEY_LENGTH) {
+            key.append(' ');
+        }
+        return key.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Set the rank of a text, adding it if it is new, and raise the highest ranks on its path.
+     */
+    private void put(String text, Source source, double rank) {
+        String key = normalize(text, true);
+        if (key.isEmpty()) {
+            return;
+        }
+
+        int[] path = new int[key.length() + 1];
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            int child = findChild(node, key.charAt(i));
+            if (child < 0) {
+                child = newNode(key.charAt(i));
+                NextSibling[child] = FirstChild[node];
+                FirstChild[node] = child;
+            }
+            node = child;
+            path[i + 1] = node;
+        }
+
+        String display = text.trim().replaceAll("\\s+", " ");
+        int entry = NodeEntries[node];
+        if (entry < 0) {
+            entry = newEntry(display, source);
+            NodeEntries[node] = entry;
+        } else if (source.ordinal() < Sources[entry]) {
+            // Show a query the way the user typed it, rather than the way a title has it
+            Texts[entry] = display;
+            Sources[entry] = (byte) source.ordinal();
+        }
+        Ranks[entry] = rank;
+
+        // A rank only ever grows, so the highest ranks above it are at least as high
+        for (int pathNode : path) {
+            MaxRanks[pathNode] = Math.max(MaxRanks[pathNode], rank);
+        }
+    }
+
+    private int findEntry(String text) {
+        String key = normalize(text, true);
+        if (key.isEmpty()) {
+            return -1;
+        }
+        int node = 0;
+        for (int i = 0; i < key.length() && node >= 0; i++) {
+            node = findChild(node, key.charAt(i));
+        }
+        return node < 0 ? -1 : NodeEntries[node];
+    }
+
+    private int findChild(int node, char label) {
+        for (int child = FirstChild[node]; child >= 0; child = NextSibling[child]) {
+            if (Labels[child] == label) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    private int newNode(char label) {
+        if (NodeCount == Labels.length) {
+            int capacity = NodeCount * 2;
+            Labels = Arrays.copyOf(Labels, capacity);
+            FirstChild = Arrays.copyOf(FirstChild, capacity);
+            NextSibling = Arrays.copyOf(NextSibling, capacity);
+            NodeEntries = Arrays.copyOf(NodeEntries, capacity);
+            MaxRanks = Arrays.copyOf(MaxRanks, capacity);
+        }
+        int node = NodeCount++;
+        Labels[node] = label;
+        FirstChild[node] = -1;
+        NextSibling[node] = -1;
+        NodeEntries[node] = -1;
+        MaxRanks[node] = Double.NEGATIVE_INFINITY;
+        return node;
+    }
+
+    private int newEntry(String text, Source source) {
+        if (EntryCount == Texts.length) {
+            int capacity = EntryCount * 2;
+            Texts = Arrays.copyOf(Texts, capacity);
+            Sources = Arrays.copyOf(Sources, capacity);
+            Ranks = Arrays.copyOf(Ranks, capacity);
+        }
+        int entry = EntryCount++;
+        Texts[entry] = text;
+        Sources[entry] = (byte) source.ordinal();
+        return entry;
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+
+    /**
+     * A node or an entry waiting to be visited by {@link #suggest(String, int)}.
+     */
+    private static final class Candidate {
+
+        static final Comparator<Candidate> HIGHEST_RANK_FIRST = new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                int byRank = Double.compare(b.Rank, a.Rank);
+                // An entry comes before the node it was found at when they rank the same
+                return byRank != 0 ? byRank : Integer.compare(b.Entry, a.Entry);
+            }
+        };
+
+        final double Rank;
+        final int Node;
+        final int Entry;
+
+        Candidate(double rank, int node, int entry) {
+            Rank = rank;
+            Node = node;
+            Entry = entry;
+        }
+    }
+}
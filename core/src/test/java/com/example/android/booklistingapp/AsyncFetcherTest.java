@@ -0,0 +1,247 @@
+package com.example.android.booklistingapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link AsyncFetcher} and {@link FetchFuture} against a local stub HTTP server, on the
+ * development machine (host).
+ */
+public class AsyncFetcherTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String baseUrl;
+
+    /** Holds every response back until it is counted down */
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        final byte[] response = readFixture("fixtures/volumes_40.json");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/books/v1/volumes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                int now = active.incrementAndGet();
+                while (now > maxActive.get() && !maxActive.compareAndSet(maxActive.get(), now)) {
+                    // Retry until the maximum is at least now
+                }
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                    Thread.sleep(20);
+                    // The client may send its next request as soon as it has this response
+                    active.decrementAndGet();
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                    exchange.sendResponseHeaders(200, response.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(response);
+                    out.close();
+                } catch (InterruptedException e) {
+                    active.decrementAndGet();
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    // The client went away
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(16);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/books/v1/volumes?q=android";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void manyFetches_shareAFixedNumberOfThreads() throws Exception {
+        AsyncFetcher fetcher = new AsyncFetcher(2, newPolicy());
+        final CountDownLatch done = new CountDownLatch(16);
+        final List<BookListingPage> pages = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            fetcher.fetchPage(baseUrl + "&startIndex=" + i, null).addCallback(new FetchFuture.Callback<BookListingPage>() {
+                @Override
+                public void onSuccess(BookListingPage page) {
+                    synchronized (pages) {
+                        pages.add(page);
+                    }
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(Throwable error) {
+                    done.countDown();
+                }
+            }, DIRECT);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(16, pages.size());
+        for (BookListingPage page : pages) {
+            assertEquals(40, page.getBookListings().size());
+        }
+        assertEquals(16, requests.get());
+        assertTrue(maxActive.get() <= 2);
+    }
+
+    @Test
+    public void identicalFetches_shareOneRequest() throws Exception {
+        release = new CountDownLatch(1);
+        AsyncFetcher fetcher = new AsyncFetcher(4, newPolicy());
+        FetchFuture<BookListingPage> first = fetcher.fetchPage(baseUrl, null);
+        FetchFuture<BookListingPage> second = fetcher.fetchPage(baseUrl, null);
+        waitForRequests(1);
+        release.countDown();
+
+        assertEquals(40, first.get(5, TimeUnit.SECONDS).getBookListings().size());
+        assertEquals(40, second.get(5, TimeUnit.SECONDS).getBookListings().size());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void fetchCancelledWhileQueued_isNeverSent() throws Exception {
+        release = new CountDownLatch(1);
+        AsyncFetcher fetcher = new AsyncFetcher(1, newPolicy());
+        FetchFuture<BookListingPage> running = fetcher.fetchPage(baseUrl + "&startIndex=0", null);
+        FetchFuture<BookListingPage> queued = fetcher.fetchPage(baseUrl + "&startIndex=40", null);
+        waitForRequests(1);
+
+        assertTrue(queued.cancel(true));
+        assertTrue(queued.getToken().isCanceled());
+        release.countDown();
+
+        assertNotNull(running.get(5, TimeUnit.SECONDS));
+        try {
+            queued.get();
+            fail();
+        } catch (CancellationException expected) {
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void timeout_failsTheFutureAndCancelsTheFetch() throws Exception {
+        release = new CountDownLatch(1);
+        AsyncFetcher fetcher = new AsyncFetcher(1, newPolicy());
+        FetchFuture<BookListingPage> fetch = fetcher.fetchPage(baseUrl, null);
+        FetchFuture<BookListingPage> timed = fetch.withTimeout(100);
+
+        try {
+            timed.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(String.valueOf(expected.getCause()), expected.getCause() instanceof TimeoutException);
+        }
+        try {
+            fetch.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (CancellationException expected) {
+        }
+        assertTrue(fetch.getToken().isCanceled());
+        release.countDown();
+    }
+
+    @Test
+    public void then_transformsTheResult() throws Exception {
+        FetchFuture<Integer> source = new FetchFuture<>();
+        FetchFuture<String> doubled = source.then(new FetchFuture.Transform<Integer, String>() {
+            @Override
+            public String apply(Integer value) {
+                return String.valueOf(value * 2);
+            }
+        }, DIRECT);
+        assertFalse(doubled.isDone());
+
+        source.complete(21);
+        assertEquals("42", doubled.get());
+
+        // A result that arrives before the timeout passes through it
+        assertEquals("42", doubled.withTimeout(1000).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancellingAChainedFuture_cancelsItsSource() {
+        FetchFuture<Integer> source = new FetchFuture<>();
+        FetchFuture<Integer> chained = source.then(new FetchFuture.Transform<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                return value;
+            }
+        }, DIRECT).withTimeout(10000);
+
+        assertTrue(chained.cancel(true));
+        assertTrue(source.isCancelled());
+        assertTrue(source.getToken().isCanceled());
+        assertFalse(source.complete(1));
+    }
+
+    private void waitForRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requests.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, requests.get());
+    }
+
+    private static FetchPolicy newPolicy() {
+        return new FetchPolicy(1, 20, 100, new CircuitBreaker(100, 1000), new RateLimiter(10000, 1000), new Random(1));
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
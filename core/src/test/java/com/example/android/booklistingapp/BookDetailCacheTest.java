@@ -0,0 +1,139 @@
+package com.example.android.booklistingapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link BookDetailCache} and the detail fetch of {@link QueryUtils} against a local stub
+ * HTTP server, on the development machine (host).
+ */
+public class BookDetailCacheTest {
+
+    private static final String VOLUME_ID = "zXyw4pXwKmwC";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String endpoint;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile String requestUri;
+
+    @Before
+    public void setUp() throws Exception {
+        final byte[] response = readFixture("fixtures/volume.json");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/books/v1/volumes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                requestUri = exchange.getRequestURI().toString();
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/books/v1/volumes";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void fetch_fillsCacheAndIsServedFromIt() throws Exception {
+        BookDetailCache cache = new BookDetailCache(folder.getRoot(), 8, 1024 * 1024);
+        String url = BookQuery.volumeUrl(endpoint, VOLUME_ID, QueryUtils.BOOK_DETAIL_FIELDS);
+
+        BookDetail first = QueryUtils.fetchBookDetail(url, VOLUME_ID, cache, null, policy());
+        BookDetail second = QueryUtils.fetchBookDetail(url, VOLUME_ID, cache, null, policy());
+
+        assertEquals("Android Programming", first.getTitle());
+        assertSame(first, second);
+        assertEquals(1, requests.get());
+        assertTrue(requestUri, requestUri.startsWith("/books/v1/volumes/" + VOLUME_ID + "?fields=id,volumeInfo("));
+    }
+
+    @Test
+    public void diskTier_keepsEveryFieldAndLongDescriptions() throws Exception {
+        File directory = folder.getRoot();
+        StringBuilder description = new StringBuilder();
+        while (description.length() < 70000) {
+            description.append("A very long description \u00e9. ");
+        }
+        BookDetail detail = new BookDetail(VOLUME_ID, "Title", null, "Jane Doe", "Publisher", "2017",
+                description.toString(), 300, "Computers", 3.5, 2, "http://example.com/cover", null);
+        new BookDetailCache(directory, 8, 1024 * 1024).put(detail);
+
+        BookDetailCache.Entry entry = new BookDetailCache(directory, 8, 1024 * 1024).get(VOLUME_ID);
+
+        assertNotNull(entry);
+        assertTrue(entry.isFresh());
+        BookDetail read = entry.getDetail();
+        assertEquals("Title", read.getTitle());
+        assertNull(read.getSubtitle());
+        assertEquals(description.toString(), read.getDescription());
+        assertEquals(300, read.getPageCount());
+        assertEquals(3.5, read.getAverageRating(), 0);
+        assertEquals(2, read.getRatingsCount());
+        assertEquals("http://example.com/cover", read.getImageUrl());
+        assertNull(read.getInfoLink());
+        assertNull(new BookDetailCache(directory, 8, 1024 * 1024).get("another"));
+    }
+
+    @Test
+    public void corruptStringLength_isAMissAndDeletesTheFile() throws Exception {
+        File file = new File(folder.getRoot(), BookQuery.hashKey(VOLUME_ID));
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(1);
+        out.writeUTF(VOLUME_ID);
+        out.writeLong(Long.MAX_VALUE);
+        out.writeInt(Integer.MAX_VALUE);
+        out.close();
+
+        assertNull(new BookDetailCache(folder.getRoot(), 8, 1024 * 1024).get(VOLUME_ID));
+        assertFalse(file.exists());
+    }
+
+    private static FetchPolicy policy() {
+        return new FetchPolicy(1, 20, 100, new CircuitBreaker(5, 1000), new RateLimiter(100, 10), new Random(1));
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
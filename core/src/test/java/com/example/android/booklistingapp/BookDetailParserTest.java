@@ -0,0 +1,64 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BookDetailParser}, which will execute on the development machine (host).
+ */
+public class BookDetailParserTest {
+
+    @Test
+    public void parse_readsVolume() throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("fixtures/volume.json");
+        assertNotNull(in);
+        BookDetail detail = BookDetailParser.parse(in);
+        in.close();
+
+        assertEquals("zXyw4pXwKmwC", detail.getId());
+        assertEquals("Android Programming", detail.getTitle());
+        assertEquals("The Big Nerd Ranch Guide", detail.getSubtitle());
+        assertEquals("Bill Phillips, Brian Hardy", detail.getAuthors());
+        assertEquals("Addison-Wesley Professional", detail.getPublisher());
+        assertEquals("2013-03-22", detail.getPublishedDate());
+        assertTrue(detail.getDescription().startsWith("<b>Android Programming"));
+        assertEquals(592, detail.getPageCount());
+        assertEquals("Computers", detail.getCategories());
+        assertEquals(4.5, detail.getAverageRating(), 0);
+        assertEquals(12, detail.getRatingsCount());
+        assertEquals("http://books.google.com/books/content?id=zXyw4pXwKmwC&zoom=2", detail.getImageUrl());
+        assertEquals("https://play.google.com/store/books/details?id=zXyw4pXwKmwC", detail.getInfoLink());
+    }
+
+    @Test
+    public void parse_keepsLargestImageInAnyOrder() throws IOException {
+        BookDetail detail = parse("{\"id\":\"a\",\"volumeInfo\":{\"imageLinks\":{\"medium\":\"m\",\"extraLarge\":\"x\","
+                + "\"thumbnail\":\"t\",\"small\":null}}}");
+
+        assertEquals("m", detail.getImageUrl());
+    }
+
+    @Test
+    public void parse_toleratesMissingAndOddValues() throws IOException {
+        BookDetail detail = parse("{\"id\":\"a\",\"volumeInfo\":{\"title\":7,\"authors\":\"Jane Doe\","
+                + "\"pageCount\":\"many\",\"averageRating\":-1,\"categories\":[],\"imageLinks\":[]}}");
+
+        assertEquals("7", detail.getTitle());
+        assertEquals("Jane Doe", detail.getAuthors());
+        assertEquals(0, detail.getPageCount());
+        assertEquals(0, detail.getAverageRating(), 0);
+        assertNull(detail.getCategories());
+        assertNull(detail.getImageUrl());
+        assertNull(detail.getDescription());
+    }
+
+    private static BookDetail parse(String json) throws IOException {
+        return BookDetailParser.parse(new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8"))));
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BookListingCache}, which will execute on the development machine (host).
+ */
+public class BookListingCacheTest {
+
+    private static final String URL = "https://www.googleapis.com/books/v1/volumes?maxResults=20&q=android";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void get_returnsFreshEntryFromMemory() throws Exception {
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 4, Long.MAX_VALUE);
+        cache.put(URL, books("Android"), null, null);
+
+        BookListingCache.Entry entry = cache.get(URL);
+
+        assertTrue(entry.isFresh());
+        assertEquals("Android", entry.getBookListings().get(0).getTitle());
+        assertEquals(1, cache.getMemoryHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void get_fallsBackToDisk() throws Exception {
+        new BookListingCache(folder.getRoot(), 4, Long.MAX_VALUE).put(URL, books("Android"), "\"abc\"", null);
+
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 4, Long.MAX_VALUE);
+        BookListingCache.Entry entry = cache.get(URL);
+
+        assertEquals("Android", entry.getBookListings().get(0).getTitle());
+        assertEquals("\"abc\"", entry.getETag());
+        assertEquals("zXyw", entry.getBookListings().get(0).getId());
+        assertEquals(100, entry.getPage().getTotalItems());
+        assertEquals(1, cache.getDiskHitCount());
+    }
+
+    @Test
+    public void get_normalizesUrl() throws Exception {
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 4, Long.MAX_VALUE);
+        cache.put(URL, books("Android"), null, null);
+
+        assertNotNull(cache.get(" HTTPS://WWW.GOOGLEAPIS.COM/books/v1/volumes?q=android&maxResults=20 "));
+        assertEquals(1, cache.getMemoryHitCount());
+    }
+
+    @Test
+    public void expiredEntry_isMissButKeepsETag() throws Exception {
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 4, Long.MAX_VALUE);
+        cache.put(URL, books("Android"), "\"abc\"", "max-age=0");
+
+        BookListingCache.Entry entry = cache.get(URL);
+        assertFalse(entry.isFresh());
+        assertEquals("\"abc\"", entry.getETag());
+        assertEquals(1, cache.getMissCount());
+
+        assertTrue(cache.refresh(URL, "max-age=60").isFresh());
+        assertEquals(1, cache.getNotModifiedCount());
+    }
+
+    @Test
+    public void noStore_isNotCached() throws Exception {
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 4, Long.MAX_VALUE);
+        cache.put(URL, books("Android"), null, "private, no-store");
+
+        assertNull(cache.get(URL));
+    }
+
+    @Test
+    public void memoryTier_evictsLeastRecentlyUsed() throws Exception {
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 2, Long.MAX_VALUE);
+        cache.put(URL + "1", books("One"), null, null);
+        cache.put(URL + "2", books("Two"), null, null);
+        cache.get(URL + "1");
+        cache.put(URL + "3", books("Three"), null, null);
+
+        assertEquals(1, cache.getEvictionCount());
+
+        // The evicted entry is still on disk
+        cache.get(URL + "2");
+        assertEquals(1, cache.getDiskHitCount());
+    }
+
+    @Test
+    public void diskTier_staysWithinLimit() throws Exception {
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 1, 200);
+        for (int i = 0; i < 5; i++) {
+            cache.put(URL + i, books("Book " + i), null, null);
+        }
+
+        long size = 0;
+        for (java.io.File file : folder.getRoot().listFiles()) {
+            size += file.length();
+        }
+        assertTrue(size <= 200);
+    }
+
+    @Test
+    public void concurrentPutsAndGets_keepEveryEntryOnDisk() throws Exception {
+        final BookListingCache cache = new BookListingCache(folder.getRoot(), 8, Long.MAX_VALUE);
+        final int threadCount = 4;
+        final int urlsPerThread = 25;
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < urlsPerThread; i++) {
+                        String url = URL + "&startIndex=" + (thread * urlsPerThread + i);
+                        cache.put(url, books("Book " + thread + "-" + i), null, null);
+                        cache.get(url);
+                        cache.get(URL + "&startIndex=" + i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        BookListingCache reopened = new BookListingCache(folder.getRoot(), 8, Long.MAX_VALUE);
+        for (int t = 0; t < threadCount; t++) {
+            for (int i = 0; i < urlsPerThread; i++) {
+                BookListingCache.Entry entry = reopened.get(URL + "&startIndex=" + (t * urlsPerThread + i));
+                assertEquals("Book " + t + "-" + i, entry.getBookListings().get(0).getTitle());
+            }
+        }
+        assertEquals(threadCount * urlsPerThread, reopened.getDiskHitCount());
+    }
+
+    private static BookListingPage books(String title) {
+        List<BookListing> booklistings = Arrays.asList(
+                new BookListing("zXyw", title, "Reto Meier", "2012", "No Thumbnail!", "No TextSnippet!"));
+        return new BookListingPage(booklistings, 100);
+    }
+}
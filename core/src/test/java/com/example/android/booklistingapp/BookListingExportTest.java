@@ -0,0 +1,269 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BookListingExport}, which will execute on the development machine
+ * (host).
+ */
+public class BookListingExportTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Number of books of the streaming tests */
+    private static final int MANY = 50000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip_keepsEveryField() throws Exception {
+        List<BookListing> booklistings = new ArrayList<>(QueryUtils.extractFeatureFromStream(
+                getClass().getClassLoader().getResourceAsStream("fixtures/volumes_20.json")));
+        booklistings.add(new BookListing(null, "No id", "Jane Doe", "2017", "http://example.com/t.jpg", "..."));
+        booklistings.add(new BookListing("quotes", "\"Quoted\" \\ back\\slash\nnew\tline\u0001",
+                "Ren\u00e9 Ch\u00e2teau, \u738b\u5c0f\u660e", "2001-02", "", "Line\u2028separator \ud83d\udcda"));
+        booklistings.add(new BookListing("long", repeat("Long title ", 200), BookListing.NO_AUTHOR,
+                BookListing.NO_PUBLISHED_DATE, BookListing.NO_THUMBNAIL, BookListing.NO_TEXT_SNIPPET));
+
+        for (BookListingExport.Format format : BookListingExport.Format.values()) {
+            File file = export(booklistings, format);
+            List<BookListing> imported = importAll(file);
+
+            assertEquals(format.name(), booklistings.size(), imported.size());
+            for (int i = 0; i < booklistings.size(); i++) {
+                assertEquals(format.name() + ", book " + i,
+                        Arrays.asList(fields(booklistings.get(i))), Arrays.asList(fields(imported.get(i))));
+            }
+        }
+    }
+
+    @Test
+    public void placeholders_areNotWrittenAndComeBackShared() throws Exception {
+        BookListing empty = new BookListing("id", BookListing.NO_TITLE, BookListing.NO_AUTHOR,
+                BookListing.NO_PUBLISHED_DATE, BookListing.NO_THUMBNAIL, BookListing.NO_TEXT_SNIPPET);
+
+        File binary = export(Arrays.asList(empty), BookListingExport.Format.BINARY);
+        // Magic, version, record length, flags and the id
+        assertEquals(4 + 1 + 1 + 1 + 3, binary.length());
+
+        File jsonLines = export(Arrays.asList(empty), BookListingExport.Format.JSON_LINES);
+        assertEquals("{\"id\":\"id\"}\n", new String(readFile(jsonLines), UTF_8));
+
+        for (File file : new File[]{binary, jsonLines}) {
+            BookListing imported = importAll(file).get(0);
+            assertSame(BookListing.NO_TITLE, imported.getTitle());
+            assertSame(BookListing.NO_AUTHOR, imported.getAuthors());
+            assertSame(BookListing.NO_PUBLISHED_DATE, imported.getPublishedDate());
+            assertSame(BookListing.NO_THUMBNAIL, imported.getThumbnail());
+            assertSame(BookListing.NO_TEXT_SNIPPET, imported.getTextSnippet());
+        }
+    }
+
+    @Test
+    public void truncatedBinary_keepsTheRecordsBeforeTheCut() throws Exception {
+        List<BookListing> booklistings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            booklistings.add(book(i));
+        }
+        File file = export(booklistings, BookListingExport.Format.BINARY);
+        long length = file.length();
+
+        for (long cut = length - 1; cut > 5; cut -= 37) {
+            RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+            truncated.setLength(cut);
+            truncated.close();
+
+            BookListingExport.Importer importer = BookListingExport.openImporter(file);
+            int count = 0;
+            BookListing booklisting;
+            while ((booklisting = importer.next()) != null) {
+                assertEquals("cut " + cut, book(count).getId(), booklisting.getId());
+                count++;
+            }
+            importer.close();
+            assertTrue("cut " + cut, count < booklistings.size());
+            // A cut between two records loses nothing that was there
+            assertTrue("cut " + cut, importer.getSkippedCount() <= 1);
+        }
+    }
+
+    @Test
+    public void binaryRecords_skipFieldsAddedLater() throws Exception {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        record.write(1 | 1 << 1 | 1 << 7);
+        writeString(record, "id");
+        writeString(record, "Title");
+        // A field this version does not know about
+        writeString(record, "unknown");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("BKLX".getBytes(UTF_8));
+        out.write(BookListingExport.VERSION);
+        BookListingExport.writeVarint(out, record.size());
+        record.writeTo(out);
+        BookListingExport.writeVarint(out, 1);
+        out.write(0);
+
+        File file = writeFile(out.toByteArray());
+        List<BookListing> imported = importAll(file);
+        assertEquals(2, imported.size());
+        assertEquals("id", imported.get(0).getId());
+        assertEquals("Title", imported.get(0).getTitle());
+        assertNull(imported.get(1).getId());
+    }
+
+    @Test(expected = IOException.class)
+    public void binaryOfAnotherVersion_isRejected() throws Exception {
+        File file = writeFile(new byte[]{'B', 'K', 'L', 'X', BookListingExport.VERSION + 1});
+        BookListingExport.openImporter(file);
+    }
+
+    @Test
+    public void malformedJsonLines_areSkipped() throws Exception {
+        File file = writeFile(("{\"id\":\"a\",\"title\":\"A\"}\n"
+                + "\n"
+                + "{\"id\":\"b\",\"title\":\n"
+                + "not json\n"
+                + "{\"id\":\"c\",\"title\":{\"nested\":true},\"extra\":[1,2]}\n").getBytes(UTF_8));
+
+        BookListingExport.Importer importer = BookListingExport.openImporter(file);
+        List<BookListing> imported = new ArrayList<>();
+        BookListing booklisting;
+        while ((booklisting = importer.next()) != null) {
+            imported.add(booklisting);
+        }
+        importer.close();
+
+        assertEquals(2, imported.size());
+        assertEquals("A", imported.get(0).getTitle());
+        assertEquals("c", imported.get(1).getId());
+        assertEquals(BookListing.NO_TITLE, imported.get(1).getTitle());
+        assertEquals(2, importer.getSkippedCount());
+    }
+
+    @Test
+    public void manyBooks_streamInBothFormats() throws Exception {
+        for (BookListingExport.Format format : BookListingExport.Format.values()) {
+            File file = new File(folder.getRoot(), "many" + format.getExtension());
+
+            exportMany(file, format);
+            assertEquals(MANY, importMany(file));
+        }
+
+        File binary = new File(folder.getRoot(), "many" + BookListingExport.Format.BINARY.getExtension());
+        File jsonLines = new File(folder.getRoot(), "many" + BookListingExport.Format.JSON_LINES.getExtension());
+        assertTrue(binary.length() < jsonLines.length());
+    }
+
+    private void exportMany(File file, BookListingExport.Format format) throws IOException {
+        BookListingExport.Exporter exporter = BookListingExport.newExporter(new FileOutputStream(file), format);
+        for (int i = 0; i < MANY; i++) {
+            exporter.write(book(i));
+        }
+        exporter.close();
+        assertEquals(MANY, exporter.getCount());
+    }
+
+    private static int importMany(File file) throws IOException {
+        BookListingExport.Importer importer = BookListingExport.openImporter(file);
+        int count = 0;
+        BookListing booklisting;
+        while ((booklisting = importer.next()) != null) {
+            assertEquals(book(count).getId(), booklisting.getId());
+            count++;
+        }
+        importer.close();
+        assertEquals(0, importer.getSkippedCount());
+        return count;
+    }
+
+    /**
+     * Returns a made up book; every tenth one has no thumbnail.
+     */
+    private static BookListing book(int i) {
+        return new BookListing("vol" + i, "Title of book " + i, "Author " + (i % 100),
+                String.valueOf(1950 + i % 70),
+                i % 10 == 0 ? BookListing.NO_THUMBNAIL
+                        : "http://books.google.com/books/content?id=vol" + i + "&printsec=frontcover&img=1&zoom=5",
+                "A snippet of the text of book " + i + ", long enough to look like the real thing.");
+    }
+
+    private File export(List<BookListing> booklistings, BookListingExport.Format format) throws IOException {
+        File file = folder.newFile();
+        BookListingExport.Exporter exporter = BookListingExport.newExporter(new FileOutputStream(file), format);
+        for (BookListing booklisting : booklistings) {
+            exporter.write(booklisting);
+        }
+        exporter.close();
+        return file;
+    }
+
+    private static List<BookListing> importAll(File file) throws IOException {
+        List<BookListing> booklistings = new ArrayList<>();
+        BookListingExport.Importer importer = BookListingExport.openImporter(file);
+        BookListing booklisting;
+        while ((booklisting = importer.next()) != null) {
+            booklistings.add(booklisting);
+        }
+        importer.close();
+        assertEquals(0, importer.getSkippedCount());
+        return booklistings;
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        BookListingExport.writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private File writeFile(byte[] bytes) throws IOException {
+        File file = folder.newFile();
+        OutputStream out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+        return file;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static String[] fields(BookListing booklisting) {
+        return new String[]{booklisting.getId(), booklisting.getTitle(), booklisting.getAuthors(),
+                booklisting.getPublishedDate(), booklisting.getThumbnail(), booklisting.getTextSnippet()};
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
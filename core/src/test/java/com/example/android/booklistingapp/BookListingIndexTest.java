@@ -0,0 +1,124 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link BookListingIndex}, on the development machine (host).
+ */
+public class BookListingIndexTest {
+
+    private BookListingIndex index;
+
+    @Before
+    public void setUp() {
+        index = new BookListingIndex();
+        index.addAll(Arrays.asList(
+                book("0", "The Hobbit", "J. R. R. Tolkien", "1937-09-21", "A hobbit goes on an adventure"),
+                book("1", "Android Programming", "Bill Phillips, Brian Hardy", "2013", "The Big Nerd Ranch Guide"),
+                book("2", "The Silmarillion", "J. R. R. Tolkien", "1977", BookListing.NO_TEXT_SNIPPET),
+                book("3", BookListing.NO_TITLE, BookListing.NO_AUTHOR, BookListing.NO_PUBLISHED_DATE,
+                        BookListing.NO_TEXT_SNIPPET),
+                book("4", "Effective Java", "Joshua Bloch", "2008-05-28", "Programming in Java")));
+    }
+
+    @Test
+    public void words_matchAsPrefixesInEveryField() {
+        assertArrayEquals(new int[]{0, 2}, refine("tolk", BookListingIndex.Sort.RELEVANCE));
+        assertArrayEquals(new int[]{1, 4}, refine("programming", BookListingIndex.Sort.RELEVANCE));
+        assertArrayEquals(new int[]{4}, refine("Programming java", BookListingIndex.Sort.RELEVANCE));
+        assertArrayEquals(new int[]{}, refine("nothing", BookListingIndex.Sort.RELEVANCE));
+
+        // The placeholders are not indexed
+        assertArrayEquals(new int[]{}, refine("title", BookListingIndex.Sort.RELEVANCE));
+    }
+
+    @Test
+    public void keywords_matchOneField() {
+        assertArrayEquals(new int[]{0, 2}, refine("inauthor:tolkien", BookListingIndex.Sort.RELEVANCE));
+        assertArrayEquals(new int[]{}, refine("inauthor:hobbit", BookListingIndex.Sort.RELEVANCE));
+        assertArrayEquals(new int[]{0}, refine("intitle:hobbit", BookListingIndex.Sort.RELEVANCE));
+    }
+
+    @Test
+    public void years_filterAndSort() {
+        assertArrayEquals(new int[]{0, 2}, refine("year:-1999", BookListingIndex.Sort.RELEVANCE));
+        assertArrayEquals(new int[]{1, 4}, refine("year:2000-", BookListingIndex.Sort.RELEVANCE));
+        assertArrayEquals(new int[]{2}, refine("year:1977", BookListingIndex.Sort.RELEVANCE));
+        assertArrayEquals(new int[]{4, 1}, refine("year:2000-", BookListingIndex.Sort.OLDEST));
+
+        // Books without a year come last in both directions
+        assertArrayEquals(new int[]{1, 4, 2, 0, 3}, refine("", BookListingIndex.Sort.NEWEST));
+        assertArrayEquals(new int[]{0, 2, 4, 1, 3}, refine("", BookListingIndex.Sort.OLDEST));
+        assertArrayEquals(new int[]{2, 0}, refine("tolkien", BookListingIndex.Sort.NEWEST));
+    }
+
+    @Test
+    public void title_sortIgnoresCaseAndPutsPlaceholdersLast() {
+        assertArrayEquals(new int[]{1, 4, 0, 2, 3}, refine("", BookListingIndex.Sort.TITLE));
+        assertArrayEquals(new int[]{0, 2}, refine("year:-1999", BookListingIndex.Sort.TITLE));
+    }
+
+    @Test
+    public void addAll_extendsTheIndex() {
+        index.addAll(Arrays.asList(book("5", "Unfinished Tales", "J. R. R. Tolkien", "1980", "Stories")));
+
+        assertEquals(6, index.size());
+        assertArrayEquals(new int[]{0, 2, 5}, refine("tolkien", BookListingIndex.Sort.RELEVANCE));
+        assertArrayEquals(new int[]{5, 2, 0}, refine("tolkien", BookListingIndex.Sort.NEWEST));
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertArrayEquals(new int[]{}, refine("tolkien", BookListingIndex.Sort.NEWEST));
+    }
+
+    @Test
+    public void parseYear_readsTheLeadingYear() {
+        assertEquals(2004, BookListingIndex.parseYear("2004-05-01"));
+        assertEquals(1937, BookListingIndex.parseYear("1937"));
+        assertEquals(0, BookListingIndex.parseYear("200"));
+        assertEquals(0, BookListingIndex.parseYear(BookListing.NO_PUBLISHED_DATE));
+    }
+
+    @Test
+    public void refine_isFastForThousandsOfBooks() throws Exception {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("fixtures/volumes_200.json");
+        List<BookListing> page = QueryUtils.extractFeatureFromStream(in);
+        in.close();
+
+        BookListingIndex large = new BookListingIndex();
+        for (int i = 0; i < 25; i++) {
+            large.addAll(new ArrayList<>(page));
+        }
+        assertEquals(5000, large.size());
+
+        BookListingIndex.Refinement refinement = BookListingIndex.Refinement.parse("a year:1990-", BookListingIndex.Sort.NEWEST);
+        for (int i = 0; i < 200; i++) {
+            large.refine(refinement);
+        }
+        long start = System.nanoTime();
+        int runs = 100;
+        for (int i = 0; i < runs; i++) {
+            large.refine(refinement);
+        }
+        long nanosPerRefine = (System.nanoTime() - start) / runs;
+
+        // Well under a millisecond on a desktop; the margin allows for a slow build machine
+        assertTrue(nanosPerRefine + " ns", nanosPerRefine < 5000000);
+    }
+
+    private int[] refine(String text, BookListingIndex.Sort order) {
+        return index.refine(BookListingIndex.Refinement.parse(text, order));
+    }
+
+    private static BookListing book(String id, String title, String authors, String publishedDate, String textSnippet) {
+        return new BookListing(id, title, authors, publishedDate, BookListing.NO_THUMBNAIL, textSnippet);
+    }
+}
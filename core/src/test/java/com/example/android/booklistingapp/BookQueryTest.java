@@ -0,0 +1,73 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BookQuery}, which will execute on the development machine (host).
+ */
+public class BookQueryTest {
+
+    @Test
+    public void getUrl_isCanonical() {
+        BookQuery query = new BookQuery.Builder()
+                .setTerms("  Android   Programming ")
+                .setKeyword(BookQuery.Keyword.INAUTHOR, "Jane Doe")
+                .setKeyword(BookQuery.Keyword.INTITLE, "Guide")
+                .setOrderBy(BookQuery.OrderBy.NEWEST)
+                .setProjection(BookQuery.Projection.LITE)
+                .setLangRestrict("EN")
+                .setMaxResults(20)
+                .setStartIndex(40)
+                .build();
+
+        assertEquals("https://www.googleapis.com/books/v1/volumes?langRestrict=en&maxResults=20&orderBy=newest"
+                + "&projection=lite&q=android%20programming%20intitle:guide%20inauthor:%22jane%20doe%22&startIndex=40",
+                query.getUrl());
+    }
+
+    @Test
+    public void equivalentQueries_shareUrlAndKey() {
+        BookQuery typed = new BookQuery.Builder().setTerms("Harry Potter").build();
+        BookQuery parsed = BookQuery.parse(
+                " HTTPS://WWW.GOOGLEAPIS.COM/books/v1/volumes?printType=all&q=harry+%20POTTER&orderBy=relevance ");
+
+        assertEquals(typed, parsed);
+        assertEquals(typed.getUrl(), parsed.getUrl());
+        assertEquals(typed.getKey(), parsed.getKey());
+        assertEquals(16, typed.getKey().length());
+    }
+
+    @Test
+    public void parse_readsKeywordsAndParameters() {
+        BookQuery query = BookQuery.parse("https://www.googleapis.com/books/v1/volumes"
+                + "?q=intitle:%22the+hobbit%22+isbn:978-0-261-10221-7+tolkien&key=abc&startIndex=20&maxResults=20");
+
+        assertEquals("tolkien intitle:\"the hobbit\" isbn:9780261102217", query.getQ());
+        assertEquals(20, query.getStartIndex());
+        assertEquals(20, query.getMaxResults());
+        assertTrue(query.getUrl(), query.getUrl().contains("key=abc&maxResults=20&q="));
+        assertEquals(query, BookQuery.parse(query.getUrl()));
+    }
+
+    @Test
+    public void parse_rejectsOtherUrls() {
+        assertNull(BookQuery.parse("https://www.googleapis.com/books/v1/volumes/zXyw"));
+        assertNull(BookQuery.parse("https://www.googleapis.com/books/v1/volumes?q=a&maxResults=1000"));
+        assertNull(BookQuery.parse("https://www.googleapis.com/books/v1/volumes?q=a&orderBy=oldest"));
+        assertEquals("https://example.com/a?b", BookQuery.canonicalize(" https://example.com/a?b "));
+    }
+
+    @Test
+    public void page_keepsQueryAndFields() {
+        BookQuery query = new BookQuery.Builder().setTerms("Android").build();
+
+        String pageUrl = QueryUtils.pageUrl(query.getUrl(), 20, 20);
+
+        assertEquals(query.page(20, 20).getQ(), BookQuery.parse(pageUrl).getQ());
+        assertTrue(pageUrl, pageUrl.startsWith("https://www.googleapis.com/books/v1/volumes?fields=items(id,"
+                + "volumeInfo(title,authors,publishedDate,imageLinks%2Fthumbnail),searchInfo%2FtextSnippet),totalItems"
+                + "&maxResults=20&projection=lite&q=android&startIndex=20"));
+    }
+}
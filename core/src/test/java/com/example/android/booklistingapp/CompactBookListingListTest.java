@@ -0,0 +1,211 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link CompactBookListingList}, and compares the heap held by 10,000 books in it with the
+ * same books held as {@link BookListing} objects. Runs on the development machine (host).
+ */
+public class CompactBookListingListTest {
+
+    private static final int BOOK_COUNT = 10000;
+
+    @Test
+    public void books_readBackUnchanged() throws Exception {
+        List<BookListing> expected = new ArrayList<>();
+        expected.add(new BookListing("id1", "Android Programming", "Bill Phillips, Chris Stewart",
+                "2017-02-10", "http://books.google.com/thumb?id=id1", "Learn <b>Android</b> \u00e9t\u00e9"));
+        expected.add(new BookListing(null, BookListing.NO_TITLE, BookListing.NO_AUTHOR,
+                BookListing.NO_PUBLISHED_DATE, BookListing.NO_THUMBNAIL, BookListing.NO_TEXT_SNIPPET));
+        expected.add(new BookListing("id3", "", "Reto Meier", "2012", "", "\u2603"));
+
+        CompactBookListingList list = new CompactBookListingList(1);
+        list.addAll(expected);
+
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), list.get(i).getId());
+            assertEquals(expected.get(i).getId(), list.getId(i));
+            assertEquals(expected.get(i).getTitle(), list.get(i).getTitle());
+            assertEquals(expected.get(i).getAuthors(), list.get(i).getAuthors());
+            assertEquals(expected.get(i).getPublishedDate(), list.get(i).getPublishedDate());
+            assertEquals(expected.get(i).getThumbnail(), list.get(i).getThumbnail());
+            assertEquals(expected.get(i).getTextSnippet(), list.get(i).getTextSnippet());
+        }
+
+        // Placeholders come back as the shared constants
+        assertSame(BookListing.NO_TITLE, list.get(1).getTitle());
+        assertSame(BookListing.NO_AUTHOR, list.get(1).getAuthors());
+        assertSame(BookListing.NO_THUMBNAIL, list.get(1).getThumbnail());
+
+        list.clear();
+        assertEquals(0, list.size());
+        list.add(expected.get(2));
+        assertEquals("Reto Meier", list.get(0).getAuthors());
+    }
+
+    @Test
+    public void nullValues_readBackAsPlaceholders() {
+        CompactBookListingList list = new CompactBookListingList();
+        list.add(new BookListing("id1", null, null, null, null, null));
+        CompactBookListingList other = new CompactBookListingList();
+        other.add(new BookListing("id1", BookListing.NO_TITLE, BookListing.NO_AUTHOR,
+                BookListing.NO_PUBLISHED_DATE, BookListing.NO_THUMBNAIL, BookListing.NO_TEXT_SNIPPET));
+
+        BookListing read = list.get(0);
+        assertSame(BookListing.NO_TITLE, read.getTitle());
+        assertSame(BookListing.NO_AUTHOR, read.getAuthors());
+        assertSame(BookListing.NO_PUBLISHED_DATE, read.getPublishedDate());
+        assertSame(BookListing.NO_THUMBNAIL, read.getThumbnail());
+        assertSame(BookListing.NO_TEXT_SNIPPET, read.getTextSnippet());
+        assertTrue(list.sameContents(0, other, 0));
+        assertEquals(other.getStableId(0), list.getStableId(0));
+
+        list.add(new BookListing(null, "Title", null, null, "http://example.com/thumb", ""));
+        assertEquals(list.getStableId(1), list.snapshot().getStableId(1));
+    }
+
+    @Test
+    public void repeatedValues_shareOneString() {
+        CompactBookListingList list = new CompactBookListingList();
+        list.add(new BookListing("a", "A", new String("Reto Meier"), new String("2012"), "t", "s"));
+        list.add(new BookListing("b", "B", new String("Reto Meier"), new String("2012"), "t", "s"));
+
+        assertSame(list.get(0).getAuthors(), list.get(1).getAuthors());
+        assertSame(list.get(0).getPublishedDate(), list.get(1).getPublishedDate());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void insertInMiddle_isRejected() {
+        CompactBookListingList list = new CompactBookListingList();
+        list.add(new BookListing("a", "A", "B", "C", "D", "E"));
+        list.add(0, new BookListing("b", "A", "B", "C", "D", "E"));
+    }
+
+    @Test
+    public void snapshot_isUnchangedByLaterAddsAndClear() {
+        CompactBookListingList list = new CompactBookListingList(1);
+        list.add(new BookListing("a", "A", "B", "C", "D", "E"));
+        CompactBookListingList snapshot = list.snapshot();
+
+        list.add(new BookListing("b", "F", "G", "H", "I", "J"));
+        list.clear();
+        list.add(new BookListing("c", "K", "L", "M", "N", "O"));
+
+        assertEquals(1, snapshot.size());
+        assertEquals("a", snapshot.get(0).getId());
+        assertEquals("E", snapshot.get(0).getTextSnippet());
+        assertEquals("c", list.get(0).getId());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshot_cannotBeChanged() {
+        new CompactBookListingList().snapshot().add(new BookListing("a", "A", "B", "C", "D", "E"));
+    }
+
+    @Test
+    public void sameContents_andStableId_compareByValue() {
+        CompactBookListingList first = new CompactBookListingList();
+        first.add(new BookListing("a", "Title", "Author", "2012", "http://t?id=a&zoom=1", "Snippet"));
+        first.add(new BookListing("b", "Title", "Author", "2012", "http://t?id=b&zoom=1", "Snippet"));
+        CompactBookListingList second = new CompactBookListingList();
+        second.add(new BookListing("a", "Title", "Author", "2012", "http://t?id=a&zoom=1", "Snippet"));
+        second.add(new BookListing("b", "Title", "Author", "2012", "http://t?id=b&zoom=1", "Changed"));
+
+        assertEquals(first.getStableId(0), second.getStableId(0));
+        assertEquals(first.getStableId(1), second.getStableId(1));
+        assertNotEquals(first.getStableId(0), first.getStableId(1));
+        assertTrue(first.sameContents(0, second, 0));
+        assertFalse(first.sameContents(1, second, 1));
+    }
+
+    @Test
+    public void tenThousandBooks_holdLessHeapThanBookListingObjects() throws Exception {
+        byte[] full = readFixture("fixtures/volumes_40.json");
+        byte[] sparse = readFixture("fixtures/volumes_20.json");
+
+        long before = usedHeap();
+        List<BookListing> objects = new ArrayList<>();
+        while (objects.size() < BOOK_COUNT) {
+            objects.addAll(parse(objects.size() % 3 == 0 ? sparse : full));
+        }
+        long objectBytes = usedHeap() - before;
+
+        before = usedHeap();
+        CompactBookListingList compact = new CompactBookListingList();
+        while (compact.size() < BOOK_COUNT) {
+            compact.addAll(parse(compact.size() % 3 == 0 ? sparse : full));
+        }
+        compact.trimToSize();
+        long compactBytes = usedHeap() - before;
+
+        // Keep both lists reachable until they have been measured
+        assertEquals(objects.size(), compact.size());
+        assertEquals(objects.get(BOOK_COUNT - 1).getTitle(), compact.get(BOOK_COUNT - 1).getTitle());
+        assertTrue(compactBytes < objectBytes / 2);
+    }
+
+    /**
+     * Parse a response into plain {@link BookListing} objects, each with its own strings, the
+     * way books were held before {@link CompactBookListingList}. Only the placeholders, which
+     * were string literals, are shared.
+     */
+    private static List<BookListing> parse(byte[] response) throws IOException {
+        final List<BookListing> booklistings = new ArrayList<>();
+        BookListingStreamParser.parse(new ByteArrayInputStream(response), new BookListingStreamParser.Callback() {
+            @Override
+            public void onTotalItems(int totalItems) {
+            }
+
+            @Override
+            public void onBookListing(BookListing booklisting) {
+                // The parser now pools authors and publishedDate; undo that
+                booklistings.add(new BookListing(
+                        booklisting.getId(),
+                        booklisting.getTitle(),
+                        unpooled(booklisting.getAuthors(), BookListing.NO_AUTHOR),
+                        unpooled(booklisting.getPublishedDate(), BookListing.NO_PUBLISHED_DATE),
+                        booklisting.getThumbnail(),
+                        booklisting.getTextSnippet()));
+            }
+        });
+        return booklistings;
+    }
+
+    private static String unpooled(String value, String placeholder) {
+        return value.equals(placeholder) ? placeholder : new String(value);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
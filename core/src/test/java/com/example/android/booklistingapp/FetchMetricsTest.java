@@ -0,0 +1,159 @@
+package com.example.android.booklistingapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests what {@link FetchMetrics} records for requests to a local stub HTTP server, on the
+ * development machine (host).
+ */
+public class FetchMetricsTest {
+
+    private HttpServer server;
+    private String baseUrl;
+
+    /** What the stub server answers */
+    private volatile int responseCode = 200;
+    private volatile byte[] response;
+
+    @Before
+    public void setUp() throws Exception {
+        response = readFixture("fixtures/volumes_20.json");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/books/v1/volumes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = response;
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(responseCode, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/books/v1/volumes?q=android";
+
+        FetchMetrics.reset();
+        FetchMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        FetchMetrics.setEnabled(false);
+        FetchMetrics.reset();
+        server.stop(0);
+    }
+
+    @Test
+    public void successfulRequest_recordsEveryStage() throws Exception {
+        BookListingPage page = QueryUtils.fetchBookListingPage(baseUrl, null);
+
+        assertEquals(20, page.getBookListings().size());
+        assertEquals(1, FetchMetrics.getStage(FetchMetrics.Stage.CONNECT).getCount());
+        assertEquals(1, FetchMetrics.getStage(FetchMetrics.Stage.TIME_TO_FIRST_BYTE).getCount());
+        assertEquals(1, FetchMetrics.getStage(FetchMetrics.Stage.DOWNLOAD).getCount());
+        assertEquals(1, FetchMetrics.getStage(FetchMetrics.Stage.PARSE).getCount());
+        assertTrue(FetchMetrics.getStage(FetchMetrics.Stage.PARSE).getMax() > 0);
+        assertEquals(response.length, FetchMetrics.getBytesOnWire().getMax());
+        assertEquals(20, FetchMetrics.getResults().getMax());
+    }
+
+    @Test
+    public void firstBatch_isRecordedBeforeTheFullPage() throws Exception {
+        QueryUtils.fetchBookListingPage(baseUrl, null);
+
+        Histogram firstBatch = FetchMetrics.getStage(FetchMetrics.Stage.FIRST_BATCH);
+        Histogram fullPage = FetchMetrics.getStage(FetchMetrics.Stage.FULL_PAGE);
+        assertEquals(1, firstBatch.getCount());
+        assertEquals(1, fullPage.getCount());
+        assertTrue(firstBatch.getMax() <= fullPage.getMax());
+    }
+
+    @Test
+    public void errorResponse_isCountedByStatusCode() throws Exception {
+        responseCode = 404;
+
+        assertNull(QueryUtils.fetchBookListingPage(baseUrl, null));
+
+        assertEquals(1, FetchMetrics.getErrorCount(FetchMetrics.ErrorCategory.HTTP));
+        assertEquals(1, FetchMetrics.getHttpErrorCount(404));
+        assertEquals(0, FetchMetrics.getStage(FetchMetrics.Stage.PARSE).getCount());
+    }
+
+    @Test
+    public void malformedBody_isCountedAsParseError() throws Exception {
+        response = "{\"totalItems\": 1, \"items\": [{\"id\": ".getBytes("UTF-8");
+
+        // A broken body fails the attempt; with one attempt it is counted once
+        QueryUtils.fetchBookListingPage(baseUrl, null, null,
+                new FetchPolicy(1, 1, 1, new CircuitBreaker(100, 1000), new RateLimiter(10000, 1000), new Random(1)));
+
+        assertEquals(1, FetchMetrics.getErrorCount(FetchMetrics.ErrorCategory.PARSE));
+        assertEquals(0, FetchMetrics.getErrorCount(FetchMetrics.ErrorCategory.NETWORK));
+    }
+
+    @Test
+    public void timeouts_areCategorized() {
+        assertEquals(FetchMetrics.ErrorCategory.TIMEOUT, FetchMetrics.categorize(new SocketTimeoutException()));
+        assertEquals(FetchMetrics.ErrorCategory.NETWORK, FetchMetrics.categorize(new IOException()));
+    }
+
+    @Test
+    public void disabled_recordsNothing() throws Exception {
+        FetchMetrics.setEnabled(false);
+
+        QueryUtils.fetchBookListingPage(baseUrl, null);
+        responseCode = 404;
+        QueryUtils.fetchBookListingPage(baseUrl, null);
+
+        assertEquals(0, FetchMetrics.getStage(FetchMetrics.Stage.CONNECT).getCount());
+        assertEquals(0, FetchMetrics.getErrorCount(FetchMetrics.ErrorCategory.HTTP));
+    }
+
+    @Test
+    public void dumpAndExport_listEveryMetric() throws Exception {
+        QueryUtils.fetchBookListingPage(baseUrl, null);
+
+        StringWriter dump = new StringWriter();
+        FetchMetrics.dump(new PrintWriter(dump));
+        StringWriter export = new StringWriter();
+        FetchMetrics.export(export);
+
+        assertTrue(dump.toString(), dump.toString().contains("time_to_first_byte ms"));
+        assertTrue(export.toString(), export.toString().contains("\nparse_nanos,1,"));
+        assertTrue(export.toString(), export.toString().contains("\nerror_timeout,0,"));
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
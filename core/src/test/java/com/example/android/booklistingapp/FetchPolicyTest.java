@@ -0,0 +1,277 @@
+package com.example.android.booklistingapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link FetchPolicy}, {@link CircuitBreaker} and {@link RateLimiter} through
+ * {@link QueryUtils} against a local stub HTTP server that injects faults, on the development
+ * machine (host).
+ */
+public class FetchPolicyTest {
+
+    /** Faults the stub server can answer with instead of the fixture */
+    private static final String DROP = "drop";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private byte[] response;
+    private String baseUrl;
+
+    /** Faults for the next requests, in order: a status code, "429:seconds" or DROP */
+    private final ConcurrentLinkedQueue<String> faults = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        response = readFixture("fixtures/volumes_20.json");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/books/v1/volumes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String fault = faults.poll();
+
+                // A new connection for every request, so HttpURLConnection never retries on its own
+                exchange.getResponseHeaders().set("Connection", "close");
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=0");
+
+                if (DROP.equals(fault)) {
+                    exchange.close();
+                    return;
+                }
+                if (fault != null) {
+                    String[] parts = fault.split(":");
+                    if (parts.length > 1) {
+                        exchange.getResponseHeaders().set("Retry-After", parts[1]);
+                    }
+                    exchange.sendResponseHeaders(Integer.parseInt(parts[0]), -1);
+                    exchange.close();
+                    return;
+                }
+
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.start();
+
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/books/v1/volumes?q=android";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void retryableStatus_isRetriedUntilSuccess() throws Exception {
+        faults.add("503");
+        faults.add("500");
+
+        BookListingPage page = QueryUtils.fetchBookListingPage(baseUrl, null, null, policy(3, new CircuitBreaker(5, 1000)));
+
+        assertEquals(20, page.getBookListings().size());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void clientError_isNotRetried() throws Exception {
+        faults.add("400");
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+
+        assertNull(QueryUtils.fetchBookListingPage(baseUrl, null, null, policy(3, breaker)));
+
+        assertEquals(1, requests.get());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void droppedConnection_isRetried() throws Exception {
+        faults.add(DROP);
+
+        BookListingPage page = QueryUtils.fetchBookListingPage(baseUrl, null, null, policy(3, new CircuitBreaker(5, 1000)));
+
+        assertEquals(20, page.getBookListings().size());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void retryAfter_isHonored() throws Exception {
+        faults.add("429:1");
+
+        long start = System.nanoTime();
+        BookListingPage page = QueryUtils.fetchBookListingPage(baseUrl, null, null, policy(3, new CircuitBreaker(5, 1000)));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(20, page.getBookListings().size());
+        assertEquals(2, requests.get());
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis >= 1000);
+    }
+
+    @Test
+    public void failedAttempts_serveExpiredCacheEntry() throws Exception {
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 4, Long.MAX_VALUE);
+        FetchPolicy policy = policy(2, new CircuitBreaker(5, 1000));
+        QueryUtils.fetchBookListingPage(baseUrl, cache, null, policy);
+        faults.add("503");
+        faults.add("503");
+
+        BookListingPage page = QueryUtils.fetchBookListingPage(baseUrl, cache, null, policy);
+
+        assertEquals(20, page.getBookListings().size());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void openCircuit_servesCacheWithoutRequests() throws Exception {
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 4, Long.MAX_VALUE);
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+        FetchPolicy policy = policy(1, breaker);
+        QueryUtils.fetchBookListingPage(baseUrl, cache, null, policy);
+        faults.add("503");
+        faults.add("503");
+        QueryUtils.fetchBookListingPage(baseUrl, cache, null, policy);
+        QueryUtils.fetchBookListingPage(baseUrl, cache, null, policy);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        int requestsBefore = requests.get();
+
+        BookListingPage page = QueryUtils.fetchBookListingPage(baseUrl, cache, null, policy);
+
+        assertEquals(20, page.getBookListings().size());
+        assertEquals(requestsBefore, requests.get());
+    }
+
+    @Test
+    public void halfOpenCircuit_closesAfterSuccessfulTrial() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 100);
+        FetchPolicy policy = policy(1, breaker);
+        faults.add("503");
+        QueryUtils.fetchBookListingPage(baseUrl, null, null, policy);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(150);
+        BookListingPage page = QueryUtils.fetchBookListingPage(baseUrl, null, null, policy);
+
+        assertEquals(20, page.getBookListings().size());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenCircuit_letsOneTrialThrough() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.recordFailure();
+
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenCircuit_releasesTrialOnRuntimeException() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        FetchPolicy policy = policy(1, breaker);
+        breaker.recordFailure();
+
+        try {
+            policy.execute(new FetchPolicy.Attempt<Void>() {
+                @Override
+                public Void run() {
+                    throw new IllegalStateException("listener failed");
+                }
+            }, null);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // The trial failed outside the API
+        }
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void rateLimiter_spacesRequestsAfterBurst() {
+        RateLimiter limiter = new RateLimiter(20, 2);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            limiter.acquire(null);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        // Two from the burst, then one every 50 ms
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis >= 190);
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 1000);
+    }
+
+    @Test
+    public void backoff_isJitteredBelowExponentialCap() {
+        FetchPolicy policy = new FetchPolicy(10, 100, 1000, new CircuitBreaker(5, 1000),
+                new RateLimiter(100, 10), new Random(3));
+
+        for (int attempt = 1; attempt <= 8; attempt++) {
+            long cap = Math.min(1000, 100L << (attempt - 1));
+            long delay = policy.backoffMillis(attempt);
+            assertTrue(attempt + ": " + delay, delay >= 0 && delay < cap);
+        }
+    }
+
+    @Test
+    public void parseRetryAfter_readsSecondsAndDates() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        String inOneMinute = format.format(new Date(System.currentTimeMillis() + 60000));
+
+        assertEquals(120000, FetchPolicy.parseRetryAfter("120"));
+        long fromDate = FetchPolicy.parseRetryAfter(inOneMinute);
+        assertTrue(String.valueOf(fromDate), fromDate > 55000 && fromDate <= 60000);
+        assertEquals(0, FetchPolicy.parseRetryAfter("soon"));
+        assertEquals(0, FetchPolicy.parseRetryAfter(null));
+    }
+
+    private static FetchPolicy policy(int maxAttempts, CircuitBreaker breaker) {
+        return new FetchPolicy(maxAttempts, 20, 100, breaker, new RateLimiter(100, 10), new Random(1));
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
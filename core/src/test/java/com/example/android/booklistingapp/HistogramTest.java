@@ -0,0 +1,82 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the buckets and percentiles of {@link Histogram}. Runs on the development machine (host).
+ */
+public class HistogramTest {
+
+    @Test
+    public void emptyHistogram_reportsZero() {
+        Histogram histogram = new Histogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void smallValues_areExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(5, histogram.getPercentile(50));
+        assertEquals(9, histogram.getPercentile(90));
+        assertEquals(10, histogram.getPercentile(100));
+        assertEquals(1, histogram.getMin());
+        assertEquals(5, histogram.getMean());
+    }
+
+    @Test
+    public void buckets_coverEveryValueInOrder() {
+        long previousHighest = -1;
+        for (int bucket = 0; bucket < Histogram.bucketOf(Long.MAX_VALUE) + 1; bucket++) {
+            long highest = Histogram.highestValueIn(bucket);
+            assertEquals(bucket, Histogram.bucketOf(previousHighest + 1));
+            assertEquals(bucket, Histogram.bucketOf(highest));
+            previousHighest = highest;
+        }
+        assertEquals(Long.MAX_VALUE, previousHighest);
+    }
+
+    @Test
+    public void percentiles_areWithinOneEighth() {
+        Histogram histogram = new Histogram();
+        long[] values = new long[10000];
+        Random random = new Random(12);
+        for (int i = 0; i < values.length; i++) {
+            // Latencies between 1 ms and 1 s, in nanoseconds
+            values[i] = 1000000L + (long) (random.nextDouble() * 999000000L);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (int percentile : new int[]{50, 90, 99}) {
+            long exact = values[values.length * percentile / 100 - 1];
+            long estimate = histogram.getPercentile(percentile);
+            assertTrue(percentile + ": " + estimate + " vs " + exact, estimate >= exact);
+            assertTrue(percentile + ": " + estimate + " vs " + exact, estimate <= exact + exact / 8);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    @Test
+    public void reset_forgetsValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(100);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
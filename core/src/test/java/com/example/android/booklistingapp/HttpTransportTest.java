@@ -0,0 +1,219 @@
+package com.example.android.booklistingapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link HttpTransport} through {@link QueryUtils} against a local stub HTTP server,
+ * on the development machine (host).
+ */
+public class HttpTransportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private byte[] response;
+    private String baseUrl;
+
+    /** What the stub server saw, one element per request */
+    private final List<Integer> remotePorts = Collections.synchronizedList(new ArrayList<Integer>());
+    private final List<String> ifNoneMatch = Collections.synchronizedList(new ArrayList<String>());
+
+    /** Number of responses, from the next one on, that are cut off half way through the body */
+    private final AtomicInteger truncatedResponses = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        response = readFixture("fixtures/volumes_40.json");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/books/v1/volumes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                remotePorts.add(exchange.getRemoteAddress().getPort());
+                String eTag = exchange.getRequestHeaders().getFirst("If-None-Match");
+                ifNoneMatch.add(eTag);
+
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=0");
+                if ("\"v1\"".equals(eTag)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+
+                byte[] body = response;
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    body = gzip(response);
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                if (truncatedResponses.getAndDecrement() > 0) {
+                    // Promise the whole body, send half of it and drop the connection
+                    out.write(body, 0, body.length / 2);
+                    out.flush();
+                    exchange.close();
+                    return;
+                }
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/books/v1/volumes?q=android";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void gzipResponse_isDecodedAsStream() throws Exception {
+        long bytesBefore = HttpTransport.getBytesOnWire();
+
+        BookListingPage page = QueryUtils.fetchBookListingPage(baseUrl, null);
+
+        assertEquals(40, page.getBookListings().size());
+        long bytesOnWire = HttpTransport.getBytesOnWire() - bytesBefore;
+        assertTrue(bytesOnWire > 0);
+        assertTrue(bytesOnWire < response.length / 2);
+    }
+
+    @Test
+    public void batches_arePrefixesOfThePage() throws Exception {
+        final List<List<BookListing>> batches = new ArrayList<>();
+        BookListingPage page = QueryUtils.fetchBookListingPage(baseUrl, null, null, FetchPolicy.getDefault(),
+                new QueryUtils.BatchListener() {
+                    @Override
+                    public void onBatch(List<BookListing> booklistings) {
+                        batches.add(booklistings);
+                    }
+                });
+
+        assertEquals(40, page.getBookListings().size());
+        int[] sizes = {5, 10, 20, 40};
+        assertEquals(sizes.length, batches.size());
+        for (int i = 0; i < sizes.length; i++) {
+            List<BookListing> batch = batches.get(i);
+            assertEquals(sizes[i], batch.size());
+            for (int j = 0; j < batch.size(); j++) {
+                assertEquals(page.getBookListings().get(j).getId(), batch.get(j).getId());
+            }
+        }
+        assertFalse(QueryUtils.isBatchBoundary(15));
+        assertTrue(QueryUtils.isBatchBoundary(80));
+    }
+
+    @Test
+    public void sequentialRequests_reuseConnection() throws Exception {
+        QueryUtils.fetchBookListingPage(baseUrl, null);
+        QueryUtils.fetchBookListingPage(baseUrl + "&startIndex=40", null);
+
+        assertEquals(2, remotePorts.size());
+        assertEquals(remotePorts.get(0), remotePorts.get(1));
+    }
+
+    @Test
+    public void expiredCacheEntry_isRevalidatedWithETag() throws Exception {
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 4, Long.MAX_VALUE);
+
+        BookListingPage first = QueryUtils.fetchBookListingPage(baseUrl, cache);
+        BookListingPage second = QueryUtils.fetchBookListingPage(baseUrl, cache);
+
+        assertEquals(2, ifNoneMatch.size());
+        assertNull(ifNoneMatch.get(0));
+        assertEquals("\"v1\"", ifNoneMatch.get(1));
+        assertEquals(1, cache.getNotModifiedCount());
+        assertEquals(first.getBookListings().size(), second.getBookListings().size());
+    }
+
+    @Test
+    public void truncatedResponse_isNotCached() throws Exception {
+        BookListingCache cache = new BookListingCache(folder.getRoot(), 4, Long.MAX_VALUE);
+        truncatedResponses.set(1);
+
+        QueryUtils.fetchBookListingPage(baseUrl, cache, null, noRetryPolicy());
+
+        assertNull(cache.get(baseUrl));
+    }
+
+    @Test
+    public void truncatedResponse_failsTheAttemptAndIsRetried() throws Exception {
+        truncatedResponses.set(1);
+        FetchPolicy policy = new FetchPolicy(2, 1, 1, new CircuitBreaker(100, 1000), new RateLimiter(10000, 1000),
+                new Random(1));
+
+        BookListingPage page = QueryUtils.fetchBookListingPage(baseUrl, null, null, policy);
+
+        assertEquals(40, page.getBookListings().size());
+        assertEquals(2, remotePorts.size());
+
+        // The breaker counts a cut off body as a failure
+        truncatedResponses.set(1);
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+        QueryUtils.fetchBookListingPage(baseUrl, null, null,
+                new FetchPolicy(1, 1, 1, breaker, new RateLimiter(10000, 1000), new Random(1)));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void pageUrl_requestsPartialResponse() throws Exception {
+        String url = QueryUtils.pageUrl(baseUrl, 20, 20);
+
+        assertTrue(url.contains("&startIndex=20"));
+        assertTrue(url.contains("&maxResults=20"));
+        assertTrue(url.contains("fields=items(id,volumeInfo("));
+    }
+
+    private static FetchPolicy noRetryPolicy() {
+        return new FetchPolicy(1, 20, 100, new CircuitBreaker(100, 1000), new RateLimiter(10000, 1000), new Random(1));
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
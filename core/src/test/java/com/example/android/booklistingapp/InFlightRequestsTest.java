@@ -0,0 +1,214 @@
+package com.example.android.booklistingapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the request coalescing of {@link InFlightRequests} against a local stub HTTP server that
+ * holds every response until the test releases it, on the development machine (host).
+ */
+public class InFlightRequestsTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private byte[] response;
+    private String url;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /** Released once for every request that arrives */
+    private final Semaphore arrived = new Semaphore(0);
+
+    /** Holds the responses until it is counted down */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        response = readFixture("fixtures/volumes_20.json");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/books/v1/volumes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                arrived.release();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                exchange.getResponseHeaders().set("Connection", "close");
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                try {
+                    exchange.sendResponseHeaders(200, response.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(response);
+                    out.close();
+                } catch (IOException e) {
+                    // The client cancelled the request and went away
+                    exchange.close();
+                }
+            }
+        });
+        // Requests held at the same time need a thread each
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/books/v1/volumes?q=android";
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        callers.shutdownNow();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentIdenticalFetches_sendOneRequest() throws Exception {
+        Caller first = start(new CancellationToken());
+        assertTrue(arrived.tryAcquire(5, TimeUnit.SECONDS));
+        Caller second = start(new CancellationToken());
+        second.awaitWaiting();
+
+        release.countDown();
+
+        BookListingPage page = first.Result.get(5, TimeUnit.SECONDS);
+        assertEquals(20, page.getBookListings().size());
+        assertSame(page, second.Result.get(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void cancellingTheOwner_leavesTheSharedRequestToTheWaiter() throws Exception {
+        CancellationToken ownerToken = new CancellationToken();
+        Caller owner = start(ownerToken);
+        assertTrue(arrived.tryAcquire(5, TimeUnit.SECONDS));
+        Caller waiter = start(new CancellationToken());
+        waiter.awaitWaiting();
+
+        ownerToken.cancel();
+        release.countDown();
+
+        assertEquals(20, waiter.Result.get(5, TimeUnit.SECONDS).getBookListings().size());
+        assertCanceled(owner);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void cancellingAWaiter_leavesTheOwnerAlone() throws Exception {
+        Caller owner = start(new CancellationToken());
+        assertTrue(arrived.tryAcquire(5, TimeUnit.SECONDS));
+        CancellationToken waiterToken = new CancellationToken();
+        Caller waiter = start(waiterToken);
+        waiter.awaitWaiting();
+
+        waiterToken.cancel();
+        assertCanceled(waiter);
+        release.countDown();
+
+        assertEquals(20, owner.Result.get(5, TimeUnit.SECONDS).getBookListings().size());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void lastCallerCancelling_cancelsTheRequest_andTheNextCallSendsANewOne() throws Exception {
+        CancellationToken ownerToken = new CancellationToken();
+        Caller owner = start(ownerToken);
+        assertTrue(arrived.tryAcquire(5, TimeUnit.SECONDS));
+
+        ownerToken.cancel();
+        assertCanceled(owner);
+
+        // The cancelled request is not shared with the next caller
+        Caller next = start(new CancellationToken());
+        assertTrue(arrived.tryAcquire(5, TimeUnit.SECONDS));
+        release.countDown();
+
+        assertEquals(20, next.Result.get(5, TimeUnit.SECONDS).getBookListings().size());
+        assertEquals(2, requests.get());
+    }
+
+    private Caller start(final CancellationToken cancellationToken) {
+        final FetchPolicy policy = new FetchPolicy(1, 20, 100, new CircuitBreaker(5, 1000),
+                new RateLimiter(100, 10), new Random(1));
+        final Caller caller = new Caller();
+        caller.Result = callers.submit(new Callable<BookListingPage>() {
+            @Override
+            public BookListingPage call() {
+                caller.Worker = Thread.currentThread();
+                return InFlightRequests.fetch(url, null, cancellationToken, policy);
+            }
+        });
+        return caller;
+    }
+
+    private static void assertCanceled(Caller caller) throws Exception {
+        try {
+            caller.Result.get(5, TimeUnit.SECONDS);
+            fail("expected FetchCanceledException");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof FetchCanceledException);
+        }
+    }
+
+    /**
+     * A thread calling {@link InFlightRequests#fetch}.
+     */
+    private static final class Caller {
+
+        volatile Thread Worker;
+        Future<BookListingPage> Result;
+
+        /**
+         * Wait until the caller is waiting for a request another caller sent.
+         */
+        void awaitWaiting() throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (Worker == null || Worker.getState() != Thread.State.WAITING) {
+                assertTrue("the caller never waited", System.nanoTime() < deadline);
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
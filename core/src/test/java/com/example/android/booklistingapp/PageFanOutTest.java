@@ -0,0 +1,180 @@
+package com.example.android.booklistingapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link PageFanOut} against a local stub HTTP server that serves every page with its own
+ * volume ids, on the development machine (host).
+ */
+public class PageFanOutTest {
+
+    private static final Pattern START_INDEX = Pattern.compile("startIndex=(\\d+)");
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String response;
+    private String baseUrl;
+
+    /** Start index of the page the stub server answers slowly, or -1 */
+    private volatile int slowStartIndex = -1;
+    private volatile long slowMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final List<Integer> startIndexes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /** A policy of its own, so the rate limit of the app doesn't space out the pages */
+    private final FetchPolicy policy = new FetchPolicy(1, 20, 100, new CircuitBreaker(5, 1000),
+            new RateLimiter(1000, 100), new Random(1));
+
+    @Before
+    public void setUp() throws Exception {
+        response = readFixture("fixtures/volumes_40.json");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/books/v1/volumes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                maxInFlight(inFlight.incrementAndGet());
+                Matcher matcher = START_INDEX.matcher(exchange.getRequestURI().getQuery());
+                int startIndex = matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+                startIndexes.add(startIndex);
+
+                // Hold the request a little, so the fan-out has several in flight at once
+                sleep(startIndex == slowStartIndex ? slowMillis : 50);
+
+                // The client may start its next request as soon as it has the response
+                inFlight.decrementAndGet();
+
+                byte[] body = response.replace("\"id\": \"", "\"id\": \"" + startIndex + "-").getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/books/v1/volumes?q=android";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void pages_areMergedInPageOrder() throws Exception {
+        PageFanOut fanOut = new PageFanOut(4, 5000, policy);
+
+        BookListingPage page = fanOut.fetch(baseUrl, 200, null, null, null);
+
+        List<BookListing> booklistings = page.getBookListings();
+        assertEquals(200, booklistings.size());
+        assertEquals(1436, page.getTotalItems());
+        for (int i = 0; i < booklistings.size(); i++) {
+            int startIndex = i / PageFanOut.PAGE_SIZE * PageFanOut.PAGE_SIZE;
+            assertTrue(booklistings.get(i).getId(), booklistings.get(i).getId().startsWith(startIndex + "-"));
+        }
+    }
+
+    @Test
+    public void maxResults_limitsPagesAndBooks() throws Exception {
+        PageFanOut fanOut = new PageFanOut(4, 5000, policy);
+
+        BookListingPage page = fanOut.fetch(baseUrl, 60, null, null, null);
+
+        assertEquals(60, page.getBookListings().size());
+        assertEquals(2, startIndexes.size());
+    }
+
+    @Test
+    public void requestsInFlight_neverExceedMaxConcurrency() throws Exception {
+        PageFanOut fanOut = new PageFanOut(2, 5000, policy);
+
+        fanOut.fetch(baseUrl, 400, null, null, null);
+
+        assertEquals(10, startIndexes.size());
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void slowPage_isLeftOutAfterItsTimeout() throws Exception {
+        slowStartIndex = 80;
+        slowMillis = 2000;
+        PageFanOut fanOut = new PageFanOut(4, 500, policy);
+        final List<Integer> arrived = Collections.synchronizedList(new ArrayList<Integer>());
+
+        long start = System.nanoTime();
+        BookListingPage page = fanOut.fetch(baseUrl, 200, null, null, new PageFanOut.Callback() {
+            @Override
+            public void onPage(int pageIndex, BookListingPage page) {
+                arrived.add(pageIndex);
+            }
+        });
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        // The fan-out does not wait for the slow page, and keeps the others in order
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < slowMillis);
+        assertEquals(160, page.getBookListings().size());
+        assertFalse(arrived.contains(2));
+        assertEquals(4, arrived.size());
+        assertEquals(Integer.valueOf(0), arrived.get(0));
+        assertTrue(page.getBookListings().get(80).getId().startsWith("120-"));
+    }
+
+    private void maxInFlight(int count) {
+        int max;
+        do {
+            max = maxInFlight.get();
+        } while (count > max && !maxInFlight.compareAndSet(max, count));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the streaming parse path against the buffered String + JSONObject path on the
+ * response fixtures in src/test/resources/fixtures. Runs on the development machine (host).
+ *
+ * The test fails if the two paths disagree, or if the streaming path allocates more than the
+ * path it replaced. Parse times are measured by the JMH benchmarks in the :benchmark module.
+ */
+public class ParseBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 10;
+    private static final int MEASURED_ITERATIONS = 20;
+
+    private static final String[] FIXTURES = {
+            "fixtures/volumes_20.json",
+            "fixtures/volumes_40.json"
+    };
+
+    @Test
+    public void streamingParse_matchesDomParse() throws Exception {
+        for (String fixture : FIXTURES) {
+            byte[] response = readFixture(fixture);
+
+            List<BookListing> dom = parseDom(response);
+            List<BookListing> stream = parseStream(response);
+
+            assertEquals(fixture, dom.size(), stream.size());
+            for (int i = 0; i < dom.size(); i++) {
+                assertEquals(fixture, dom.get(i).getId(), stream.get(i).getId());
+                assertEquals(fixture, dom.get(i).getTitle(), stream.get(i).getTitle());
+                assertEquals(fixture, dom.get(i).getAuthors(), stream.get(i).getAuthors());
+                assertEquals(fixture, dom.get(i).getPublishedDate(), stream.get(i).getPublishedDate());
+                assertEquals(fixture, dom.get(i).getThumbnail(), stream.get(i).getThumbnail());
+                assertEquals(fixture, dom.get(i).getTextSnippet(), stream.get(i).getTextSnippet());
+            }
+        }
+    }
+
+    @Test
+    public void streamingParse_allocatesLessThanDomParse() throws Exception {
+        for (String fixture : FIXTURES) {
+            byte[] response = readFixture(fixture);
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                parseDom(response);
+                parseStream(response);
+            }
+
+            long domBytes = allocatedBytes();
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                parseDom(response);
+            }
+            domBytes = (allocatedBytes() - domBytes) / MEASURED_ITERATIONS;
+
+            long streamBytes = allocatedBytes();
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                parseStream(response);
+            }
+            streamBytes = (allocatedBytes() - streamBytes) / MEASURED_ITERATIONS;
+
+            assertTrue(fixture, streamBytes < domBytes);
+        }
+    }
+
+    private static List<BookListing> parseDom(byte[] response) throws IOException {
+        return QueryUtils.extractFeatureFromJson(
+                QueryUtils.readFromStream(new ByteArrayInputStream(response)));
+    }
+
+    private static List<BookListing> parseStream(byte[] response) {
+        return QueryUtils.extractFeatureFromStream(new ByteArrayInputStream(response));
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.android.booklistingapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fuzz and property tests of the two ways a response is turned into books,
+ * {@link QueryUtils#extractFeatureFromJson(String)} and {@link BookListingStreamParser}, over
+ * malformed and partial Books API responses. Runs on the development machine (host).
+ *
+ * The responses are made from fixtures/volumes_20.json with a seeded {@link Random}, so a
+ * failure can be replayed from the seed in its message.
+ */
+public class ResponseFuzzTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int ITERATIONS = 300;
+
+    /** Parses per response when comparing allocations */
+    private static final int ALLOCATION_ITERATIONS = 20;
+
+    private static final String[] FIELDS = {"id", "title", "authors", "publishedDate", "thumbnail", "textSnippet"};
+    private static final String[] PLACEHOLDERS = {null, BookListing.NO_TITLE, BookListing.NO_AUTHOR,
+            BookListing.NO_PUBLISHED_DATE, BookListing.NO_THUMBNAIL, BookListing.NO_TEXT_SNIPPET};
+
+    private JSONArray items;
+
+    @Before
+    public void setUp() throws Exception {
+        items = new JSONObject(new String(readFixture("fixtures/volumes_20.json"), UTF_8)).getJSONArray("items");
+        FetchMetrics.reset();
+        FetchMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        FetchMetrics.setEnabled(false);
+        FetchMetrics.reset();
+    }
+
+    @Test
+    public void missingNodes_onlyCostTheirItem() throws Exception {
+        JSONArray page = new JSONArray()
+                .put(item(0))
+                .put(without(item(1), "volumeInfo", "imageLinks"))
+                .put(without(item(2), null, "searchInfo"))
+                .put(without(item(3), null, "volumeInfo"))
+                .put("not a volume")
+                .put(JSONObject.NULL)
+                .put(42)
+                .put(item(4).put("searchInfo", new JSONArray()));
+        String response = new JSONObject().put("totalItems", 8.5).put("items", page).toString();
+
+        List<BookListing> dom = QueryUtils.extractFeatureFromJson(response);
+        List<BookListing> stream = parseStream(response);
+
+        assertEquals(5, dom.size());
+        assertSameBooks("", dom, stream);
+        assertEquals(BookListing.NO_THUMBNAIL, dom.get(1).getThumbnail());
+        assertEquals(BookListing.NO_TEXT_SNIPPET, dom.get(2).getTextSnippet());
+        assertEquals(BookListing.NO_TITLE, dom.get(3).getTitle());
+        assertEquals(item(3).getString("id"), dom.get(3).getId());
+        assertEquals(BookListing.NO_TEXT_SNIPPET, dom.get(4).getTextSnippet());
+
+        // Counted once by each parser; only the stream parser reads totalItems
+        assertEquals(6, FetchMetrics.getItemErrorCount(FetchMetrics.ItemError.NOT_AN_OBJECT));
+        assertEquals(2, FetchMetrics.getItemErrorCount(FetchMetrics.ItemError.NO_VOLUME_INFO));
+        assertEquals(3, FetchMetrics.getItemErrorCount(FetchMetrics.ItemError.WRONG_TYPE));
+    }
+
+    @Test
+    public void fuzzedItems_keepEveryIntactField() throws Exception {
+        for (int seed = 0; seed < ITERATIONS; seed++) {
+            Random random = new Random(seed);
+            List<String[]> expected = new ArrayList<>();
+            String response = fuzzedResponse(random, expected);
+
+            List<BookListing> dom = QueryUtils.extractFeatureFromJson(response);
+            List<BookListing> stream = parseStream(response);
+
+            String message = "seed " + seed;
+            assertEquals(message, expected.size(), dom.size());
+            assertSameBooks(message, dom, stream);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(message + ", book " + i, Arrays.asList(expected.get(i)), Arrays.asList(fields(dom.get(i))));
+            }
+        }
+    }
+
+    @Test
+    public void truncatedResponses_keepCompleteItemsInOrder() throws Exception {
+        byte[] response = readFixture("fixtures/volumes_20.json");
+        List<BookListing> complete = QueryUtils.extractFeatureFromStream(new ByteArrayInputStream(response));
+        assertEquals(20, complete.size());
+
+        Random random = new Random(1);
+        for (int i = 0; i < ITERATIONS; i++) {
+            int length = random.nextInt(response.length);
+            byte[] truncated = Arrays.copyOf(response, length);
+
+            List<BookListing> stream = QueryUtils.extractFeatureFromStream(new ByteArrayInputStream(truncated));
+            List<BookListing> dom = QueryUtils.extractFeatureFromJson(new String(truncated, UTF_8));
+
+            String message = "length " + length;
+            assertTrue(message, stream.size() <= complete.size());
+            assertSameBooks(message, stream, complete.subList(0, stream.size()));
+            assertTrue(message, dom == null || dom.isEmpty());
+        }
+    }
+
+    @Test
+    public void corruptedBytes_neverThrow() throws Exception {
+        byte[] response = readFixture("fixtures/volumes_20.json");
+        byte[] noise = "{}[]\",:0-eE.\\ntf".getBytes(UTF_8);
+
+        for (int seed = 0; seed < ITERATIONS; seed++) {
+            Random random = new Random(seed);
+            byte[] corrupted = response.clone();
+            for (int i = 1 + random.nextInt(8); i > 0; i--) {
+                corrupted[random.nextInt(corrupted.length)] = noise[random.nextInt(noise.length)];
+            }
+
+            assertNotNull("seed " + seed, QueryUtils.extractFeatureFromStream(new ByteArrayInputStream(corrupted)));
+            assertNotNull("seed " + seed, QueryUtils.extractFeatureFromJson(new String(corrupted, UTF_8)));
+        }
+    }
+
+    @Test
+    public void malformedItems_costNoMoreThanWellFormedOnes() throws Exception {
+        String clean = new JSONObject().put("items", items).toString();
+        JSONArray malformed = new JSONArray();
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = item(i);
+            item.getJSONObject("volumeInfo").put("title", new JSONObject()).remove("imageLinks");
+            item.put("searchInfo", new JSONArray());
+            malformed.put(item);
+        }
+        String broken = new JSONObject().put("items", malformed).toString();
+
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+            QueryUtils.extractFeatureFromJson(clean);
+            QueryUtils.extractFeatureFromJson(broken);
+        }
+        long cleanBytes = allocatedBytesPerParse(clean);
+        long brokenBytes = allocatedBytesPerParse(broken);
+
+        // Failing an item throws nothing, so there is no stack trace to pay for
+        assertTrue(brokenBytes + " > " + cleanBytes, brokenBytes <= cleanBytes);
+        assertEquals(items.length(), QueryUtils.extractFeatureFromJson(broken).size());
+    }
+
+    /**
+     * Make a response from the items of the fixture in random order, with random mutations, and
+     * add the fields each book is expected to have to the list.
+     */
+    private String fuzzedResponse(Random random, List<String[]> expected) throws JSONException {
+        JSONArray page = new JSONArray();
+        for (int n = random.nextInt(25); n > 0; n--) {
+            if (random.nextInt(10) == 0) {
+                page.put(random.nextBoolean() ? JSONObject.NULL : "not a volume");
+                continue;
+            }
+
+            JSONObject item = item(random.nextInt(items.length()));
+            String[] fields = fields(QueryUtils.extractFeatureFromJson(
+                    new JSONObject().put("items", new JSONArray().put(item)).toString()).get(0));
+
+            JSONObject volumeInfo = item.getJSONObject("volumeInfo");
+            switch (random.nextInt(8)) {
+                case 0:
+                    item.remove("volumeInfo");
+                    System.arraycopy(PLACEHOLDERS, 1, fields, 1, 4);
+                    break;
+                case 1:
+                    volumeInfo.remove("imageLinks");
+                    fields[4] = BookListing.NO_THUMBNAIL;
+                    break;
+                case 2:
+                    item.put("searchInfo", random.nextBoolean() ? JSONObject.NULL : new JSONArray().put(1));
+                    fields[5] = BookListing.NO_TEXT_SNIPPET;
+                    break;
+                case 3:
+                    volumeInfo.put("title", new JSONObject().put("text", "nested"));
+                    fields[1] = BookListing.NO_TITLE;
+                    break;
+                case 4:
+                    volumeInfo.put("authors", new JSONArray().put(JSONObject.NULL).put("Jane Doe").put(new JSONArray()));
+                    fields[2] = "Jane Doe";
+                    break;
+                case 5:
+                    volumeInfo.put("publishedDate", 2017);
+                    fields[3] = "2017";
+                    break;
+                case 6:
+                    item.put("kind", new JSONObject().put("unexpected", new JSONArray().put(true)));
+                    break;
+                default:
+                    break;
+            }
+            page.put(item);
+            expected.add(fields);
+        }
+        return new JSONObject().put("totalItems", page.length()).put("items", page).toString();
+    }
+
+    /**
+     * Returns a copy of an item of the fixture.
+     */
+    private JSONObject item(int index) throws JSONException {
+        return new JSONObject(items.getJSONObject(index).toString());
+    }
+
+    private static JSONObject without(JSONObject item, String parent, String name) throws JSONException {
+        (parent != null ? item.getJSONObject(parent) : item).remove(name);
+        return item;
+    }
+
+    private static String[] fields(BookListing booklisting) {
+        return new String[]{booklisting.getId(), booklisting.getTitle(), booklisting.getAuthors(),
+                booklisting.getPublishedDate(), booklisting.getThumbnail(), booklisting.getTextSnippet()};
+    }
+
+    private static void assertSameBooks(String message, List<BookListing> expected, List<BookListing> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String[] expectedFields = fields(expected.get(i));
+            String[] actualFields = fields(actual.get(i));
+            for (int field = 0; field < FIELDS.length; field++) {
+                assertEquals(message + ", book " + i + " " + FIELDS[field], expectedFields[field], actualFields[field]);
+            }
+        }
+    }
+
+    private static List<BookListing> parseStream(String response) {
+        return QueryUtils.extractFeatureFromStream(new ByteArrayInputStream(response.getBytes(UTF_8)));
+    }
+
+    private static long allocatedBytesPerParse(String response) {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long start = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+            QueryUtils.extractFeatureFromJson(response);
+        }
+        return (threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start) / ALLOCATION_ITERATIONS;
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
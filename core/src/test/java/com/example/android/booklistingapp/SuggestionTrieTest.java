@@ -0,0 +1,160 @@
+package com.example.android.booklistingapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link SuggestionTrie} and {@link SearchSuggestions}, on the development machine (host).
+ */
+public class SuggestionTrieTest {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    /** A fixed point in time, so the tests do not depend on the clock */
+    private static final long NOW = 1500000000000L;
+
+    @Test
+    public void suggest_matchesPrefixesIgnoringCaseAndSpaces() {
+        SuggestionTrie trie = new SuggestionTrie();
+        trie.add("Android Programming", SuggestionTrie.Source.TITLE, 1, NOW);
+        trie.add("android", SuggestionTrie.Source.QUERY, 2, NOW);
+        trie.add("Java  Concurrency", SuggestionTrie.Source.TITLE, 1, NOW);
+
+        assertEquals(Arrays.asList("android", "Android Programming"), texts(trie.suggest("AND", 10)));
+        assertEquals(Arrays.asList("Android Programming"), texts(trie.suggest("android ", 10)));
+        assertEquals(Arrays.asList("Java Concurrency"), texts(trie.suggest("java   c", 10)));
+        assertTrue(trie.suggest("kotlin", 10).isEmpty());
+        assertEquals(1, trie.suggest("a", 1).size());
+    }
+
+    @Test
+    public void suggest_ranksByFrequencyAndRecency() {
+        SuggestionTrie trie = new SuggestionTrie();
+        trie.add("harry potter", SuggestionTrie.Source.QUERY, 1, NOW);
+        trie.add("hobbit", SuggestionTrie.Source.QUERY, 1, NOW);
+        trie.add("hobbit", SuggestionTrie.Source.QUERY, 1, NOW);
+        assertEquals(Arrays.asList("hobbit", "harry potter"), texts(trie.suggest("h", 10)));
+
+        // Two half-lives later a single new use outweighs two old ones
+        trie.add("harry potter", SuggestionTrie.Source.QUERY, 1, NOW + 2 * SuggestionTrie.HALF_LIFE_MILLIS);
+        assertEquals(Arrays.asList("harry potter", "hobbit"), texts(trie.suggest("h", 10)));
+
+        // Within a day, frequency still wins
+        trie.add("hamlet", SuggestionTrie.Source.QUERY, 1, NOW + 2 * SuggestionTrie.HALF_LIFE_MILLIS + DAY_MILLIS);
+        assertEquals("harry potter", trie.suggest("h", 10).get(0).getText());
+    }
+
+    @Test
+    public void query_takesOverATitleWithTheSameText() {
+        SuggestionTrie trie = new SuggestionTrie();
+        trie.add("The Hobbit", SuggestionTrie.Source.TITLE, 0.2, NOW);
+        trie.add("the hobbit", SuggestionTrie.Source.QUERY, 1, NOW);
+        trie.add("THE HOBBIT", SuggestionTrie.Source.TITLE, 0.2, NOW);
+
+        List<SuggestionTrie.Suggestion> suggestions = trie.suggest("the", 10);
+        assertEquals(1, suggestions.size());
+        assertEquals("the hobbit", suggestions.get(0).getText());
+        assertEquals(SuggestionTrie.Source.QUERY, suggestions.get(0).getSource());
+        assertEquals(1, trie.size());
+    }
+
+    @Test
+    public void writeTo_keepsTheHighestRankedTexts() throws IOException {
+        SuggestionTrie trie = new SuggestionTrie();
+        trie.add("android", SuggestionTrie.Source.QUERY, 3, NOW);
+        trie.add("Android Programming", SuggestionTrie.Source.TITLE, 2, NOW);
+        trie.add("Bill Phillips", SuggestionTrie.Source.AUTHOR, 1, NOW);
+        trie.add("forgotten", SuggestionTrie.Source.QUERY, 1, NOW - 30 * DAY_MILLIS);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        trie.writeTo(new DataOutputStream(bytes), 3);
+        SuggestionTrie read = SuggestionTrie.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(3, read.size());
+        assertEquals(Arrays.asList("android", "Android Programming"), texts(read.suggest("an", 10)));
+        assertEquals(SuggestionTrie.Source.AUTHOR, read.suggest("bill", 10).get(0).getSource());
+        assertTrue(read.suggest("forgotten", 10).isEmpty());
+
+        // The ranks survive, so a later use adds to the score it had
+        read.add("Bill Phillips", SuggestionTrie.Source.AUTHOR, 3, NOW);
+        assertEquals("Bill Phillips", read.suggest("", 1).get(0).getText());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsAnotherVersion() throws IOException {
+        SuggestionTrie.read(new DataInputStream(new ByteArrayInputStream(new byte[]{99, 0, 0, 0, 0})));
+    }
+
+    @Test
+    public void searchSuggestions_areReadLazilyAndSaved() throws IOException {
+        File file = File.createTempFile("suggestions", null);
+        file.delete();
+        try {
+            SearchSuggestions suggestions = new SearchSuggestions(file);
+            suggestions.recordQuery("tolkien");
+            suggestions.addBookListings(Arrays.asList(
+                    new BookListing("1", "The Silmarillion", "J. R. R. Tolkien, Christopher Tolkien", "1977",
+                            BookListing.NO_THUMBNAIL, BookListing.NO_TEXT_SNIPPET),
+                    new BookListing("2", BookListing.NO_TITLE, BookListing.NO_AUTHOR, "2000",
+                            BookListing.NO_THUMBNAIL, BookListing.NO_TEXT_SNIPPET)));
+            assertFalse(file.exists());
+            suggestions.saveIfChanged();
+            assertTrue(file.exists());
+
+            SearchSuggestions reloaded = new SearchSuggestions(file);
+            assertEquals(Arrays.asList("tolkien"), texts(reloaded.suggest("tol", 10)));
+            assertEquals(Arrays.asList("Christopher Tolkien"), texts(reloaded.suggest("chr", 10)));
+            assertEquals(Arrays.asList("The Silmarillion"), texts(reloaded.suggest("the s", 10)));
+            assertTrue(reloaded.suggest("no ", 10).isEmpty());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void suggest_isFastForThousandsOfTexts() throws Exception {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("fixtures/volumes_200.json");
+        List<BookListing> page = QueryUtils.extractFeatureFromStream(in);
+        in.close();
+
+        SuggestionTrie trie = new SuggestionTrie();
+        for (int i = 0; i < 25; i++) {
+            for (BookListing booklisting : page) {
+                trie.add(booklisting.getTitle() + " " + i, SuggestionTrie.Source.TITLE, 0.2, NOW + i);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            trie.suggest("a", 10);
+        }
+        long start = System.nanoTime();
+        int runs = 100;
+        for (int i = 0; i < runs; i++) {
+            assertEquals(10, trie.suggest("a", 10).size());
+        }
+        long nanosPerSuggest = (System.nanoTime() - start) / runs;
+
+        // Tens of microseconds on a desktop; the margin allows for a slow build machine
+        assertTrue(nanosPerSuggest + " ns", nanosPerSuggest < 5000000);
+    }
+
+    private static List<String> texts(List<SuggestionTrie.Suggestion> suggestions) {
+        List<String> texts = new ArrayList<>();
+        for (SuggestionTrie.Suggestion suggestion : suggestions) {
+            texts.add(suggestion.getText());
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,441 @@
+package com.example.android.booklistingapp;
+
+//https://openjdk.org/jeps/444
+//https://docs.oracle.com/en/java/javase/21/docs/api/java.base/java/util/concurrent/Executors.html#newVirtualThreadPerTaskExecutor()
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Command-line tool that runs many queries against the Google Books API at once and writes every
+ * book it finds to a {@link BookListingExport} file, for building datasets ahead of time. It goes
+ * through the same {@link QueryUtils} fetch and parse path as the app, so it can also be used to
+ * profile that path with the usual JVM tools.
+ *
+ * Every query runs in a task of its own that fetches its pages one after the other. On Java 21
+ * and later the tasks run on virtual threads, so thousands of queries cost no more than
+ * thousands of objects; on older JVMs they share a pool of platform threads. Either way a
+ * semaphore bounds the requests in flight, and the {@link FetchPolicy} bounds the request rate,
+ * so the API sees the same load whatever the number of queries.
+ *
+ * Books are written as soon as their page arrives, and only their volume ids are kept, to drop
+ * books that several queries found.
+ */
+public final class BookHarvester {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = BookHarvester.class.getSimpleName();
+
+    /** Results per page, the most the API returns */
+    static final int PAGE_SIZE = BookQuery.MAX_RESULTS_LIMIT;
+
+    /** Default number of requests in flight at once */
+    static final int DEFAULT_CONCURRENCY = 32;
+
+    /** How long an interrupted run may take to write what it has */
+    private static final long SHUTDOWN_MILLIS = 10000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String USAGE = "Usage: harvester [options] [query...]\n"
+            + "  -q, --queries FILE   read the queries from FILE, one per line (- for standard input)\n"
+            + "  -o, --output FILE    write the books to FILE (default harvest.bklx)\n"
+            + "  --format FORMAT      binary or jsonl (default from the output file name)\n"
+            + "  --pages N            pages of " + PAGE_SIZE + " results per query (default 1)\n"
+            + "  --concurrency N      requests in flight at once (default " + DEFAULT_CONCURRENCY + ")\n"
+            + "  --rate N             requests per second (default " + FetchPolicy.DEFAULT_PERMITS_PER_SECOND + ")\n"
+            + "  --endpoint URL       volumes endpoint (default " + BookQuery.DEFAULT_ENDPOINT + ")\n"
+            + "  --metrics            print the fetch metrics to standard error at the end\n"
+            + "  -v, --verbose        log every request";
+
+    private final String Endpoint;
+    private final int Pages;
+    private final int Concurrency;
+    private final FetchPolicy Policy;
+
+    /** Bounds the requests in flight */
+    private final Semaphore InFlight;
+
+    /** Tokens of the queries in flight; a token only has room for one request's listener */
+    private final Set<CancellationToken> Tokens =
+            Collections.newSetFromMap(new ConcurrentHashMap<CancellationToken, Boolean>());
+    private volatile boolean Canceled;
+
+    private final AtomicInteger PageCount = new AtomicInteger();
+    private final AtomicInteger FailedQueryCount = new AtomicInteger();
+
+    /**
+     * Guards the exporter, the volume ids written so far and the counts. A lock rather than
+     * synchronized, which would pin a virtual thread to its carrier while it writes to disk.
+     */
+    private final ReentrantLock WriteLock = new ReentrantLock();
+    private final Set<String> SeenIds = new HashSet<>();
+    private int BookCount;
+    private int DuplicateCount;
+    private IOException WriteError;
+
+    /**
+     * The outcome of a run.
+     */
+    static final class Summary {
+
+        final int Queries;
+        final int FailedQueries;
+        final int Pages;
+        final int Books;
+        final int Duplicates;
+        final long ElapsedMillis;
+        final String Executor;
+
+        Summary(int queries, int failedQueries, int pages, int books, int duplicates, long elapsedMillis,
+                String executor) {
+            Queries = queries;
+            FailedQueries = failedQueries;
+            Pages = pages;
+            Books = books;
+            Duplicates = duplicates;
+            ElapsedMillis = elapsedMillis;
+            Executor = executor;
+        }
+
+        @Override
+        public String toString() {
+            return "Harvested " + Books + " books (" + Duplicates + " duplicates dropped) from " + Pages
+                    + " pages of " + Queries + " queries, " + FailedQueries + " failed, in " + ElapsedMillis
+                    + " ms on " + Executor;
+        }
+    }
+
+    /**
+     * Constructs a new {@link BookHarvester}.
+     *
+     * @param endpoint is the volumes endpoint the queries are sent to
+     * @param pages is the largest number of pages fetched per query
+     * @param concurrency is the largest number of requests in flight at once
+     * @param policy retries and paces the requests
+     */
+    BookHarvester(String endpoint, int pages, int concurrency, FetchPolicy policy) {
+        Endpoint = endpoint;
+        Pages = pages;
+        Concurrency = concurrency;
+        Policy = policy;
+        InFlight = new Semaphore(concurrency);
+    }
+
+    /**
+     * Run every query and write the books to the exporter, which is not closed. Returns once
+     * every query has finished or the run was cancelled.
+     *
+     * @throws IOException if the exporter failed; the run stops at the first failure
+     */
+    Summary harvest(List<String> queries, final BookListingExport.Exporter exporter)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService executor = newTaskExecutor(Concurrency);
+        String executorName = isVirtual(executor) ? "virtual threads" : "a pool of " + Concurrency + " threads";
+        CoreLog.i(LOG_TAG, "Running " + queries.size() + " queries on " + executorName);
+
+        for (final String query : queries) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    harvestQuery(query, exporter);
+                }
+            });
+        }
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            CoreLog.d(LOG_TAG, PageCount.get() + " pages so far");
+        }
+
+        WriteLock.lock();
+        try {
+            if (WriteError != null) {
+                throw WriteError;
+            }
+            return new Summary(queries.size(), FailedQueryCount.get(), PageCount.get(), BookCount, DuplicateCount,
+                    (System.nanoTime() - start) / 1000000, executorName);
+        } finally {
+            WriteLock.unlock();
+        }
+    }
+
+    /**
+     * Cancel the run: requests in flight are disconnected and no more are sent.
+     */
+    void cancel() {
+        Canceled = true;
+        for (CancellationToken token : Tokens) {
+            token.cancel();
+        }
+    }
+
+    /**
+     * Fetch the pages of one query until one comes back short. Runs on a thread of the executor.
+     */
+    private void harvestQuery(String query, BookListingExport.Exporter exporter) {
+        CancellationToken token = new CancellationToken();
+        Tokens.add(token);
+        // The run may have been cancelled before the token was added
+        if (Canceled) {
+            token.cancel();
+        }
+
+        String baseUrl = new BookQuery.Builder().setEndpoint(Endpoint).setTerms(query).build().getUrl();
+        try {
+            for (int pageIndex = 0; pageIndex < Pages; pageIndex++) {
+                String pageUrl = QueryUtils.pageUrl(baseUrl, pageIndex * PAGE_SIZE, PAGE_SIZE);
+                BookListingPage page;
+                InFlight.acquire();
+                try {
+                    page = QueryUtils.fetchBookListingPage(pageUrl, null, token, Policy);
+                } finally {
+                    InFlight.release();
+                }
+                if (page == null) {
+                    if (!token.isCanceled()) {
+                        FailedQueryCount.incrementAndGet();
+                    }
+                    return;
+                }
+                PageCount.incrementAndGet();
+                write(page.getBookListings(), exporter);
+
+                if (page.getBookListings().size() < PAGE_SIZE || (pageIndex + 1) * PAGE_SIZE >= page.getTotalItems()) {
+                    return;
+                }
+            }
+        } catch (FetchCanceledException e) {
+            // The run was cancelled
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            Tokens.remove(token);
+        }
+    }
+
+    /**
+     * Write the books no other page has written yet.
+     */
+    private void write(List<BookListing> booklistings, BookListingExport.Exporter exporter) {
+        WriteLock.lock();
+        try {
+            if (WriteError != null) {
+                return;
+            }
+            for (BookListing booklisting : booklistings) {
+                if (booklisting.getId() != null && !SeenIds.add(booklisting.getId())) {
+                    DuplicateCount++;
+                    continue;
+                }
+                exporter.write(booklisting);
+                BookCount++;
+            }
+        } catch (IOException e) {
+            // Nothing more can be written, so stop every query
+            WriteError = e;
+            cancel();
+        } finally {
+            WriteLock.unlock();
+        }
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task when the JVM has them (Java 21 and
+     * later), or else a pool of the given number of threads.
+     */
+    static ExecutorService newTaskExecutor(int poolSize) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Before Java 21, or a preview feature that is not enabled
+            return Executors.newFixedThreadPool(poolSize);
+        }
+    }
+
+    /**
+     * Returns true if the executor is not one of the thread pools of {@link Executors}.
+     */
+    private static boolean isVirtual(ExecutorService executor) {
+        return !(executor instanceof ThreadPoolExecutor);
+    }
+
+    /**
+     * Returns the queries of a file, one per line. Blank lines and lines starting with # are
+     * skipped.
+     */
+    static List<String> readQueries(InputStream in) throws IOException {
+        List<String> queries = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                queries.add(line);
+            }
+        }
+        return queries;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String queriesFile = null;
+        List<String> queries = new ArrayList<>();
+        File output = new File("harvest.bklx");
+        BookListingExport.Format format = null;
+        int pages = 1;
+        int concurrency = DEFAULT_CONCURRENCY;
+        double rate = FetchPolicy.DEFAULT_PERMITS_PER_SECOND;
+        String endpoint = BookQuery.DEFAULT_ENDPOINT;
+        boolean metrics = false;
+        boolean verbose = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("-q".equals(arg) || "--queries".equals(arg)) {
+                    queriesFile = value(args, ++i);
+                } else if ("-o".equals(arg) || "--output".equals(arg)) {
+                    output = new File(value(args, ++i));
+                } else if ("--format".equals(arg)) {
+                    String name = value(args, ++i);
+                    if ("binary".equals(name)) {
+                        format = BookListingExport.Format.BINARY;
+                    } else if ("jsonl".equals(name)) {
+                        format = BookListingExport.Format.JSON_LINES;
+                    } else {
+                        throw new IllegalArgumentException("Unknown format " + name);
+                    }
+                } else if ("--pages".equals(arg)) {
+                    pages = positive(arg, value(args, ++i));
+                } else if ("--concurrency".equals(arg)) {
+                    concurrency = positive(arg, value(args, ++i));
+                } else if ("--rate".equals(arg)) {
+                    rate = Double.parseDouble(value(args, ++i));
+                } else if ("--endpoint".equals(arg)) {
+                    endpoint = value(args, ++i);
+                } else if ("--metrics".equals(arg)) {
+                    metrics = true;
+                } else if ("-v".equals(arg) || "--verbose".equals(arg)) {
+                    verbose = true;
+                } else if (arg.startsWith("-") && !"-".equals(arg)) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    queries.add(arg);
+                }
+            }
+            if (queriesFile != null) {
+                InputStream in = "-".equals(queriesFile) ? System.in : new FileInputStream(queriesFile);
+                queries.addAll(readQueries(in));
+                in.close();
+            }
+            if (queries.isEmpty()) {
+                throw new IllegalArgumentException("No queries");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (format == null) {
+            format = output.getName().endsWith(BookListingExport.Format.JSON_LINES.getExtension())
+                    ? BookListingExport.Format.JSON_LINES : BookListingExport.Format.BINARY;
+        }
+
+        final int minPriority = verbose ? CoreLog.DEBUG : CoreLog.WARN;
+        CoreLog.setSink(new CoreLog.Sink() {
+            @Override
+            public void log(int priority, String tag, String message, Throwable throwable) {
+                if (priority < minPriority) {
+                    return;
+                }
+                synchronized (System.err) {
+                    System.err.println(tag + ": " + message);
+                    if (throwable != null) {
+                        throwable.printStackTrace();
+                    }
+                }
+            }
+        });
+        FetchMetrics.setEnabled(true);
+
+        FetchPolicy policy = new FetchPolicy(FetchPolicy.DEFAULT_MAX_ATTEMPTS, FetchPolicy.DEFAULT_BASE_DELAY_MILLIS,
+                FetchPolicy.DEFAULT_MAX_DELAY_MILLIS,
+                new CircuitBreaker(FetchPolicy.DEFAULT_FAILURE_THRESHOLD, FetchPolicy.DEFAULT_OPEN_MILLIS),
+                new RateLimiter(rate, Math.max(1, (int) rate)), new Random());
+        final BookHarvester harvester = new BookHarvester(endpoint, pages, concurrency, policy);
+
+        // On Ctrl-C, stop the requests and let the main thread close the file
+        final CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                harvester.cancel();
+                try {
+                    finished.await(SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // Exit anyway
+                }
+            }
+        });
+
+        BookListingExport.Exporter exporter = BookListingExport.newExporter(new FileOutputStream(output), format);
+        Summary summary;
+        try {
+            summary = harvester.harvest(queries, exporter);
+        } finally {
+            exporter.close();
+            finished.countDown();
+        }
+
+        System.out.println(summary + "; wrote " + output);
+        if (metrics) {
+            FetchMetrics.dump(new PrintWriter(System.err));
+        }
+        System.exit(summary.FailedQueries == summary.Queries ? 1 : 0);
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static int positive(String option, String value) {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            number = 0;
+        }
+        if (number <= 0) {
+            throw new IllegalArgumentException(option + " needs a positive number");
+        }
+        return number;
+    }
+}
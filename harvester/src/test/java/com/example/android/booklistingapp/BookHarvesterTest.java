@@ -0,0 +1,179 @@
+package com.example.android.booklistingapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link BookHarvester} against a local stub HTTP server, on the development machine (host).
+ */
+public class BookHarvesterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String endpoint;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        final byte[] response = readFixture("fixtures/volumes_40.json");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/books/v1/volumes", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                if (exchange.getRequestURI().getRawQuery().contains("fail")) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/books/v1/volumes";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdown();
+    }
+
+    @Test
+    public void harvest_writesEveryBookOnce() throws Exception {
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            queries.add("query " + i);
+        }
+
+        File file = new File(folder.getRoot(), "harvest.bklx");
+        BookListingExport.Exporter exporter =
+                BookListingExport.newExporter(new FileOutputStream(file), BookListingExport.Format.BINARY);
+        BookHarvester.Summary summary = new BookHarvester(endpoint, 2, 16, newPolicy()).harvest(queries, exporter);
+        exporter.close();
+
+        // Every query gets the same 40 books on both of its pages
+        assertEquals(100, summary.Queries);
+        assertEquals(0, summary.FailedQueries);
+        assertEquals(200, summary.Pages);
+        assertEquals(200, requests.get());
+        assertEquals(40, summary.Books);
+        assertEquals(200 * 40 - 40, summary.Duplicates);
+
+        Set<String> ids = new HashSet<>();
+        BookListingExport.Importer importer = BookListingExport.openImporter(file);
+        BookListing booklisting;
+        while ((booklisting = importer.next()) != null) {
+            assertTrue(ids.add(booklisting.getId()));
+        }
+        importer.close();
+        assertEquals(40, ids.size());
+    }
+
+    @Test
+    public void failedQueries_areCountedAndSkipped() throws Exception {
+        List<String> queries = Arrays.asList("android", "fail one", "java", "fail two");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BookListingExport.Exporter exporter = BookListingExport.newExporter(out, BookListingExport.Format.JSON_LINES);
+        BookHarvester.Summary summary = new BookHarvester(endpoint, 1, 4, newPolicy()).harvest(queries, exporter);
+        exporter.close();
+
+        assertEquals(2, summary.FailedQueries);
+        assertEquals(2, summary.Pages);
+        assertEquals(40, summary.Books);
+        assertEquals(40, new String(out.toByteArray(), UTF_8).split("\n").length);
+    }
+
+    @Test
+    public void newTaskExecutor_usesVirtualThreadsWhenTheJvmHasThem() throws Exception {
+        ExecutorService executor = BookHarvester.newTaskExecutor(4);
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    count.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1000, count.get());
+
+        boolean hasVirtualThreads;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            hasVirtualThreads = true;
+        } catch (NoSuchMethodException e) {
+            hasVirtualThreads = false;
+        }
+        assertEquals(!hasVirtualThreads, executor instanceof ThreadPoolExecutor);
+    }
+
+    @Test
+    public void readQueries_skipsBlankLinesAndComments() throws Exception {
+        String file = "# popular\nandroid\n\n  java  \n#intitle:skipped\ninauthor:tolkien\n";
+        assertEquals(Arrays.asList("android", "java", "inauthor:tolkien"),
+                BookHarvester.readQueries(new ByteArrayInputStream(file.getBytes(UTF_8))));
+    }
+
+    private static FetchPolicy newPolicy() {
+        return new FetchPolicy(1, 20, 100, new CircuitBreaker(100, 1000), new RateLimiter(10000, 1000), new Random(1));
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}